@@ -0,0 +1,344 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf;
+
+import com.wolt.osm.parallelpbf.entity.MultipolygonGeometry;
+import com.wolt.osm.parallelpbf.entity.Polygon;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.RelationMember;
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
+import com.wolt.osm.parallelpbf.geometry.IdBitSet;
+import com.wolt.osm.parallelpbf.geometry.RingAssembler;
+import com.wolt.osm.parallelpbf.index.IdRange;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Multi pass OSM PBF parser, that assembles polygons of the multipolygon and boundary relations.
+ *
+ * First pass reads only relation blocks and collects relations, tagged with {@code type=multipolygon}
+ * or {@code type=boundary}, marking their member ways in the id bitset. Second pass reads only way
+ * blocks, limited to the range of the member ways ids, and keeps node ids of the member ways, marking
+ * those nodes in another bitset. Third pass reads only node blocks and stores locations of the marked
+ * nodes. Finally, relations are assembled in parallel: member ways are joined into closed rings and
+ * rings are classified as outer rings and holes by their nesting.
+ *
+ * See https://github.com/woltapp/parallelpbf for the details and usage example.
+ */
+@Slf4j
+public final class MultipolygonParser {
+    /**
+     * OSM PBF file to parse.
+     */
+    private final Path input;
+
+    /**
+     * Number of threads to use.
+     */
+    private final int threads;
+
+    /**
+     * Node locations store.
+     */
+    private final NodeLocationStore locations;
+
+    /**
+     * Store already has locations, so the nodes pass is skipped.
+     */
+    private boolean locationsReady = false;
+
+    /**
+     * Relations tags filter. See {@link #setTagFilter(TagFilter)}.
+     */
+    private TagFilter tagFilter;
+
+    /**
+     * Callback for the assembled relations.
+     */
+    private Consumer<MultipolygonGeometry> multipolygonCb;
+
+    /**
+     * Callback that will be called, when all relations are assembled.
+     */
+    private Runnable completeCb;
+
+    /**
+     * Node locations store, that keeps only marked nodes.
+     */
+    private static final class MarkedNodeLocationStore implements NodeLocationStore {
+        /**
+         * Nodes to keep.
+         */
+        private final IdBitSet marked;
+
+        /**
+         * Underlying store.
+         */
+        private final NodeLocationStore store;
+
+        /**
+         * Wraps the store.
+         * @param nodes Nodes to keep.
+         * @param target Underlying store.
+         */
+        MarkedNodeLocationStore(final IdBitSet nodes, final NodeLocationStore target) {
+            this.marked = nodes;
+            this.store = target;
+        }
+
+        @Override
+        public void put(final long id, final int lat, final int lon) {
+            if (marked.contains(id)) {
+                store.put(id, lat, lon);
+            }
+        }
+
+        @Override
+        public long get(final long id) {
+            return store.get(id);
+        }
+
+        @Override
+        public void complete() {
+            store.complete();
+        }
+    }
+
+    /**
+     * Sets OSM PBF file to parse, number of threads to use and node locations store.
+     * @param file Path to the OSM PBF file.
+     * @param noThreads Number of threads to use, for each of the passes and for the assembly.
+     * @param store Node locations store. Only nodes of the member ways are stored, so
+     *              store should be large enough for them only.
+     */
+    public MultipolygonParser(final Path file, final int noThreads, final NodeLocationStore store) {
+        this.input = file;
+        this.threads = noThreads;
+        this.locations = store;
+    }
+
+    /**
+     * Skips the nodes pass, when the store already has locations of the file nodes,
+     * for example, persistent store from the previous run or {@link WayGeometryParser}.
+     *
+     * @param ready true to skip node locations pass, false by default.
+     * @return MultipolygonParser to mimic builder interface.
+     */
+    public MultipolygonParser setNodeLocationsReady(final boolean ready) {
+        this.locationsReady = ready;
+        return this;
+    }
+
+    /**
+     * Sets additional relations tags filter. Only multipolygons and boundaries, matching the filter,
+     * are assembled, for example {@code new TagFilter().key("admin_level")}.
+     *
+     * @param filter Tags filter or null to assemble all multipolygons and boundaries.
+     * @return MultipolygonParser to mimic builder interface.
+     */
+    public MultipolygonParser setTagFilter(final TagFilter filter) {
+        this.tagFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets callback, that will be called for each relation with at least one polygon.
+     * Callback is called from the assembly threads and must be reentrant.
+     *
+     * @param onMultipolygon Callback function.
+     * @return MultipolygonParser to mimic builder interface.
+     */
+    public MultipolygonParser onMultipolygon(final Consumer<MultipolygonGeometry> onMultipolygon) {
+        this.multipolygonCb = onMultipolygon;
+        return this;
+    }
+
+    /**
+     * Sets callback, that will be called, when all relations are assembled.
+     *
+     * @param onComplete Callback function. May be null.
+     * @return MultipolygonParser to mimic builder interface.
+     */
+    public MultipolygonParser onComplete(final Runnable onComplete) {
+        this.completeCb = onComplete;
+        return this;
+    }
+
+    /**
+     * Checks if relation is a multipolygon or a boundary, that matches the tags filter.
+     * @param relation Relation to check.
+     * @return true if relation should be assembled.
+     */
+    private boolean isArea(final Relation relation) {
+        String type = relation.getTags().get("type");
+        if (!"multipolygon".equals(type) && !"boundary".equals(type)) {
+            return false;
+        }
+        return tagFilter == null || tagFilter.matches(relation.getTags());
+    }
+
+    /**
+     * Collects relations to assemble.
+     * @return Relations to assemble.
+     * @throws IOException if file can't be opened or mapped.
+     */
+    private List<Relation> readRelations() throws IOException {
+        Queue<Relation> relations = new ConcurrentLinkedQueue<>();
+        new ParallelBinaryParser(input, threads)
+                .setTagFilter(new TagFilter().keyValues("type", "multipolygon", "boundary"))
+                .onRelation(relation -> {
+                    if (isArea(relation)) {
+                        relations.add(relation);
+                    }
+                })
+                .parse();
+        return new ArrayList<>(relations);
+    }
+
+    /**
+     * Runs all the passes and assembles relations. This function is blocking.
+     * @throws IOException if file can't be opened or mapped.
+     * @throws IllegalStateException if multipolygon callback is not set.
+     * @throws RuntimeException if parsing or assembly fails.
+     */
+    public void parse() throws IOException {
+        if (multipolygonCb == null) {
+            throw new IllegalStateException("Multipolygon callback is not set");
+        }
+        log.debug("Collecting relations of {}", input);
+        List<Relation> relations = readRelations();
+        IdBitSet wayIds = new IdBitSet();
+        long minWay = Long.MAX_VALUE;
+        long maxWay = Long.MIN_VALUE;
+        for (Relation relation : relations) {
+            for (RelationMember member : relation.getMembers()) {
+                if (member.getType() == RelationMember.Type.WAY) {
+                    wayIds.add(member.getId());
+                    minWay = Math.min(minWay, member.getId());
+                    maxWay = Math.max(maxWay, member.getId());
+                }
+            }
+        }
+        log.debug("Collected {} relations with {} member ways", relations.size(), wayIds.size());
+
+        Map<Long, long[]> ways = new ConcurrentHashMap<>();
+        if (wayIds.size() > 0) {
+            new ParallelBinaryParser(input, threads)
+                    .setIdFilter(null, new IdRange(minWay, maxWay), null)
+                    .onWay(way -> {
+                        if (wayIds.contains(way.getId())) {
+                            ways.put(way.getId(), refs(way));
+                        }
+                    })
+                    .parse();
+        }
+        if (!locationsReady && !ways.isEmpty()) {
+            IdBitSet nodeIds = new IdBitSet();
+            ways.values().forEach(refs -> {
+                for (long id : refs) {
+                    nodeIds.add(id);
+                }
+            });
+            log.debug("Storing {} node locations of {}", nodeIds.size(), input);
+            new ParallelBinaryParser(input, threads)
+                    .setNodeLocationStore(new MarkedNodeLocationStore(nodeIds, locations))
+                    .parse();
+        }
+        assemble(relations, ways);
+        if (completeCb != null) {
+            completeCb.run();
+        }
+    }
+
+    /**
+     * Copies way node ids to the array.
+     * @param way The way.
+     * @return Node ids.
+     */
+    private static long[] refs(final Way way) {
+        long[] result = new long[way.getNodes().size()];
+        int indx = 0;
+        for (Long id : way.getNodes()) {
+            result[indx++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Assembles relations in parallel.
+     * @param relations Relations to assemble.
+     * @param ways Node ids of the member ways.
+     * @throws RuntimeException if assembly fails.
+     */
+    private void assemble(final List<Relation> relations, final Map<Long, long[]> ways) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>(relations.size());
+            for (Relation relation : relations) {
+                tasks.add(executor.submit(() -> assemble(relation, ways)));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Assembly was interrupted: {}", e.getMessage(), e);
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            log.error("Assembly failed with: {}", e.getCause().getMessage(), e.getCause());
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Assembles single relation and passes it to the callback.
+     * @param relation Relation to assemble.
+     * @param ways Node ids of the member ways.
+     */
+    private void assemble(final Relation relation, final Map<Long, long[]> ways) {
+        List<long[]> members = new ArrayList<>();
+        for (RelationMember member : relation.getMembers()) {
+            long[] refs = ways.get(member.getId());
+            if (member.getType() == RelationMember.Type.WAY && refs != null) {
+                members.add(refs);
+            }
+        }
+        List<Polygon> polygons = RingAssembler.assemble(members, locations);
+        if (polygons.isEmpty()) {
+            log.debug("Relation {} has no closed rings", relation.getId());
+            return;
+        }
+        multipolygonCb.accept(new MultipolygonGeometry(relation, polygons));
+    }
+}
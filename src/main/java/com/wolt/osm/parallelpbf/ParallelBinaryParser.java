@@ -17,31 +17,48 @@
 
 package com.wolt.osm.parallelpbf;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 
 import com.wolt.osm.parallelpbf.blob.BlobInformation;
 import com.wolt.osm.parallelpbf.blob.BlobReader;
+import com.wolt.osm.parallelpbf.blob.BlobSource;
+import com.wolt.osm.parallelpbf.blob.BufferArena;
+import com.wolt.osm.parallelpbf.blob.MappedBlobReader;
+import com.wolt.osm.parallelpbf.blob.SeekableBlobSource;
+import com.wolt.osm.parallelpbf.cursor.NodeCursor;
+import com.wolt.osm.parallelpbf.cursor.RelationCursor;
+import com.wolt.osm.parallelpbf.cursor.WayCursor;
 import com.wolt.osm.parallelpbf.entity.BoundBox;
 import com.wolt.osm.parallelpbf.entity.Header;
 import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
 import com.wolt.osm.parallelpbf.entity.Relation;
 import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
+import com.wolt.osm.parallelpbf.index.BlobIndex;
+import com.wolt.osm.parallelpbf.index.BlockSummary;
+import com.wolt.osm.parallelpbf.index.IdRange;
+import com.wolt.osm.parallelpbf.index.IndexedBlobReader;
+import com.wolt.osm.parallelpbf.io.BlobScheduler;
 import com.wolt.osm.parallelpbf.io.OSMDataReader;
 import com.wolt.osm.parallelpbf.io.OSMHeaderReader;
 import com.wolt.osm.parallelpbf.io.OSMReader;
+import com.wolt.osm.parallelpbf.io.ReorderBuffer;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import com.wolt.osm.parallelpbf.parser.DenseNodeColumns;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.var;
 
@@ -52,6 +69,33 @@ import lombok.var;
  */
 @Slf4j
 public final class ParallelBinaryParser {
+    /**
+     * Default memory budget per thread, enough to keep a maximum size blob and it's uncompressed data.
+     */
+    private static final long MEMORY_PER_THREAD = 64L * 1024 * 1024;
+
+    /**
+     * Default number of blobs, read ahead per thread.
+     */
+    private static final int READ_AHEAD_PER_THREAD = 2;
+
+    /**
+     * Ways to divide input between partitions.
+     */
+    public enum Sharding {
+        /**
+         * OSMData blocks are assigned to the partitions one by one in round robin manner.
+         * Each parser reads whole input, skipping blocks of other partitions.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Each partition gets contiguous part of the file of roughly equal size in bytes.
+         * Parser only reads OSMHeader block and blocks, starting within its part of the file,
+         * the rest of the file is not read at all. Requires file input.
+         */
+        BYTE_RANGE
+    }
 
     /**
      * Changeset processing callback. Must be reentrant.
@@ -73,6 +117,41 @@ public final class ParallelBinaryParser {
      */
     private Consumer<Way> waysCb;
 
+    /**
+     * Nodes batch processing callback. Must be reentrant.
+     */
+    private Consumer<List<Node>> nodeBatchCb;
+
+    /**
+     * Ways batch processing callback. Must be reentrant.
+     */
+    private Consumer<List<Way>> wayBatchCb;
+
+    /**
+     * Relations batch processing callback. Must be reentrant.
+     */
+    private Consumer<List<Relation>> relationBatchCb;
+
+    /**
+     * Dense nodes columnar processing callback. Must be reentrant.
+     */
+    private Consumer<DenseNodeColumns> denseNodesCb;
+
+    /**
+     * Node cursor processing callback. Must be reentrant.
+     */
+    private Consumer<NodeCursor> nodeCursorCb;
+
+    /**
+     * Way cursor processing callback. Must be reentrant.
+     */
+    private Consumer<WayCursor> wayCursorCb;
+
+    /**
+     * Relation cursor processing callback. Must be reentrant.
+     */
+    private Consumer<RelationCursor> relationCursorCb;
+
     /**
      * Header processing callback. Must be reentrant.
      */
@@ -108,35 +187,114 @@ public final class ParallelBinaryParser {
      */
     private final int shard;
 
+    /**
+     * Partitioning mode.
+     */
+    private Sharding sharding = Sharding.ROUND_ROBIN;
+
+    /**
+     * Start of this parser's part of the file in byte range partitioning mode.
+     */
+    private long shardStart;
+
+    /**
+     * End of this parser's part of the file in byte range partitioning mode.
+     */
+    private long shardEnd;
+
+    /**
+     * Maximum total memory, used by blobs in flight. See {@link #setMemoryBudget(long)}.
+     */
+    private long memoryBudget;
+
+    /**
+     * Maximum number of blobs in flight. See {@link #setReadAhead(int)}.
+     */
+    private int readAhead;
+
     /**
      * A submitted task limiter. While executor can limit number of running tasks to the number of running threads,
      * we do not want to submit too many tasks, as each task consumes some RAM for the blob data and OSM PBF can be
      * tens of gigabytes, so clearly will not fit to the RAM.
      *
-     * To achieve that we set the limit of the task limiter semaphore to the number of thread and each submitted task
-     * increases semaphore value. At the same time, on completion each task decreases semaphore value. As submission
-     * is a synchronous process and executed in the same thread, that reads blobs from the stream,
-     * it will automatically block stream until there will be place in the threads pool.
+     * To achieve that each task is admitted to the scheduler with the estimated memory usage of its blob
+     * and releases it on completion. As submission is a synchronous process and executed in the same thread,
+     * that reads blobs from the stream, it will automatically block stream until there will be enough
+     * memory budget and read ahead slots. Scheduler also captures first task failure.
+     *
+     * Scheduler is created for each parse() call and is null, when parsing is not running.
+     */
+    private BlobScheduler tasksLimiter;
+
+    /**
+     * Ordered delivery mode flag. See {@link #setOrdered(boolean)}.
+     */
+    private boolean ordered = false;
+
+    /**
+     * Reorder buffer of the ordered delivery mode. Created for each parse() call, when ordered mode is enabled.
+     */
+    private ReorderBuffer reorderBuffer;
+
+    /**
+     * Lazy tags decoding flag. See {@link #setLazyTags(boolean)}.
+     */
+    private boolean lazyTags = false;
+
+    /**
+     * Entities tags filter. See {@link #setTagFilter(TagFilter)}.
      */
-    private final Semaphore tasksLimiter;
+    private TagFilter tagFilter;
+
     /**
-     * Blob reade helper, wrapping incoming stream with OSM PBF data.
+     * Nodes ids filter. See {@link #setIdFilter(IdRange, IdRange, IdRange)}.
      */
-    private final BlobReader reader;
+    private IdRange nodeIds;
+
+    /**
+     * Ways ids filter. See {@link #setIdFilter(IdRange, IdRange, IdRange)}.
+     */
+    private IdRange wayIds;
+
+    /**
+     * Relations ids filter. See {@link #setIdFilter(IdRange, IdRange, IdRange)}.
+     */
+    private IdRange relationIds;
+
+    /**
+     * Nodes bounding box filter. See {@link #setBoundBox(BoundBox)}.
+     */
+    private BoundBox boundBoxFilter;
+
+    /**
+     * Node locations store. See {@link #setNodeLocationStore(NodeLocationStore)}.
+     */
+    private NodeLocationStore nodeLocations;
+
+    /**
+     * Streaming decoder flag. See {@link #setStreamingDecoder(boolean)}.
+     */
+    private boolean streamingDecoder = true;
+
+    /**
+     * Blob buffers arena. See {@link #setBufferArena(BufferArena)}.
+     */
+    private BufferArena arena;
+    /**
+     * Blob reade helper, wrapping incoming stream or file with OSM PBF data.
+     */
+    private final BlobSource reader;
+
+    /**
+     * Same reader as above, when parser is working on the file. Null otherwise.
+     */
+    private final SeekableBlobSource fileReader;
 
     /**
      * Executor shared between class methods.
      * It's lifecycle is managed by parse() method.
      */
     private ExecutorService executor;
-    /**
-     * Number of currently running tasks. Each tasks is added to that list
-     * after submission and list is cleared of complete tasks during submission of the following tasks.
-     *
-     * Where there will be no tasks left to submit, every remaining task will be awaited to complete.
-     * After that executor (see above) will be destroyed and onComplete callback will be called.
-     */
-    private final List<Future<?>> tasksInFlight = new LinkedList<>();
 
     /**
      * Data block counter for partitioning, starts with zero, so first data block (which is OsmHeader block)
@@ -154,16 +312,52 @@ public final class ParallelBinaryParser {
      * @param information Information describing OSMData blob above.
      * @return OSMReader instance, that knows how to work with that blob or empty if blob data is not supported.
      */
-    private Optional<OSMReader> makeReaderForBlob(final byte[] blob, final BlobInformation information) {
+    private Optional<OSMReader> makeReaderForBlob(final ByteBuffer blob, final BlobInformation information) {
         switch (information.getType()) {
             case BlobInformation.TYPE_OSM_DATA:
                 if (!headerSeen) {
                     log.error("Got OSMData before OSMHeader");
                     return Optional.empty();
                 }
-                return Optional.of(new OSMDataReader(blob, tasksLimiter, nodesCb, waysCb, relationsCb, changesetsCb));
+                Consumer<Node> nodes = filterIds(nodesCb, nodeIds);
+                Consumer<Way> ways = filterIds(waysCb, wayIds);
+                Consumer<Relation> relations = filterIds(relationsCb, relationIds);
+                Consumer<List<Node>> nodeBatches = filterBatchIds(nodeBatchCb, nodeIds);
+                Consumer<List<Way>> wayBatches = filterBatchIds(wayBatchCb, wayIds);
+                Consumer<List<Relation>> relationBatches = filterBatchIds(relationBatchCb, relationIds);
+                if (reorderBuffer != null) {
+                    var block = reorderBuffer.open();
+                    return Optional.of(new OSMDataReader(blob, block, block.wrap(nodes), block.wrap(ways),
+                            block.wrap(relations), block.wrap(changesetsCb))
+                            .onNodeBatch(block.wrap(nodeBatches))
+                            .onWayBatch(block.wrap(wayBatches))
+                            .onRelationBatch(block.wrap(relationBatches))
+                            .setLazyTags(lazyTags)
+                            .setTagFilter(tagFilter)
+                            .setBoundBox(boundBoxFilter)
+                            .setNodeLocationStore(nodeLocations)
+                            .setStreamingDecoder(streamingDecoder)
+                            .onDenseNodes(block.wrap(denseNodesCb), false)
+                            .onCursors(block.wrap(nodeCursorCb), block.wrap(wayCursorCb),
+                                    block.wrap(relationCursorCb), false));
+                }
+                return Optional.of(new OSMDataReader(blob, tasksLimiter, nodes, ways, relations, changesetsCb)
+                        .onNodeBatch(nodeBatches)
+                        .onWayBatch(wayBatches)
+                        .onRelationBatch(relationBatches)
+                        .setLazyTags(lazyTags)
+                        .setTagFilter(tagFilter)
+                        .setBoundBox(boundBoxFilter)
+                        .setNodeLocationStore(nodeLocations)
+                        .setStreamingDecoder(streamingDecoder)
+                        .onDenseNodes(denseNodesCb, true)
+                        .onCursors(nodeCursorCb, wayCursorCb, relationCursorCb, true));
             case BlobInformation.TYPE_OSM_HEADER:
                 headerSeen = true;
+                if (reorderBuffer != null) {
+                    var block = reorderBuffer.open();
+                    return Optional.of(new OSMHeaderReader(blob, block, block.wrap(headerCb), block.wrap(boundBoxCb)));
+                }
                 return Optional.of(new OSMHeaderReader(blob, tasksLimiter, headerCb, boundBoxCb));
             default:
                 return Optional.empty();
@@ -171,56 +365,235 @@ public final class ParallelBinaryParser {
     }
 
     /**
-     * Executes osm reader asynchronously. This method submits
-     * supplied reader to the executor and increases throttle count.
+     * Wraps entity callback with the ids filter.
+     * @param callback Callback to wrap, may be null.
+     * @param ids Allowed ids or null to accept all the entities.
+     * @param <T> Entity type.
+     * @return Callback, that passes only entities with allowed ids.
+     */
+    private static <T extends OsmEntity> Consumer<T> filterIds(final Consumer<T> callback, final IdRange ids) {
+        if (callback == null || ids == null) {
+            return callback;
+        }
+        return entity -> {
+            if (ids.contains(entity.getId())) {
+                callback.accept(entity);
+            }
+        };
+    }
+
+    /**
+     * Wraps batch callback with the ids filter. Empty batches are not passed to the callback.
+     * @param callback Callback to wrap, may be null.
+     * @param ids Allowed ids or null to accept all the entities.
+     * @param <T> Entity type.
+     * @return Callback, that passes only entities with allowed ids.
+     */
+    private static <T extends OsmEntity> Consumer<List<T>> filterBatchIds(final Consumer<List<T>> callback,
+                                                                           final IdRange ids) {
+        if (callback == null || ids == null) {
+            return callback;
+        }
+        return batch -> {
+            List<T> result = new ArrayList<>(batch.size());
+            for (T entity : batch) {
+                if (ids.contains(entity.getId())) {
+                    result.add(entity);
+                }
+            }
+            if (!result.isEmpty()) {
+                callback.accept(result);
+            }
+        };
+    }
+
+    /**
+     * Checks if the block may have anything to pass to the callbacks, using
+     * the block summary from the BlobHeader indexdata field.
+     * @param information Blob information.
+     * @return false if block definitely has nothing for the callbacks,
+     * true if it may have or if there is no summary.
+     */
+    private boolean mayMatch(final BlobInformation information) {
+        if (changesetsCb != null || !BlobInformation.TYPE_OSM_DATA.equals(information.getType())) {
+            return true;
+        }
+        Optional<BlockSummary> parsed = BlockSummary.parse(information.getIndexData());
+        if (!parsed.isPresent()) {
+            return true;
+        }
+        BlockSummary summary = parsed.get();
+        boolean tags = tagFilter == null || tagFilter.mayMatch(summary::mayContainKey);
+        boolean area = boundBoxFilter == null || summary.intersects(boundBoxFilter);
+        boolean nodes = mayMatch(summary.getNodes(), nodeIds, denseNodesCb != null || nodeLocations != null,
+                tags && nodeCursorCb != null, tags && area && (nodesCb != null || nodeBatchCb != null));
+        boolean ways = mayMatch(summary.getWays(), wayIds, false,
+                tags && wayCursorCb != null, tags && (waysCb != null || wayBatchCb != null));
+        boolean relations = mayMatch(summary.getRelations(), relationIds, false,
+                tags && relationCursorCb != null, tags && (relationsCb != null || relationBatchCb != null));
+        return nodes || ways || relations;
+    }
+
+    /**
+     * Checks if the block may have entities of some type for the callbacks.
+     * @param present Ids range of the block entities or null if block has no entities of that type.
+     * @param requested Ids filter or null if ids are not filtered.
+     * @param unfiltered Flag, telling that there is a callback, that receives all the entities.
+     * @param tagsOnly Flag, telling that there is a callback, that receives entities, matching tags filter.
+     * @param filtered Flag, telling that there is a callback, that receives entities, matching ids filter.
+     * @return true if block may have entities for the callbacks.
+     */
+    private static boolean mayMatch(final IdRange present, final IdRange requested, final boolean unfiltered,
+                                    final boolean tagsOnly, final boolean filtered) {
+        if (present == null) {
+            return false;
+        }
+        if (unfiltered || tagsOnly) {
+            return true;
+        }
+        return filtered && (requested == null || requested.intersects(present));
+    }
+
+    /**
+     * Executes osm reader asynchronously. This method waits for the scheduler
+     * to admit the reader and submits it to the executor. Reader, that is not submitted,
+     * is cancelled, so its blob buffer and reorder block are released.
      *
      * @param osmReader Reader to execute.
-     * @return Future pointing to running reader or empty in case of error.
+     * @return Submitted reader or empty in case of error.
      */
-    private Optional<? extends Future<?>> runReaderAsync(final OSMReader osmReader) {
+    private Optional<OSMReader> runReaderAsync(final OSMReader osmReader) {
         try {
-            tasksLimiter.acquire();
+            if (!tasksLimiter.admit(osmReader.getWeight())) {
+                osmReader.cancel();
+                return Optional.empty();
+            }
         } catch (InterruptedException e) {
             log.error("Failed to acquire processing slot: {}", e.getMessage(), e);
+            osmReader.cancel();
             return Optional.empty();
         }
         try {
-            return Optional.of(executor.submit(osmReader));
+            executor.execute(new ReaderTask(osmReader));
+            return Optional.of(osmReader);
         } catch (RejectedExecutionException e) {
-            tasksLimiter.release();
+            osmReader.cancel();
+            tasksLimiter.release(osmReader.getWeight(), e);
             log.error("Failed to start processing of blob: {}", e.getMessage(), e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Runs the reader in the worker thread. Reader reports failures to the scheduler,
+     * so exception is not propagated to the executor.
+     */
+    @RequiredArgsConstructor
+    private static final class ReaderTask implements Runnable {
+        /**
+         * Reader to execute.
+         */
+        private final OSMReader osmReader;
+
+        @Override
+        public void run() {
+            try {
+                osmReader.run();
+            } catch (RuntimeException e) {
+                log.debug("Blob processing failed: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Releases reader resources, when task is dropped without running.
+         */
+        void cancel() {
+            osmReader.cancel();
+        }
+    }
+
+    /**
+     * Checks if there is any callback for the OSMData blocks.
+     * @return true if at least one data callback is set.
+     */
+    private boolean hasDataCallbacks() {
+        return nodesCb != null || waysCb != null || relationsCb != null || changesetsCb != null
+                || nodeBatchCb != null || wayBatchCb != null || relationBatchCb != null || denseNodesCb != null
+                || nodeCursorCb != null || wayCursorCb != null || relationCursorCb != null || nodeLocations != null;
+    }
+
+    /**
+     * Makes reader for the blob, that returns blob buffer to the source after decompression.
+     * Blob buffer is returned immediately, if blob is not supported.
+     * @param blob Blob data.
+     * @param information Information describing blob above.
+     * @return OSMReader instance or empty if blob data is not supported.
+     */
+    private Optional<OSMReader> prepareReader(final ByteBuffer blob, final BlobInformation information) {
+        Optional<OSMReader> result = makeReaderForBlob(blob, information);
+        if (result.isPresent()) {
+            result.get().useRecycler(reader::release);
+        } else {
+            reader.release(blob);
+        }
+        return result;
+    }
+
     /**
      * Processes blob with osm data asynchronously.
      *
      * @param information Blob's size and type,
-     * @return Processing results in form of Optional Future. Empty Optional
-     * means, that processing hasn't started, while Future can be
-     * awaited till end of the blob processing.
+     * @return Processed blob information. Empty Optional
+     * means, that processing hasn't started and reading should stop.
      */
-    private Optional<? extends Future<?>> processDataBlob(final BlobInformation information) {
+    private Optional<BlobInformation> processDataBlob(final BlobInformation information) {
         //Check, that we have listeners for the data blocks and stop processing, if no
-        if (nodesCb != null || waysCb != null || relationsCb != null || changesetsCb != null || !headerSeen) {
+        if (hasDataCallbacks() || !headerSeen) {
 
             int currentShard = currentDataBlock % partitions;
             log.trace("Current shard: {}, current block: {}, my shard: {}", currentShard, currentDataBlock, shard);
             ++currentDataBlock;
-            if (currentShard == shard || information.getType().equals("OSMHeader")) {
-                return reader.readBlob(information.getSize())
-                        .flatMap(value -> makeReaderForBlob(value, information))
-                        .flatMap(this::runReaderAsync);
+            boolean mine = sharding == Sharding.BYTE_RANGE || currentShard == shard
+                    || information.getType().equals(BlobInformation.TYPE_OSM_HEADER);
+            if (mine && headerSeen && !mayMatch(information)) {
+                log.trace("Skipping block, that can't match by its summary");
+                mine = false;
+            }
+            if (mine) {
+                return reader.readBlobData(information.getSize())
+                        .flatMap(value -> prepareReader(value, information))
+                        .flatMap(this::runReaderAsync)
+                        .map(submitted -> information);
             } else {
                 var skipped = reader.skip(information.getSize());
-                return skipped.map(CompletableFuture::completedFuture);
+                return skipped.map(size -> information);
             }
         } else {
             return Optional.empty();
         }
     }
 
+    /**
+     * Reads next block from the input and processes it.
+     *
+     * In byte range partitioning mode, once OSMHeader is read, input is moved to the
+     * first block of this parser's part of the file and reading stops at the end of the part.
+     *
+     * @return Processed blob information. Empty Optional
+     * means, that there is nothing more to process.
+     */
+    private Optional<BlobInformation> processNextBlob() {
+        if (sharding == Sharding.BYTE_RANGE && headerSeen) {
+            if (fileReader.getPosition() < shardStart) {
+                fileReader.seek(fileReader.nextBlockOffset(shardStart));
+            }
+            if (fileReader.getPosition() >= shardEnd) {
+                return Optional.empty();
+            }
+        }
+        return reader.readBlobHeaderLength().flatMap(reader::readBlobHeader).flatMap(this::processDataBlob);
+    }
+
     /**
      * Sets OSM PBF file to parse and number of threads to use.
      * @param input Any inputstream pointing to the beginning of the OSM PBF data.
@@ -230,12 +603,7 @@ public final class ParallelBinaryParser {
      *                  several hundreds of megabytes.
      */
     public ParallelBinaryParser(final InputStream input, final int noThreads) {
-        reader = new BlobReader(input);
-        threads = noThreads;
-        tasksLimiter = new Semaphore(noThreads);
-        partitions = 1;
-        shard = 0;
-
+        this(input, noThreads, 1, 0);
     }
 
     /**
@@ -250,13 +618,283 @@ public final class ParallelBinaryParser {
      */
     public ParallelBinaryParser(final InputStream input, final int noThreads,
                                 final int noPartitions, final int myShard) {
-        reader = new BlobReader(input);
+        this(new BlobReader(input), null, noThreads, noPartitions, myShard);
+    }
+
+    /**
+     * Sets OSM PBF file to parse and number of threads to use.
+     *
+     * File will be memory mapped and blobs will be read by the processing threads directly
+     * from the mapped memory, so reading is not limited by a single thread.
+     * @param input Path to the OSM PBF file.
+     * @param noThreads Number of threads to use. The best results can be achieved when this value
+     *                  is set to number of available CPU cores or twice the number of available CPU cores.
+     * @throws IOException if file can't be opened or mapped.
+     */
+    public ParallelBinaryParser(final Path input, final int noThreads) throws IOException {
+        this(input, noThreads, 1, 0);
+    }
+
+    /**
+     * Sets OSM PBF file to parse and number of threads to use.
+     *
+     * File will be memory mapped and blobs will be read by the processing threads directly
+     * from the mapped memory, so reading is not limited by a single thread.
+     *
+     * If there is an up to date index of the file stored next to it (see {@link BlobIndex#sidecarFor(Path)}),
+     * blocks locations will be taken from the index and file will not be scanned.
+     * @param input Path to the OSM PBF file.
+     * @param noThreads Number of threads to use. The best results can be achieved when this value
+     *                  is set to number of available CPU cores or twice the number of available CPU cores.
+     * @param noPartitions Specifies how many partitions should be in the input file.
+     * @param myShard Specifies id of partition, associated with this instance of the parser.
+     * @throws IOException if file can't be opened or mapped.
+     */
+    public ParallelBinaryParser(final Path input, final int noThreads,
+                                final int noPartitions, final int myShard) throws IOException {
+        this(openFile(input), noThreads, noPartitions, myShard);
+    }
+
+    /**
+     * Sets OSM PBF file to parse and number of threads to use.
+     *
+     * File will be memory mapped and blobs will be read by the processing threads directly
+     * from the mapped memory, so reading is not limited by a single thread. Channel is
+     * not used after construction and may be closed by the caller.
+     * @param input Channel of the OSM PBF file.
+     * @param noThreads Number of threads to use. The best results can be achieved when this value
+     *                  is set to number of available CPU cores or twice the number of available CPU cores.
+     * @param noPartitions Specifies how many partitions should be in the input file.
+     * @param myShard Specifies id of partition, associated with this instance of the parser.
+     * @throws IOException if file can't be mapped.
+     */
+    public ParallelBinaryParser(final FileChannel input, final int noThreads,
+                                final int noPartitions, final int myShard) throws IOException {
+        this(new MappedBlobReader(input), noThreads, noPartitions, myShard);
+    }
+
+    /**
+     * Maps the file to the memory and loads it's index, if present.
+     * @param input Path to the OSM PBF file.
+     * @return Reader of the file.
+     * @throws IOException if file can't be opened or mapped.
+     */
+    private static SeekableBlobSource openFile(final Path input) throws IOException {
+        MappedBlobReader mapped = MappedBlobReader.open(input);
+        Optional<BlobIndex> index = BlobIndex.load(BlobIndex.sidecarFor(input), input);
+        if (index.isPresent()) {
+            log.debug("Using index of {}", input);
+            return new IndexedBlobReader(mapped, index.get());
+        }
+        return mapped;
+    }
+
+    /**
+     * Configures parser over the file.
+     * @param input File reader.
+     * @param noThreads Number of threads to use.
+     * @param noPartitions Specifies how many partitions should be in the input file.
+     * @param myShard Specifies id of partition, associated with this instance of the parser.
+     */
+    private ParallelBinaryParser(final SeekableBlobSource input, final int noThreads,
+                                 final int noPartitions, final int myShard) {
+        this(input, input, noThreads, noPartitions, myShard);
+    }
+
+    /**
+     * Common constructor.
+     * @param input Blob source.
+     * @param file Same blob source, if it is a file, null otherwise.
+     * @param noThreads Number of threads to use.
+     * @param noPartitions Specifies how many partitions should be in the input.
+     * @param myShard Specifies id of partition, associated with this instance of the parser.
+     */
+    private ParallelBinaryParser(final BlobSource input, final SeekableBlobSource file, final int noThreads,
+                                 final int noPartitions, final int myShard) {
+        reader = input;
+        fileReader = file;
         threads = noThreads;
-        tasksLimiter = new Semaphore(noThreads);
+        memoryBudget = MEMORY_PER_THREAD * noThreads;
+        readAhead = READ_AHEAD_PER_THREAD * noThreads;
         partitions = noPartitions;
         shard = myShard;
     }
 
+    /**
+     * Sets partitioning mode. Only makes sense, when number of partitions is set.
+     *
+     * @param mode Partitioning mode, round robin by default.
+     * @return ParallelBinaryParser to mimic builder interface.
+     * @throws IllegalArgumentException if byte range partitioning is requested for the InputStream.
+     */
+    public ParallelBinaryParser setSharding(final Sharding mode) {
+        if (mode == Sharding.BYTE_RANGE && fileReader == null) {
+            throw new IllegalArgumentException("Byte range partitioning requires file input");
+        }
+        this.sharding = mode;
+        return this;
+    }
+
+    /**
+     * Sets maximum amount of memory, that can be used by blobs, that are read, but not processed yet.
+     * Each blob is accounted with its compressed size plus its uncompressed size, reported by the blob.
+     * Decoded entities are not accounted. Single blob, bigger than the budget,
+     * is still processed, but alone.
+     *
+     * @param bytes Memory budget in bytes. Default is 64MB per thread.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setMemoryBudget(final long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.memoryBudget = bytes;
+        return this;
+    }
+
+    /**
+     * Sets arena for the buffers of blobs, read from the InputStream. Arena recycles buffers between blobs
+     * and blocks reading, when its capacity is reached, so several parsers sharing the same arena never use
+     * more than its capacity for the blob buffers. Memory mapped files are read without buffers
+     * and ignore the arena.
+     *
+     * @param buffers Blob buffers arena. By default each parse() call uses its own heap buffers arena,
+     *                limited by the memory budget.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setBufferArena(final BufferArena buffers) {
+        this.arena = buffers;
+        return this;
+    }
+
+    /**
+     * Sets maximum number of blobs, that are read, but not processed yet, independently of the
+     * number of threads. Larger values help to keep threads busy, when blobs processing time varies,
+     * while memory budget still limits memory usage.
+     *
+     * @param blobs Maximum number of blobs in flight. Default is twice the number of threads.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setReadAhead(final int blobs) {
+        if (blobs <= 0) {
+            throw new IllegalArgumentException("Read ahead depth must be positive");
+        }
+        this.readAhead = blobs;
+        return this;
+    }
+
+    /**
+     * Enables ordered delivery mode. In that mode blobs are still decompressed and decoded in parallel, but
+     * callbacks are called in the order of blobs in the input and never called simultaneously. So entities
+     * are delivered in the file order, for example sorted by type and id for the
+     * files with Sort.Type_then_ID feature.
+     *
+     * Decoded entities are kept in memory, until all the previous blobs are delivered, so
+     * number of waiting blobs is limited by the read ahead depth and memory budget.
+     *
+     * @param orderedValue true to enable ordered delivery, false by default.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setOrdered(final boolean orderedValue) {
+        this.ordered = orderedValue;
+        return this;
+    }
+
+    /**
+     * Enables lazy tags decoding. With lazy decoding, tags of the nodes, ways and relations are not decoded into
+     * a HashMap. Instead, entities get a view over the block's string table, that decodes
+     * strings only when they are read and looks keys up by comparing raw bytes. Tags map is switched to
+     * a regular HashMap on the first modification. Useful, when only a few keys of each entity are checked.
+     *
+     * @param lazy true to decode tags lazily, false by default.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setLazyTags(final boolean lazy) {
+        this.lazyTags = lazy;
+        return this;
+    }
+
+    /**
+     * Sets tags filter. Only nodes, ways and relations, that have at least one tag, matching the filter,
+     * are passed to the per entity, batch and cursor callbacks. Filter is resolved against each block's string
+     * table, so entities are rejected by comparing string indices before any objects are created
+     * and blocks, that can't have matching entities, are skipped after reading their string table
+     * or, when block summary is present in the BlobHeader, without reading the block at all.
+     * Dense nodes columns and changesets are not filtered.
+     *
+     * @param filter Tags filter or null to disable filtering.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setTagFilter(final TagFilter filter) {
+        this.tagFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets ids filter. Only nodes, ways and relations with ids within the specified ranges
+     * are passed to the per entity and batch callbacks. Dense nodes columns, cursors and changesets
+     * are not filtered.
+     *
+     * Files, written by {@link ParallelBinaryWriter}, carry block summaries, so blocks, that
+     * can't have matching entities, are skipped without reading or inflating them.
+     *
+     * @param nodes Allowed nodes ids or null to accept all the nodes.
+     * @param ways Allowed ways ids or null to accept all the ways.
+     * @param relations Allowed relations ids or null to accept all the relations.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setIdFilter(final IdRange nodes, final IdRange ways, final IdRange relations) {
+        this.nodeIds = nodes;
+        this.wayIds = ways;
+        this.relationIds = relations;
+        return this;
+    }
+
+    /**
+     * Sets nodes bounding box filter. Only nodes within the box, borders included, are passed
+     * to the per entity and batch callbacks. The box is converted once per block to the block's
+     * coordinates grid, so nodes out of the box are rejected during delta decoding,
+     * before any objects or strings are created. Ways, relations, dense nodes columns and cursors
+     * are not filtered.
+     *
+     * Blocks, which summary shows that all their nodes are out of the box, are skipped without reading,
+     * unless some other callback needs them.
+     *
+     * @param box Bounding box or null to disable filtering.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setBoundBox(final BoundBox box) {
+        this.boundBoxFilter = box;
+        return this;
+    }
+
+    /**
+     * Sets node locations store. Locations of all the nodes are stored, regardless of the
+     * tags, ids and bounding box filters. Only ids and coordinates of the nodes are decoded for the store,
+     * tags and info are skipped. Store is completed after the successful parse, before the
+     * completion callback is called, so it is ready for lookups from that callback.
+     *
+     * @param store Node locations store or null to not store locations.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setNodeLocationStore(final NodeLocationStore store) {
+        this.nodeLocations = store;
+        return this;
+    }
+
+    /**
+     * Selects how data blocks are decoded. By default nodes, ways, relations and changesets are read
+     * directly from the inflated blob by the streaming decoder, without building generated
+     * protobuf messages. Dense nodes columns and cursor callbacks always use generated messages.
+     *
+     * @param streaming false to decode all blocks with generated protobuf messages, true by default.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser setStreamingDecoder(final boolean streaming) {
+        this.streamingDecoder = streaming;
+        return this;
+    }
+
     /**
      * Sets changeset callback, that will be called for each successfully parsed Changeset.
      *
@@ -301,6 +939,95 @@ public final class ParallelBinaryParser {
         return this;
     }
 
+    /**
+     * Sets node batch callback, that will be called once for each primitive group with all nodes of that group.
+     * May be combined with per node callback, in that case per node callback is called first.
+     *
+     * @param onNodeBatch Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onNodeBatch(final Consumer<List<Node>> onNodeBatch) {
+        this.nodeBatchCb = onNodeBatch;
+        return this;
+    }
+
+    /**
+     * Sets way batch callback, that will be called once for each primitive group with all ways of that group.
+     * May be combined with per way callback, in that case per way callback is called first.
+     *
+     * @param onWayBatch Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onWayBatch(final Consumer<List<Way>> onWayBatch) {
+        this.wayBatchCb = onWayBatch;
+        return this;
+    }
+
+    /**
+     * Sets relation batch callback, that will be called once for each primitive group with all relations
+     * of that group. May be combined with per relation callback, in that case per relation callback is called first.
+     *
+     * @param onRelationBatch Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onRelationBatch(final Consumer<List<Relation>> onRelationBatch) {
+        this.relationBatchCb = onRelationBatch;
+        return this;
+    }
+
+    /**
+     * Sets dense nodes columnar callback, that will be called once for each primitive group with dense nodes.
+     * Nodes are passed as primitive arrays of ids and coordinates together with string table indices of their tags,
+     * so no objects are created per node. Columns are reused by the processing thread for the following blocks
+     * and must not be kept after callback returns. Plain (non dense) nodes are not passed to that callback.
+     *
+     * @param onDenseNodes Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onDenseNodes(final Consumer<DenseNodeColumns> onDenseNodes) {
+        this.denseNodesCb = onDenseNodes;
+        return this;
+    }
+
+    /**
+     * Sets node cursor callback, that will be called for each node with a cursor, positioned at that node.
+     * Cursor is reused for all the nodes, processed by the thread, so no objects are created per node.
+     * Cursor must not be kept after callback returns, use {@link NodeCursor#materialize()} or
+     * {@link NodeCursor#copy()} to keep the node.
+     *
+     * @param onNodeCursor Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onNodeCursor(final Consumer<NodeCursor> onNodeCursor) {
+        this.nodeCursorCb = onNodeCursor;
+        return this;
+    }
+
+    /**
+     * Sets way cursor callback, that will be called for each way with a cursor, positioned at that way.
+     * Cursor is reused for all the ways, processed by the thread, so it must not be kept after callback returns.
+     *
+     * @param onWayCursor Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onWayCursor(final Consumer<WayCursor> onWayCursor) {
+        this.wayCursorCb = onWayCursor;
+        return this;
+    }
+
+    /**
+     * Sets relation cursor callback, that will be called for each relation with a cursor, positioned at that
+     * relation. Cursor is reused for all the relations, processed by the thread, so it must not be kept after
+     * callback returns.
+     *
+     * @param onRelationCursor Callback function. May be null.
+     * @return ParallelBinaryParser to mimic builder interface.
+     */
+    public ParallelBinaryParser onRelationCursor(final Consumer<RelationCursor> onRelationCursor) {
+        this.relationCursorCb = onRelationCursor;
+        return this;
+    }
+
     /**
      * Sets header callback, that will be called on successful parse of the Header message.
      *
@@ -352,47 +1079,66 @@ public final class ParallelBinaryParser {
      * There is no non-blocking version of that method, but you can safely run it in a separate runnable
      * for that purpose.
      *
+     * Parser, created over the file, may be used to parse file several times. Parser, created over
+     * the InputStream continues reading from the current stream position.
+     *
      * @throws RuntimeException on processing error.
      */
     public void parse() {
-        if (!tasksInFlight.isEmpty()) {
+        if (tasksLimiter != null) {
             throw new IllegalStateException("Previous parse call is still in progress");
         }
 
-        executor = Executors.newFixedThreadPool(threads);
+        if (fileReader != null) {
+            fileReader.seek(0);
+            shardStart = fileReader.getSize() * shard / partitions;
+            shardEnd = fileReader.getSize() * (shard + 1) / partitions;
+        }
+        if (arena != null) {
+            reader.useArena(arena);
+        } else {
+            reader.useArena(new BufferArena(memoryBudget, false));
+        }
+        tasksLimiter = new BlobScheduler(memoryBudget, readAhead);
+        if (ordered) {
+            reorderBuffer = new ReorderBuffer(tasksLimiter);
+        }
+        executor = Executors.newFixedThreadPool(threads, OSMReader.threadFactory());
         currentDataBlock = 0;
         headerSeen = false;
 
+        Optional<Throwable> failure = Optional.empty();
         try {
-            Optional<? extends Future<?>> blob;
+            Optional<BlobInformation> blob;
             do {
-                blob = reader.readBlobHeaderLength().flatMap(reader::readBlobHeader).flatMap(this::processDataBlob);
-                blob.ifPresent(tasksInFlight::add);
-
-                //We should remove completed tasks from time to time to not to increase our memory consumption
-                Iterator<Future<?>> it = tasksInFlight.iterator();
-                while (it.hasNext()) {
-                    Future<?> f = it.next();
-                    if (isDoneSuccessfully(f)) {
-                        it.remove(); // O(1) for LinkedList
-                    }
-                }
-            } while (blob.isPresent());
+                blob = processNextBlob();
+            } while (blob.isPresent() && tasksLimiter.isHealthy());
 
             //Wait for tasks completion
-            for (Future<?> future : tasksInFlight) {
-                future.get();
-            }
+            failure = tasksLimiter.awaitIdle();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-        } catch (ExecutionException e) {
-            log.error("Parsing failed with: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
         } finally {
-            //In case of exception we would like to kill all the tasks immediately
-            tasksInFlight.stream().filter(t -> !t.isDone()).forEach(t -> t.cancel(true));
-            executor.shutdown();
-            tasksInFlight.clear();
+            if (failure.isPresent()) {
+                //In case of failure we would like to kill all the tasks immediately
+                for (Runnable task : executor.shutdownNow()) {
+                    if (task instanceof ReaderTask) {
+                        ((ReaderTask) task).cancel();
+                    }
+                }
+            } else {
+                executor.shutdown();
+            }
+            tasksLimiter = null;
+            reorderBuffer = null;
+        }
+        if (failure.isPresent()) {
+            log.error("Parsing failed with: {}", failure.get().getMessage(), failure.get());
+            throw new RuntimeException(failure.get());
+        }
+
+        if (nodeLocations != null) {
+            nodeLocations.complete();
         }
 
         //Call completion callback.
@@ -400,19 +1146,4 @@ public final class ParallelBinaryParser {
             completeCb.run();
         }
     }
-
-    /**
-     * @param f the Future to be checked.
-     * @return if the given Future executed successfully (not failed nor cancelled).
-     * @throws ExecutionException if the Future failed.
-     * @throws InterruptedException if the current thread is interrupted while waiting.
-     */
-    private boolean isDoneSuccessfully(final Future<?> f)  throws ExecutionException, InterruptedException {
-        boolean done = f.isDone();
-        if (done) {
-            // In case of calculation error or cancellation this call will throw an Exception:
-            f.get();
-        }
-        return done;
-    }
 }
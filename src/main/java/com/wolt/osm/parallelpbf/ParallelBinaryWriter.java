@@ -1,14 +1,19 @@
 package com.wolt.osm.parallelpbf;
 
+import com.wolt.osm.parallelpbf.blob.BlobCompression;
 import com.wolt.osm.parallelpbf.blob.BlobWriter;
 import com.wolt.osm.parallelpbf.encoder.OsmHeaderEncoder;
 import com.wolt.osm.parallelpbf.entity.BoundBox;
 import com.wolt.osm.parallelpbf.entity.OsmEntity;
 import com.wolt.osm.parallelpbf.io.OSMWriter;
+import com.wolt.osm.parallelpbf.io.OrderedOSMWriter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Closeable;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -31,20 +36,31 @@ public class ParallelBinaryWriter implements Closeable {
     /**
      * Writer frontend-to-writing-threads interface.
      */
-    private final LinkedBlockingQueue<OsmEntity> writeQueue;
+    private LinkedBlockingQueue<Collection<? extends OsmEntity>> writeQueue;
+
+    /**
+     * Marks that writing threads are started.
+     */
+    private boolean started = false;
 
     /**
      * List of worker threads.
      */
     private final LinkedList<Thread> workers = new LinkedList<>();
 
+    /**
+     * Ordered mode writer, null in unordered mode.
+     */
+    private final OrderedOSMWriter orderedWriter;
+
     /**
      * Header writing procedure.
      * @param boundBox Optional bounding box to include into header.
+     * @param sorted Marks output as sorted by type then id.
      * @return false in case of error, true otherwise.
      */
-    private boolean writeHeader(final BoundBox boundBox) {
-        return writer.writeHeader(OsmHeaderEncoder.encodeHeader(boundBox));
+    private boolean writeHeader(final BoundBox boundBox, final boolean sorted) {
+        return writer.writeHeader(OsmHeaderEncoder.encodeHeader(boundBox, sorted));
     }
 
     /**
@@ -58,18 +74,87 @@ public class ParallelBinaryWriter implements Closeable {
      * @param boundBox     Output file bbox.
      */
     public ParallelBinaryWriter(final OutputStream outputStream, final int noThreads, final BoundBox boundBox) {
+        this(outputStream, noThreads, boundBox, false);
+    }
+
+    /**
+     * Sets OSM PBF file to write, number of threads to use and writing mode.
+     *
+     * In ordered mode entities are written in the order of write() calls, while blocks are still encoded and
+     * compressed in parallel. Entities must be written sorted by type (nodes, then ways, then relations)
+     * and then by id, entities breaking that order are rejected. The file header is marked with the
+     * Sort.Type_then_ID feature.
+     *
+     * @param outputStream Any OutputStream pointing to the file to write OSM PBF data.
+     * @param noThreads    Number of threads to use.
+     * @param boundBox     Output file bbox.
+     * @param ordered      Enables ordered mode.
+     */
+    public ParallelBinaryWriter(final OutputStream outputStream, final int noThreads, final BoundBox boundBox,
+                                final boolean ordered) {
         this.writer = new BlobWriter(outputStream);
         this.threads = noThreads;
         writeQueue = new LinkedBlockingQueue<>(noThreads);
-        if (!writeHeader(boundBox)) {
+        if (ordered) {
+            orderedWriter = new OrderedOSMWriter(writer, noThreads);
+        } else {
+            orderedWriter = null;
+            writer.useBacklog(writeQueue);
+        }
+        if (!writeHeader(boundBox, ordered)) {
             throw new RuntimeException("Error while creating writer and writing header");
         }
     }
 
+    /**
+     * Sets data blobs compression. Default is zlib with the best compression.
+     * Should be called before start().
+     *
+     * {@link BlobCompression#adaptive(int, int)} lowers zlib level, when writing threads
+     * can't keep up with the incoming entities, and raises it back, when they are idle.
+     * @param compression Compression policy.
+     * @return this writer.
+     */
+    public ParallelBinaryWriter setCompression(final BlobCompression compression) {
+        writer.setCompression(compression);
+        return this;
+    }
+
+    /**
+     * Sets depth of the queue between write() calls and writing threads. Each write() call takes a single
+     * queue slot, regardless of the number of entities passed. Default depth is the number of threads.
+     * Should be called before start().
+     *
+     * @param depth Number of write() calls, that may wait for the writing threads.
+     * @return this writer.
+     * @throws IllegalArgumentException if depth is not positive.
+     * @throws IllegalStateException if writer is already started.
+     */
+    public ParallelBinaryWriter setQueueDepth(final int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Queue depth must be positive");
+        }
+        if (started) {
+            throw new IllegalStateException("Queue depth can't be changed after start");
+        }
+        if (orderedWriter != null) {
+            orderedWriter.setQueueDepth(depth);
+        } else {
+            writeQueue = new LinkedBlockingQueue<>(depth);
+            writer.useBacklog(writeQueue);
+        }
+        return this;
+    }
+
     /**
      * Starts writing threads.
      */
     public void start() {
+        started = true;
+        if (orderedWriter != null) {
+            orderedWriter.start();
+            return;
+        }
         for (int indx = 0; indx < this.threads; ++indx) {
             Thread worker = new Thread(new OSMWriter(writer, writeQueue));
             worker.start();
@@ -81,11 +166,45 @@ public class ParallelBinaryWriter implements Closeable {
      * Write entity to the OSM PBF file. Thread-safe.
      *
      * @param entity Node/Way/Relation entity, other entity types are ignored.
-     * @return true if Object queued for writing, false in case of error
+     * @return true if Object queued for writing, false in case of error or, in ordered mode,
+     *         if entity breaks the order
+     * @throws RuntimeException in ordered mode, if encoding or writing of the previous entities failed.
      */
     public boolean write(final OsmEntity entity) {
+        if (orderedWriter != null) {
+            return orderedWriter.write(entity);
+        }
+        return send(Collections.singletonList(entity));
+    }
+
+    /**
+     * Writes several entities to the OSM PBF file at once. Entities are passed to a single writing thread
+     * with a single queue operation, which is much cheaper, than writing them one by one. Thread-safe.
+     *
+     * @param entities Node/Way/Relation entities, other entity types are ignored. Collection is copied,
+     *                 so it may be reused after the call.
+     * @return true if entities queued for writing, false in case of error or, in ordered mode,
+     *         if any entity breaks the order
+     * @throws RuntimeException in ordered mode, if encoding or writing of the previous entities failed.
+     */
+    public boolean write(final Collection<? extends OsmEntity> entities) {
+        if (orderedWriter != null) {
+            return orderedWriter.write(entities);
+        }
+        if (entities.isEmpty()) {
+            return true;
+        }
+        return send(new ArrayList<>(entities));
+    }
+
+    /**
+     * Passes entities to the writing threads.
+     * @param entities Entities to write.
+     * @return true if entities queued for writing, false in case of error
+     */
+    private boolean send(final Collection<? extends OsmEntity> entities) {
         try {
-            writeQueue.put(entity);
+            writeQueue.put(entities);
         } catch (InterruptedException e) {
             log.warn("Unable to send entity for writing: {}", e.getMessage(), e);
             return false;
@@ -95,9 +214,14 @@ public class ParallelBinaryWriter implements Closeable {
 
     /**
      * Finishes OSM PBF file. **Must** be called or file may be left unfinished.
+     * @throws RuntimeException in ordered mode, if encoding or writing failed and file is incomplete.
      */
     @Override
     public void close() {
+        if (orderedWriter != null) {
+            orderedWriter.close();
+            return;
+        }
         workers.forEach((worker) -> {
             worker.interrupt();
             try {
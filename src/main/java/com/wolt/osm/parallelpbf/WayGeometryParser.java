@@ -0,0 +1,185 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf;
+
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.entity.WayGeometry;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Two pass OSM PBF parser, that produces ways with coordinates of their nodes.
+ *
+ * First pass reads only node blocks and stores node locations to the {@link NodeLocationStore}.
+ * Second pass reads only way blocks and resolves way nodes against the store. Each pass requests
+ * a single entity type, so blocks of other types are skipped before inflation, when file has
+ * block summaries (see {@link com.wolt.osm.parallelpbf.index.BlockSummary}) or a block index,
+ * and right after inflation otherwise.
+ *
+ * See https://github.com/woltapp/parallelpbf for the details and usage example.
+ */
+@Slf4j
+public final class WayGeometryParser {
+    /**
+     * OSM PBF file to parse.
+     */
+    private final Path input;
+
+    /**
+     * Number of threads to use.
+     */
+    private final int threads;
+
+    /**
+     * Node locations store.
+     */
+    private final NodeLocationStore locations;
+
+    /**
+     * Store already has locations, so the first pass is skipped.
+     */
+    private boolean locationsReady = false;
+
+    /**
+     * Ways tags filter. See {@link #setTagFilter(TagFilter)}.
+     */
+    private TagFilter tagFilter;
+
+    /**
+     * Callback for the ways with coordinates.
+     */
+    private Consumer<WayGeometry> wayGeometryCb;
+
+    /**
+     * Callback that will be called, when both passes are completed.
+     */
+    private Runnable completeCb;
+
+    /**
+     * Sets OSM PBF file to parse, number of threads to use and node locations store.
+     * @param file Path to the OSM PBF file.
+     * @param noThreads Number of threads to use, for each of the passes.
+     * @param store Node locations store, filled by the first pass. Should be large enough
+     *              for all the nodes of the file.
+     */
+    public WayGeometryParser(final Path file, final int noThreads, final NodeLocationStore store) {
+        this.input = file;
+        this.threads = noThreads;
+        this.locations = store;
+    }
+
+    /**
+     * Skips the first pass, when the store already has locations of the file nodes,
+     * for example, persistent store from the previous run.
+     *
+     * @param ready true to skip node locations pass, false by default.
+     * @return WayGeometryParser to mimic builder interface.
+     */
+    public WayGeometryParser setNodeLocationsReady(final boolean ready) {
+        this.locationsReady = ready;
+        return this;
+    }
+
+    /**
+     * Sets ways tags filter. Only ways, matching the filter, are resolved and passed to the callback.
+     * Node locations pass is not filtered, as ways may refer any node.
+     *
+     * @param filter Tags filter or null to resolve all the ways.
+     * @return WayGeometryParser to mimic builder interface.
+     */
+    public WayGeometryParser setTagFilter(final TagFilter filter) {
+        this.tagFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets callback, that will be called for each way with coordinates of its nodes.
+     * Callback is called from the processing threads and must be reentrant.
+     *
+     * @param onWayWithGeometry Callback function.
+     * @return WayGeometryParser to mimic builder interface.
+     */
+    public WayGeometryParser onWayWithGeometry(final Consumer<WayGeometry> onWayWithGeometry) {
+        this.wayGeometryCb = onWayWithGeometry;
+        return this;
+    }
+
+    /**
+     * Sets callback, that will be called, when both passes are completed.
+     *
+     * @param onComplete Callback function. May be null.
+     * @return WayGeometryParser to mimic builder interface.
+     */
+    public WayGeometryParser onComplete(final Runnable onComplete) {
+        this.completeCb = onComplete;
+        return this;
+    }
+
+    /**
+     * Resolves way nodes against the store.
+     * @param way Way to resolve.
+     */
+    private void resolve(final Way way) {
+        int size = way.getNodes().size();
+        double[] lats = new double[size];
+        double[] lons = new double[size];
+        int indx = 0;
+        for (Long id : way.getNodes()) {
+            long location = locations.get(id);
+            if (location == NodeLocationStore.MISSING) {
+                lats[indx] = Double.NaN;
+                lons[indx] = Double.NaN;
+            } else {
+                lats[indx] = NodeLocationStore.toDegrees(NodeLocationStore.lat(location));
+                lons[indx] = NodeLocationStore.toDegrees(NodeLocationStore.lon(location));
+            }
+            ++indx;
+        }
+        wayGeometryCb.accept(new WayGeometry(way, lats, lons));
+    }
+
+    /**
+     * Runs both passes. This function is blocking.
+     * @throws IOException if file can't be opened or mapped.
+     * @throws IllegalStateException if way geometry callback is not set.
+     * @throws RuntimeException if parsing fails.
+     */
+    public void parse() throws IOException {
+        if (wayGeometryCb == null) {
+            throw new IllegalStateException("Way geometry callback is not set");
+        }
+        if (!locationsReady) {
+            log.debug("Storing node locations of {}", input);
+            new ParallelBinaryParser(input, threads)
+                    .setNodeLocationStore(locations)
+                    .parse();
+        }
+        log.debug("Resolving ways of {}", input);
+        new ParallelBinaryParser(input, threads)
+                .setTagFilter(tagFilter)
+                .onWay(this::resolve)
+                .parse();
+        if (completeCb != null) {
+            completeCb.run();
+        }
+    }
+}
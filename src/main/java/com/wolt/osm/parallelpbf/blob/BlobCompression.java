@@ -0,0 +1,129 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.blob;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression policy of the data blobs.
+ *
+ * Blobs may be written raw, compressed with zlib at a fixed level, with LZ4 or Zstd, or with zlib at an
+ * adaptive level, that is lowered when the writer falls behind and raised back when it is idle.
+ * Header blobs are always written raw.
+ */
+@Data
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BlobCompression {
+    /**
+     * Blob data formats.
+     */
+    public enum Format {
+        /**
+         * No compression, the fastest option for local temporary files.
+         */
+        RAW,
+        /**
+         * Zlib compression, supported by all readers.
+         */
+        ZLIB,
+        /**
+         * LZ4 block compression.
+         */
+        LZ4,
+        /**
+         * Zstandard compression.
+         */
+        ZSTD
+    }
+
+    /**
+     * Data format.
+     */
+    private final Format format;
+
+    /**
+     * Lowest zlib level. Same as maxLevel, unless compression is adaptive.
+     */
+    private final int minLevel;
+
+    /**
+     * Highest zlib level, also the level blobs are compressed with initially.
+     */
+    private final int maxLevel;
+
+    /**
+     * Writes blobs without compression.
+     * @return compression policy.
+     */
+    public static BlobCompression raw() {
+        return new BlobCompression(Format.RAW, Deflater.NO_COMPRESSION, Deflater.NO_COMPRESSION);
+    }
+
+    /**
+     * Compresses blobs with zlib at a fixed level.
+     * @param level Zlib level from 0 to 9.
+     * @return compression policy.
+     * @throws IllegalArgumentException if level is out of range.
+     */
+    public static BlobCompression zlib(final int level) {
+        return adaptive(level, level);
+    }
+
+    /**
+     * Compresses blobs with LZ4.
+     * @return compression policy.
+     */
+    public static BlobCompression lz4() {
+        return new BlobCompression(Format.LZ4, Deflater.NO_COMPRESSION, Deflater.NO_COMPRESSION);
+    }
+
+    /**
+     * Compresses blobs with Zstandard.
+     * @return compression policy.
+     */
+    public static BlobCompression zstd() {
+        return new BlobCompression(Format.ZSTD, Deflater.NO_COMPRESSION, Deflater.NO_COMPRESSION);
+    }
+
+    /**
+     * Compresses blobs with zlib, starting at the highest level. The level is lowered by one step
+     * each time a blob is written while the writer queue is full and raised by one step each
+     * time a blob is written while the queue is empty.
+     * @param minLevel Lowest zlib level from 0 to 9.
+     * @param maxLevel Highest zlib level from minLevel to 9.
+     * @return compression policy.
+     * @throws IllegalArgumentException if levels are out of range.
+     */
+    public static BlobCompression adaptive(final int minLevel, final int maxLevel) {
+        if (minLevel < Deflater.NO_COMPRESSION || maxLevel > Deflater.BEST_COMPRESSION || minLevel > maxLevel) {
+            throw new IllegalArgumentException("Invalid zlib levels range " + minLevel + "-" + maxLevel);
+        }
+        return new BlobCompression(Format.ZLIB, minLevel, maxLevel);
+    }
+
+    /**
+     * Checks if level changes between blobs.
+     * @return true for adaptive zlib compression.
+     */
+    public boolean isAdaptive() {
+        return minLevel < maxLevel;
+    }
+}
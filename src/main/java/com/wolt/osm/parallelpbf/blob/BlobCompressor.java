@@ -0,0 +1,131 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.blob;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import crosby.binary.Fileformat;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+
+import java.util.zip.Deflater;
+
+/**
+ * Builds Blob messages, compressing the payload with the requested format.
+ *
+ * Compressor keeps a single Deflater and the output buffer for its whole lifetime and is not thread safe,
+ * so it is supposed to be used per thread. Native Deflater resources are released with {@link #end()}.
+ */
+final class BlobCompressor {
+    /**
+     * Zlib compressor, reset before each blob.
+     */
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+    /**
+     * LZ4 block compressor.
+     */
+    private final Compressor lz4 = new Lz4Compressor();
+
+    /**
+     * Zstandard frame compressor.
+     */
+    private final Compressor zstd = new ZstdCompressor();
+
+    /**
+     * Compressed data of the last blob.
+     */
+    private byte[] output = new byte[0];
+
+    /**
+     * Releases native zlib resources. Zlib compression can't be used after that.
+     */
+    void end() {
+        deflater.end();
+    }
+
+    /**
+     * Makes Blob message of the payload.
+     * @param payload Blob payload.
+     * @param format Compression format.
+     * @param level Zlib compression level, ignored for other formats.
+     * @return Blob message. Message refers the compressor buffer, so it is only valid
+     *         until the next call.
+     */
+    Fileformat.Blob compress(final byte[] payload, final BlobCompression.Format format, final int level) {
+        Fileformat.Blob.Builder blob = Fileformat.Blob.newBuilder();
+        switch (format) {
+            case RAW:
+                return blob.setRaw(UnsafeByteOperations.unsafeWrap(payload)).build();
+            case ZLIB:
+                return blob.setRawSize(payload.length).setZlibData(deflate(payload, level)).build();
+            case LZ4:
+                return blob.setRawSize(payload.length).setLz4Data(compress(lz4, payload)).build();
+            case ZSTD:
+                return blob.setRawSize(payload.length).setZstdData(compress(zstd, payload)).build();
+            default:
+                throw new IllegalArgumentException("Unsupported blob format " + format);
+        }
+    }
+
+    /**
+     * Grows output buffer, if needed.
+     * @param size Required size.
+     */
+    private void ensureOutput(final int size) {
+        if (output.length < size) {
+            output = new byte[size];
+        }
+    }
+
+    /**
+     * Compresses payload with zlib. Output buffer grows, if compressed data doesn't fit it.
+     * @param payload Blob payload.
+     * @param level Compression level.
+     * @return Compressed data.
+     */
+    private ByteString deflate(final byte[] payload, final int level) {
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(payload);
+        deflater.finish();
+        ensureOutput(payload.length);
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                byte[] grown = new byte[output.length * 2 + 1];
+                System.arraycopy(output, 0, grown, 0, length);
+                output = grown;
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return UnsafeByteOperations.unsafeWrap(output, 0, length);
+    }
+
+    /**
+     * Compresses payload with LZ4 or Zstd.
+     * @param codec Compressor of the format.
+     * @param payload Blob payload.
+     * @return Compressed data.
+     */
+    private ByteString compress(final Compressor codec, final byte[] payload) {
+        ensureOutput(codec.maxCompressedLength(payload.length));
+        int length = codec.compress(payload, 0, payload.length, output, 0, output.length);
+        return UnsafeByteOperations.unsafeWrap(output, 0, length);
+    }
+}
@@ -17,12 +17,13 @@
 
 package com.wolt.osm.parallelpbf.blob;
 
+import com.google.protobuf.ByteString;
 import lombok.Data;
 
 /**
  * A better wrapper over BlobHeader.
  *
- * Keeps blob size and blob type together for future processing.
+ * Keeps blob size, blob type and optional index data together for future processing.
  */
 @Data
 public class BlobInformation {
@@ -44,4 +45,30 @@ public class BlobInformation {
      * Data blob type.
      */
     private final String type;
+
+    /**
+     * Contents of the BlobHeader indexdata field or null, if header doesn't have it.
+     */
+    private final ByteString indexData;
+
+    /**
+     * Constructs information for the blob without index data.
+     * @param sizeValue Data blob size.
+     * @param typeValue Data blob type.
+     */
+    public BlobInformation(final Integer sizeValue, final String typeValue) {
+        this(sizeValue, typeValue, null);
+    }
+
+    /**
+     * Constructs blob information.
+     * @param sizeValue Data blob size.
+     * @param typeValue Data blob type.
+     * @param indexDataValue BlobHeader indexdata field or null.
+     */
+    public BlobInformation(final Integer sizeValue, final String typeValue, final ByteString indexDataValue) {
+        this.size = sizeValue;
+        this.type = typeValue;
+        this.indexData = indexDataValue;
+    }
 }
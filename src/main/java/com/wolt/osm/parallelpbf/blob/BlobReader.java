@@ -17,9 +17,9 @@
 
 package com.wolt.osm.parallelpbf.blob;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import crosby.binary.Fileformat;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
@@ -31,28 +31,89 @@ import java.util.Optional;
  * Handles all stream operations and retrieves Blob* messages.
  */
 @Slf4j
-@RequiredArgsConstructor
-public final class BlobReader {
+public final class BlobReader implements BlobSource {
     /**
      * The size field have fixed length of 4 bytes.
      */
-    private static final int SIZE_FIELD_LENGTH = 4;
+    static final int SIZE_FIELD_LENGTH = 4;
 
     /**
      * BlobHeader is never bigger then 64K.
      */
-    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    static final int MAX_HEADER_SIZE = 64 * 1024;
 
     /**
      * Blob is never bigger then 32M.
      */
-    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
 
     /**
      * Input data stream.
      */
     private final InputStream input;
 
+    /**
+     * Reusable buffer for the blob headers and their lengths.
+     */
+    private final byte[] scratch = new byte[MAX_HEADER_SIZE];
+
+    /**
+     * Arena of the blob buffers.
+     */
+    private BufferArena arena;
+
+    /**
+     * Creates reader with its own unbounded buffers arena.
+     * @param inputValue Input data stream.
+     */
+    public BlobReader(final InputStream inputValue) {
+        this(inputValue, new BufferArena(Long.MAX_VALUE, false));
+    }
+
+    /**
+     * Creates reader, taking blob buffers from the arena.
+     * @param inputValue Input data stream.
+     * @param arenaValue Arena of the blob buffers.
+     */
+    public BlobReader(final InputStream inputValue, final BufferArena arenaValue) {
+        this.input = inputValue;
+        this.arena = arenaValue;
+    }
+
+    @Override
+    public void useArena(final BufferArena arenaValue) {
+        this.arena = arenaValue;
+    }
+
+    @Override
+    public void release(final ByteBuffer blob) {
+        arena.release(blob);
+    }
+
+    /**
+     * Reads exactly specified amount of bytes from the stream.
+     * @param buffer Buffer to read into.
+     * @param offset Offset in the buffer.
+     * @param length How many bytes should be read.
+     * @return false in case of EOF or IOException.
+     */
+    private boolean readFully(final byte[] buffer, final int offset, final int length) {
+        int bytesRead = 0;
+        try {
+            while (bytesRead < length) {
+                int count = input.read(buffer, offset + bytesRead, length - bytesRead);
+                if (count < 0) {
+                    return false;
+                }
+                bytesRead += count;
+            }
+        } catch (IOException e) {
+            log.error("Error reading from the stream: {}", e.getMessage(), e);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Tries to read specified amount of bytes from the stream.
      * @param bytesToRead how many bytes should be read.
@@ -61,18 +122,106 @@ public final class BlobReader {
      */
     private Optional<byte[]> readFromStream(final int bytesToRead) {
         byte[] buffer = new byte[bytesToRead];
+        if (!readFully(buffer, 0, bytesToRead)) {
+            return Optional.empty();
+        }
+        return Optional.of(buffer);
+    }
+
+    /**
+     * Reads specified amount of bytes to the reusable buffer.
+     * @param bytesToRead how many bytes should be read.
+     * @return Buffer with bytesToRead bytes or empty,
+     *         in case of EOF or IOException.
+     */
+    private Optional<ByteBuffer> readToScratch(final int bytesToRead) {
+        if (bytesToRead > scratch.length) {
+            return readFromStream(bytesToRead).map(ByteBuffer::wrap);
+        }
+        if (!readFully(scratch, 0, bytesToRead)) {
+            return Optional.empty();
+        }
+        return Optional.of(ByteBuffer.wrap(scratch, 0, bytesToRead));
+    }
+
+    /**
+     * Reads specified amount of bytes to the buffer, taken from the arena.
+     * Buffer is returned to the arena in case of failure.
+     * @param bytesToRead how many bytes should be read.
+     * @return Buffer with bytesToRead bytes or empty,
+     *         in case of EOF, IOException or interruption.
+     */
+    private Optional<ByteBuffer> readToArena(final int bytesToRead) {
+        ByteBuffer buffer;
         try {
-            int bytesRead = input.read(buffer);
-            if (bytesRead != bytesToRead) {
-                return Optional.empty();
+            buffer = arena.acquire(bytesToRead);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for the blob buffer");
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        boolean success;
+        if (buffer.hasArray()) {
+            success = readFully(buffer.array(), buffer.arrayOffset(), bytesToRead);
+        } else {
+            success = true;
+            for (int done = 0; success && done < bytesToRead; done += scratch.length) {
+                int length = Math.min(scratch.length, bytesToRead - done);
+                success = readFully(scratch, 0, length);
+                buffer.put(scratch, 0, length);
             }
-        } catch (IOException e) {
-            log.error("Error reading from the stream: {}", e.getMessage(), e);
+            buffer.flip();
+        }
+        if (!success) {
+            arena.release(buffer);
             return Optional.empty();
         }
         return Optional.of(buffer);
     }
 
+    /**
+     * Validates blob header length, read from the input.
+     * @param blobHeaderLength length of the next blob header.
+     * @return same length or empty if it can't be a valid header length.
+     */
+    static Optional<Integer> checkBlobHeaderLength(final int blobHeaderLength) {
+        log.trace("Read BlobHeaderLength: {}", blobHeaderLength);
+        if (blobHeaderLength > MAX_HEADER_SIZE) {
+            log.warn("BlobHeader size is too big: {}", blobHeaderLength);
+            return Optional.empty();
+        }
+        return Optional.of(blobHeaderLength);
+    }
+
+    /**
+     * Parses and validates BlobHeader message.
+     * @param buffer Serialized BlobHeader.
+     * @return Size, type and index data of the following Blob or empty in case of parse error.
+     */
+    static Optional<BlobInformation> parseBlobHeader(final ByteBuffer buffer) {
+        Fileformat.BlobHeader header;
+        try {
+            header = Fileformat.BlobHeader.parseFrom(buffer);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("Failed to parse BlobHeader: {}", e.getMessage(), e);
+            return Optional.empty();
+        }
+        log.trace("Got BlobHeader with type: {}, data size: {}", header.getType(), header.getDatasize());
+        if (header.getDatasize() < 0) {
+            log.warn("Blob size is negative: {}", header.getDatasize());
+            return Optional.empty();
+        }
+        if (header.getDatasize() > MAX_BLOB_SIZE) {
+            log.warn("Blob size is too big: {}", header.getDatasize());
+            return Optional.empty();
+        }
+        ByteString indexData = null;
+        if (header.hasIndexdata()) {
+            indexData = header.getIndexdata();
+        }
+        return Optional.of(new BlobInformation(header.getDatasize(), header.getType(), indexData));
+    }
+
     /**
      * Reads next blob header length from the current stream position.
      * As blob header length is just 4 bytes in network byte order,
@@ -81,22 +230,11 @@ public final class BlobReader {
      *
      * @return length of next block header or empty if can't be read.
      */
+    @Override
     public Optional<Integer> readBlobHeaderLength() {
-        Optional<byte[]> blobHeaderLengthBuffer = readFromStream(SIZE_FIELD_LENGTH);
-        Optional<Integer> result = blobHeaderLengthBuffer.map(value -> {
-            ByteBuffer blobHeaderLengthWrapped = ByteBuffer.wrap(value);
-            int blobHeaderLength = blobHeaderLengthWrapped.getInt();
-            log.trace("Read BlobHeaderLength: {}", blobHeaderLength);
-            return blobHeaderLength;
-        });
-        return result.flatMap(value -> {
-            if (value > MAX_HEADER_SIZE) {
-                log.warn("BlobHeader size is too big: {}", value);
-                return Optional.empty();
-            } else {
-                return result;
-            }
-        });
+        return readToScratch(SIZE_FIELD_LENGTH)
+                .map(ByteBuffer::getInt)
+                .flatMap(BlobReader::checkBlobHeaderLength);
     }
 
     /**
@@ -108,27 +246,9 @@ public final class BlobReader {
      * @param headerLength Number of bytes to read and interpret as BlobHeader
      * @return Size of the following Blob in bytes or empty in case of read error.
      */
+    @Override
     public Optional<BlobInformation> readBlobHeader(final int headerLength) {
-        Optional<byte[]> blobHeaderBuffer = readFromStream(headerLength);
-        Optional<BlobInformation> result = blobHeaderBuffer.flatMap(value -> {
-            Fileformat.BlobHeader header;
-            try {
-                header = Fileformat.BlobHeader.parseFrom(blobHeaderBuffer.get());
-                log.trace("Got BlobHeader with type: {}, data size: {}", header.getType(), header.getDatasize());
-                return Optional.of(new BlobInformation(header.getDatasize(), header.getType()));
-            } catch (InvalidProtocolBufferException e) {
-                log.error("Failed to parse BlobHeader: {}", e.getMessage(), e);
-                return Optional.empty();
-            }
-        });
-        return result.flatMap(value -> {
-            if (value.getSize() > MAX_BLOB_SIZE) {
-                log.warn("Blob size is too big: {}", value);
-                return Optional.empty();
-            } else {
-                return result;
-            }
-        });
+        return readToScratch(headerLength).flatMap(BlobReader::parseBlobHeader);
     }
 
     /**
@@ -141,12 +261,24 @@ public final class BlobReader {
         return readFromStream(blobLength);
     }
 
+    /**
+     * Reads next blob from the current stream position to the buffer, taken from the arena.
+     * Waits for the buffer, if arena is full. Buffer should be returned with {@link #release(ByteBuffer)}.
+     * @param blobLength Number of bytes to read
+     * @return Blob value or empty in case of read error
+     */
+    @Override
+    public Optional<ByteBuffer> readBlobData(final int blobLength) {
+        return readToArena(blobLength);
+    }
+
     /**
      * Fast forwards input stream to the offset. Used in conjunction with
      * partitioning.
      * @param offset Number of bytes to skip from the stream.
      * @return Optional with `offset` value or empty in case of failure.
      */
+    @Override
     public Optional<Integer> skip(final Integer offset) {
         long left = offset;
         try {
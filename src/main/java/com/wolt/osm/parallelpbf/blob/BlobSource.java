@@ -0,0 +1,78 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.blob;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Source of the OSM PBF file blocks.
+ *
+ * Blocks are read sequentially: blob header length, then blob header
+ * and then either blob data or skip over it.
+ */
+public interface BlobSource {
+    /**
+     * Reads next blob header length from the current position.
+     *
+     * @return length of next block header or empty if can't be read.
+     */
+    Optional<Integer> readBlobHeaderLength();
+
+    /**
+     * Reads next blob header from the current position.
+     *
+     * @param headerLength Number of bytes to read and interpret as BlobHeader
+     * @return Size and type of the following Blob or empty in case of read error.
+     */
+    Optional<BlobInformation> readBlobHeader(int headerLength);
+
+    /**
+     * Reads next blob from the current position.
+     *
+     * @param blobLength Number of bytes to read
+     * @return Blob value or empty in case of read error
+     */
+    Optional<ByteBuffer> readBlobData(int blobLength);
+
+    /**
+     * Sets arena for the blob buffers. Sources, that copy blobs to memory, take buffers from the arena,
+     * other sources ignore it.
+     *
+     * @param arena Buffers arena.
+     */
+    default void useArena(BufferArena arena) {
+    }
+
+    /**
+     * Returns blob buffer, returned by {@link #readBlobData(int)}, back to the source for reuse.
+     * Buffer must not be used after release.
+     *
+     * @param blob Blob buffer.
+     */
+    default void release(ByteBuffer blob) {
+    }
+
+    /**
+     * Moves current position forward, skipping the blob.
+     *
+     * @param offset Number of bytes to skip.
+     * @return Optional with `offset` value or empty in case of failure.
+     */
+    Optional<Integer> skip(Integer offset);
+}
@@ -1,6 +1,7 @@
 package com.wolt.osm.parallelpbf.blob;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import crosby.binary.Fileformat;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +9,8 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 
 /**
@@ -17,6 +20,10 @@ import java.util.zip.Deflater;
  * Accepts blob to write with the type and serializes it to the
  * output stream. Writing to the stream is synchronized, so it
  * is thread safe.
+ *
+ * Data blobs are compressed according to the {@link BlobCompression} policy,
+ * zlib with the best compression by default. Compression happens in the calling
+ * thread with the compressor, that is kept per thread.
  */
 @RequiredArgsConstructor
 @Slf4j
@@ -25,24 +32,100 @@ public class BlobWriter {
      * Size of a int, prepending the HeaderBlock.
      */
     private static final int INT_SIZE = 4;
+
+    /**
+     * Per thread compressors, reusing Deflater and output buffer between blobs.
+     * Created on first use, so threads, that never compressed anything, have none.
+     */
+    private static final ThreadLocal<BlobCompressor> COMPRESSORS = new ThreadLocal<>();
+
     /**
      * Output data stream.
      */
     private final OutputStream output;
 
+    /**
+     * Data blobs compression policy.
+     */
+    private volatile BlobCompression compression = BlobCompression.zlib(Deflater.BEST_COMPRESSION);
+
+    /**
+     * Current zlib level of the adaptive compression.
+     */
+    private final AtomicInteger level = new AtomicInteger(Deflater.BEST_COMPRESSION);
+
+    /**
+     * Queue of the data waiting to be written, used to adapt compression level.
+     */
+    private volatile BlockingQueue<?> backlog;
+
+    /**
+     * Sets data blobs compression policy. Should be set before writing any data.
+     * @param policy Compression policy.
+     * @return this writer.
+     */
+    public BlobWriter setCompression(final BlobCompression policy) {
+        this.compression = policy;
+        this.level.set(policy.getMaxLevel());
+        return this;
+    }
+
+    /**
+     * Sets the queue of the data, waiting to be written, as a load signal for the adaptive compression.
+     * Compression level is lowered, when the queue is full, and raised, when the queue is empty.
+     * @param queue Queue of the data, waiting to be written.
+     */
+    public void useBacklog(final BlockingQueue<?> queue) {
+        this.backlog = queue;
+    }
+
+    /**
+     * Selects zlib level for the next blob.
+     * @param policy Compression policy.
+     * @return compression level.
+     */
+    private int nextLevel(final BlobCompression policy) {
+        if (!policy.isAdaptive()) {
+            return policy.getMaxLevel();
+        }
+        BlockingQueue<?> queue = backlog;
+        int step = 0;
+        if (queue != null && queue.remainingCapacity() == 0) {
+            step = -1;
+        } else if (queue != null && queue.isEmpty()) {
+            step = 1;
+        }
+        final int delta = step;
+        return level.updateAndGet(current ->
+                Math.max(policy.getMinLevel(), Math.min(policy.getMaxLevel(), current + delta)));
+    }
+
+    /**
+     * Current zlib compression level. For adaptive compression the level changes between blobs.
+     * @return zlib level, unused for non zlib compression.
+     */
+    public int getLevel() {
+        BlobCompression policy = compression;
+        return policy.isAdaptive() ? level.get() : policy.getMaxLevel();
+    }
+
     /**
      * Blob writing helper. Adds headerBlob and size to the stream.
      * Stream is locked during output operation.
      * @param blob Blob to write.
      * @param type Type of that blob.
+     * @param indexData Content of the BlobHeader.indexdata field, may be null.
      * @return false in case of error, true otherwise.
      */
-    private boolean write(final byte[] blob, final String type) {
+    private boolean write(final byte[] blob, final String type, final byte[] indexData) {
         // Form headerBlob
-        byte[] headerBlob = Fileformat.BlobHeader.newBuilder()
+        Fileformat.BlobHeader.Builder header = Fileformat.BlobHeader.newBuilder()
                 .setType(type)
-                .setDatasize(blob.length)
-                .build().toByteArray();
+                .setDatasize(blob.length);
+        if (indexData != null) {
+            header.setIndexdata(UnsafeByteOperations.unsafeWrap(indexData));
+        }
+        byte[] headerBlob = header.build().toByteArray();
 
         // Get size of the headerBlob
         byte[] size = ByteBuffer.allocate(INT_SIZE).putInt(headerBlob.length).array();
@@ -62,7 +145,7 @@ public class BlobWriter {
     }
 
     /**
-     * Writes data blob to the OutputStream. Blob will be compresed, prepended with HeaderBlob
+     * Writes data blob to the OutputStream. Blob will be compressed, prepended with HeaderBlob
      * and its size.
      * OutputFileStream will be locked during IO operation.
      *
@@ -70,19 +153,79 @@ public class BlobWriter {
      * @return false in case of error, true otherwise.
      */
     public boolean writeData(final byte[] blob) {
-        // Form DataBlob
-        Deflater compressor = new Deflater(Deflater.BEST_COMPRESSION);
-        byte[] compressedBlob = new byte[blob.length];
-        compressor.setInput(blob);
-        compressor.finish();
-        int compressedBlobLength = compressor.deflate(compressedBlob);
-        compressor.end();
-        byte[] dataBlob = Fileformat.Blob.newBuilder()
-                .setRawSize(blob.length)
-                .setZlibData(ByteString.copyFrom(compressedBlob, 0, compressedBlobLength))
-                .build().toByteArray();
+        return writeData(blob, null);
+    }
+
+    /**
+     * Writes data blob to the OutputStream together with its index data, see {@link #writeData(byte[])}.
+     *
+     * @param blob binary blob to write.
+     * @param indexData Content of the BlobHeader.indexdata field, may be null.
+     * @return false in case of error, true otherwise.
+     */
+    public boolean writeData(final byte[] blob, final byte[] indexData) {
+        return writeCompressedData(compressData(blob), indexData);
+    }
+
+    /**
+     * Compresses data blob without writing it, so blobs can be compressed in parallel
+     * and written later in a specific order.
+     *
+     * @param blob binary blob to compress.
+     * @return serialized Blob message for the {@link #writeCompressedData(byte[])}.
+     */
+    public byte[] compressData(final byte[] blob) {
+        BlobCompression policy = compression;
+        return compressor().compress(blob, policy.getFormat(), nextLevel(policy)).toByteArray();
+    }
+
+    /**
+     * Releases compressor of the current thread, if it has one, ending its Deflater.
+     * Threads, that compress data, should call it before exit.
+     */
+    public static void releaseCompressor() {
+        BlobCompressor compressor = COMPRESSORS.get();
+        if (compressor != null) {
+            COMPRESSORS.remove();
+            compressor.end();
+        }
+    }
 
-        return write(dataBlob, BlobInformation.TYPE_OSM_DATA);
+    /**
+     * Compressor of the current thread.
+     * @return thread's compressor, created on first call.
+     */
+    private static BlobCompressor compressor() {
+        BlobCompressor result = COMPRESSORS.get();
+        if (result == null) {
+            result = new BlobCompressor();
+            COMPRESSORS.set(result);
+        }
+        return result;
+    }
+
+    /**
+     * Writes data blob, compressed with {@link #compressData(byte[])}, to the OutputStream.
+     * Blob will be prepended with HeaderBlob and its size.
+     * OutputFileStream will be locked during IO operation.
+     *
+     * @param dataBlob serialized Blob message.
+     * @return false in case of error, true otherwise.
+     */
+    public boolean writeCompressedData(final byte[] dataBlob) {
+        return writeCompressedData(dataBlob, null);
+    }
+
+    /**
+     * Writes compressed data blob to the OutputStream together with its index data,
+     * see {@link #writeCompressedData(byte[])}.
+     *
+     * @param dataBlob serialized Blob message.
+     * @param indexData Content of the BlobHeader.indexdata field, may be null.
+     * @return false in case of error, true otherwise.
+     */
+    public boolean writeCompressedData(final byte[] dataBlob, final byte[] indexData) {
+        return write(dataBlob, BlobInformation.TYPE_OSM_DATA, indexData);
     }
 
     /**
@@ -99,6 +242,6 @@ public class BlobWriter {
                     .setRaw(ByteString.copyFrom(blob))
                     .build().toByteArray();
 
-        return write(dataBlob, BlobInformation.TYPE_OSM_HEADER);
+        return write(dataBlob, BlobInformation.TYPE_OSM_HEADER, null);
     }
 }
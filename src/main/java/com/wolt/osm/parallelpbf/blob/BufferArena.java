@@ -0,0 +1,188 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.blob;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of the blob buffers with a hard limit on the total size of allocated buffers.
+ *
+ * Buffers are allocated in size classes of powers of two, so a released buffer can be reused
+ * for any blob of the same class. Total size of buffers, both in use and pooled, never exceeds the capacity:
+ * when a new buffer is needed, pooled buffers of other classes are dropped first and, if it is still not
+ * enough, caller is blocked until some buffer is released. The only exception is a single buffer,
+ * bigger than the capacity, which is allocated, when there are no other buffers.
+ *
+ * Arena can be shared between several parsers to limit their total memory usage.
+ * All methods are thread safe.
+ */
+public final class BufferArena {
+    /**
+     * Smallest size class is 4K.
+     */
+    private static final int MIN_CLASS_SHIFT = 12;
+
+    /**
+     * Largest size class covers any positive int.
+     */
+    private static final int MAX_CLASS_SHIFT = Integer.SIZE - 1;
+
+    /**
+     * Maximum total size of allocated buffers.
+     */
+    private final long capacity;
+
+    /**
+     * Allocate direct buffers instead of heap ones.
+     */
+    private final boolean direct;
+
+    /**
+     * Released buffers by size class.
+     */
+    private final ArrayDeque<ByteBuffer>[] pools;
+
+    /**
+     * Total size of allocated buffers, both in use and pooled.
+     */
+    private long allocated = 0;
+
+    /**
+     * Total size of pooled buffers.
+     */
+    private long pooled = 0;
+
+    /**
+     * Creates arena.
+     * @param capacityValue Maximum total size of buffers in bytes.
+     * @param directValue Allocate direct buffers instead of heap ones.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferArena(final long capacityValue, final boolean directValue) {
+        if (capacityValue <= 0) {
+            throw new IllegalArgumentException("Arena capacity must be positive");
+        }
+        this.capacity = capacityValue;
+        this.direct = directValue;
+        this.pools = new ArrayDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for (int indx = 0; indx < pools.length; ++indx) {
+            pools[indx] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Finds size class of the buffer.
+     * @param size Required buffer size.
+     * @return index of the size class.
+     */
+    private static int classOf(final int size) {
+        int shift = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Size of the buffers of the class.
+     * @param sizeClass Index of the size class.
+     * @return buffer capacity.
+     */
+    private static long classSize(final int sizeClass) {
+        return 1L << (sizeClass + MIN_CLASS_SHIFT);
+    }
+
+    /**
+     * Gets buffer from the arena, waiting for other buffers to be released, if arena is full.
+     * @param size Required size.
+     * @return Buffer with position 0 and limit set to size. Buffer capacity may be bigger.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized ByteBuffer acquire(final int size) throws InterruptedException {
+        int sizeClass = classOf(size);
+        long bytes = classSize(sizeClass);
+        while (true) {
+            ByteBuffer buffer = pools[sizeClass].poll();
+            if (buffer != null) {
+                pooled -= bytes;
+                buffer.clear();
+                buffer.limit(size);
+                return buffer;
+            }
+            for (int indx = pools.length - 1; indx >= 0 && allocated + bytes > capacity && pooled > 0; --indx) {
+                while (!pools[indx].isEmpty() && allocated + bytes > capacity) {
+                    pools[indx].poll();
+                    pooled -= classSize(indx);
+                    allocated -= classSize(indx);
+                }
+            }
+            if (allocated + bytes <= capacity || allocated == 0) {
+                allocated += bytes;
+                buffer = allocate((int) Math.min(bytes, Integer.MAX_VALUE));
+                buffer.limit(size);
+                return buffer;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Allocates a new buffer.
+     * @param bytes Buffer capacity.
+     * @return new buffer.
+     */
+    private ByteBuffer allocate(final int bytes) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(bytes);
+        }
+        return ByteBuffer.allocate(bytes);
+    }
+
+    /**
+     * Returns buffer to the arena. Buffer must not be used after release.
+     * @param buffer Buffer, acquired from this arena.
+     */
+    public synchronized void release(final ByteBuffer buffer) {
+        int sizeClass = classOf(buffer.capacity());
+        pools[sizeClass].push(buffer);
+        pooled += classSize(sizeClass);
+        notifyAll();
+    }
+
+    /**
+     * Maximum total size of buffers.
+     * @return capacity in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Total size of allocated buffers, both in use and pooled.
+     * @return size in bytes.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocated;
+    }
+
+    /**
+     * Total size of buffers, released to the arena and available for reuse.
+     * @return size in bytes.
+     */
+    public synchronized long getPooledBytes() {
+        return pooled;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.blob;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import crosby.binary.Fileformat;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Memory mapped OSM PBF file reader.
+ *
+ * The whole file is mapped into memory as a set of overlapping segments, so every
+ * blob, regardless of its position, fits into a single segment and can be returned
+ * as a slice of it without copying. Actual reading from the disk happens later,
+ * when blob data is touched by the thread, that decodes it.
+ *
+ * Reader keeps current position, so it is not thread safe, but returned buffers are
+ * independent from each other and may be used from any thread.
+ */
+@Slf4j
+public final class MappedBlobReader implements SeekableBlobSource {
+    /**
+     * Mapped segments are started on 1G boundaries.
+     */
+    private static final long SEGMENT_SIZE = 1024L * 1024 * 1024;
+
+    /**
+     * Each segment extends into the following one for the size of the largest
+     * possible block, so no block spans over two segments.
+     */
+    private static final long SEGMENT_OVERLAP = BlobReader.SIZE_FIELD_LENGTH
+            + BlobReader.MAX_HEADER_SIZE + BlobReader.MAX_BLOB_SIZE;
+
+    /**
+     * Serialized BlobHeader starts with field 1 (type) of length delimited wire type.
+     */
+    private static final byte BLOB_HEADER_FIRST_TAG = 0x0A;
+
+    /**
+     * Mapped file segments.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Total size of the mapped file.
+     */
+    @Getter
+    private final long size;
+
+    /**
+     * Current reading position in the file.
+     */
+    @Getter
+    private long position = 0;
+
+    /**
+     * Maps file to the memory. Channel is not used after construction and may be closed.
+     * @param channel File to map.
+     * @throws IOException in case of mapping error.
+     */
+    public MappedBlobReader(final FileChannel channel) throws IOException {
+        size = channel.size();
+        int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        segments = new MappedByteBuffer[count];
+        for (int indx = 0; indx < count; ++indx) {
+            long start = indx * SEGMENT_SIZE;
+            long length = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - start);
+            segments[indx] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        log.debug("Mapped {} bytes in {} segments", size, count);
+    }
+
+    /**
+     * Opens and maps file.
+     * @param path File to map.
+     * @return Reader for the file.
+     * @throws IOException in case of open or mapping error.
+     */
+    public static MappedBlobReader open(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedBlobReader(channel);
+        }
+    }
+
+    @Override
+    public void seek(final long offset) {
+        position = offset;
+    }
+
+    /**
+     * Returns part of the file as a buffer. Returned buffer is independent of
+     * other buffers and current position.
+     * @param offset Start of the data.
+     * @param length Length of the data, must not be bigger than maximum block size.
+     * @return Buffer with the data or empty if requested range is not in the file.
+     */
+    public Optional<ByteBuffer> slice(final long offset, final int length) {
+        if (length < 0 || offset < 0 || offset + length > size || length > SEGMENT_OVERLAP) {
+            return Optional.empty();
+        }
+        if (length == 0) {
+            return Optional.of(ByteBuffer.allocate(0));
+        }
+        ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+        int start = (int) (offset % SEGMENT_SIZE);
+        segment.position(start);
+        segment.limit(start + length);
+        return Optional.of(segment.slice());
+    }
+
+    /**
+     * Reads single byte at absolute file position.
+     * @param offset Position in the file, must be less than file size.
+     * @return Byte value.
+     */
+    private byte byteAt(final long offset) {
+        return segments[(int) (offset / SEGMENT_SIZE)].get((int) (offset % SEGMENT_SIZE));
+    }
+
+    /**
+     * Checks if there is a valid block at the specified position.
+     *
+     * Block is valid, when it's header length is in the allowed range, BlobHeader could be parsed,
+     * it has a known type and whole blob fits into the file.
+     * @param offset Position in the file.
+     * @return Length of the whole block, including header, or -1 if there is no valid block.
+     */
+    private long blockLengthAt(final long offset) {
+        long headerStart = offset + BlobReader.SIZE_FIELD_LENGTH;
+        // BlobHeader always starts with 'type' field.
+        if (headerStart >= size || byteAt(headerStart) != BLOB_HEADER_FIRST_TAG) {
+            return -1;
+        }
+        int headerLength = slice(offset, BlobReader.SIZE_FIELD_LENGTH).map(ByteBuffer::getInt).orElse(-1);
+        if (headerLength <= 0 || headerLength > BlobReader.MAX_HEADER_SIZE) {
+            return -1;
+        }
+        Optional<ByteBuffer> headerData = slice(headerStart, headerLength);
+        if (!headerData.isPresent()) {
+            return -1;
+        }
+        try {
+            Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(headerData.get());
+            boolean knownType = BlobInformation.TYPE_OSM_DATA.equals(header.getType())
+                    || BlobInformation.TYPE_OSM_HEADER.equals(header.getType());
+            long end = headerStart + headerLength + header.getDatasize();
+            if (!knownType || header.getDatasize() < 0 || header.getDatasize() > BlobReader.MAX_BLOB_SIZE
+                    || end > size) {
+                return -1;
+            }
+            return end - offset;
+        } catch (InvalidProtocolBufferException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Scans file for the next block. As blob data could occasionally look like a valid block,
+     * candidate block is only accepted, if it is followed by another valid block or by the end of file.
+     * @param offset Position to start search from. Not necessary a block boundary.
+     * @return Offset of the found block or file size, if there are no more blocks.
+     */
+    @Override
+    public long nextBlockOffset(final long offset) {
+        for (long candidate = Math.max(offset, 0); candidate < size; ++candidate) {
+            long length = blockLengthAt(candidate);
+            if (length > 0 && (candidate + length == size || blockLengthAt(candidate + length) > 0)) {
+                log.debug("Found block at {} while looking from {}", candidate, offset);
+                return candidate;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Reads data from the current position and advances it.
+     * @param length Number of bytes to read.
+     * @return Buffer with the data or empty in case of EOF.
+     */
+    private Optional<ByteBuffer> read(final int length) {
+        Optional<ByteBuffer> result = slice(position, length);
+        if (result.isPresent()) {
+            position += length;
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Integer> readBlobHeaderLength() {
+        return read(BlobReader.SIZE_FIELD_LENGTH)
+                .map(ByteBuffer::getInt)
+                .flatMap(BlobReader::checkBlobHeaderLength);
+    }
+
+    @Override
+    public Optional<BlobInformation> readBlobHeader(final int headerLength) {
+        return read(headerLength).flatMap(BlobReader::parseBlobHeader);
+    }
+
+    /**
+     * Parses BlobHeader at the specified offset, without changing current position.
+     * @param offset Start of the BlobHeader.
+     * @param headerLength Length of the BlobHeader.
+     * @return Blob information or empty in case of read or parse error.
+     */
+    public Optional<BlobInformation> readBlobHeader(final long offset, final int headerLength) {
+        return slice(offset, headerLength).flatMap(BlobReader::parseBlobHeader);
+    }
+
+    @Override
+    public Optional<ByteBuffer> readBlobData(final int blobLength) {
+        return read(blobLength);
+    }
+
+    @Override
+    public Optional<Integer> skip(final Integer offset) {
+        if (offset < 0) {
+            log.error("Can't skip negative number of bytes: {}", offset);
+            return Optional.empty();
+        }
+        if (position + offset > size) {
+            log.error("Can't skip {} bytes past the end of file", offset);
+            return Optional.empty();
+        }
+        position += offset;
+        return Optional.of(offset);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.blob;
+
+/**
+ * Blob source with random access, like a file.
+ */
+public interface SeekableBlobSource extends BlobSource {
+    /**
+     * Total size of the underlying file.
+     * @return size in bytes.
+     */
+    long getSize();
+
+    /**
+     * Current reading position.
+     * @return offset of the next block to read.
+     */
+    long getPosition();
+
+    /**
+     * Moves current position to the specified offset.
+     * @param offset New position in the file.
+     */
+    void seek(long offset);
+
+    /**
+     * Finds first block, starting at or after specified offset.
+     * @param offset Position to start search from. Not necessary a block boundary.
+     * @return Offset of the found block or file size, if there are no more blocks.
+     */
+    long nextBlockOffset(long offset);
+}
@@ -0,0 +1,237 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.cursor;
+
+import com.wolt.osm.parallelpbf.entity.RelationMember;
+import com.wolt.osm.parallelpbf.filter.BlockTagFilter;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+import crosby.binary.Osmformat;
+import lombok.var;
+
+import java.util.function.Consumer;
+
+/**
+ * Set of cursors, sharing the block's string table, and the logic to walk them over primitive groups.
+ *
+ * Cursors are created once and repositioned for every entity, so walking the block does not
+ * allocate any per entity objects. Instance is not thread safe and is supposed to be reused by a single
+ * thread for all the blocks it processes.
+ */
+public final class BlockCursors {
+    /**
+     * Nano degrees scale.
+     */
+    private static final double NANO = .000000001;
+
+    /**
+     * String table of the current block.
+     */
+    private final BlockStringTable strings = new BlockStringTable();
+
+    /**
+     * Nodes cursor.
+     */
+    private final NodeCursor node = new NodeCursor(strings);
+
+    /**
+     * Ways cursor.
+     */
+    private final WayCursor way = new WayCursor(strings);
+
+    /**
+     * Relations cursor.
+     */
+    private final RelationCursor relation = new RelationCursor(strings);
+
+    /**
+     * Granularity, units of nanodegrees, used to store coordinates.
+     */
+    private int granularity;
+
+    /**
+     * Latitude offset of the grid, in units of nanodegrees.
+     */
+    private long latOffset;
+
+    /**
+     * Longitude offset of the grid, in units of nanodegrees.
+     */
+    private long lonOffset;
+
+    /**
+     * Granularity of dates.
+     */
+    private int dateGranularity;
+
+    /**
+     * Tags filter of the current block, null if entities are not filtered.
+     */
+    private BlockTagFilter tagFilter;
+
+    /**
+     * Prepares cursors for the next block.
+     * @param block Block to walk.
+     */
+    public void reset(final Osmformat.PrimitiveBlock block) {
+        reset(block, null);
+    }
+
+    /**
+     * Prepares cursors for the next block, skipping entities, that do not pass the tags filter.
+     * @param block Block to walk.
+     * @param filter Tags filter, compiled for the block. May be null.
+     */
+    public void reset(final Osmformat.PrimitiveBlock block, final BlockTagFilter filter) {
+        tagFilter = filter;
+        strings.reset(block.getStringtable());
+        granularity = block.getGranularity();
+        latOffset = block.getLatOffset();
+        lonOffset = block.getLonOffset();
+        dateGranularity = block.getDateGranularity();
+    }
+
+    /**
+     * Converts grid coordinate to degrees.
+     * @param offset Grid offset.
+     * @param value Coordinate in granularity units.
+     * @return coordinate in degrees.
+     */
+    private double toDegrees(final long offset, final long value) {
+        return NANO * (offset + (granularity * value));
+    }
+
+    /**
+     * Walks node cursor over the group's nodes, both plain and dense.
+     * @param group Primitive group of the current block.
+     * @param callback Callback to call for every node.
+     */
+    public void visitNodes(final Osmformat.PrimitiveGroup group, final Consumer<NodeCursor> callback) {
+        for (Osmformat.Node message : group.getNodesList()) {
+            node.start(message.getId(), toDegrees(latOffset, message.getLat()), toDegrees(lonOffset, message.getLon()));
+            for (int indx = 0; indx < message.getKeysCount(); ++indx) {
+                node.addTag(message.getKeys(indx), message.getVals(indx));
+            }
+            if (message.hasInfo()) {
+                node.setInfo(message.getInfo());
+            }
+            if (node.matches(tagFilter)) {
+                callback.accept(node);
+            }
+        }
+        if (group.hasDense()) {
+            visitDense(group.getDense(), callback);
+        }
+    }
+
+    /**
+     * Walks node cursor over the dense nodes, decoding delta coded values.
+     * @param nodes Dense nodes message.
+     * @param callback Callback to call for every node.
+     */
+    private void visitDense(final Osmformat.DenseNodes nodes, final Consumer<NodeCursor> callback) {
+        int tagsKeyValuePointer = 0;
+        boolean hasTags = nodes.getKeysValsCount() > 0;
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+
+        long timestamp = 0;
+        long changeset = 0;
+        int uid = 0;
+        int usernameStringId = 0;
+        for (int indx = 0; indx < nodes.getIdCount(); indx++) {
+            id += nodes.getId(indx);
+            latitude += nodes.getLat(indx);
+            longitude += nodes.getLon(indx);
+            node.start(id, toDegrees(latOffset, latitude), toDegrees(lonOffset, longitude));
+            if (hasTags) {
+                int keyIndex = nodes.getKeysVals(tagsKeyValuePointer);
+                while (keyIndex != 0) {
+                    node.addTag(keyIndex, nodes.getKeysVals(tagsKeyValuePointer + 1));
+                    tagsKeyValuePointer += 2;
+                    keyIndex = nodes.getKeysVals(tagsKeyValuePointer);
+                }
+                ++tagsKeyValuePointer;
+            }
+            if (nodes.hasDenseinfo()) {
+                var info = nodes.getDenseinfo();
+                uid += info.getUid(indx);
+                usernameStringId += info.getUserSid(indx);
+                changeset += info.getChangeset(indx);
+                timestamp += info.getTimestamp(indx);
+                boolean visible = info.getVisibleCount() == 0 || info.getVisible(indx);
+                node.setInfo(uid, usernameStringId, info.getVersion(indx), timestamp * dateGranularity,
+                        changeset, visible);
+            }
+            if (node.matches(tagFilter)) {
+                callback.accept(node);
+            }
+        }
+    }
+
+    /**
+     * Walks way cursor over the group's ways.
+     * @param group Primitive group of the current block.
+     * @param callback Callback to call for every way.
+     */
+    public void visitWays(final Osmformat.PrimitiveGroup group, final Consumer<WayCursor> callback) {
+        for (Osmformat.Way message : group.getWaysList()) {
+            way.start(message.getId(), message.getRefsCount());
+            long nodeId = 0;
+            for (int indx = 0; indx < message.getRefsCount(); ++indx) {
+                nodeId += message.getRefs(indx);
+                way.setRef(indx, nodeId);
+            }
+            for (int indx = 0; indx < message.getKeysCount(); ++indx) {
+                way.addTag(message.getKeys(indx), message.getVals(indx));
+            }
+            if (message.hasInfo()) {
+                way.setInfo(message.getInfo());
+            }
+            if (way.matches(tagFilter)) {
+                callback.accept(way);
+            }
+        }
+    }
+
+    /**
+     * Walks relation cursor over the group's relations.
+     * @param group Primitive group of the current block.
+     * @param callback Callback to call for every relation.
+     */
+    public void visitRelations(final Osmformat.PrimitiveGroup group, final Consumer<RelationCursor> callback) {
+        for (Osmformat.Relation message : group.getRelationsList()) {
+            relation.start(message.getId(), message.getRolesSidCount());
+            long memberId = 0;
+            for (int indx = 0; indx < message.getRolesSidCount(); ++indx) {
+                memberId += message.getMemids(indx);
+                relation.setMember(indx, memberId, message.getRolesSid(indx),
+                        RelationMember.Type.get(message.getTypes(indx).getNumber()));
+            }
+            for (int indx = 0; indx < message.getKeysCount(); ++indx) {
+                relation.addTag(message.getKeys(indx), message.getVals(indx));
+            }
+            if (message.hasInfo()) {
+                relation.setInfo(message.getInfo());
+            }
+            if (relation.matches(tagFilter)) {
+                callback.accept(relation);
+            }
+        }
+    }
+}
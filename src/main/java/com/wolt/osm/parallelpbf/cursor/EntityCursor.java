@@ -0,0 +1,365 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.cursor;
+
+import com.wolt.osm.parallelpbf.entity.Info;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
+import com.wolt.osm.parallelpbf.filter.BlockTagFilter;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+import crosby.binary.Osmformat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Common part of the entity cursors: id, tags and info of the entity, the cursor is positioned at.
+ *
+ * Cursor is a mutable view, that is repositioned to the next entity of the block after
+ * callback returns, so it should not be kept. Use {@link NodeCursor#copy()}, {@link WayCursor#copy()},
+ * {@link RelationCursor#copy()} or materialize the entity to keep it.
+ *
+ * Tags are kept as string table indices and decoded only on request, decoded strings
+ * are cached by the block's string table.
+ */
+public abstract class EntityCursor {
+    /**
+     * Initial capacity of the tags arrays.
+     */
+    private static final int INITIAL_TAGS = 8;
+
+    /**
+     * String table of the current block.
+     */
+    private final BlockStringTable strings;
+
+    /**
+     * Entity id.
+     */
+    private long id;
+
+    /**
+     * Tag keys string indices.
+     */
+    private int[] keys = new int[INITIAL_TAGS];
+
+    /**
+     * Tag values string indices.
+     */
+    private int[] values = new int[INITIAL_TAGS];
+
+    /**
+     * Number of tags.
+     */
+    private int tagCount;
+
+    /**
+     * Marks that entity has info attached.
+     */
+    private boolean hasInfo;
+
+    /**
+     * Info user id.
+     */
+    private int uid;
+
+    /**
+     * Info user name string index.
+     */
+    private int userSid;
+
+    /**
+     * Info version.
+     */
+    private int version;
+
+    /**
+     * Info timestamp.
+     */
+    private long timestamp;
+
+    /**
+     * Info changeset.
+     */
+    private long changeset;
+
+    /**
+     * Info visibility flag.
+     */
+    private boolean visible;
+
+    /**
+     * Binds cursor to the string table.
+     * @param table String table, shared by all the cursors of the block.
+     */
+    EntityCursor(final BlockStringTable table) {
+        this.strings = table;
+    }
+
+    /**
+     * Copies position of other cursor to this one. Strings, referenced by the other cursor,
+     * are copied to this cursor's string table.
+     * @param other Cursor to copy.
+     */
+    void copyFrom(final EntityCursor other) {
+        id = other.id;
+        keys = new int[other.tagCount];
+        values = new int[other.tagCount];
+        for (int indx = 0; indx < other.tagCount; ++indx) {
+            keys[indx] = copyString(other, other.keys[indx]);
+            values[indx] = copyString(other, other.values[indx]);
+        }
+        tagCount = other.tagCount;
+        hasInfo = other.hasInfo;
+        uid = other.uid;
+        userSid = other.hasInfo ? copyString(other, other.userSid) : 0;
+        version = other.version;
+        timestamp = other.timestamp;
+        changeset = other.changeset;
+        visible = other.visible;
+    }
+
+    /**
+     * Copies string of other cursor's table to this cursor's table.
+     * @param other Cursor, that references the string.
+     * @param index Index of the string in the other cursor's table.
+     * @return index of the string in this cursor's table.
+     */
+    final int copyString(final EntityCursor other, final int index) {
+        return strings.append(other.strings, index);
+    }
+
+    /**
+     * Moves cursor to the new entity, clearing tags and info.
+     * @param idValue Entity id.
+     */
+    void start(final long idValue) {
+        id = idValue;
+        tagCount = 0;
+        hasInfo = false;
+    }
+
+    /**
+     * Adds tag to the entity.
+     * @param key Key string index.
+     * @param value Value string index.
+     */
+    void addTag(final int key, final int value) {
+        if (tagCount == keys.length) {
+            keys = Arrays.copyOf(keys, tagCount * 2);
+            values = Arrays.copyOf(values, tagCount * 2);
+        }
+        keys[tagCount] = key;
+        values[tagCount] = value;
+        ++tagCount;
+    }
+
+    /**
+     * Sets entity info.
+     * @param uidValue User id.
+     * @param userSidValue User name string index.
+     * @param versionValue Version.
+     * @param timestampValue Timestamp.
+     * @param changesetValue Changeset.
+     * @param visibleValue Visibility flag.
+     */
+    void setInfo(final int uidValue, final int userSidValue, final int versionValue,
+                 final long timestampValue, final long changesetValue, final boolean visibleValue) {
+        hasInfo = true;
+        uid = uidValue;
+        userSid = userSidValue;
+        version = versionValue;
+        timestamp = timestampValue;
+        changeset = changesetValue;
+        visible = visibleValue;
+    }
+
+    /**
+     * Sets entity info from the PBF message.
+     * @param info Info message.
+     */
+    void setInfo(final Osmformat.Info info) {
+        boolean isVisible = !info.hasVisible() || info.getVisible();
+        setInfo(info.getUid(), info.getUserSid(), info.getVersion(), info.getTimestamp(),
+                info.getChangeset(), isVisible);
+    }
+
+    /**
+     * Checks if entity's tags pass the tags filter.
+     * @param filter Tags filter of the block. May be null.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    boolean matches(final BlockTagFilter filter) {
+        if (filter == null) {
+            return true;
+        }
+        for (int indx = 0; indx < tagCount; ++indx) {
+            if (filter.matches(keys[indx], values[indx])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * String table of the block.
+     * @return string table.
+     */
+    public final BlockStringTable strings() {
+        return strings;
+    }
+
+    /**
+     * Entity id.
+     * @return id of the entity.
+     */
+    public final long id() {
+        return id;
+    }
+
+    /**
+     * Number of tags.
+     * @return number of entity's tags.
+     */
+    public final int tagCount() {
+        return tagCount;
+    }
+
+    /**
+     * String table index of the tag key.
+     * @param index Number of the tag.
+     * @return string index.
+     */
+    public final int tagKeyIndex(final int index) {
+        checkTag(index);
+        return keys[index];
+    }
+
+    /**
+     * String table index of the tag value.
+     * @param index Number of the tag.
+     * @return string index.
+     */
+    public final int tagValueIndex(final int index) {
+        checkTag(index);
+        return values[index];
+    }
+
+    /**
+     * Tag key.
+     * @param index Number of the tag.
+     * @return key string.
+     */
+    public final String tagKey(final int index) {
+        return strings.getString(tagKeyIndex(index));
+    }
+
+    /**
+     * Tag value.
+     * @param index Number of the tag.
+     * @return value string.
+     */
+    public final String tagValue(final int index) {
+        return strings.getString(tagValueIndex(index));
+    }
+
+    /**
+     * Checks if entity has info attached.
+     * @return true if info values are set.
+     */
+    public final boolean hasInfo() {
+        return hasInfo;
+    }
+
+    /**
+     * Info user id.
+     * @return user id.
+     */
+    public final int uid() {
+        return uid;
+    }
+
+    /**
+     * Info user name.
+     * @return user name.
+     */
+    public final String username() {
+        return strings.getString(userSid);
+    }
+
+    /**
+     * Info version.
+     * @return version.
+     */
+    public final int version() {
+        return version;
+    }
+
+    /**
+     * Info timestamp.
+     * @return timestamp.
+     */
+    public final long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Info changeset.
+     * @return changeset.
+     */
+    public final long changeset() {
+        return changeset;
+    }
+
+    /**
+     * Info visibility flag.
+     * @return true if entity is visible.
+     */
+    public final boolean visible() {
+        return visible;
+    }
+
+    /**
+     * Copies tags and info to the entity.
+     * @param entity Entity to fill.
+     * @param <T> Type of the entity.
+     * @return same entity.
+     */
+    final <T extends OsmEntity> T fill(final T entity) {
+        Map<String, String> tags = new HashMap<>();
+        for (int indx = 0; indx < tagCount; ++indx) {
+            tags.put(tagKey(indx), tagValue(indx));
+        }
+        entity.setTags(tags);
+        if (hasInfo) {
+            entity.setInfo(new Info(uid, username(), version, timestamp, changeset, visible));
+        }
+        return entity;
+    }
+
+    /**
+     * Validates tag index.
+     * @param index Number of the tag.
+     * @throws IndexOutOfBoundsException if there is no such tag.
+     */
+    private void checkTag(final int index) {
+        if (index < 0 || index >= tagCount) {
+            throw new IndexOutOfBoundsException("Tag " + index + " is out of " + tagCount);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.cursor;
+
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+
+/**
+ * Flyweight cursor over nodes, both plain and dense.
+ */
+public final class NodeCursor extends EntityCursor {
+    /**
+     * Node latitude.
+     */
+    private double lat;
+
+    /**
+     * Node longitude.
+     */
+    private double lon;
+
+    /**
+     * Binds cursor to the string table.
+     * @param table String table, shared by all the cursors of the block.
+     */
+    NodeCursor(final BlockStringTable table) {
+        super(table);
+    }
+
+    /**
+     * Moves cursor to the new node.
+     * @param idValue Node id.
+     * @param latValue Latitude.
+     * @param lonValue Longitude.
+     */
+    void start(final long idValue, final double latValue, final double lonValue) {
+        start(idValue);
+        lat = latValue;
+        lon = lonValue;
+    }
+
+    /**
+     * Node latitude.
+     * @return latitude in degrees.
+     */
+    public double lat() {
+        return lat;
+    }
+
+    /**
+     * Node longitude.
+     * @return longitude in degrees.
+     */
+    public double lon() {
+        return lon;
+    }
+
+    /**
+     * Copies cursor's current position, so it can be kept after callback returns.
+     * Copy gets own string table with the strings it references, so it doesn't depend
+     * on the block's string table and may be passed to other threads.
+     * @return detached cursor.
+     */
+    public NodeCursor copy() {
+        NodeCursor result = new NodeCursor(new BlockStringTable());
+        result.copyFrom(this);
+        result.lat = lat;
+        result.lon = lon;
+        return result;
+    }
+
+    /**
+     * Creates Node entity from the current position.
+     * @return new Node.
+     */
+    public Node materialize() {
+        return fill(new Node(id(), lat, lon));
+    }
+}
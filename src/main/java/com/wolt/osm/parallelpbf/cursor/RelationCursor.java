@@ -0,0 +1,170 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.cursor;
+
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.RelationMember;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+
+import java.util.Arrays;
+
+/**
+ * Flyweight cursor over relations. Member ids are delta decoded on positioning.
+ */
+public final class RelationCursor extends EntityCursor {
+    /**
+     * Initial capacity of the members arrays.
+     */
+    private static final int INITIAL_MEMBERS = 16;
+
+    /**
+     * Member ids.
+     */
+    private long[] memberIds = new long[INITIAL_MEMBERS];
+
+    /**
+     * Member roles string indices.
+     */
+    private int[] memberRoles = new int[INITIAL_MEMBERS];
+
+    /**
+     * Member types.
+     */
+    private RelationMember.Type[] memberTypes = new RelationMember.Type[INITIAL_MEMBERS];
+
+    /**
+     * Number of members.
+     */
+    private int memberCount;
+
+    /**
+     * Binds cursor to the string table.
+     * @param table String table, shared by all the cursors of the block.
+     */
+    RelationCursor(final BlockStringTable table) {
+        super(table);
+    }
+
+    /**
+     * Moves cursor to the new relation.
+     * @param idValue Relation id.
+     * @param count Number of members.
+     */
+    void start(final long idValue, final int count) {
+        start(idValue);
+        if (memberIds.length < count) {
+            memberIds = new long[count];
+            memberRoles = new int[count];
+            memberTypes = new RelationMember.Type[count];
+        }
+        memberCount = count;
+    }
+
+    /**
+     * Sets relation member.
+     * @param index Position of the member.
+     * @param memberId Member id.
+     * @param role Role string index.
+     * @param type Member type.
+     */
+    void setMember(final int index, final long memberId, final int role, final RelationMember.Type type) {
+        memberIds[index] = memberId;
+        memberRoles[index] = role;
+        memberTypes[index] = type;
+    }
+
+    /**
+     * Number of members.
+     * @return number of relation's members.
+     */
+    public int memberCount() {
+        return memberCount;
+    }
+
+    /**
+     * Member id.
+     * @param index Position of the member.
+     * @return id of the member.
+     */
+    public long memberId(final int index) {
+        checkMember(index);
+        return memberIds[index];
+    }
+
+    /**
+     * Member role.
+     * @param index Position of the member.
+     * @return role of the member.
+     */
+    public String memberRole(final int index) {
+        checkMember(index);
+        return strings().getString(memberRoles[index]);
+    }
+
+    /**
+     * Member type.
+     * @param index Position of the member.
+     * @return type of the member.
+     */
+    public RelationMember.Type memberType(final int index) {
+        checkMember(index);
+        return memberTypes[index];
+    }
+
+    /**
+     * Copies cursor's current position, so it can be kept after callback returns.
+     * Copy gets own string table with the strings it references, so it doesn't depend
+     * on the block's string table and may be passed to other threads.
+     * @return detached cursor.
+     */
+    public RelationCursor copy() {
+        RelationCursor result = new RelationCursor(new BlockStringTable());
+        result.copyFrom(this);
+        result.memberIds = Arrays.copyOf(memberIds, memberCount);
+        result.memberRoles = new int[memberCount];
+        for (int indx = 0; indx < memberCount; ++indx) {
+            result.memberRoles[indx] = result.copyString(this, memberRoles[indx]);
+        }
+        result.memberTypes = Arrays.copyOf(memberTypes, memberCount);
+        result.memberCount = memberCount;
+        return result;
+    }
+
+    /**
+     * Creates Relation entity from the current position.
+     * @return new Relation.
+     */
+    public Relation materialize() {
+        Relation relation = fill(new Relation(id()));
+        for (int indx = 0; indx < memberCount; ++indx) {
+            relation.getMembers().add(new RelationMember(memberIds[indx], memberRole(indx), memberTypes[indx]));
+        }
+        return relation;
+    }
+
+    /**
+     * Validates member index.
+     * @param index Position of the member.
+     * @throws IndexOutOfBoundsException if there is no such member.
+     */
+    private void checkMember(final int index) {
+        if (index < 0 || index >= memberCount) {
+            throw new IndexOutOfBoundsException("Member " + index + " is out of " + memberCount);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.cursor;
+
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+
+import java.util.Arrays;
+
+/**
+ * Flyweight cursor over ways. Node references are delta decoded on positioning.
+ */
+public final class WayCursor extends EntityCursor {
+    /**
+     * Initial capacity of the refs array.
+     */
+    private static final int INITIAL_REFS = 64;
+
+    /**
+     * Node references.
+     */
+    private long[] refs = new long[INITIAL_REFS];
+
+    /**
+     * Number of node references.
+     */
+    private int refCount;
+
+    /**
+     * Binds cursor to the string table.
+     * @param table String table, shared by all the cursors of the block.
+     */
+    WayCursor(final BlockStringTable table) {
+        super(table);
+    }
+
+    /**
+     * Moves cursor to the new way.
+     * @param idValue Way id.
+     * @param count Number of node references.
+     */
+    void start(final long idValue, final int count) {
+        start(idValue);
+        if (refs.length < count) {
+            refs = new long[count];
+        }
+        refCount = count;
+    }
+
+    /**
+     * Sets node reference.
+     * @param index Position of the reference.
+     * @param ref Node id.
+     */
+    void setRef(final int index, final long ref) {
+        refs[index] = ref;
+    }
+
+    /**
+     * Number of node references.
+     * @return number of way's nodes.
+     */
+    public int refCount() {
+        return refCount;
+    }
+
+    /**
+     * Node reference.
+     * @param index Position of the reference.
+     * @return node id.
+     */
+    public long refAt(final int index) {
+        if (index < 0 || index >= refCount) {
+            throw new IndexOutOfBoundsException("Ref " + index + " is out of " + refCount);
+        }
+        return refs[index];
+    }
+
+    /**
+     * Copies cursor's current position, so it can be kept after callback returns.
+     * Copy gets own string table with the strings it references, so it doesn't depend
+     * on the block's string table and may be passed to other threads.
+     * @return detached cursor.
+     */
+    public WayCursor copy() {
+        WayCursor result = new WayCursor(new BlockStringTable());
+        result.copyFrom(this);
+        result.refs = Arrays.copyOf(refs, refCount);
+        result.refCount = refCount;
+        return result;
+    }
+
+    /**
+     * Creates Way entity from the current position.
+     * @return new Way.
+     */
+    public Way materialize() {
+        Way way = fill(new Way(id()));
+        for (int indx = 0; indx < refCount; ++indx) {
+            way.getNodes().add(refs[indx]);
+        }
+        return way;
+    }
+}
@@ -29,6 +29,16 @@ public final class OsmHeaderEncoder extends OsmEncoder {
      * @return array of bytes with binary representation of the header.
      */
     public static byte[] encodeHeader(final BoundBox boundBox) {
+        return encodeHeader(boundBox, false);
+    }
+
+    /**
+     * Generates OSM PBF header and add (optional) bounding box to it.
+     * @param boundBox Bounding box to include into header. May be null.
+     * @param sorted Marks file with Sort.Type_then_ID optional feature.
+     * @return array of bytes with binary representation of the header.
+     */
+    public static byte[] encodeHeader(final BoundBox boundBox, final boolean sorted) {
         Osmformat.HeaderBlock.Builder blob = Osmformat.HeaderBlock.newBuilder();
 
         if (boundBox != null) {
@@ -37,6 +47,9 @@ public final class OsmHeaderEncoder extends OsmEncoder {
 
         blob.addRequiredFeatures(Header.FEATURE_OSM_SCHEMA);
         blob.addRequiredFeatures(Header.FEATURE_DENSE_NODES);
+        if (sorted) {
+            blob.addOptionalFeatures(Header.FEATURE_SORT_TYPE_THEN_ID);
+        }
 
         blob.setWritingprogram("parallelpbf");
 
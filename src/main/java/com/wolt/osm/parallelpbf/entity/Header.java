@@ -44,6 +44,11 @@ public class Header {
      */
     public static final String FEATURE_HISTORICAL_INFORMATION = "HistoricalInformation";
 
+    /**
+     * "Sort.Type_then_ID" — Optional feature, entities are sorted by type (nodes, ways, relations) and then by id.
+     */
+    public static final String FEATURE_SORT_TYPE_THEN_ID = "Sort.Type_then_ID";
+
     /**
      * List of features, required to read and process PBF data.
      */
@@ -0,0 +1,40 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Multipolygon or boundary relation with polygons, assembled from its member ways.
+ *
+ * @see Relation
+ * @see Polygon
+ */
+@Data
+public final class MultipolygonGeometry {
+    /**
+     * The relation.
+     */
+    private final Relation relation;
+
+    /**
+     * Polygons of the relation.
+     */
+    private final List<Polygon> polygons;
+}
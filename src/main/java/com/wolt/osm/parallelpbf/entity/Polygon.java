@@ -0,0 +1,48 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.entity;
+
+import lombok.Data;
+
+/**
+ * Polygon with holes.
+ *
+ * Rings are closed, so the first and the last points are the same. Coordinates are kept
+ * in primitive arrays, in degrees. Outer ring is counterclockwise and holes are clockwise.
+ */
+@Data
+public final class Polygon {
+    /**
+     * Latitudes of the outer ring.
+     */
+    private final double[] lats;
+
+    /**
+     * Longitudes of the outer ring.
+     */
+    private final double[] lons;
+
+    /**
+     * Latitudes of the holes, one array per hole.
+     */
+    private final double[][] holeLats;
+
+    /**
+     * Longitudes of the holes, one array per hole.
+     */
+    private final double[][] holeLons;
+}
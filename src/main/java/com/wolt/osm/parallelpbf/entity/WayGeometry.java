@@ -0,0 +1,58 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.entity;
+
+import lombok.Data;
+
+/**
+ * Way with coordinates of its nodes.
+ *
+ * Coordinates are kept in primitive arrays, in the same order as way nodes.
+ * Nodes without known location have NaN coordinates.
+ *
+ * @see Way
+ */
+@Data
+public final class WayGeometry {
+    /**
+     * The way.
+     */
+    private final Way way;
+
+    /**
+     * Latitudes of the way nodes, in degrees.
+     */
+    private final double[] lats;
+
+    /**
+     * Longitudes of the way nodes, in degrees.
+     */
+    private final double[] lons;
+
+    /**
+     * Checks if locations of all the way nodes are known.
+     * @return false if some coordinates are NaN.
+     */
+    public boolean isComplete() {
+        for (double lat : lats) {
+            if (Double.isNaN(lat)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.filter;
+
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+
+/**
+ * Bounding box, converted to the coordinates grid of a single block. Nodes are checked
+ * against raw grid coordinates, as they are accumulated from the deltas, so nodes out of the box
+ * are rejected before any objects or strings are created.
+ */
+public final class BlockBoxFilter {
+    /**
+     * Number of nanodegrees in a degree.
+     */
+    private static final double NANODEGREES = 1e9;
+
+    /**
+     * Smallest latitude of the box on the block grid.
+     */
+    private final long minLat;
+
+    /**
+     * Biggest latitude of the box on the block grid.
+     */
+    private final long maxLat;
+
+    /**
+     * Smallest longitude of the box on the block grid.
+     */
+    private final long minLon;
+
+    /**
+     * Biggest longitude of the box on the block grid.
+     */
+    private final long maxLon;
+
+    /**
+     * Converts bounding box to the block grid.
+     * @param box Bounding box in degrees.
+     * @param granularity Grid granularity of the block, in nanodegrees.
+     * @param latOffset Latitude offset of the block grid, in nanodegrees.
+     * @param lonOffset Longitude offset of the block grid, in nanodegrees.
+     */
+    public BlockBoxFilter(final BoundBox box, final int granularity, final long latOffset, final long lonOffset) {
+        this.minLat = lowest(box.getTop(), granularity, latOffset);
+        this.maxLat = highest(box.getBottom(), granularity, latOffset);
+        this.minLon = lowest(box.getLeft(), granularity, lonOffset);
+        this.maxLon = highest(box.getRight(), granularity, lonOffset);
+    }
+
+    /**
+     * Finds the smallest grid value, that is not less than the coordinate.
+     * @param degrees Coordinate value.
+     * @param granularity Grid granularity.
+     * @param offset Grid offset.
+     * @return Grid value.
+     */
+    private static long lowest(final double degrees, final int granularity, final long offset) {
+        long nano = Math.round(degrees * NANODEGREES) - offset;
+        return -Math.floorDiv(-nano, (long) granularity);
+    }
+
+    /**
+     * Finds the biggest grid value, that is not bigger than the coordinate.
+     * @param degrees Coordinate value.
+     * @param granularity Grid granularity.
+     * @param offset Grid offset.
+     * @return Grid value.
+     */
+    private static long highest(final double degrees, final int granularity, final long offset) {
+        long nano = Math.round(degrees * NANODEGREES) - offset;
+        return Math.floorDiv(nano, (long) granularity);
+    }
+
+    /**
+     * Checks a node position.
+     * @param lat Node latitude on the block grid.
+     * @param lon Node longitude on the block grid.
+     * @return true if the node is within the box, borders included.
+     */
+    public boolean matches(final long lat, final long lon) {
+        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+}
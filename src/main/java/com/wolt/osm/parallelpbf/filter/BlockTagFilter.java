@@ -0,0 +1,96 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.filter;
+
+import java.util.BitSet;
+
+/**
+ * {@link TagFilter}, resolved against a single block's string table. Checks are
+ * done on string table indices only, so entities can be rejected before any strings are decoded.
+ */
+public final class BlockTagFilter {
+    /**
+     * Keys, that match with any value, by key string index.
+     */
+    private final BitSet anyValue = new BitSet();
+
+    /**
+     * Allowed values, by key string index. Null for keys without value clauses.
+     */
+    private final BitSet[] values;
+
+    /**
+     * Marks that at least one tag of the block can match the filter.
+     */
+    private boolean canMatch = false;
+
+    /**
+     * Creates filter, that doesn't match anything.
+     * @param size Size of the block's string table.
+     */
+    BlockTagFilter(final int size) {
+        this.values = new BitSet[size];
+    }
+
+    /**
+     * Allows key with any value.
+     * @param key Key string index.
+     */
+    void allowKey(final int key) {
+        anyValue.set(key);
+        canMatch = true;
+    }
+
+    /**
+     * Allows specific tag.
+     * @param key Key string index.
+     * @param value Value string index.
+     */
+    void allowTag(final int key, final int value) {
+        if (values[key] == null) {
+            values[key] = new BitSet();
+        }
+        values[key].set(value);
+        canMatch = true;
+    }
+
+    /**
+     * Checks if any entity of the block can match the filter.
+     * @return false if the block's string table doesn't have any of the filter's tags.
+     */
+    public boolean canMatch() {
+        return canMatch;
+    }
+
+    /**
+     * Checks a single tag.
+     * @param key Key string index.
+     * @param value Value string index.
+     * @return true if tag matches the filter.
+     */
+    public boolean matches(final int key, final int value) {
+        if (key < 0 || key >= values.length) {
+            return false;
+        }
+        if (anyValue.get(key)) {
+            return true;
+        }
+        BitSet allowed = values[key];
+        return allowed != null && allowed.get(value);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.filter;
+
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Tags predicate. Entity matches the filter, if at least one of its tags matches any of the filter clauses.
+ * Clause is either a key with any value, like highway=*, or a key with a set of values,
+ * like amenity in (restaurant, cafe).
+ *
+ * Filter is not matched against strings directly. Instead, for each block it is compiled to the
+ * {@link BlockTagFilter}, that checks string table indices.
+ *
+ * Filter should not be modified after it is passed to the parser.
+ */
+public final class TagFilter {
+    /**
+     * Single filter clause.
+     */
+    private static final class Clause {
+        /**
+         * Tag key.
+         */
+        private final String name;
+
+        /**
+         * UTF-8 bytes of the key.
+         */
+        private final byte[] key;
+
+        /**
+         * UTF-8 bytes of the allowed values, null for any value.
+         */
+        private final List<byte[]> values;
+
+        /**
+         * Creates clause.
+         * @param keyValue Tag key.
+         * @param valuesValue Allowed values or null for any value.
+         */
+        Clause(final String keyValue, final String[] valuesValue) {
+            this.name = keyValue;
+            this.key = keyValue.getBytes(StandardCharsets.UTF_8);
+            if (valuesValue == null) {
+                this.values = null;
+            } else {
+                this.values = new ArrayList<>(valuesValue.length);
+                for (String value : valuesValue) {
+                    this.values.add(value.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    /**
+     * Filter clauses.
+     */
+    private final List<Clause> clauses = new ArrayList<>();
+
+    /**
+     * Adds clause, that matches the key with any value.
+     * @param key Tag key.
+     * @return this filter.
+     */
+    public TagFilter key(final String key) {
+        clauses.add(new Clause(key, null));
+        return this;
+    }
+
+    /**
+     * Adds clause, that matches the key with one of the values.
+     * @param key Tag key.
+     * @param values Allowed values.
+     * @return this filter.
+     */
+    public TagFilter keyValues(final String key, final String... values) {
+        clauses.add(new Clause(key, values));
+        return this;
+    }
+
+    /**
+     * Checks if a block may have matching entities, given the keys the block may contain.
+     * Used to skip blocks by their summary before reading them.
+     * @param mayContainKey Predicate, that returns false for keys, that are definitely not in the block.
+     * @return false if none of the filter keys can be in the block.
+     */
+    public boolean mayMatch(final Predicate<String> mayContainKey) {
+        for (Clause clause : clauses) {
+            if (mayContainKey.test(clause.name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks decoded tags against the filter, for the entities, that are already decoded.
+     * @param tags Entity tags.
+     * @return true if at least one tag matches some clause.
+     */
+    public boolean matches(final Map<String, String> tags) {
+        for (Clause clause : clauses) {
+            String value = tags.get(clause.name);
+            if (value == null) {
+                continue;
+            }
+            if (clause.values == null) {
+                return true;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            for (byte[] allowed : clause.values) {
+                if (Arrays.equals(allowed, bytes)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves filter against the block's string table.
+     * @param strings String table of the block.
+     * @return Compiled filter.
+     */
+    public BlockTagFilter compile(final BlockStringTable strings) {
+        BlockTagFilter result = new BlockTagFilter(strings.size());
+        for (Clause clause : clauses) {
+            int[] keys = indicesOf(strings, clause.key);
+            if (keys.length == 0) {
+                continue;
+            }
+            if (clause.values == null) {
+                for (int key : keys) {
+                    result.allowKey(key);
+                }
+            } else {
+                for (byte[] value : clause.values) {
+                    for (int valueIndex : indicesOf(strings, value)) {
+                        for (int key : keys) {
+                            result.allowTag(key, valueIndex);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds all the occurrences of the string in the table.
+     * @param strings String table of the block.
+     * @param value UTF-8 bytes of the string.
+     * @return indices of the string.
+     */
+    private static int[] indicesOf(final BlockStringTable strings, final byte[] value) {
+        int[] result = new int[0];
+        for (int indx = 0; indx < strings.size(); ++indx) {
+            if (strings.equalsAt(indx, value)) {
+                result = Arrays.copyOf(result, result.length + 1);
+                result[result.length - 1] = indx;
+            }
+        }
+        return result;
+    }
+}
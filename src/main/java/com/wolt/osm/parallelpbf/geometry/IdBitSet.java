@@ -0,0 +1,155 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Set of entity ids, stored as a paged bitmap.
+ *
+ * Negative ids are kept in separate pages, so both editor files and planet dumps are supported.
+ * Pages of the bitmap are allocated on the first id, so memory usage follows id ranges actually used:
+ * a set of all way ids of the planet takes about 160MB. Set is not thread safe for writes,
+ * but may be read concurrently, once filled.
+ */
+public final class IdBitSet {
+    /**
+     * Number of bits, addressed by the page.
+     */
+    private static final int PAGE_BITS = 16;
+
+    /**
+     * Number of bits, addressed by the word.
+     */
+    private static final int WORD_BITS = 6;
+
+    /**
+     * Mask of the word bit number.
+     */
+    private static final long WORD_MASK = (1L << WORD_BITS) - 1;
+
+    /**
+     * Mask of the word number in the page.
+     */
+    private static final long PAGE_MASK = (1L << PAGE_BITS) - 1;
+
+    /**
+     * Number of the words in the page.
+     */
+    private static final int PAGE_WORDS = 1 << (PAGE_BITS - WORD_BITS);
+
+    /**
+     * Maximum number of pages.
+     */
+    private static final long MAX_PAGES = Integer.MAX_VALUE - 8;
+
+    /**
+     * Bitmap pages of non negative ids, null for the pages without ids.
+     */
+    private long[][] positive = new long[0][];
+
+    /**
+     * Bitmap pages of negative ids, indexed by inverted id.
+     */
+    private long[][] negative = new long[0][];
+
+    /**
+     * Number of ids in the set.
+     */
+    private long size = 0;
+
+    /**
+     * Adds id to the set.
+     * @param id Entity id.
+     * @throws IllegalArgumentException if id is out of supported range.
+     */
+    public void add(final long id) {
+        if (id >= 0) {
+            positive = add(positive, id);
+        } else {
+            negative = add(negative, ~id);
+        }
+    }
+
+    /**
+     * Sets bit in the pages.
+     * @param pages Bitmap pages.
+     * @param index Non negative bit index.
+     * @return Bitmap pages, grown if needed.
+     * @throws IllegalArgumentException if index is out of supported range.
+     */
+    private long[][] add(final long[][] pages, final long index) {
+        if (index >>> PAGE_BITS >= MAX_PAGES) {
+            throw new IllegalArgumentException("Id bit index " + index + " is out of supported range");
+        }
+        int page = (int) (index >>> PAGE_BITS);
+        long[][] result = pages;
+        if (page >= result.length) {
+            result = Arrays.copyOf(result, (int) Math.min(MAX_PAGES, Math.max(page + 1, result.length * 2L)));
+        }
+        long[] words = result[page];
+        if (words == null) {
+            words = new long[PAGE_WORDS];
+            result[page] = words;
+        }
+        int word = (int) ((index & PAGE_MASK) >>> WORD_BITS);
+        long bit = 1L << (index & WORD_MASK);
+        if ((words[word] & bit) == 0) {
+            words[word] |= bit;
+            ++size;
+        }
+        return result;
+    }
+
+    /**
+     * Checks if id is in the set.
+     * @param id Entity id.
+     * @return true if id was added to the set.
+     */
+    public boolean contains(final long id) {
+        if (id >= 0) {
+            return contains(positive, id);
+        }
+        return contains(negative, ~id);
+    }
+
+    /**
+     * Checks bit in the pages.
+     * @param pages Bitmap pages.
+     * @param index Non negative bit index.
+     * @return true if bit is set.
+     */
+    private static boolean contains(final long[][] pages, final long index) {
+        long page = index >>> PAGE_BITS;
+        if (page >= pages.length) {
+            return false;
+        }
+        long[] words = pages[(int) page];
+        if (words == null) {
+            return false;
+        }
+        return (words[(int) ((index & PAGE_MASK) >>> WORD_BITS)] & (1L << (index & WORD_MASK))) != 0;
+    }
+
+    /**
+     * Number of ids in the set.
+     * @return number of ids.
+     */
+    public long size() {
+        return size;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.geometry;
+
+import com.wolt.osm.parallelpbf.entity.Polygon;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Assembles polygons from the ways of a multipolygon relation.
+ *
+ * Ways are joined into closed rings by their end nodes. Ring roles are taken from the geometry,
+ * not from the member roles, which are often wrong: ring, nested into an even number of other rings,
+ * is outer and ring, nested into an odd number of rings, is a hole of its closest container.
+ * Rings, that can't be closed or have nodes without location, are dropped.
+ *
+ * Assembler has no state, so relations can be assembled concurrently.
+ */
+public final class RingAssembler {
+    /**
+     * Minimal number of nodes in a closed ring.
+     */
+    private static final int MIN_RING_SIZE = 4;
+
+    /**
+     * Utility class.
+     */
+    private RingAssembler() {
+    }
+
+    /**
+     * Closed ring with resolved coordinates.
+     */
+    private static final class Ring {
+        /**
+         * Sorted node ids of the ring.
+         */
+        private final long[] sortedIds;
+
+        /**
+         * Node ids of the ring, first is the same as last.
+         */
+        private final long[] ids;
+
+        /**
+         * Latitudes in 1e-7 degree units.
+         */
+        private final int[] lats;
+
+        /**
+         * Longitudes in 1e-7 degree units.
+         */
+        private final int[] lons;
+
+        /**
+         * Minimal latitude.
+         */
+        private int minLat = Integer.MAX_VALUE;
+
+        /**
+         * Minimal longitude.
+         */
+        private int minLon = Integer.MAX_VALUE;
+
+        /**
+         * Maximal latitude.
+         */
+        private int maxLat = Integer.MIN_VALUE;
+
+        /**
+         * Maximal longitude.
+         */
+        private int maxLon = Integer.MIN_VALUE;
+
+        /**
+         * Rings, containing this one.
+         */
+        private final List<Ring> containers = new ArrayList<>();
+
+        /**
+         * Creates ring.
+         * @param nodes Node ids of the ring.
+         * @param latitudes Latitudes of the nodes.
+         * @param longitudes Longitudes of the nodes.
+         */
+        Ring(final long[] nodes, final int[] latitudes, final int[] longitudes) {
+            this.ids = nodes;
+            this.lats = latitudes;
+            this.lons = longitudes;
+            this.sortedIds = nodes.clone();
+            Arrays.sort(sortedIds);
+            for (int indx = 0; indx < lats.length; ++indx) {
+                minLat = Math.min(minLat, lats[indx]);
+                minLon = Math.min(minLon, lons[indx]);
+                maxLat = Math.max(maxLat, lats[indx]);
+                maxLon = Math.max(maxLon, lons[indx]);
+            }
+        }
+
+        /**
+         * Nesting depth of the ring.
+         * @return number of containing rings.
+         */
+        int depth() {
+            return containers.size();
+        }
+
+        /**
+         * Checks if ring is a hole, nested into an odd number of rings.
+         * @return true for holes.
+         */
+        boolean isHole() {
+            return depth() % 2 != 0;
+        }
+
+        /**
+         * Checks if bounding box of the other ring is within this ring's one.
+         * @param other Other ring.
+         * @return true if box of the other ring is within this ring's box.
+         */
+        boolean covers(final Ring other) {
+            return minLat <= other.minLat && maxLat >= other.maxLat
+                    && minLon <= other.minLon && maxLon >= other.maxLon;
+        }
+
+        /**
+         * Checks if the point is inside the ring, using ray casting.
+         * @param lat Point latitude.
+         * @param lon Point longitude.
+         * @return true if the point is inside.
+         */
+        boolean contains(final int lat, final int lon) {
+            boolean inside = false;
+            for (int indx = 1; indx < lats.length; ++indx) {
+                int prev = indx - 1;
+                if (lats[indx] > lat != lats[prev] > lat) {
+                    double crossing = lons[prev] + ((double) lons[indx] - lons[prev])
+                            * ((double) lat - lats[prev]) / ((double) lats[indx] - lats[prev]);
+                    if (lon < crossing) {
+                        inside = !inside;
+                    }
+                }
+            }
+            return inside;
+        }
+
+        /**
+         * Checks if the other ring is inside this one. Test point is taken from the nodes
+         * of the other ring, that are not shared with this one, so touching rings are handled.
+         * @param other Other ring.
+         * @return true if the other ring is inside.
+         */
+        boolean contains(final Ring other) {
+            if (!covers(other)) {
+                return false;
+            }
+            for (int indx = 0; indx < other.ids.length; ++indx) {
+                if (Arrays.binarySearch(sortedIds, other.ids[indx]) < 0) {
+                    return contains(other.lats[indx], other.lons[indx]);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks ring orientation.
+         * @return true if ring is counterclockwise.
+         */
+        boolean isCounterClockwise() {
+            double area = 0;
+            for (int indx = 1; indx < lats.length; ++indx) {
+                area += (double) lons[indx - 1] * lats[indx] - (double) lons[indx] * lats[indx - 1];
+            }
+            return area > 0;
+        }
+
+        /**
+         * Converts coordinates to degrees.
+         * @param values Coordinates in 1e-7 degree units.
+         * @param reverse Reverse points order.
+         * @return Coordinates in degrees.
+         */
+        static double[] toDegrees(final int[] values, final boolean reverse) {
+            double[] result = new double[values.length];
+            for (int indx = 0; indx < values.length; ++indx) {
+                int source = reverse ? values.length - 1 - indx : indx;
+                result[indx] = NodeLocationStore.toDegrees(values[source]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Assembles polygons from the ways.
+     * @param ways Node ids of the ways, in any order and direction.
+     * @param locations Node locations.
+     * @return Polygons, empty if no ring can be closed.
+     */
+    public static List<Polygon> assemble(final List<long[]> ways, final NodeLocationStore locations) {
+        List<Ring> rings = new ArrayList<>();
+        for (long[] nodes : joinRings(ways)) {
+            resolve(nodes, locations).ifPresent(rings::add);
+        }
+        for (Ring ring : rings) {
+            for (Ring container : rings) {
+                if (container != ring && container.contains(ring)) {
+                    ring.containers.add(container);
+                }
+            }
+        }
+        Map<Ring, List<Ring>> holes = new HashMap<>();
+        for (Ring ring : rings) {
+            if (ring.isHole()) {
+                Ring parent = ring.containers.get(0);
+                for (Ring container : ring.containers) {
+                    if (container.depth() > parent.depth()) {
+                        parent = container;
+                    }
+                }
+                holes.computeIfAbsent(parent, key -> new ArrayList<>()).add(ring);
+            }
+        }
+        List<Polygon> result = new ArrayList<>();
+        for (Ring ring : rings) {
+            if (!ring.isHole()) {
+                List<Ring> inner = holes.getOrDefault(ring, new ArrayList<>());
+                double[][] holeLats = new double[inner.size()][];
+                double[][] holeLons = new double[inner.size()][];
+                for (int indx = 0; indx < inner.size(); ++indx) {
+                    boolean reverse = inner.get(indx).isCounterClockwise();
+                    holeLats[indx] = Ring.toDegrees(inner.get(indx).lats, reverse);
+                    holeLons[indx] = Ring.toDegrees(inner.get(indx).lons, reverse);
+                }
+                boolean reverse = !ring.isCounterClockwise();
+                result.add(new Polygon(Ring.toDegrees(ring.lats, reverse), Ring.toDegrees(ring.lons, reverse),
+                        holeLats, holeLons));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves ring coordinates.
+     * @param nodes Node ids of the ring.
+     * @param locations Node locations.
+     * @return Ring or empty, if some node has no location.
+     */
+    private static Optional<Ring> resolve(final long[] nodes, final NodeLocationStore locations) {
+        int[] lats = new int[nodes.length];
+        int[] lons = new int[nodes.length];
+        for (int indx = 0; indx < nodes.length; ++indx) {
+            long location = locations.get(nodes[indx]);
+            if (location == NodeLocationStore.MISSING) {
+                return Optional.empty();
+            }
+            lats[indx] = NodeLocationStore.lat(location);
+            lons[indx] = NodeLocationStore.lon(location);
+        }
+        return Optional.of(new Ring(nodes, lats, lons));
+    }
+
+    /**
+     * Finds the first unused way.
+     * @param candidates Indices of the ways or null.
+     * @param used Used ways flags.
+     * @return Way index or -1 if there is no unused way.
+     */
+    private static int unused(final List<Integer> candidates, final boolean[] used) {
+        if (candidates != null) {
+            for (int candidate : candidates) {
+                if (!used[candidate]) {
+                    return candidate;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Joins ways into closed rings by their end nodes.
+     * @param ways Node ids of the ways.
+     * @return Node ids of the closed rings.
+     */
+    static List<long[]> joinRings(final List<long[]> ways) {
+        Map<Long, List<Integer>> ends = new HashMap<>();
+        for (int indx = 0; indx < ways.size(); ++indx) {
+            long[] way = ways.get(indx);
+            if (way.length > 1) {
+                ends.computeIfAbsent(way[0], key -> new ArrayList<>()).add(indx);
+                ends.computeIfAbsent(way[way.length - 1], key -> new ArrayList<>()).add(indx);
+            }
+        }
+        boolean[] used = new boolean[ways.size()];
+        List<long[]> rings = new ArrayList<>();
+        for (int start = 0; start < ways.size(); ++start) {
+            long[] first = ways.get(start);
+            if (used[start] || first.length < 2) {
+                continue;
+            }
+            used[start] = true;
+            long[] ring = first.clone();
+            int size = ring.length;
+            while (ring[0] != ring[size - 1]) {
+                long end = ring[size - 1];
+                int next = unused(ends.get(end), used);
+                if (next < 0) {
+                    break;
+                }
+                used[next] = true;
+                long[] way = ways.get(next);
+                if (size + way.length - 1 > ring.length) {
+                    ring = Arrays.copyOf(ring, Math.max(ring.length * 2, size + way.length - 1));
+                }
+                if (way[0] == end) {
+                    System.arraycopy(way, 1, ring, size, way.length - 1);
+                } else {
+                    for (int pos = 1; pos < way.length; ++pos) {
+                        ring[size + pos - 1] = way[way.length - 1 - pos];
+                    }
+                }
+                size += way.length - 1;
+            }
+            if (ring[0] == ring[size - 1] && size >= MIN_RING_SIZE) {
+                rings.add(Arrays.copyOf(ring, size));
+            }
+        }
+        return rings;
+    }
+}
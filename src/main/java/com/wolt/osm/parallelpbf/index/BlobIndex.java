@@ -0,0 +1,237 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.wolt.osm.parallelpbf.blob.BlobInformation;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Index of OSM PBF file blocks.
+ *
+ * Keeps offset, size and type of each block together with the ranges of entities ids in the block.
+ * Index is bound to the specific version of the file by file size and modification time and is
+ * normally stored next to the file, see {@link #sidecarFor(Path)}.
+ *
+ * Index file format is a sequence of protobuf varints: magic, format version, file size,
+ * file modification time, number of blocks and then for each block header size, data size,
+ * type code and ranges. Block offsets are not stored, as blocks follow each other without gaps.
+ */
+@Slf4j
+public final class BlobIndex {
+    /**
+     * Index file magic value, 'PBFI'.
+     */
+    private static final int MAGIC = 0x50424649;
+
+    /**
+     * Current index format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Sidecar file extension.
+     */
+    private static final String EXTENSION = ".idx";
+
+    /**
+     * Type code of OSMHeader block.
+     */
+    private static final int TYPE_HEADER = 0;
+
+    /**
+     * Type code of OSMData block.
+     */
+    private static final int TYPE_DATA = 1;
+
+    /**
+     * Type code of other blocks, followed by type name.
+     */
+    private static final int TYPE_OTHER = 2;
+
+    /**
+     * Flag, marking presence of nodes range.
+     */
+    private static final int FLAG_NODES = 1;
+
+    /**
+     * Flag, marking presence of ways range.
+     */
+    private static final int FLAG_WAYS = 2;
+
+    /**
+     * Flag, marking presence of relations range.
+     */
+    private static final int FLAG_RELATIONS = 4;
+
+    /**
+     * Size of the indexed file.
+     */
+    @Getter
+    private final long fileSize;
+
+    /**
+     * Modification time of the indexed file, in milliseconds.
+     */
+    @Getter
+    private final long fileModified;
+
+    /**
+     * Blocks of the file, ordered by their offset.
+     */
+    @Getter
+    private final List<BlobIndexEntry> entries;
+
+    /**
+     * Constructs index.
+     * @param size Size of the indexed file.
+     * @param modified Modification time of the indexed file.
+     * @param blocks Blocks of the file, ordered by their offset.
+     */
+    public BlobIndex(final long size, final long modified, final List<BlobIndexEntry> blocks) {
+        this.fileSize = size;
+        this.fileModified = modified;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(blocks));
+    }
+
+    /**
+     * Default location of the index for the OSM PBF file.
+     * @param pbf OSM PBF file.
+     * @return Path to the index file.
+     */
+    public static Path sidecarFor(final Path pbf) {
+        return Paths.get(pbf.toString() + EXTENSION);
+    }
+
+    /**
+     * Checks if index matches file.
+     * @param pbf OSM PBF file.
+     * @return true if file size and modification time are same, as indexed.
+     * @throws IOException if file attributes can't be read.
+     */
+    public boolean matches(final Path pbf) throws IOException {
+        return Files.size(pbf) == fileSize && Files.getLastModifiedTime(pbf).toMillis() == fileModified;
+    }
+
+    /**
+     * Stores index to the file.
+     * @param indexFile File to write.
+     * @throws IOException on write error.
+     */
+    public void save(final Path indexFile) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(indexFile))) {
+            CodedOutputStream output = CodedOutputStream.newInstance(stream);
+            output.writeFixed32NoTag(MAGIC);
+            output.writeUInt32NoTag(VERSION);
+            output.writeUInt64NoTag(fileSize);
+            output.writeInt64NoTag(fileModified);
+            output.writeUInt32NoTag(entries.size());
+            for (BlobIndexEntry entry : entries) {
+                output.writeUInt32NoTag(entry.getHeaderSize());
+                output.writeUInt32NoTag(entry.getDataSize());
+                if (BlobInformation.TYPE_OSM_HEADER.equals(entry.getType())) {
+                    output.writeUInt32NoTag(TYPE_HEADER);
+                } else if (BlobInformation.TYPE_OSM_DATA.equals(entry.getType())) {
+                    output.writeUInt32NoTag(TYPE_DATA);
+                } else {
+                    output.writeUInt32NoTag(TYPE_OTHER);
+                    output.writeStringNoTag(entry.getType());
+                }
+                int flags = (entry.getNodes() != null ? FLAG_NODES : 0)
+                        | (entry.getWays() != null ? FLAG_WAYS : 0)
+                        | (entry.getRelations() != null ? FLAG_RELATIONS : 0);
+                output.writeUInt32NoTag(flags);
+                IdRange.write(output, entry.getNodes());
+                IdRange.write(output, entry.getWays());
+                IdRange.write(output, entry.getRelations());
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Reads index from the file and checks, that it matches OSM PBF file.
+     * @param indexFile Index file to read.
+     * @param pbf Indexed OSM PBF file.
+     * @return Index or empty, if index is missing, broken or doesn't match the file.
+     */
+    public static Optional<BlobIndex> load(final Path indexFile, final Path pbf) {
+        if (!Files.exists(indexFile)) {
+            return Optional.empty();
+        }
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(indexFile))) {
+            CodedInputStream input = CodedInputStream.newInstance(stream);
+            input.setSizeLimit(Integer.MAX_VALUE);
+            if (input.readFixed32() != MAGIC || input.readUInt32() != VERSION) {
+                log.warn("Unsupported index file {}", indexFile);
+                return Optional.empty();
+            }
+            long size = input.readUInt64();
+            long modified = input.readInt64();
+            int count = input.readUInt32();
+            List<BlobIndexEntry> entries = new ArrayList<>(count);
+            long offset = 0;
+            for (int indx = 0; indx < count; ++indx) {
+                int headerSize = input.readUInt32();
+                int dataSize = input.readUInt32();
+                String type;
+                switch (input.readUInt32()) {
+                    case TYPE_HEADER:
+                        type = BlobInformation.TYPE_OSM_HEADER;
+                        break;
+                    case TYPE_DATA:
+                        type = BlobInformation.TYPE_OSM_DATA;
+                        break;
+                    default:
+                        type = input.readString();
+                }
+                int flags = input.readUInt32();
+                IdRange nodes = IdRange.read(input, (flags & FLAG_NODES) != 0);
+                IdRange ways = IdRange.read(input, (flags & FLAG_WAYS) != 0);
+                IdRange relations = IdRange.read(input, (flags & FLAG_RELATIONS) != 0);
+                BlobIndexEntry entry = new BlobIndexEntry(offset, headerSize, dataSize, type, nodes, ways, relations);
+                entries.add(entry);
+                offset = entry.getEndOffset();
+            }
+            BlobIndex index = new BlobIndex(size, modified, entries);
+            if (offset != size || !index.matches(pbf)) {
+                log.info("Index {} doesn't match file {}", indexFile, pbf);
+                return Optional.empty();
+            }
+            return Optional.of(index);
+        } catch (IOException e) {
+            log.warn("Unable to read index {}: {}", indexFile, e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import com.wolt.osm.parallelpbf.blob.BlobInformation;
+import com.wolt.osm.parallelpbf.blob.MappedBlobReader;
+import com.wolt.osm.parallelpbf.io.BlobScheduler;
+import com.wolt.osm.parallelpbf.io.OSMReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds {@link BlobIndex} for the OSM PBF file.
+ *
+ * File is read block by block and OSMData blocks are decoded in parallel to
+ * collect id ranges of the entities.
+ */
+@Slf4j
+public final class BlobIndexBuilder {
+    /**
+     * Utility class.
+     */
+    private BlobIndexBuilder() {
+    }
+
+    /**
+     * Block being indexed.
+     */
+    private static final class PendingBlock {
+        /**
+         * Offset of the block.
+         */
+        private final long offset;
+
+        /**
+         * BlobHeader size.
+         */
+        private final int headerSize;
+
+        /**
+         * Size and type of the blob.
+         */
+        private final BlobInformation information;
+
+        /**
+         * Range collecting reader, null for non OSMData blocks.
+         */
+        private final BlobRangeReader reader;
+
+        /**
+         * Running reader.
+         */
+        private final Future<?> task;
+
+        /**
+         * Constructs pending block.
+         * @param blockOffset Offset of the block.
+         * @param blockHeaderSize BlobHeader size.
+         * @param blockInformation Size and type of the blob.
+         * @param rangeReader Range collecting reader, may be null.
+         * @param readerTask Running reader, may be null.
+         */
+        PendingBlock(final long blockOffset, final int blockHeaderSize, final BlobInformation blockInformation,
+                     final BlobRangeReader rangeReader, final Future<?> readerTask) {
+            this.offset = blockOffset;
+            this.headerSize = blockHeaderSize;
+            this.information = blockInformation;
+            this.reader = rangeReader;
+            this.task = readerTask;
+        }
+
+        /**
+         * Waits for reader completion and makes index entry.
+         * @return Index entry for the block.
+         * @throws ExecutionException if range collection failed.
+         * @throws InterruptedException if interrupted.
+         */
+        BlobIndexEntry toEntry() throws ExecutionException, InterruptedException {
+            if (task == null) {
+                return new BlobIndexEntry(offset, headerSize, information.getSize(), information.getType(),
+                        null, null, null);
+            }
+            task.get();
+            return new BlobIndexEntry(offset, headerSize, information.getSize(), information.getType(),
+                    reader.getNodes(), reader.getWays(), reader.getRelations());
+        }
+    }
+
+    /**
+     * Indexes the OSM PBF file.
+     * @param pbf File to index.
+     * @param threads Number of threads to use for blocks decoding.
+     * @return Index of the file.
+     * @throws IOException if file can't be read or is broken.
+     */
+    public static BlobIndex build(final Path pbf, final int threads) throws IOException {
+        long modified = Files.getLastModifiedTime(pbf).toMillis();
+        MappedBlobReader reader = MappedBlobReader.open(pbf);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, OSMReader.threadFactory());
+        BlobScheduler tasksLimiter = new BlobScheduler(Long.MAX_VALUE, threads * 2);
+        List<PendingBlock> blocks = new ArrayList<>();
+        try {
+            while (true) {
+                long offset = reader.getPosition();
+                Optional<Integer> headerSize = reader.readBlobHeaderLength();
+                if (!headerSize.isPresent()) {
+                    break;
+                }
+                BlobInformation information = reader.readBlobHeader(headerSize.get())
+                        .orElseThrow(() -> new IOException("Invalid BlobHeader at " + offset));
+                ByteBuffer blob = reader.readBlobData(information.getSize())
+                        .orElseThrow(() -> new IOException("Truncated Blob at " + offset));
+                if (BlobInformation.TYPE_OSM_DATA.equals(information.getType())) {
+                    BlobRangeReader rangeReader = new BlobRangeReader(blob, tasksLimiter);
+                    if (!tasksLimiter.admit(rangeReader.getWeight())) {
+                        throw new IOException("Failed to index " + pbf);
+                    }
+                    blocks.add(new PendingBlock(offset, headerSize.get(), information, rangeReader,
+                            executor.submit(rangeReader)));
+                } else {
+                    blocks.add(new PendingBlock(offset, headerSize.get(), information, null, null));
+                }
+            }
+            if (reader.getPosition() != reader.getSize()) {
+                throw new IOException("Unexpected data at " + reader.getPosition());
+            }
+            List<BlobIndexEntry> entries = new ArrayList<>(blocks.size());
+            for (PendingBlock block : blocks) {
+                entries.add(block.toEntry());
+            }
+            log.debug("Indexed {} blocks of {}", entries.size(), pbf);
+            return new BlobIndex(reader.getSize(), modified, entries);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing " + pbf);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to index " + pbf, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Indexes the OSM PBF file and stores index next to it, so
+     * {@link com.wolt.osm.parallelpbf.ParallelBinaryParser} will pick it up.
+     * @param pbf File to index.
+     * @param threads Number of threads to use for blocks decoding.
+     * @return Index of the file.
+     * @throws IOException if file can't be read or index can't be written.
+     */
+    public static BlobIndex buildSidecar(final Path pbf, final int threads) throws IOException {
+        BlobIndex index = build(pbf, threads);
+        index.save(BlobIndex.sidecarFor(pbf));
+        return index;
+    }
+}
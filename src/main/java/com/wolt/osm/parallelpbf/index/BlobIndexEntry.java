@@ -0,0 +1,82 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import lombok.Data;
+
+/**
+ * Location and content description of a single block of the OSM PBF file.
+ */
+@Data
+public final class BlobIndexEntry {
+    /**
+     * Size of a int, prepending the HeaderBlock.
+     */
+    private static final int INT_SIZE = 4;
+
+    /**
+     * Offset of the block (it's header length field) in the file.
+     */
+    private final long offset;
+
+    /**
+     * Size of the BlobHeader.
+     */
+    private final int headerSize;
+
+    /**
+     * Size of the Blob.
+     */
+    private final int dataSize;
+
+    /**
+     * Block type.
+     */
+    private final String type;
+
+    /**
+     * Range of node ids in the block or null if there are no nodes in the block.
+     */
+    private final IdRange nodes;
+
+    /**
+     * Range of way ids in the block or null if there are no ways in the block.
+     */
+    private final IdRange ways;
+
+    /**
+     * Range of relation ids in the block or null if there are no relations in the block.
+     */
+    private final IdRange relations;
+
+    /**
+     * Offset of the Blob data in the file.
+     * @return offset in bytes.
+     */
+    public long getDataOffset() {
+        return offset + INT_SIZE + headerSize;
+    }
+
+    /**
+     * Offset of the next block in the file.
+     * @return offset in bytes.
+     */
+    public long getEndOffset() {
+        return getDataOffset() + dataSize;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import com.google.protobuf.CodedInputStream;
+import com.wolt.osm.parallelpbf.io.BlobTracker;
+import com.wolt.osm.parallelpbf.io.OSMReader;
+import crosby.binary.Osmformat;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects ranges of entities ids from OSMData block.
+ *
+ * Only ids are decoded, all the other entities data is ignored.
+ * Ranges are available after reader completion.
+ */
+@Slf4j
+final class BlobRangeReader extends OSMReader {
+    /**
+     * Min and max node ids.
+     */
+    private final long[] nodes = {Long.MAX_VALUE, Long.MIN_VALUE};
+
+    /**
+     * Min and max way ids.
+     */
+    private final long[] ways = {Long.MAX_VALUE, Long.MIN_VALUE};
+
+    /**
+     * Min and max relation ids.
+     */
+    private final long[] relations = {Long.MAX_VALUE, Long.MIN_VALUE};
+
+    /**
+     * Constructs reader.
+     * @param blob OSMData blob to read.
+     * @param tasksLimiter task limiting scheduler.
+     */
+    BlobRangeReader(final ByteBuffer blob, final BlobTracker tasksLimiter) {
+        super(blob, tasksLimiter);
+    }
+
+    /**
+     * Extends range with the id.
+     * @param range Range to update.
+     * @param id Id to include.
+     */
+    private static void include(final long[] range, final long id) {
+        range[0] = Math.min(range[0], id);
+        range[1] = Math.max(range[1], id);
+    }
+
+    /**
+     * Converts collected values to the range.
+     * @param range Collected range values.
+     * @return Range or null if nothing was collected.
+     */
+    private static IdRange toRange(final long[] range) {
+        if (range[0] > range[1]) {
+            return null;
+        }
+        return new IdRange(range[0], range[1]);
+    }
+
+    @Override
+    protected void read(final byte[] message, final int length) {
+        Osmformat.PrimitiveBlock primitives;
+        try {
+            primitives = Osmformat.PrimitiveBlock.parseFrom(CodedInputStream.newInstance(message, 0, length));
+        } catch (IOException e) {
+            log.error("Error parsing OSMData block: {}", e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+        for (Osmformat.PrimitiveGroup group : primitives.getPrimitivegroupList()) {
+            group.getNodesList().forEach(node -> include(nodes, node.getId()));
+            long id = 0;
+            for (Long delta : group.getDense().getIdList()) {
+                id += delta;
+                include(nodes, id);
+            }
+            group.getWaysList().forEach(way -> include(ways, way.getId()));
+            group.getRelationsList().forEach(relation -> include(relations, relation.getId()));
+        }
+    }
+
+    /**
+     * Range of node ids in the block.
+     * @return Range or null if there are no nodes.
+     */
+    IdRange getNodes() {
+        return toRange(nodes);
+    }
+
+    /**
+     * Range of way ids in the block.
+     * @return Range or null if there are no ways.
+     */
+    IdRange getWays() {
+        return toRange(ways);
+    }
+
+    /**
+     * Range of relation ids in the block.
+     * @return Range or null if there are no relations.
+     */
+    IdRange getRelations() {
+        return toRange(relations);
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.index;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Summary of a single OSMData block, stored in the BlobHeader.indexdata field, so readers
+ * can check if block is relevant without reading and decompressing it.
+ *
+ * Summary keeps id ranges of nodes, ways and relations, bounding box of the nodes and
+ * a Bloom filter of the tag keys of all block entities.
+ *
+ * Encoding is a sequence of protobuf varints: magic, format version, presence flags, id ranges as
+ * minimum and distance to maximum, bounding box as minimal latitude and longitude and distances to the
+ * maximal ones in 1e-7 degree units and the Bloom filter as bytes. Summaries of other formats
+ * or versions are ignored by readers.
+ */
+public final class BlockSummary {
+    /**
+     * Summary magic value, 'PBFS'.
+     */
+    private static final int MAGIC = 0x50424653;
+
+    /**
+     * Current summary format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Flag, marking presence of nodes range.
+     */
+    private static final int FLAG_NODES = 1;
+
+    /**
+     * Flag, marking presence of ways range.
+     */
+    private static final int FLAG_WAYS = 2;
+
+    /**
+     * Flag, marking presence of relations range.
+     */
+    private static final int FLAG_RELATIONS = 4;
+
+    /**
+     * Flag, marking presence of nodes bounding box.
+     */
+    private static final int FLAG_BBOX = 8;
+
+    /**
+     * Flag, marking presence of tag keys filter.
+     */
+    private static final int FLAG_KEYS = 16;
+
+    /**
+     * Coordinates are stored in 1e-7 degrees, same as written by the encoders.
+     */
+    private static final double SCALE = 1e7;
+
+    /**
+     * Index of minimal latitude in the bbox array.
+     */
+    private static final int MIN_LAT = 0;
+
+    /**
+     * Index of minimal longitude in the bbox array.
+     */
+    private static final int MIN_LON = 1;
+
+    /**
+     * Index of maximal latitude in the bbox array.
+     */
+    private static final int MAX_LAT = 2;
+
+    /**
+     * Index of maximal longitude in the bbox array.
+     */
+    private static final int MAX_LON = 3;
+
+    /**
+     * Mask of the unsigned byte value.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * Number of Bloom filter bits per distinct key.
+     */
+    private static final int BITS_PER_KEY = 10;
+
+    /**
+     * Smallest Bloom filter size in bytes.
+     */
+    private static final int MIN_FILTER_BYTES = 8;
+
+    /**
+     * Biggest Bloom filter size in bytes.
+     */
+    private static final int MAX_FILTER_BYTES = 256;
+
+    /**
+     * Number of Bloom filter hash functions.
+     */
+    private static final int HASHES = 3;
+
+    /**
+     * FNV-1a 64 bit offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a 64 bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Range of node ids in the block or null if there are no nodes in the block.
+     */
+    @Getter
+    private final IdRange nodes;
+
+    /**
+     * Range of way ids in the block or null if there are no ways in the block.
+     */
+    @Getter
+    private final IdRange ways;
+
+    /**
+     * Range of relation ids in the block or null if there are no relations in the block.
+     */
+    @Getter
+    private final IdRange relations;
+
+    /**
+     * Nodes bounding box as min lat, min lon, max lat, max lon in 1e-7 degrees, null if unknown.
+     */
+    private final long[] bbox;
+
+    /**
+     * Tag keys Bloom filter, null if unknown.
+     */
+    private final byte[] keys;
+
+    /**
+     * Creates summary.
+     * @param nodesRange Range of node ids or null.
+     * @param waysRange Range of way ids or null.
+     * @param relationsRange Range of relation ids or null.
+     * @param box Nodes bounding box in 1e-7 degrees or null.
+     * @param keysFilter Tag keys Bloom filter or null.
+     */
+    private BlockSummary(final IdRange nodesRange, final IdRange waysRange, final IdRange relationsRange,
+                         final long[] box, final byte[] keysFilter) {
+        this.nodes = nodesRange;
+        this.ways = waysRange;
+        this.relations = relationsRange;
+        this.bbox = box;
+        this.keys = keysFilter;
+    }
+
+    /**
+     * Creates summary, that knows only entity id ranges of the block, for example from the block index.
+     * Such summary may intersect any bounding box and may contain any tag key.
+     * @param nodesRange Range of node ids or null if there are no nodes.
+     * @param waysRange Range of way ids or null if there are no ways.
+     * @param relationsRange Range of relation ids or null if there are no relations.
+     * @return Block summary.
+     */
+    public static BlockSummary of(final IdRange nodesRange, final IdRange waysRange, final IdRange relationsRange) {
+        return new BlockSummary(nodesRange, waysRange, relationsRange, null, null);
+    }
+
+    /**
+     * Hashes tag key.
+     * @param key Tag key.
+     * @return FNV-1a hash of the key UTF-8 bytes.
+     */
+    private static long hash(final String key) {
+        long result = FNV_OFFSET;
+        for (byte value : key.getBytes(StandardCharsets.UTF_8)) {
+            result ^= value & BYTE_MASK;
+            result *= FNV_PRIME;
+        }
+        return result;
+    }
+
+    /**
+     * Bloom filter bit of the key hash.
+     * @param hash Key hash.
+     * @param index Hash function index.
+     * @param bits Size of the filter in bits.
+     * @return Bit index.
+     */
+    private static int bit(final long hash, final int index, final int bits) {
+        int combined = (int) hash + index * (int) (hash >>> Integer.SIZE);
+        return (combined & Integer.MAX_VALUE) % bits;
+    }
+
+    /**
+     * Nodes bounding box.
+     * @return Bounding box of the nodes in the block or empty, if unknown.
+     */
+    public Optional<BoundBox> getBoundBox() {
+        if (bbox == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new BoundBox(bbox[MIN_LON] / SCALE, bbox[MIN_LAT] / SCALE,
+                bbox[MAX_LON] / SCALE, bbox[MAX_LAT] / SCALE));
+    }
+
+    /**
+     * Checks if block nodes may be within bounding box. Check is conservative, so
+     * nodes exactly on the box border are never missed.
+     * @param box Bounding box to check.
+     * @return false if no node of the block is within box, true otherwise.
+     */
+    public boolean intersects(final BoundBox box) {
+        if (bbox == null) {
+            return true;
+        }
+        return Math.floor(box.getTop() * SCALE) - 1 <= bbox[MAX_LAT]
+                && Math.ceil(box.getBottom() * SCALE) + 1 >= bbox[MIN_LAT]
+                && Math.floor(box.getLeft() * SCALE) - 1 <= bbox[MAX_LON]
+                && Math.ceil(box.getRight() * SCALE) + 1 >= bbox[MIN_LON];
+    }
+
+    /**
+     * Checks if some block entity may have the tag key. False positives are possible.
+     * @param key Tag key.
+     * @return false if no entity of the block has the key, true otherwise.
+     */
+    public boolean mayContainKey(final String key) {
+        if (keys == null) {
+            return true;
+        }
+        long hash = hash(key);
+        int bits = keys.length * Byte.SIZE;
+        for (int indx = 0; indx < HASHES; ++indx) {
+            int position = bit(hash, indx, bits);
+            if ((keys[position / Byte.SIZE] & (1 << (position % Byte.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes summary for the BlobHeader.indexdata field.
+     * @return Encoded summary.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        CodedOutputStream output = CodedOutputStream.newInstance(stream);
+        try {
+            output.writeFixed32NoTag(MAGIC);
+            output.writeUInt32NoTag(VERSION);
+            int flags = (nodes != null ? FLAG_NODES : 0)
+                    | (ways != null ? FLAG_WAYS : 0)
+                    | (relations != null ? FLAG_RELATIONS : 0)
+                    | (bbox != null ? FLAG_BBOX : 0)
+                    | (keys != null ? FLAG_KEYS : 0);
+            output.writeUInt32NoTag(flags);
+            IdRange.write(output, nodes);
+            IdRange.write(output, ways);
+            IdRange.write(output, relations);
+            if (bbox != null) {
+                output.writeSInt64NoTag(bbox[MIN_LAT]);
+                output.writeSInt64NoTag(bbox[MIN_LON]);
+                output.writeUInt64NoTag(bbox[MAX_LAT] - bbox[MIN_LAT]);
+                output.writeUInt64NoTag(bbox[MAX_LON] - bbox[MIN_LON]);
+            }
+            if (keys != null) {
+                output.writeByteArrayNoTag(keys);
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Decodes summary from the BlobHeader.indexdata field.
+     * @param indexdata Content of the field.
+     * @return Summary or empty, if field is empty, has unsupported format or is broken.
+     */
+    public static Optional<BlockSummary> parse(final ByteString indexdata) {
+        if (indexdata == null || indexdata.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            CodedInputStream input = indexdata.newCodedInput();
+            if (input.readFixed32() != MAGIC || input.readUInt32() != VERSION) {
+                return Optional.empty();
+            }
+            int flags = input.readUInt32();
+            IdRange nodesRange = IdRange.read(input, (flags & FLAG_NODES) != 0);
+            IdRange waysRange = IdRange.read(input, (flags & FLAG_WAYS) != 0);
+            IdRange relationsRange = IdRange.read(input, (flags & FLAG_RELATIONS) != 0);
+            long[] box = null;
+            if ((flags & FLAG_BBOX) != 0) {
+                long minLat = input.readSInt64();
+                long minLon = input.readSInt64();
+                box = new long[]{minLat, minLon, minLat + input.readUInt64(), minLon + input.readUInt64()};
+            }
+            byte[] keysFilter = null;
+            if ((flags & FLAG_KEYS) != 0) {
+                keysFilter = input.readByteArray();
+                if (keysFilter.length == 0) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(new BlockSummary(nodesRange, waysRange, relationsRange, box, keysFilter));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Collects summary of the entities, written to the block.
+     */
+    public static final class Builder {
+        /**
+         * Range of node ids, null if there are no nodes.
+         */
+        private IdRange nodes;
+
+        /**
+         * Range of way ids, null if there are no ways.
+         */
+        private IdRange ways;
+
+        /**
+         * Range of relation ids, null if there are no relations.
+         */
+        private IdRange relations;
+
+        /**
+         * Nodes bounding box, null if there are no nodes.
+         */
+        private long[] bbox;
+
+        /**
+         * Distinct tag keys.
+         */
+        private final Set<String> keys = new HashSet<>();
+
+        /**
+         * Extends range with id.
+         * @param range Current range or null.
+         * @param id Entity id.
+         * @return Extended range.
+         */
+        private static IdRange extend(final IdRange range, final long id) {
+            if (range == null) {
+                return new IdRange(id, id);
+            }
+            if (range.contains(id)) {
+                return range;
+            }
+            return new IdRange(Math.min(range.getMin(), id), Math.max(range.getMax(), id));
+        }
+
+        /**
+         * Adds entity to the summary.
+         * @param entity Node, way or relation. Other entities are ignored.
+         * @return this builder.
+         */
+        public Builder add(final OsmEntity entity) {
+            if (entity instanceof Node) {
+                Node node = (Node) entity;
+                nodes = extend(nodes, node.getId());
+                long lat = Math.round(node.getLat() * SCALE);
+                long lon = Math.round(node.getLon() * SCALE);
+                if (bbox == null) {
+                    bbox = new long[]{lat, lon, lat, lon};
+                } else {
+                    bbox[MIN_LAT] = Math.min(bbox[MIN_LAT], lat);
+                    bbox[MIN_LON] = Math.min(bbox[MIN_LON], lon);
+                    bbox[MAX_LAT] = Math.max(bbox[MAX_LAT], lat);
+                    bbox[MAX_LON] = Math.max(bbox[MAX_LON], lon);
+                }
+            } else if (entity instanceof Way) {
+                ways = extend(ways, entity.getId());
+            } else if (entity instanceof Relation) {
+                relations = extend(relations, entity.getId());
+            } else {
+                return this;
+            }
+            if (entity.getTags() != null) {
+                keys.addAll(entity.getTags().keySet());
+            }
+            return this;
+        }
+
+        /**
+         * Builds summary of the added entities.
+         * @return Block summary.
+         */
+        public BlockSummary build() {
+            int bytes = MIN_FILTER_BYTES;
+            while (bytes < MAX_FILTER_BYTES && bytes * Byte.SIZE < keys.size() * BITS_PER_KEY) {
+                bytes *= 2;
+            }
+            byte[] filter = new byte[bytes];
+            int bits = bytes * Byte.SIZE;
+            for (String key : keys) {
+                long hash = hash(key);
+                for (int indx = 0; indx < HASHES; ++indx) {
+                    int position = bit(hash, indx, bits);
+                    filter[position / Byte.SIZE] |= 1 << (position % Byte.SIZE);
+                }
+            }
+            return new BlockSummary(nodes, ways, relations, bbox == null ? null : bbox.clone(), filter);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.index;
+
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.io.OSMReader;
+import com.wolt.osm.parallelpbf.parser.PrimitiveBlockDecoder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * OSMData block, decoded into entities, sorted by id.
+ *
+ * Block is decoded synchronously by the {@link #run()} call and then
+ * entities can be looked up by their ids.
+ */
+@Slf4j
+final class DecodedBlock extends OSMReader {
+    /**
+     * Nodes of the block.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Ways of the block.
+     */
+    private final List<Way> ways = new ArrayList<>();
+
+    /**
+     * Relations of the block.
+     */
+    private final List<Relation> relations = new ArrayList<>();
+
+    /**
+     * Size of the uncompressed block.
+     */
+    @Getter
+    private int size;
+
+    /**
+     * Constructs block.
+     * @param blob OSMData blob to decode.
+     */
+    DecodedBlock(final ByteBuffer blob) {
+        super(blob, (weight, error) -> { });
+    }
+
+    @Override
+    protected void read(final byte[] message, final int length) {
+        size = length;
+        PrimitiveBlockDecoder decoder = new PrimitiveBlockDecoder(false);
+        try {
+            if (!decoder.reset(message, length, true, true, true, false)) {
+                return;
+            }
+        } catch (IOException e) {
+            log.error("Error parsing OSMData block: {}", e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+        for (int group = 0; group < decoder.groupCount(); ++group) {
+            decoder.decodeNodes(group, nodes::add);
+            decoder.decodeWays(group, ways::add);
+            decoder.decodeRelations(group, relations::add);
+        }
+        Comparator<OsmEntity> byId = Comparator.comparingLong(OsmEntity::getId);
+        nodes.sort(byId);
+        ways.sort(byId);
+        relations.sort(byId);
+    }
+
+    /**
+     * Binary searches entity by id.
+     * @param entities Entities, sorted by id.
+     * @param id Id to look for.
+     * @param <T> Entity type.
+     * @return Entity or empty if there is no entity with that id.
+     */
+    private static <T extends OsmEntity> Optional<T> find(final List<T> entities, final long id) {
+        int low = 0;
+        int high = entities.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = entities.get(middle).getId();
+            if (value < id) {
+                low = middle + 1;
+            } else if (value > id) {
+                high = middle - 1;
+            } else {
+                return Optional.of(entities.get(middle));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds node by id.
+     * @param id Node id.
+     * @return Node or empty if block doesn't have it.
+     */
+    Optional<Node> findNode(final long id) {
+        return find(nodes, id);
+    }
+
+    /**
+     * Finds way by id.
+     * @param id Way id.
+     * @return Way or empty if block doesn't have it.
+     */
+    Optional<Way> findWay(final long id) {
+        return find(ways, id);
+    }
+
+    /**
+     * Finds relation by id.
+     * @param id Relation id.
+     * @return Relation or empty if block doesn't have it.
+     */
+    Optional<Relation> findRelation(final long id) {
+        return find(relations, id);
+    }
+}
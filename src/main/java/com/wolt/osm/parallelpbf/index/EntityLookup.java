@@ -0,0 +1,310 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.index;
+
+import com.wolt.osm.parallelpbf.blob.MappedBlobReader;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Random access to the entities of the OSM PBF file by their ids.
+ *
+ * File should be sorted by type then id, so id ranges of the blocks do not overlap. Block, that may have
+ * the requested id, is found with a binary search over the id ranges of the {@link BlobIndex} and only that block
+ * is read and decoded. Recently decoded blocks are kept in the LRU cache, limited by the total uncompressed size
+ * of the cached blocks, so lookups of the neighbouring ids do not decode the same block again.
+ *
+ * Lookup is thread safe. Returned entities are shared with the cache and must not be modified.
+ */
+@Slf4j
+public final class EntityLookup {
+    /**
+     * Initial capacity of the cache map.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Load factor of the cache map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Id ranges of the blocks with entities of a single type, ordered by id.
+     */
+    private static final class BlockRanges {
+        /**
+         * Smallest ids of the blocks.
+         */
+        private final long[] min;
+
+        /**
+         * Biggest ids of the blocks.
+         */
+        private final long[] max;
+
+        /**
+         * Numbers of the blocks in the index.
+         */
+        private final int[] blocks;
+
+        /**
+         * Collects and checks id ranges.
+         * @param entries Index entries.
+         * @param type Id range of the entity type.
+         * @throws IllegalArgumentException if ranges overlap.
+         */
+        BlockRanges(final List<BlobIndexEntry> entries, final Function<BlobIndexEntry, IdRange> type) {
+            List<Integer> found = new ArrayList<>();
+            for (int indx = 0; indx < entries.size(); ++indx) {
+                if (type.apply(entries.get(indx)) != null) {
+                    found.add(indx);
+                }
+            }
+            found.sort(Comparator.comparingLong(indx -> type.apply(entries.get(indx)).getMin()));
+            min = new long[found.size()];
+            max = new long[found.size()];
+            blocks = new int[found.size()];
+            for (int indx = 0; indx < found.size(); ++indx) {
+                IdRange range = type.apply(entries.get(found.get(indx)));
+                if (indx > 0 && range.getMin() <= max[indx - 1]) {
+                    throw new IllegalArgumentException("Id ranges of the blocks overlap at " + range.getMin()
+                            + ", file should be sorted by type then id");
+                }
+                min[indx] = range.getMin();
+                max[indx] = range.getMax();
+                blocks[indx] = found.get(indx);
+            }
+        }
+
+        /**
+         * Finds the block, which id range includes the id.
+         * @param id Entity id.
+         * @return Number of the block in the index or -1 if there is no such block.
+         */
+        int find(final long id) {
+            int low = 0;
+            int high = min.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (min[middle] <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (low == 0 || max[low - 1] < id) {
+                return -1;
+            }
+            return blocks[low - 1];
+        }
+    }
+
+    /**
+     * Memory mapped file.
+     */
+    private final MappedBlobReader file;
+
+    /**
+     * File blocks.
+     */
+    private final List<BlobIndexEntry> entries;
+
+    /**
+     * Blocks with nodes.
+     */
+    private final BlockRanges nodes;
+
+    /**
+     * Blocks with ways.
+     */
+    private final BlockRanges ways;
+
+    /**
+     * Blocks with relations.
+     */
+    private final BlockRanges relations;
+
+    /**
+     * Maximum uncompressed size of the cached blocks.
+     */
+    private final long capacity;
+
+    /**
+     * Decoded blocks by their number in the index, in access order.
+     */
+    private final LinkedHashMap<Integer, DecodedBlock> cache =
+            new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /**
+     * Uncompressed size of the cached blocks. Guarded by the cache.
+     */
+    private long cachedSize = 0;
+
+    /**
+     * Number of lookups, served from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of lookups, that had to decode a block.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs lookup over the file and its index.
+     * @param mapped Memory mapped file.
+     * @param index Index of the same file.
+     * @param cacheCapacity Maximum uncompressed size of the cached blocks in bytes.
+     *                      The last decoded block is always cached.
+     * @throws IllegalArgumentException if file is not sorted.
+     */
+    public EntityLookup(final MappedBlobReader mapped, final BlobIndex index, final long cacheCapacity) {
+        this.file = mapped;
+        this.entries = index.getEntries();
+        this.nodes = new BlockRanges(entries, BlobIndexEntry::getNodes);
+        this.ways = new BlockRanges(entries, BlobIndexEntry::getWays);
+        this.relations = new BlockRanges(entries, BlobIndexEntry::getRelations);
+        this.capacity = cacheCapacity;
+    }
+
+    /**
+     * Opens lookup over the file. Index is loaded from the file next to the OSM PBF file,
+     * see {@link BlobIndex#sidecarFor(Path)}, or built in memory if it is missing or outdated.
+     * @param pbf OSM PBF file, sorted by type then id.
+     * @param cacheCapacity Maximum uncompressed size of the cached blocks in bytes.
+     * @return Lookup over the file.
+     * @throws IOException if file can't be read or indexed.
+     * @throws IllegalArgumentException if file is not sorted.
+     */
+    public static EntityLookup open(final Path pbf, final long cacheCapacity) throws IOException {
+        MappedBlobReader mapped = MappedBlobReader.open(pbf);
+        Optional<BlobIndex> index = BlobIndex.load(BlobIndex.sidecarFor(pbf), pbf);
+        if (index.isPresent()) {
+            return new EntityLookup(mapped, index.get(), cacheCapacity);
+        }
+        log.debug("No index for {}, building it", pbf);
+        return new EntityLookup(mapped, BlobIndexBuilder.build(pbf, Runtime.getRuntime().availableProcessors()),
+                cacheCapacity);
+    }
+
+    /**
+     * Finds node by id.
+     * @param id Node id.
+     * @return Node or empty if file doesn't have it.
+     * @throws RuntimeException if block can't be read or decoded.
+     */
+    public Optional<Node> getNode(final long id) {
+        return findBlock(nodes, id).flatMap(block -> block.findNode(id));
+    }
+
+    /**
+     * Finds way by id.
+     * @param id Way id.
+     * @return Way or empty if file doesn't have it.
+     * @throws RuntimeException if block can't be read or decoded.
+     */
+    public Optional<Way> getWay(final long id) {
+        return findBlock(ways, id).flatMap(block -> block.findWay(id));
+    }
+
+    /**
+     * Finds relation by id.
+     * @param id Relation id.
+     * @return Relation or empty if file doesn't have it.
+     * @throws RuntimeException if block can't be read or decoded.
+     */
+    public Optional<Relation> getRelation(final long id) {
+        return findBlock(relations, id).flatMap(block -> block.findRelation(id));
+    }
+
+    /**
+     * Number of lookups, served by the cached blocks.
+     * @return cache hits count.
+     */
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups, that had to read and decode a block.
+     * @return cache misses count.
+     */
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Finds and decodes the block, that may have the entity.
+     * @param ranges Blocks of the entity type.
+     * @param id Entity id.
+     * @return Decoded block or empty if no block may have the entity.
+     */
+    private Optional<DecodedBlock> findBlock(final BlockRanges ranges, final long id) {
+        int block = ranges.find(id);
+        if (block < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(load(block));
+    }
+
+    /**
+     * Takes decoded block from the cache or decodes it and puts to the cache,
+     * evicting least recently used blocks.
+     * @param block Number of the block in the index.
+     * @return Decoded block.
+     */
+    private DecodedBlock load(final int block) {
+        synchronized (cache) {
+            DecodedBlock cached = cache.get(block);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        BlobIndexEntry entry = entries.get(block);
+        ByteBuffer blob = file.slice(entry.getDataOffset(), entry.getDataSize())
+                .orElseThrow(() -> new RuntimeException("Block at " + entry.getOffset() + " is out of the file"));
+        DecodedBlock decoded = new DecodedBlock(blob);
+        decoded.run();
+        synchronized (cache) {
+            if (cache.put(block, decoded) == null) {
+                cachedSize += decoded.getSize();
+            }
+            Iterator<DecodedBlock> eldest = cache.values().iterator();
+            while (cachedSize > capacity && cache.size() > 1) {
+                cachedSize -= eldest.next().getSize();
+                eldest.remove();
+            }
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import lombok.Data;
+
+import java.io.IOException;
+
+/**
+ * Inclusive range of entity ids.
+ */
+@Data
+public final class IdRange {
+    /**
+     * Smallest id in the range.
+     */
+    private final long min;
+
+    /**
+     * Biggest id in the range.
+     */
+    private final long max;
+
+    /**
+     * Checks if id belongs to the range.
+     * @param id Entity id to check.
+     * @return true if id is within range.
+     */
+    public boolean contains(final long id) {
+        return id >= min && id <= max;
+    }
+
+    /**
+     * Checks if ranges have at least one common id.
+     * @param other Range to check.
+     * @return true if ranges overlap.
+     */
+    public boolean intersects(final IdRange other) {
+        return min <= other.getMax() && other.getMin() <= max;
+    }
+
+    /**
+     * Writes id range to the stream as zigzag encoded minimum and unsigned length.
+     * @param output Output stream.
+     * @param range Range to write, may be null.
+     * @throws IOException on write error.
+     */
+    static void write(final CodedOutputStream output, final IdRange range) throws IOException {
+        if (range != null) {
+            output.writeSInt64NoTag(range.getMin());
+            output.writeUInt64NoTag(range.getMax() - range.getMin());
+        }
+    }
+
+    /**
+     * Reads id range, written by {@link #write(CodedOutputStream, IdRange)}, from the stream.
+     * @param input Input stream.
+     * @param present Flag, telling if range is stored.
+     * @return Range value or null.
+     * @throws IOException on read error.
+     */
+    static IdRange read(final CodedInputStream input, final boolean present) throws IOException {
+        if (!present) {
+            return null;
+        }
+        long min = input.readSInt64();
+        return new IdRange(min, min + input.readUInt64());
+    }
+}
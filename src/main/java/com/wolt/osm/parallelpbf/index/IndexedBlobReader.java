@@ -0,0 +1,159 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import com.wolt.osm.parallelpbf.blob.BlobInformation;
+import com.wolt.osm.parallelpbf.blob.MappedBlobReader;
+import com.wolt.osm.parallelpbf.blob.SeekableBlobSource;
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Memory mapped file reader, that takes blocks locations from the index
+ * instead of scanning the file.
+ *
+ * BlobHeader is still parsed from the mapped memory to pick up its index data,
+ * but data of the skipped blocks is not touched at all. OSMData blocks without index data
+ * get a {@link BlockSummary} of their indexed id ranges, so parser can skip blocks
+ * without requested entity types or ids, before reading them.
+ */
+public final class IndexedBlobReader implements SeekableBlobSource {
+    /**
+     * Memory mapped file.
+     */
+    private final MappedBlobReader file;
+
+    /**
+     * File blocks.
+     */
+    private final List<BlobIndexEntry> entries;
+
+    /**
+     * Number of the next block to read.
+     */
+    private int next = 0;
+
+    /**
+     * Block, which header was read last.
+     */
+    private BlobIndexEntry current;
+
+    /**
+     * Constructs reader.
+     * @param mapped Memory mapped file.
+     * @param index Index of the same file.
+     */
+    public IndexedBlobReader(final MappedBlobReader mapped, final BlobIndex index) {
+        this.file = mapped;
+        this.entries = index.getEntries();
+    }
+
+    @Override
+    public Optional<Integer> readBlobHeaderLength() {
+        if (next >= entries.size()) {
+            return Optional.empty();
+        }
+        current = entries.get(next);
+        ++next;
+        return Optional.of(current.getHeaderSize());
+    }
+
+    @Override
+    public Optional<BlobInformation> readBlobHeader(final int headerLength) {
+        return file.readBlobHeader(current.getDataOffset() - current.getHeaderSize(), current.getHeaderSize())
+                .map(this::summarize);
+    }
+
+    /**
+     * Adds summary of the current block, if header doesn't have one.
+     * @param information Blob information, read from the header.
+     * @return Blob information with index data.
+     */
+    private BlobInformation summarize(final BlobInformation information) {
+        if (!BlobInformation.TYPE_OSM_DATA.equals(information.getType())
+                || BlockSummary.parse(information.getIndexData()).isPresent()) {
+            return information;
+        }
+        BlockSummary summary = BlockSummary.of(current.getNodes(), current.getWays(), current.getRelations());
+        return new BlobInformation(information.getSize(), information.getType(),
+                ByteString.copyFrom(summary.toByteArray()));
+    }
+
+    @Override
+    public Optional<ByteBuffer> readBlobData(final int blobLength) {
+        return file.slice(current.getDataOffset(), blobLength);
+    }
+
+    @Override
+    public Optional<Integer> skip(final Integer offset) {
+        return Optional.of(offset);
+    }
+
+    @Override
+    public long getSize() {
+        return file.getSize();
+    }
+
+    @Override
+    public long getPosition() {
+        if (next < entries.size()) {
+            return entries.get(next).getOffset();
+        }
+        return getSize();
+    }
+
+    /**
+     * Finds number of the first block, starting at or after specified offset.
+     * @param offset Position in the file.
+     * @return Block number or number of blocks if there are no more blocks.
+     */
+    private int findEntry(final long offset) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(middle).getOffset() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Moves to the first block, starting at or after specified offset.
+     * @param offset New position in the file.
+     */
+    @Override
+    public void seek(final long offset) {
+        next = findEntry(offset);
+    }
+
+    @Override
+    public long nextBlockOffset(final long offset) {
+        int found = findEntry(offset);
+        if (found < entries.size()) {
+            return entries.get(found).getOffset();
+        }
+        return getSize();
+    }
+}
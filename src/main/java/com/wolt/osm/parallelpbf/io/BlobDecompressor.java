@@ -0,0 +1,280 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import crosby.binary.Fileformat;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Extracts payload of the Blob message without parsing it into the generated message.
+ *
+ * Supports raw, zlib, LZ4 and Zstd blobs, the latter two are decoded with pure Java codecs.
+ *
+ * Compressed data is decompressed directly from the blob buffer: heap buffers are passed to the
+ * decompressor as arrays, direct buffers (memory mapped files) are passed as is, except for the Inflater
+ * on older JDKs, where they are copied to the reusable input buffer. Payload is written to the growable
+ * output buffer, that is reused for the next blobs, so it is only valid until the next call.
+ *
+ * Decompressor keeps a single instance of each codec for its whole lifetime and is not thread safe,
+ * so it is supposed to be used per thread. Native Inflater resources are released with {@link #end()}.
+ */
+@Slf4j
+final class BlobDecompressor {
+    /**
+     * Inflater.setInput(ByteBuffer) of JDK 11+, null on older JDKs.
+     */
+    private static final MethodHandle SET_INPUT_BUFFER = findSetInputBuffer();
+
+    /**
+     * Zlib decompressor, reset before each blob.
+     */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * LZ4 block decompressor.
+     */
+    private final Decompressor lz4 = new Lz4Decompressor();
+
+    /**
+     * Zstandard frame decompressor.
+     */
+    private final Decompressor zstd = new ZstdDecompressor();
+
+    /**
+     * Copy of the compressed data of buffers, that can't be passed to the decompressor as is.
+     */
+    private byte[] input = new byte[0];
+
+    /**
+     * Payload of the last blob.
+     */
+    private byte[] output = new byte[0];
+
+    /**
+     * Looks up Inflater.setInput(ByteBuffer), available since JDK 11.
+     * @return method handle or null, if method is not available.
+     */
+    private static MethodHandle findSetInputBuffer() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Inflater.class, "setInput",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Releases native zlib resources. Decompressor can't be used after that.
+     */
+    void end() {
+        inflater.end();
+    }
+
+    /**
+     * Payload buffer of the last blob. Valid till the next decompression.
+     * @return payload buffer, may be bigger than the payload.
+     */
+    byte[] getPayload() {
+        return output;
+    }
+
+    /**
+     * Extracts blob payload into the payload buffer.
+     * @param blob Blob message.
+     * @return Length of the payload.
+     * @throws IOException in case of protobuf parsing error.
+     * @throws DataFormatException in case of decompression error.
+     * @throws RuntimeException if blob is unsupported format or decompressed size differs from expected one.
+     */
+    int decompress(final ByteBuffer blob) throws IOException, DataFormatException {
+        int rawSize = 0;
+        int format = 0;
+        int dataOffset = -1;
+        int dataLength = 0;
+        CodedInputStream message = CodedInputStream.newInstance(blob.duplicate());
+        int tag = message.readTag();
+        while (tag != 0) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            switch (field) {
+                case Fileformat.Blob.RAW_SIZE_FIELD_NUMBER:
+                    rawSize = message.readInt32();
+                    break;
+                case Fileformat.Blob.RAW_FIELD_NUMBER:
+                case Fileformat.Blob.ZLIB_DATA_FIELD_NUMBER:
+                case Fileformat.Blob.LZ4_DATA_FIELD_NUMBER:
+                case Fileformat.Blob.ZSTD_DATA_FIELD_NUMBER:
+                    format = field;
+                    dataLength = message.readRawVarint32();
+                    dataOffset = message.getTotalBytesRead();
+                    message.skipRawBytes(dataLength);
+                    break;
+                default:
+                    message.skipField(tag);
+            }
+            tag = message.readTag();
+        }
+        switch (format) {
+            case Fileformat.Blob.RAW_FIELD_NUMBER:
+                ensureOutput(dataLength);
+                slice(blob, dataOffset, dataLength).get(output, 0, dataLength);
+                return dataLength;
+            case Fileformat.Blob.ZLIB_DATA_FIELD_NUMBER:
+                return inflate(slice(blob, dataOffset, dataLength), rawSize);
+            case Fileformat.Blob.LZ4_DATA_FIELD_NUMBER:
+                return decompress(lz4, slice(blob, dataOffset, dataLength), rawSize);
+            case Fileformat.Blob.ZSTD_DATA_FIELD_NUMBER:
+                return decompress(zstd, slice(blob, dataOffset, dataLength), rawSize);
+            default:
+                throw new RuntimeException("Only RAW, ZLib, LZ4 or Zstd blob formats are supported");
+        }
+    }
+
+    /**
+     * Makes a view of the blob part.
+     * @param blob Blob message.
+     * @param offset Offset of the part, relative to the blob position.
+     * @param length Length of the part.
+     * @return Buffer with the part of the blob.
+     */
+    private static ByteBuffer slice(final ByteBuffer blob, final int offset, final int length) {
+        ByteBuffer result = blob.duplicate();
+        result.position(blob.position() + offset);
+        result.limit(blob.position() + offset + length);
+        return result;
+    }
+
+    /**
+     * Grows payload buffer, if needed.
+     * @param size Required size.
+     */
+    private void ensureOutput(final int size) {
+        if (output.length < size) {
+            output = new byte[size];
+        }
+    }
+
+    /**
+     * Decompresses zlib data to the payload buffer.
+     * @param data Compressed data.
+     * @param rawSize Expected decompressed size.
+     * @return Length of the payload.
+     * @throws DataFormatException in case of decompression error.
+     * @throws RuntimeException if decompressed size differs from expected one.
+     */
+    private int inflate(final ByteBuffer data, final int rawSize) throws DataFormatException {
+        ensureOutput(rawSize);
+        inflater.reset();
+        setInput(data);
+        int uncompressedSize = 0;
+        while (uncompressedSize < rawSize && !inflater.finished()) {
+            int inflated = inflater.inflate(output, uncompressedSize, rawSize - uncompressedSize);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                break;
+            }
+            uncompressedSize += inflated;
+        }
+        if (uncompressedSize != rawSize) {
+            log.error("Expected {} bytes after decompression, but got {}", rawSize, uncompressedSize);
+            throw new RuntimeException("Invalid blob payload size");
+        }
+        return uncompressedSize;
+    }
+
+    /**
+     * Decompresses LZ4 or Zstd data to the payload buffer.
+     * @param codec Decompressor of the blob format.
+     * @param data Compressed data.
+     * @param rawSize Expected decompressed size.
+     * @return Length of the payload.
+     * @throws DataFormatException in case of decompression error.
+     * @throws RuntimeException if decompressed size differs from expected one.
+     */
+    private int decompress(final Decompressor codec, final ByteBuffer data, final int rawSize)
+            throws DataFormatException {
+        ensureOutput(rawSize);
+        int uncompressedSize;
+        try {
+            if (data.hasArray()) {
+                uncompressedSize = codec.decompress(data.array(), data.arrayOffset() + data.position(),
+                        data.remaining(), output, 0, rawSize);
+            } else if (data.isDirect()) {
+                ByteBuffer target = ByteBuffer.wrap(output, 0, rawSize);
+                codec.decompress(data, target);
+                uncompressedSize = target.position();
+            } else {
+                int length = copyInput(data);
+                uncompressedSize = codec.decompress(input, 0, length, output, 0, rawSize);
+            }
+        } catch (MalformedInputException | IllegalArgumentException e) {
+            throw (DataFormatException) new DataFormatException(e.getMessage()).initCause(e);
+        }
+        if (uncompressedSize != rawSize) {
+            log.error("Expected {} bytes after decompression, but got {}", rawSize, uncompressedSize);
+            throw new RuntimeException("Invalid blob payload size");
+        }
+        return uncompressedSize;
+    }
+
+    /**
+     * Copies compressed data to the reusable input buffer.
+     * @param data Compressed data.
+     * @return Length of the data.
+     */
+    private int copyInput(final ByteBuffer data) {
+        int length = data.remaining();
+        if (input.length < length) {
+            input = new byte[length];
+        }
+        data.get(input, 0, length);
+        return length;
+    }
+
+    /**
+     * Passes compressed data to the Inflater without copying, when possible.
+     * @param data Compressed data.
+     */
+    private void setInput(final ByteBuffer data) {
+        if (data.hasArray()) {
+            inflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else if (SET_INPUT_BUFFER != null) {
+            try {
+                SET_INPUT_BUFFER.invokeExact(inflater, data);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            int length = copyInput(data);
+            inflater.setInput(input, 0, length);
+        }
+    }
+}
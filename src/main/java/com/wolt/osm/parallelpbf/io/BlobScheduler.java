@@ -0,0 +1,135 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.io;
+
+import java.util.Optional;
+
+/**
+ * Throttles blobs processing by memory usage and number of blobs in flight.
+ *
+ * Each blob is admitted for processing with some weight, which is an estimated
+ * amount of memory, used by the blob. Blobs are admitted until either total weight of
+ * blobs in processing reaches memory budget or number of blobs reaches read ahead limit.
+ * Single blob is always admitted, when nothing else is processed, even if it is bigger than the budget.
+ *
+ * Processed blobs are reported back on completion together with processing error, if any. First error
+ * stops admission of new blobs and is reported to the waiting side.
+ *
+ * All methods are thread safe.
+ */
+public final class BlobScheduler implements BlobTracker {
+    /**
+     * Maximum total weight of the blobs in flight.
+     */
+    private final long memoryBudget;
+
+    /**
+     * Maximum number of blobs in flight.
+     */
+    private final int readAhead;
+
+    /**
+     * Total weight of blobs in flight.
+     */
+    private long bytesInFlight = 0;
+
+    /**
+     * Number of blobs in flight.
+     */
+    private int blobsInFlight = 0;
+
+    /**
+     * First processing error.
+     */
+    private Throwable failure;
+
+    /**
+     * Configures scheduler.
+     * @param budget Maximum total weight of the blobs in flight, in bytes.
+     * @param depth Maximum number of blobs in flight.
+     */
+    public BlobScheduler(final long budget, final int depth) {
+        if (budget <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Memory budget and read ahead depth must be positive");
+        }
+        this.memoryBudget = budget;
+        this.readAhead = depth;
+    }
+
+    /**
+     * Waits till blob can be admitted for processing and marks it as in flight.
+     * @param weight Estimated memory usage of the blob.
+     * @return true if blob is admitted or false if processing has failed and blob should not be processed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized boolean admit(final long weight) throws InterruptedException {
+        while (failure == null && blobsInFlight > 0
+                && (blobsInFlight >= readAhead || bytesInFlight + weight > memoryBudget)) {
+            wait();
+        }
+        if (failure != null) {
+            return false;
+        }
+        ++blobsInFlight;
+        bytesInFlight += weight;
+        return true;
+    }
+
+    /**
+     * Marks blob as processed.
+     * @param weight Same weight, as blob was admitted with.
+     * @param error Processing error or null in case of success.
+     */
+    @Override
+    public synchronized void release(final long weight, final Throwable error) {
+        --blobsInFlight;
+        bytesInFlight -= weight;
+        if (error != null && failure == null) {
+            failure = error;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Checks if processing is still going without errors.
+     * @return true if no errors were reported.
+     */
+    public synchronized boolean isHealthy() {
+        return failure == null;
+    }
+
+    /**
+     * Number of blobs in flight.
+     * @return number of admitted, but not yet released blobs.
+     */
+    public synchronized int getBlobsInFlight() {
+        return blobsInFlight;
+    }
+
+    /**
+     * Waits till all admitted blobs are processed or till the first error.
+     * @return First processing error or empty, if all blobs were processed successfully.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized Optional<Throwable> awaitIdle() throws InterruptedException {
+        while (failure == null && blobsInFlight > 0) {
+            wait();
+        }
+        return Optional.ofNullable(failure);
+    }
+}
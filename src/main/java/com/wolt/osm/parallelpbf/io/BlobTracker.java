@@ -0,0 +1,37 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.io;
+
+/**
+ * Receives completion notifications of the blobs processing.
+ */
+public interface BlobTracker {
+    /**
+     * Marks blob as processed.
+     * @param weight Same weight, as blob was admitted with.
+     * @param error Processing error or null in case of success.
+     */
+    void release(long weight, Throwable error);
+
+    /**
+     * Marks blob as dropped: it was never admitted and will never be processed.
+     * Nothing to do by default.
+     */
+    default void cancel() {
+    }
+}
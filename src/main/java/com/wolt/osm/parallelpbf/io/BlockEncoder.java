@@ -0,0 +1,152 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.wolt.osm.parallelpbf.encoder.DenseNodesEncoder;
+import com.wolt.osm.parallelpbf.encoder.OsmEncoder;
+import com.wolt.osm.parallelpbf.encoder.OsmEntityEncoder;
+import com.wolt.osm.parallelpbf.encoder.RelationEncoder;
+import com.wolt.osm.parallelpbf.encoder.StringTableEncoder;
+import com.wolt.osm.parallelpbf.encoder.WayEncoder;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.index.BlockSummary;
+import crosby.binary.Osmformat;
+
+/**
+ * Collects entities into a PrimitiveBlock. Nodes, ways and relations
+ * are kept in separate groups, sharing block's string table.
+ */
+final class BlockEncoder {
+    /**
+     * Blob should not be bigger then 16M, but we limit to
+     * 15M for a safety, as we do estimate size approximately.
+     */
+    private static final int LIMIT_BLOB_SIZE = 15 * 1024 * 1024;
+
+    /**
+     * Current(!) densenodes block encoder.
+     */
+    private OsmEntityEncoder<Node> nodesEncoder;
+
+    /**
+     * Current(!) ways block encoder.
+     */
+    private OsmEntityEncoder<Way> wayEncoder;
+
+    /**
+     * Current(!) relation block encoder.
+     */
+    private OsmEntityEncoder<Relation> relationEncoder;
+
+    /**
+     * Block-wide stringtable encoder.
+     */
+    private StringTableEncoder stringEncoder;
+
+    /**
+     * Summary of the block for the BlobHeader.indexdata.
+     */
+    private BlockSummary.Builder summary;
+
+    /**
+     * Creates empty block.
+     */
+    BlockEncoder() {
+        reset();
+    }
+
+    /**
+     * Encoder reset function. Recreates all the encoders in proper order.
+     */
+    private void reset() {
+        this.stringEncoder = new StringTableEncoder();
+        this.nodesEncoder = new DenseNodesEncoder(this.stringEncoder);
+        this.wayEncoder = new WayEncoder(this.stringEncoder);
+        this.relationEncoder = new RelationEncoder(this.stringEncoder);
+        this.summary = new BlockSummary.Builder();
+    }
+
+    /**
+     * Adds entity to the block.
+     * @param entity Node, way or relation.
+     * @return false if entity type is not supported, true otherwise.
+     */
+    boolean add(final OsmEntity entity) {
+        if (entity instanceof Node) {
+            nodesEncoder.add((Node) entity);
+        } else if (entity instanceof Way) {
+            wayEncoder.add((Way) entity);
+        } else if (entity instanceof Relation) {
+            relationEncoder.add((Relation) entity);
+        } else {
+            return false;
+        }
+        summary.add(entity);
+        return true;
+    }
+
+    /**
+     * Summary of the current block. Should be taken before flush().
+     * @return Encoded block summary.
+     */
+    byte[] summary() {
+        return summary.build().toByteArray();
+    }
+
+    /**
+     * Checks if block reached its size limit and should be flushed.
+     * @return true if block is full.
+     */
+    boolean isFull() {
+        int blobSize = nodesEncoder.estimateSize() + wayEncoder.estimateSize() + relationEncoder.estimateSize()
+                + stringEncoder.getStringSize();
+        return blobSize > LIMIT_BLOB_SIZE;
+    }
+
+    /**
+     * Serializes collected entities and starts a new block.
+     * @return PrimitiveBlock message or null, if block is empty.
+     */
+    byte[] flush() {
+        int nodesSize = nodesEncoder.estimateSize();
+        int waysSize = wayEncoder.estimateSize();
+        int relationSize = relationEncoder.estimateSize();
+        byte[] result = null;
+        if (nodesSize + waysSize + relationSize > 0) {
+            Osmformat.PrimitiveBlock.Builder block = Osmformat.PrimitiveBlock.newBuilder()
+                    .setStringtable(stringEncoder.getStrings());
+            if (nodesSize > 0) {
+                block.setGranularity(OsmEncoder.GRANULARITY)
+                        .setLatOffset(0)
+                        .setLonOffset(0)
+                        .addPrimitivegroup(nodesEncoder.write());
+            }
+            if (waysSize > 0) {
+                block.addPrimitivegroup(wayEncoder.write());
+            }
+            if (relationSize > 0) {
+                block.addPrimitivegroup(relationEncoder.write());
+            }
+            result = block.build().toByteArray();
+        }
+        reset();
+        return result;
+    }
+}
@@ -17,18 +17,34 @@
 
 package com.wolt.osm.parallelpbf.io;
 
+import com.wolt.osm.parallelpbf.cursor.BlockCursors;
+import com.wolt.osm.parallelpbf.cursor.NodeCursor;
+import com.wolt.osm.parallelpbf.cursor.RelationCursor;
+import com.wolt.osm.parallelpbf.cursor.WayCursor;
+import com.wolt.osm.parallelpbf.entity.BoundBox;
 import com.wolt.osm.parallelpbf.entity.Node;
 import com.wolt.osm.parallelpbf.entity.Relation;
 import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.filter.BlockTagFilter;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+import com.wolt.osm.parallelpbf.parser.DenseNodeColumns;
 import com.wolt.osm.parallelpbf.parser.NodeParser;
+import com.wolt.osm.parallelpbf.parser.PrimitiveBlockDecoder;
 import com.wolt.osm.parallelpbf.parser.RelationParser;
 import com.wolt.osm.parallelpbf.parser.WayParser;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import crosby.binary.Osmformat;
 import lombok.extern.slf4j.Slf4j;
 import lombok.var;
 
-import java.util.concurrent.Semaphore;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Consumer;
 
 /**
@@ -38,6 +54,22 @@ import java.util.function.Consumer;
  */
 @Slf4j
 public class OSMDataReader extends OSMReader {
+    /**
+     * Per thread dense nodes columns, reused between blocks.
+     */
+    private static final ThreadLocal<DenseNodeColumns> COLUMNS = ThreadLocal.withInitial(DenseNodeColumns::new);
+
+    /**
+     * Per thread entity cursors, reused between blocks.
+     */
+    private static final ThreadLocal<BlockCursors> CURSORS = ThreadLocal.withInitial(BlockCursors::new);
+
+    /**
+     * Per thread streaming decoders, reused between blocks, when tags are decoded eagerly.
+     */
+    private static final ThreadLocal<PrimitiveBlockDecoder> DECODERS =
+            ThreadLocal.withInitial(() -> new PrimitiveBlockDecoder(false));
+
     /**
      * Changeset processing callback. Must be reentrant.
      */
@@ -58,10 +90,80 @@ public class OSMDataReader extends OSMReader {
      */
     private final Consumer<Relation> relationsCb;
 
+    /**
+     * Nodes batch processing callback. Must be reentrant.
+     */
+    private Consumer<List<Node>> nodeBatchCb;
+
+    /**
+     * Ways batch processing callback. Must be reentrant.
+     */
+    private Consumer<List<Way>> wayBatchCb;
+
+    /**
+     * Relations batch processing callback. Must be reentrant.
+     */
+    private Consumer<List<Relation>> relationBatchCb;
+
+    /**
+     * Dense nodes columnar callback. Must be reentrant.
+     */
+    private Consumer<DenseNodeColumns> denseNodesCb;
+
+    /**
+     * Reuse per thread columns for the dense nodes columnar callback.
+     */
+    private boolean reuseColumns = true;
+
+    /**
+     * Node cursor callback. Must be reentrant.
+     */
+    private Consumer<NodeCursor> nodeCursorCb;
+
+    /**
+     * Way cursor callback. Must be reentrant.
+     */
+    private Consumer<WayCursor> wayCursorCb;
+
+    /**
+     * Relation cursor callback. Must be reentrant.
+     */
+    private Consumer<RelationCursor> relationCursorCb;
+
+    /**
+     * Reuse per thread cursors for the cursor callbacks.
+     */
+    private boolean reuseCursors = true;
+
+    /**
+     * Decode tags lazily.
+     */
+    private boolean lazyTags = false;
+
+    /**
+     * Tags filter for the nodes, ways and relations. Null if entities are not filtered.
+     */
+    private TagFilter tagFilter;
+
+    /**
+     * Bounding box filter for the nodes. Null if nodes are not filtered.
+     */
+    private BoundBox boundBox;
+
+    /**
+     * Store of all nodes locations. Null if locations are not stored.
+     */
+    private NodeLocationStore nodeLocations;
+
+    /**
+     * Use streaming decoder instead of generated protobuf messages, when possible.
+     */
+    private boolean streamingDecoder = true;
+
     /**
      * Configures reader with blob and callbacks.
      * @param blob         blob to parse.
-     * @param tasksLimiter task limiting semaphore.
+     * @param tasksLimiter task limiting scheduler.
      * @param onNodes Callback to call on node parse. May be null, in that case nodes parsing will be skipped.
      * @param onWays Callback to call on way parse. May be null, in that case ways parsing will be skipped.
      * @param onRelations Callback to call on relation parse. May be null,
@@ -70,7 +172,27 @@ public class OSMDataReader extends OSMReader {
      *                     in that case changesets parsing will be skipped.
      */
     public OSMDataReader(final byte[] blob,
-                  final Semaphore tasksLimiter,
+                  final BlobTracker tasksLimiter,
+                  final Consumer<Node> onNodes,
+                  final Consumer<Way> onWays,
+                  final Consumer<Relation> onRelations,
+                  final Consumer<Long> onChangesets) {
+        this(ByteBuffer.wrap(blob), tasksLimiter, onNodes, onWays, onRelations, onChangesets);
+    }
+
+    /**
+     * Configures reader with blob and callbacks.
+     * @param blob         blob to parse, may be a slice of memory mapped file.
+     * @param tasksLimiter task limiting scheduler.
+     * @param onNodes Callback to call on node parse. May be null, in that case nodes parsing will be skipped.
+     * @param onWays Callback to call on way parse. May be null, in that case ways parsing will be skipped.
+     * @param onRelations Callback to call on relation parse. May be null,
+     *                    in that case relations parsing will be skipped.
+     * @param onChangesets Callback to call on changeset parse. May be null,
+     *                     in that case changesets parsing will be skipped.
+     */
+    public OSMDataReader(final ByteBuffer blob,
+                  final BlobTracker tasksLimiter,
                   final Consumer<Node> onNodes,
                   final Consumer<Way> onWays,
                   final Consumer<Relation> onRelations,
@@ -82,47 +204,408 @@ public class OSMDataReader extends OSMReader {
         this.changesetsCb = onChangesets;
     }
 
+    /**
+     * Sets nodes batch callback, that will be called once per primitive group with all nodes of that group.
+     * @param onNodeBatch Callback function. May be null.
+     * @return this reader.
+     */
+    public OSMDataReader onNodeBatch(final Consumer<List<Node>> onNodeBatch) {
+        this.nodeBatchCb = onNodeBatch;
+        return this;
+    }
+
+    /**
+     * Sets ways batch callback, that will be called once per primitive group with all ways of that group.
+     * @param onWayBatch Callback function. May be null.
+     * @return this reader.
+     */
+    public OSMDataReader onWayBatch(final Consumer<List<Way>> onWayBatch) {
+        this.wayBatchCb = onWayBatch;
+        return this;
+    }
+
+    /**
+     * Sets relations batch callback, that will be called once per primitive group with all relations of that group.
+     * @param onRelationBatch Callback function. May be null.
+     * @return this reader.
+     */
+    public OSMDataReader onRelationBatch(final Consumer<List<Relation>> onRelationBatch) {
+        this.relationBatchCb = onRelationBatch;
+        return this;
+    }
+
+    /**
+     * Sets dense nodes columnar callback, that will be called once per primitive group with dense nodes.
+     * @param onDenseNodes Callback function. May be null.
+     * @param reuse If true, columns are reused by the thread for the next blocks, so callback must not
+     *              keep them. Otherwise new columns are allocated for every group.
+     * @return this reader.
+     */
+    public OSMDataReader onDenseNodes(final Consumer<DenseNodeColumns> onDenseNodes, final boolean reuse) {
+        this.denseNodesCb = onDenseNodes;
+        this.reuseColumns = reuse;
+        return this;
+    }
+
+    /**
+     * Sets cursor callbacks, that will be called for each entity with a cursor, positioned at that entity.
+     * @param onNodes Node cursor callback. May be null.
+     * @param onWays Way cursor callback. May be null.
+     * @param onRelations Relation cursor callback. May be null.
+     * @param reuse If true, per thread cursors are repositioned for every entity and reused for the next blocks,
+     *              so callbacks must not keep them. Otherwise, callbacks receive a detached copy for each entity.
+     * @return this reader.
+     */
+    public OSMDataReader onCursors(final Consumer<NodeCursor> onNodes,
+                                   final Consumer<WayCursor> onWays,
+                                   final Consumer<RelationCursor> onRelations,
+                                   final boolean reuse) {
+        this.nodeCursorCb = onNodes;
+        this.wayCursorCb = onWays;
+        this.relationCursorCb = onRelations;
+        this.reuseCursors = reuse;
+        return this;
+    }
+
+    /**
+     * Walks cursors over the block.
+     * @param primitives Block to walk.
+     * @param filter Tags filter of the block. May be null.
+     */
+    private void visitCursors(final Osmformat.PrimitiveBlock primitives, final BlockTagFilter filter) {
+        BlockCursors cursors;
+        Consumer<NodeCursor> onNode = nodeCursorCb;
+        Consumer<WayCursor> onWay = wayCursorCb;
+        Consumer<RelationCursor> onRelation = relationCursorCb;
+        if (reuseCursors) {
+            cursors = CURSORS.get();
+        } else {
+            cursors = new BlockCursors();
+            if (onNode != null) {
+                onNode = cursor -> nodeCursorCb.accept(cursor.copy());
+            }
+            if (onWay != null) {
+                onWay = cursor -> wayCursorCb.accept(cursor.copy());
+            }
+            if (onRelation != null) {
+                onRelation = cursor -> relationCursorCb.accept(cursor.copy());
+            }
+        }
+        cursors.reset(primitives, filter);
+        for (Osmformat.PrimitiveGroup group : primitives.getPrimitivegroupList()) {
+            if (onNode != null) {
+                cursors.visitNodes(group, onNode);
+            }
+            if (onWay != null) {
+                cursors.visitWays(group, onWay);
+            }
+            if (onRelation != null) {
+                cursors.visitRelations(group, onRelation);
+            }
+        }
+    }
+
+    /**
+     * Enables lazy tags decoding for the entities, passed to the per entity and batch callbacks.
+     * @param lazy If true, entities get tags view, that decodes strings on access.
+     * @return this reader.
+     */
+    public OSMDataReader setLazyTags(final boolean lazy) {
+        this.lazyTags = lazy;
+        return this;
+    }
+
+    /**
+     * Selects the PrimitiveBlock decoding path. Streaming decoder reads entities directly from the
+     * inflated blob, without building generated protobuf messages. Dense nodes columns and cursors
+     * callbacks always use generated messages.
+     * @param streaming If false, generated protobuf messages are used for all callbacks.
+     * @return this reader.
+     */
+    public OSMDataReader setStreamingDecoder(final boolean streaming) {
+        this.streamingDecoder = streaming;
+        return this;
+    }
+
+    /**
+     * Sets tags filter. Nodes, ways and relations, passed to per entity, batch and cursor callbacks,
+     * should match the filter. Filter is resolved against each block's string table and blocks,
+     * that can't match the filter, are skipped right after their string table is read,
+     * unless changesets or dense nodes columns are requested.
+     * @param filter Tags filter. May be null.
+     * @return this reader.
+     */
+    public OSMDataReader setTagFilter(final TagFilter filter) {
+        this.tagFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets bounding box filter. Only nodes within the box are passed to per entity and batch callbacks.
+     * Box is converted to each block's coordinates grid, so nodes are rejected during delta decoding.
+     * Dense nodes columns and cursors are not filtered.
+     * @param box Bounding box. May be null.
+     * @return this reader.
+     */
+    public OSMDataReader setBoundBox(final BoundBox box) {
+        this.boundBox = box;
+        return this;
+    }
+
+    /**
+     * Sets node locations store. Locations of all the nodes of the block are stored,
+     * regardless of the tags and bounding box filters.
+     * @param store Node locations store. May be null.
+     * @return this reader.
+     */
+    public OSMDataReader setNodeLocationStore(final NodeLocationStore store) {
+        this.nodeLocations = store;
+        return this;
+    }
+
+    /**
+     * Reads only string table of the PrimitiveBlock, skipping the rest of the block.
+     * @param message Raw OSMData blob.
+     * @param length Length of the blob.
+     * @return String table of the block.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private static Osmformat.StringTable readStringTable(final byte[] message, final int length) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(message, 0, length);
+        int tag = input.readTag();
+        while (tag != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == Osmformat.PrimitiveBlock.STRINGTABLE_FIELD_NUMBER) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                Osmformat.StringTable table = Osmformat.StringTable.parseFrom(input);
+                input.popLimit(limit);
+                return table;
+            }
+            input.skipField(tag);
+            tag = input.readTag();
+        }
+        return Osmformat.StringTable.getDefaultInstance();
+    }
+
+    /**
+     * Resolves tags filter for the block.
+     * @param message Raw OSMData blob.
+     * @param length Length of the blob.
+     * @return Compiled filter or empty if filtering is disabled.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private Optional<BlockTagFilter> compileFilter(final byte[] message, final int length) throws IOException {
+        if (tagFilter == null) {
+            return Optional.empty();
+        }
+        return Optional.of(tagFilter.compile(new BlockStringTable(readStringTable(message, length))));
+    }
+
+    /**
+     * Checks if there are consumers, that need the block regardless of the tags filter.
+     * @return true if changesets, dense nodes columns or node locations are requested.
+     */
+    private boolean hasUnfilteredConsumers() {
+        return changesetsCb != null || denseNodesCb != null || nodeLocations != null;
+    }
+
+    /**
+     * Creates block scanner, that keeps only primitive groups, requested by callbacks.
+     * @return Block scanner for the configured callbacks.
+     */
+    private PrimitiveBlockScanner makeScanner() {
+        boolean nodes = nodesCb != null || nodeBatchCb != null || nodeCursorCb != null || nodeLocations != null;
+        boolean ways = waysCb != null || wayBatchCb != null || wayCursorCb != null;
+        boolean relations = relationsCb != null || relationBatchCb != null || relationCursorCb != null;
+        return new PrimitiveBlockScanner(nodes, nodes || denseNodesCb != null, ways, relations, changesetsCb != null);
+    }
+
+    /**
+     * Prepares string table for the lazy tags decoding.
+     * @param stringTable PBF string table of the block.
+     * @return decoded string table or null, if tags should be decoded eagerly.
+     */
+    private BlockStringTable lazyStrings(final Osmformat.StringTable stringTable) {
+        if (lazyTags) {
+            return new BlockStringTable(stringTable);
+        }
+        return null;
+    }
+
+    /**
+     * Runs the parsing function with callback, that calls per entity callback and
+     * collects entities for the batch callback. Batch callback is called after parsing,
+     * if any entity was parsed.
+     * @param single Per entity callback. May be null.
+     * @param batch Batch callback. May be null.
+     * @param parse Parsing function, that calls supplied callback for each entity.
+     * @param <T> Type of the entity.
+     */
+    private static <T> void dispatch(final Consumer<T> single,
+                                     final Consumer<List<T>> batch,
+                                     final Consumer<Consumer<T>> parse) {
+        if (batch == null) {
+            if (single != null) {
+                parse.accept(single);
+            }
+            return;
+        }
+        List<T> entities = new ArrayList<>();
+        if (single == null) {
+            parse.accept(entities::add);
+        } else {
+            parse.accept(entity -> {
+                single.accept(entity);
+                entities.add(entity);
+            });
+        }
+        if (!entities.isEmpty()) {
+            batch.accept(entities);
+        }
+    }
+
+    /**
+     * Decodes the block with the streaming decoder and passes entities to per entity and batch callbacks.
+     * @param message Raw OSMData blob.
+     * @param length Length of the blob.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    private void decode(final byte[] message, final int length) {
+        PrimitiveBlockDecoder decoder;
+        if (lazyTags) {
+            decoder = new PrimitiveBlockDecoder(true);
+        } else {
+            decoder = DECODERS.get();
+        }
+        boolean nodes = nodesCb != null || nodeBatchCb != null || nodeLocations != null;
+        boolean ways = waysCb != null || wayBatchCb != null;
+        boolean relations = relationsCb != null || relationBatchCb != null;
+        try {
+            if (!decoder.reset(message, length, nodes, ways, relations, changesetsCb != null)) {
+                log.trace("Skipping block without requested primitive groups");
+                return;
+            }
+        } catch (IOException e) {
+            log.error("Error parsing OSMData block: {}", e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+        if (tagFilter != null) {
+            BlockTagFilter filter = tagFilter.compile(decoder.getStrings());
+            if (!filter.canMatch() && !hasUnfilteredConsumers()) {
+                log.trace("Skipping block, that doesn't match tags filter");
+                return;
+            }
+            decoder.useTagFilter(filter);
+        }
+        decoder.useBoundBox(boundBox);
+        for (int indx = 0; indx < decoder.groupCount(); ++indx) {
+            int group = indx;
+            if (nodeLocations != null) {
+                decoder.decodeLocations(group, nodeLocations);
+            }
+            dispatch(nodesCb, nodeBatchCb, callback -> decoder.decodeNodes(group, callback));
+            dispatch(waysCb, wayBatchCb, callback -> decoder.decodeWays(group, callback));
+            dispatch(relationsCb, relationBatchCb, callback -> decoder.decodeRelations(group, callback));
+            if (changesetsCb != null) {
+                decoder.decodeChangesets(group, changesetsCb);
+            }
+        }
+    }
+
     /**
      * Extracts primitives groups from the Blob and parses them.
      * <p>
      * In case callback for some of the primitives is not set, it will
-     * be ignored and not parsed.
+     * be ignored and not parsed: groups of such primitives are skipped without building
+     * protobuf messages and blocks without any requested groups are dropped right after inflation.
+     * Batch callbacks are called once per primitive group, after per entity callbacks of that group.
      *
      * @param message Raw OSMData blob.
+     * @param length Length of the blob.
      * @throws RuntimeException in case of protobuf parsing error.
      */
     @Override
-    protected void read(final byte[] message) {
+    protected void read(final byte[] message, final int length) {
+        if (streamingDecoder && denseNodesCb == null
+                && nodeCursorCb == null && wayCursorCb == null && relationCursorCb == null) {
+            decode(message, length);
+            return;
+        }
         Osmformat.PrimitiveBlock primitives;
+        BlockTagFilter filter;
         try {
-            primitives = Osmformat.PrimitiveBlock.parseFrom(message);
-        } catch (InvalidProtocolBufferException e) {
+            filter = compileFilter(message, length).orElse(null);
+            if (filter != null && !filter.canMatch() && !hasUnfilteredConsumers()) {
+                log.trace("Skipping block, that doesn't match tags filter");
+                return;
+            }
+            Optional<Osmformat.PrimitiveBlock> block = makeScanner().parse(message, length);
+            if (!block.isPresent()) {
+                log.trace("Skipping block without requested primitive groups");
+                return;
+            }
+            primitives = block.get();
+        } catch (IOException e) {
             log.error("Error parsing OSMData block: {}", e.getMessage(), e);
             throw new RuntimeException(e);
         }
+        if (nodeCursorCb != null || wayCursorCb != null || relationCursorCb != null) {
+            visitCursors(primitives, filter);
+        }
         var stringTable = primitives.getStringtable();
+        BlockStringTable strings = lazyStrings(primitives.getStringtable());
         var groups = primitives.getPrimitivegroupList();
         for (Osmformat.PrimitiveGroup group : groups) {
-            if (nodesCb != null) {
-                var parser = new NodeParser(nodesCb,
+            if (nodeLocations != null) {
+                new NodeParser(null,
+                        stringTable,
+                        primitives.getGranularity(),
+                        primitives.getLatOffset(),
+                        primitives.getLonOffset(),
+                        primitives.getDateGranularity()).storeLocations(group, nodeLocations);
+            }
+            dispatch(nodesCb, nodeBatchCb, callback -> {
+                var parser = new NodeParser(callback,
                         stringTable,
                         primitives.getGranularity(),
                         primitives.getLatOffset(),
                         primitives.getLonOffset(),
                         primitives.getDateGranularity());
+                parser.useLazyTags(strings);
+                parser.useTagFilter(filter);
+                parser.useBoundBox(boundBox);
                 group.getNodesList().forEach(parser::parse);
                 if (group.hasDense()) {
                     parser.parse(group.getDense());
                 }
+            });
+            if (denseNodesCb != null && group.hasDense()) {
+                var parser = new NodeParser(null,
+                        stringTable,
+                        primitives.getGranularity(),
+                        primitives.getLatOffset(),
+                        primitives.getLonOffset(),
+                        primitives.getDateGranularity());
+                DenseNodeColumns columns;
+                if (reuseColumns) {
+                    columns = COLUMNS.get();
+                } else {
+                    columns = new DenseNodeColumns();
+                }
+                parser.parse(group.getDense(), columns);
+                denseNodesCb.accept(columns);
             }
-            if (waysCb != null) {
-                var parser = new WayParser(waysCb, stringTable);
+            dispatch(waysCb, wayBatchCb, callback -> {
+                var parser = new WayParser(callback, stringTable);
+                parser.useLazyTags(strings);
+                parser.useTagFilter(filter);
                 group.getWaysList().forEach(parser::parse);
-            }
-            if (relationsCb != null) {
-                var parser = new RelationParser(relationsCb, stringTable);
+            });
+            dispatch(relationsCb, relationBatchCb, callback -> {
+                var parser = new RelationParser(callback, stringTable);
+                parser.useLazyTags(strings);
+                parser.useTagFilter(filter);
                 group.getRelationsList().forEach(parser::parse);
-            }
+            });
             if (changesetsCb != null) {
                 group.getChangesetsList().forEach(changeMessage -> {
                     long id = changeMessage.getId();
@@ -17,15 +17,16 @@
 
 package com.wolt.osm.parallelpbf.io;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 import crosby.binary.Osmformat;
 import lombok.extern.slf4j.Slf4j;
 import com.wolt.osm.parallelpbf.entity.BoundBox;
 import com.wolt.osm.parallelpbf.entity.Header;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 
 /**
@@ -54,14 +55,31 @@ public final class OSMHeaderReader extends OSMReader {
      * Constructs reader object.
      *
      * @param blob         blob to parse.
-     * @param tasksLimiter task limiting semaphore.
+     * @param tasksLimiter task limiting scheduler.
      * @param onHeader     Callback to call with a filled Header entity.
      *                     Header parsing will be partially skipped if set to null.
      * @param onBoundBox   Callback to call if bounding box present in header.
      *                     Bounding box parsing will be skipped completely if set to null
      */
     public OSMHeaderReader(final byte[] blob,
-                    final Semaphore tasksLimiter,
+                    final BlobTracker tasksLimiter,
+                    final Consumer<Header> onHeader,
+                    final Consumer<BoundBox> onBoundBox) {
+        this(ByteBuffer.wrap(blob), tasksLimiter, onHeader, onBoundBox);
+    }
+
+    /**
+     * Constructs reader object.
+     *
+     * @param blob         blob to parse, may be a slice of memory mapped file.
+     * @param tasksLimiter task limiting scheduler.
+     * @param onHeader     Callback to call with a filled Header entity.
+     *                     Header parsing will be partially skipped if set to null.
+     * @param onBoundBox   Callback to call if bounding box present in header.
+     *                     Bounding box parsing will be skipped completely if set to null
+     */
+    public OSMHeaderReader(final ByteBuffer blob,
+                    final BlobTracker tasksLimiter,
                     final Consumer<Header> onHeader,
                     final Consumer<BoundBox> onBoundBox) {
         super(blob, tasksLimiter);
@@ -92,13 +110,14 @@ public final class OSMHeaderReader extends OSMReader {
      * just skip parsing if no callbacks are set.
      *
      * @param message Raw OSMHeader blob.
+     * @param length Length of the blob.
      */
     @Override
-    protected void read(final byte[] message) {
+    protected void read(final byte[] message, final int length) {
         Osmformat.HeaderBlock headerData;
         try {
-            headerData = Osmformat.HeaderBlock.parseFrom(message);
-        } catch (InvalidProtocolBufferException e) {
+            headerData = Osmformat.HeaderBlock.parseFrom(CodedInputStream.newInstance(message, 0, length));
+        } catch (IOException e) {
             log.error("Error parsing OSMHeader block: {}", e.getMessage(), e);
             throw new RuntimeException(e);
         }
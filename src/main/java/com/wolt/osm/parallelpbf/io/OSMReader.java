@@ -17,13 +17,18 @@
 
 package com.wolt.osm.parallelpbf.io;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import crosby.binary.Fileformat;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.Semaphore;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 /**
  * Base class for Blob handlers.
@@ -35,29 +40,153 @@ import java.util.zip.Inflater;
  */
 @Slf4j
 public abstract class OSMReader implements Runnable {
+    /**
+     * Per thread blob decompressors, reusing Inflater and payload buffer between blobs.
+     * Created on first use, so threads, that never decompressed anything, have none.
+     */
+    private static final ThreadLocal<BlobDecompressor> DECOMPRESSORS = new ThreadLocal<>();
+
+
     /**
      * Incoming blob to process.
      */
-    private final byte[] blob;
+    private final ByteBuffer blob;
 
     /**
      * Part of throttling system.
-     * Reader takes the semaphore while running
-     * and releases on completion. Therefore caller
-     * may wait for some number of semaphores to be available and
+     * Caller admits reader to the scheduler with reader's weight
+     * and reader releases it on completion. Therefore caller
+     * may wait for some memory to be available and
      * do not overload thread pool.
      */
-    private final Semaphore tasksLimiter;
+    private final BlobTracker tasksLimiter;
+
+    /**
+     * Estimated memory usage of the reader: compressed blob size plus uncompressed size.
+     */
+    @Getter
+    private final long weight;
+
+    /**
+     * Receives the blob buffer, once it is not needed anymore. Null if the buffer is not recycled.
+     */
+    private Consumer<ByteBuffer> recycler;
+
+    /**
+     * Thread factory for the executors, running readers. Native zlib resources of the
+     * thread's decompressor are released, when the thread exits, for example after executor shutdown.
+     * Threads are created by a single default thread factory per call, so threads of the executor
+     * are named as usual, "pool-N-thread-M", with the same N.
+     * @return thread factory.
+     */
+    public static ThreadFactory threadFactory() {
+        ThreadFactory threads = Executors.defaultThreadFactory();
+        return task -> threads.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                releaseDecompressor();
+            }
+        });
+    }
+
+    /**
+     * Releases decompressor of the current thread, if it has one.
+     */
+    public static void releaseDecompressor() {
+        BlobDecompressor decompressor = DECOMPRESSORS.get();
+        if (decompressor != null) {
+            DECOMPRESSORS.remove();
+            decompressor.end();
+        }
+    }
+
+    /**
+     * Decompressor of the current thread.
+     * @return thread's decompressor, created on first call.
+     */
+    private static BlobDecompressor decompressor() {
+        BlobDecompressor result = DECOMPRESSORS.get();
+        if (result == null) {
+            result = new BlobDecompressor();
+            DECOMPRESSORS.set(result);
+        }
+        return result;
+    }
 
     /**
      * Sets base parameters.
      * @param blobValue The blob to parse.
-     * @param tasksLimiterValue Task limiting semaphore.
+     * @param tasksLimiterValue Task limiting scheduler.
+     */
+    @SuppressWarnings("EI_EXPOSE_REP2")
+    OSMReader(final byte[] blobValue, final BlobTracker tasksLimiterValue) {
+        this(ByteBuffer.wrap(blobValue), tasksLimiterValue);
+    }
+
+    /**
+     * Sets base parameters.
+     * @param blobValue The blob to parse. May be a slice of memory mapped file.
+     * @param tasksLimiterValue Task limiting scheduler.
      */
     @SuppressWarnings("EI_EXPOSE_REP2")
-    OSMReader(final byte[] blobValue, final Semaphore tasksLimiterValue) {
+    protected OSMReader(final ByteBuffer blobValue, final BlobTracker tasksLimiterValue) {
         this.blob = blobValue;
         this.tasksLimiter = tasksLimiterValue;
+        this.weight = estimateWeight(blobValue);
+    }
+
+    /**
+     * Sets receiver of the blob buffer. Buffer is passed to the recycler right after decompression,
+     * or when reader fails or is cancelled.
+     * @param recyclerValue Blob buffer receiver, for example {@link com.wolt.osm.parallelpbf.blob.BlobSource#release}.
+     */
+    public final void useRecycler(final Consumer<ByteBuffer> recyclerValue) {
+        this.recycler = recyclerValue;
+    }
+
+    /**
+     * Releases resources of the reader, that will never be run: returns blob buffer
+     * to the recycler and notifies the tracker, that blob is dropped.
+     */
+    public final void cancel() {
+        recycle();
+        tasksLimiter.cancel();
+    }
+
+    /**
+     * Passes blob buffer to the recycler, if it wasn't passed yet.
+     */
+    private void recycle() {
+        Consumer<ByteBuffer> target = recycler;
+        recycler = null;
+        if (target != null) {
+            target.accept(blob);
+        }
+    }
+
+    /**
+     * Estimates memory, required to process the blob, without parsing it.
+     * Blob's raw_size field is looked up and added to the blob size.
+     * @param blobValue The blob to process.
+     * @return Estimated memory usage in bytes.
+     */
+    private static long estimateWeight(final ByteBuffer blobValue) {
+        long compressedSize = blobValue.remaining();
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(blobValue.duplicate());
+            int tag = input.readTag();
+            while (tag != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Fileformat.Blob.RAW_SIZE_FIELD_NUMBER) {
+                    return compressedSize + input.readInt32();
+                }
+                input.skipField(tag);
+                tag = input.readTag();
+            }
+        } catch (IOException e) {
+            log.debug("Unable to estimate blob size: {}", e.getMessage());
+        }
+        return compressedSize;
     }
 
     /**
@@ -68,48 +197,30 @@ public abstract class OSMReader implements Runnable {
      */
     @Override
     public void run() {
+        Throwable error = null;
         try {
-            Fileformat.Blob blobData = Fileformat.Blob.parseFrom(blob);
-            byte[] payload;
-            if (blobData.hasZlibData()) {
-                payload = decompress(blobData);
-            } else if (blobData.hasRaw()) {
-                payload = blobData.getRaw().toByteArray();
-            } else {
-                throw new RuntimeException("Only RAW or ZLib blob formats are supported");
-            }
-            this.read(payload);
-        } catch (InvalidProtocolBufferException | DataFormatException e) {
+            BlobDecompressor decompressor = decompressor();
+            int length = decompressor.decompress(blob);
+            recycle();
+            this.read(decompressor.getPayload(), length);
+        } catch (IOException | DataFormatException e) {
             log.error("Error parsing Blob: {}", e.getMessage(), e);
+            error = e;
             throw new RuntimeException(e);
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
         } finally {
-            tasksLimiter.release();
-        }
-    }
-
-    /**
-     * Decompresses blob using Zlib algorithm.
-     * @param blobData binary data to decompress.
-     * @return uncompressed raw blob data
-     * @throws DataFormatException in case of decompression error.
-     * @throws RuntimeException if decompressed size differs from expected one.
-     */
-    private byte[] decompress(final Fileformat.Blob blobData) throws DataFormatException {
-        byte[] payload;
-        Inflater decompresser = new Inflater();
-        decompresser.setInput(blobData.getZlibData().toByteArray());
-        payload = new byte[blobData.getRawSize()];
-        int uncompressedSize = decompresser.inflate(payload);
-        if (uncompressedSize != blobData.getRawSize()) {
-            log.error("Expected {} bytes after decompression, but got {}", blobData.getRawSize(), uncompressedSize);
-            throw new RuntimeException("Invalid blob payload size");
+            recycle();
+            tasksLimiter.release(weight, error);
         }
-        return payload;
     }
 
     /**
      * Actual decoding should happen here.
-     * @param message Raw OSMHeader or OSMData blob.
+     * @param message Raw OSMHeader or OSMData blob. Buffer is reused by the processing thread
+     *                for the next blobs, so it must not be kept after return.
+     * @param length Length of the message, buffer may be bigger.
      */
-    protected abstract void read(byte[] message);
+    protected abstract void read(byte[] message, int length);
 }
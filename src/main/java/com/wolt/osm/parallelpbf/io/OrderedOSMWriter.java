@@ -0,0 +1,492 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.wolt.osm.parallelpbf.blob.BlobWriter;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes entities in the order of write() calls, while still encoding and compressing them in parallel.
+ *
+ * Entities are cut into chunks, each chunk gets the next sequence number. Chunks are encoded to blocks
+ * and compressed by the worker threads, then written by the single commit thread strictly
+ * in the sequence order. Chunk never mixes entity types, so each block has a single group.
+ *
+ * Entities are expected to be sorted by type and then by id, which is checked on write, so the
+ * output can be marked with the Sort.Type_then_ID feature. Number of chunks, that are either waiting
+ * for the worker or waiting for the previous chunks to be written, is limited to the queue depth
+ * plus the number of threads.
+ *
+ * Any encoding or writing failure stops the output: nothing is written after the failed chunk,
+ * and following write() and close() calls throw.
+ */
+@Slf4j
+public final class OrderedOSMWriter {
+    /**
+     * Maximum number of entities in a chunk.
+     */
+    private static final int CHUNK_SIZE = 8000;
+
+    /**
+     * Chunk, telling worker to stop.
+     */
+    private static final Chunk POISON = new Chunk(-1, Collections.emptyList());
+
+    /**
+     * Window permits, released on failure, so producers never block on the window again.
+     */
+    private static final int WINDOW_POISON = Integer.MAX_VALUE / 2;
+
+    /**
+     * Entities, cut from the input, with their position in the output.
+     */
+    private static final class Chunk {
+        /**
+         * Position of the chunk in the output.
+         */
+        private final long sequence;
+
+        /**
+         * Entities of the chunk.
+         */
+        private final List<OsmEntity> entities;
+
+        /**
+         * Creates chunk.
+         * @param sequenceValue Position of the chunk in the output.
+         * @param entitiesValue Entities of the chunk.
+         */
+        Chunk(final long sequenceValue, final List<OsmEntity> entitiesValue) {
+            this.sequence = sequenceValue;
+            this.entities = entitiesValue;
+        }
+    }
+
+    /**
+     * Compressed block, waiting to be written.
+     */
+    private static final class CompressedBlock {
+        /**
+         * Serialized Blob message.
+         */
+        private final byte[] data;
+
+        /**
+         * Block summary for the BlobHeader.
+         */
+        private final byte[] indexData;
+
+        /**
+         * Creates block.
+         * @param dataValue Serialized Blob message.
+         * @param indexDataValue Block summary.
+         */
+        CompressedBlock(final byte[] dataValue, final byte[] indexDataValue) {
+            this.data = dataValue;
+            this.indexData = indexDataValue;
+        }
+    }
+
+    /**
+     * Shared BlobWriter.
+     */
+    private final BlobWriter writer;
+
+    /**
+     * Number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Chunks, waiting for the workers.
+     */
+    private BlockingQueue<Chunk> chunks;
+
+    /**
+     * Limits number of chunks, submitted, but not written yet.
+     */
+    private Semaphore window;
+
+    /**
+     * Compressed blobs of the processed chunks by chunk sequence number, waiting for the previous chunks.
+     */
+    private final Map<Long, List<CompressedBlock>> completed = new HashMap<>();
+
+    /**
+     * Worker threads.
+     */
+    private final List<Thread> workers = new ArrayList<>();
+
+    /**
+     * Commit thread.
+     */
+    private Thread committer;
+
+    /**
+     * Entities of the chunk being filled.
+     */
+    private List<OsmEntity> current = new ArrayList<>();
+
+    /**
+     * Type order of the last written entity.
+     */
+    private int lastType = -1;
+
+    /**
+     * Id of the last written entity.
+     */
+    private long lastId = Long.MIN_VALUE;
+
+    /**
+     * Number of submitted chunks.
+     */
+    private long submitted = 0;
+
+    /**
+     * Number of written chunks. Guarded by the completed map.
+     */
+    private long committed = 0;
+
+    /**
+     * Total number of chunks, known after close, -1 before that. Guarded by the completed map.
+     */
+    private long total = -1;
+
+    /**
+     * First encoding or writing failure, null if there were no failures. Guarded by the completed map.
+     */
+    private Throwable failure;
+
+    /**
+     * Creates writer.
+     * @param output Shared BlobWriter.
+     * @param noThreads Number of encoding and compressing threads.
+     */
+    public OrderedOSMWriter(final BlobWriter output, final int noThreads) {
+        this.writer = output;
+        this.threads = noThreads;
+        setQueueDepth(noThreads);
+    }
+
+    /**
+     * Sets number of chunks, that may wait for the workers. Should be called before start().
+     * Number of chunks, waiting to be written, is limited to the queue depth plus the number of threads.
+     * @param depth Queue depth.
+     */
+    public void setQueueDepth(final int depth) {
+        this.chunks = new LinkedBlockingQueue<>(depth);
+        this.window = new Semaphore(depth + threads);
+        writer.useBacklog(chunks);
+    }
+
+    /**
+     * Position of the entity type in the Type_then_ID order.
+     * @param entity Entity to check.
+     * @return 0 for nodes, 1 for ways, 2 for relations, -1 for unsupported types.
+     */
+    private static int typeOf(final OsmEntity entity) {
+        if (entity instanceof Node) {
+            return 0;
+        } else if (entity instanceof Way) {
+            return 1;
+        } else if (entity instanceof Relation) {
+            return 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Starts worker and commit threads.
+     */
+    public void start() {
+        for (int indx = 0; indx < threads; ++indx) {
+            Thread worker = new Thread(this::work, "OSMWriter");
+            worker.start();
+            workers.add(worker);
+        }
+        committer = new Thread(this::commit, "OSMCommitter");
+        committer.start();
+    }
+
+    /**
+     * Adds entity to the output. Entities must come sorted by type (nodes, ways, relations) and then by id.
+     * Thread-safe, but to keep the order it should be called from a single thread or externally synchronized.
+     *
+     * @param entity Node/Way/Relation entity.
+     * @return true if entity queued for writing, false if entity is out of order, unsupported or
+     *         writer was interrupted.
+     * @throws RuntimeException if encoding or writing of the previous chunks failed.
+     */
+    public synchronized boolean write(final OsmEntity entity) {
+        checkFailure();
+        int type = typeOf(entity);
+        if (type < 0) {
+            log.error("Unknown entity type: {}", entity);
+            return false;
+        }
+        if (type < lastType || type == lastType && entity.getId() <= lastId) {
+            log.error("Entity {} {} breaks Type_then_ID order", entity.getClass().getSimpleName(), entity.getId());
+            return false;
+        }
+        try {
+            if (type != lastType && !current.isEmpty() && !submit()) {
+                checkFailure();
+            }
+            current.add(entity);
+            lastType = type;
+            lastId = entity.getId();
+            if (current.size() >= CHUNK_SIZE && !submit()) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            log.warn("Unable to send entity for writing: {}", e.getMessage(), e);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds entities to the output in the collection order, see {@link #write(OsmEntity)}.
+     * Entities are added under a single lock, so the collection is kept together, even if
+     * called concurrently. Entities, breaking the order, are skipped.
+     *
+     * @param entities Node/Way/Relation entities.
+     * @return true if all entities queued for writing, false if some entities were rejected.
+     * @throws RuntimeException if encoding or writing of the previous chunks failed.
+     */
+    public synchronized boolean write(final Collection<? extends OsmEntity> entities) {
+        boolean result = true;
+        for (OsmEntity entity : entities) {
+            result &= write(entity);
+        }
+        return result;
+    }
+
+    /**
+     * Throws, if writer has failed.
+     * @throws RuntimeException with the first failure as a cause.
+     */
+    private void checkFailure() {
+        synchronized (completed) {
+            if (failure != null) {
+                throw new RuntimeException("Ordered writing failed", failure);
+            }
+        }
+    }
+
+    /**
+     * Records the failure, wakes up the commit thread and releases the window, so producers
+     * waiting for it fail instead of hanging. Only the first failure is kept.
+     * @param e Failure cause.
+     */
+    private void fail(final Throwable e) {
+        synchronized (completed) {
+            completed.notifyAll();
+            if (failure != null) {
+                return;
+            }
+            failure = e;
+        }
+        window.release(WINDOW_POISON);
+    }
+
+    /**
+     * Checks if writer has failed.
+     * @return true if there was a failure.
+     */
+    private boolean failed() {
+        synchronized (completed) {
+            return failure != null;
+        }
+    }
+
+    /**
+     * Sends current chunk to the workers, waiting for the free window slot.
+     * @return false if writer has failed and chunk was not sent.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private boolean submit() throws InterruptedException {
+        window.acquire();
+        if (failed()) {
+            return false;
+        }
+        chunks.put(new Chunk(submitted, current));
+        ++submitted;
+        current = new ArrayList<>();
+        return true;
+    }
+
+    /**
+     * Worker thread loop: encodes and compresses chunks. After a failure chunks are
+     * only drained, so producers are never blocked on the queue.
+     */
+    private void work() {
+        try {
+            Chunk chunk = chunks.take();
+            while (chunk != POISON) {
+                if (!failed()) {
+                    try {
+                        List<CompressedBlock> blobs = encode(chunk);
+                        synchronized (completed) {
+                            completed.put(chunk.sequence, blobs);
+                            completed.notifyAll();
+                        }
+                    } catch (RuntimeException e) {
+                        log.error("Error encoding chunk {}: {}", chunk.sequence, e.getMessage(), e);
+                        fail(e);
+                    }
+                }
+                chunk = chunks.take();
+            }
+        } catch (InterruptedException e) {
+            log.debug("OSMWriter interrupted");
+        } finally {
+            BlobWriter.releaseCompressor();
+        }
+    }
+
+    /**
+     * Encodes chunk into blocks and compresses them.
+     * @param chunk Chunk to process.
+     * @return compressed blobs.
+     * @throws RuntimeException in case of encoding error.
+     */
+    private List<CompressedBlock> encode(final Chunk chunk) {
+        List<CompressedBlock> blobs = new ArrayList<>();
+        BlockEncoder encoder = new BlockEncoder();
+        for (OsmEntity entity : chunk.entities) {
+            encoder.add(entity);
+            if (encoder.isFull()) {
+                compress(encoder, blobs);
+            }
+        }
+        compress(encoder, blobs);
+        return blobs;
+    }
+
+    /**
+     * Flushes and compresses block, if it is not empty.
+     * @param encoder Block encoder.
+     * @param blobs Compressed blobs.
+     */
+    private void compress(final BlockEncoder encoder, final List<CompressedBlock> blobs) {
+        byte[] summary = encoder.summary();
+        byte[] block = encoder.flush();
+        if (block != null) {
+            blobs.add(new CompressedBlock(writer.compressData(block), summary));
+        }
+    }
+
+    /**
+     * Commit thread loop: writes compressed chunks in the sequence order. Stops on the first failure,
+     * so nothing is written after the failed chunk.
+     */
+    private void commit() {
+        try {
+            while (true) {
+                List<CompressedBlock> blobs;
+                long sequence;
+                synchronized (completed) {
+                    while (!completed.containsKey(committed)) {
+                        if (failure != null || committed == total) {
+                            return;
+                        }
+                        completed.wait();
+                    }
+                    if (failure != null) {
+                        return;
+                    }
+                    sequence = committed;
+                    blobs = completed.remove(sequence);
+                }
+                for (CompressedBlock blob : blobs) {
+                    if (!writer.writeCompressedData(blob.data, blob.indexData)) {
+                        throw new IllegalStateException("Unable to write chunk " + sequence);
+                    }
+                }
+                synchronized (completed) {
+                    ++committed;
+                }
+                window.release();
+            }
+        } catch (InterruptedException e) {
+            log.warn("OSMCommitter interrupted");
+            fail(e);
+        } catch (RuntimeException e) {
+            log.error("Error writing ordered output: {}", e.getMessage(), e);
+            fail(e);
+        } finally {
+            boolean unfinished;
+            synchronized (completed) {
+                unfinished = failure == null && committed != total;
+            }
+            if (unfinished) {
+                fail(new IllegalStateException("OSMCommitter stopped before all chunks were written"));
+            }
+        }
+    }
+
+    /**
+     * Writes remaining entities and stops all the threads. If calling thread is interrupted,
+     * writing is aborted and threads are interrupted.
+     * @throws RuntimeException if encoding or writing failed or close was interrupted, so the output is incomplete.
+     */
+    public synchronized void close() {
+        try {
+            if (!current.isEmpty()) {
+                submit();
+            }
+            for (int indx = 0; indx < workers.size(); ++indx) {
+                chunks.put(POISON);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            synchronized (completed) {
+                total = submitted;
+                completed.notifyAll();
+            }
+            if (committer != null) {
+                committer.join();
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for OSMWriter to stop");
+            fail(e);
+            workers.forEach(Thread::interrupt);
+            if (committer != null) {
+                committer.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import crosby.binary.Osmformat;
+import lombok.var;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Lightweight PrimitiveBlock reader, that looks at the primitive groups field tags and lengths
+ * and builds only groups of the requested types. Unwanted groups are skipped without building any messages.
+ * String table is only located during the scan and is built, when at least one group is kept.
+ *
+ * Per OSM PBF format each group contains entities of a single type, but groups with mixed
+ * content are supported too: group is kept if any of its fields is requested.
+ */
+final class PrimitiveBlockScanner {
+    /**
+     * Requested group fields, indexed by PrimitiveGroup field number.
+     */
+    private final boolean[] wanted = new boolean[Osmformat.PrimitiveGroup.CHANGESETS_FIELD_NUMBER + 1];
+
+    /**
+     * Creates scanner for the specific group types.
+     * @param nodes Keep groups of plain nodes.
+     * @param dense Keep groups of dense nodes.
+     * @param ways Keep groups of ways.
+     * @param relations Keep groups of relations.
+     * @param changesets Keep groups of changesets.
+     */
+    PrimitiveBlockScanner(final boolean nodes,
+                          final boolean dense,
+                          final boolean ways,
+                          final boolean relations,
+                          final boolean changesets) {
+        wanted[Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER] = nodes;
+        wanted[Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER] = dense;
+        wanted[Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER] = ways;
+        wanted[Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER] = relations;
+        wanted[Osmformat.PrimitiveGroup.CHANGESETS_FIELD_NUMBER] = changesets;
+    }
+
+    /**
+     * Parses PrimitiveBlock, keeping only requested primitive groups.
+     * @param message Raw OSMData blob.
+     * @param length Length of the blob.
+     * @return Parsed block or empty, if block doesn't have any of requested groups.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    Optional<Osmformat.PrimitiveBlock> parse(final byte[] message, final int length) throws IOException {
+        var builder = Osmformat.PrimitiveBlock.newBuilder();
+        boolean found = false;
+        int tableOffset = -1;
+        int tableLength = 0;
+        CodedInputStream input = CodedInputStream.newInstance(message, 0, length);
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.PrimitiveBlock.STRINGTABLE_FIELD_NUMBER:
+                    tableLength = input.readRawVarint32();
+                    tableOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(tableLength);
+                    break;
+                case Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER:
+                    int groupLength = input.readRawVarint32();
+                    int groupOffset = input.getTotalBytesRead();
+                    if (isWanted(message, groupOffset, groupLength)) {
+                        var group = CodedInputStream.newInstance(message, groupOffset, groupLength);
+                        builder.addPrimitivegroup(Osmformat.PrimitiveGroup.parseFrom(group));
+                        found = true;
+                    }
+                    input.skipRawBytes(groupLength);
+                    break;
+                case Osmformat.PrimitiveBlock.GRANULARITY_FIELD_NUMBER:
+                    builder.setGranularity(input.readInt32());
+                    break;
+                case Osmformat.PrimitiveBlock.DATE_GRANULARITY_FIELD_NUMBER:
+                    builder.setDateGranularity(input.readInt32());
+                    break;
+                case Osmformat.PrimitiveBlock.LAT_OFFSET_FIELD_NUMBER:
+                    builder.setLatOffset(input.readInt64());
+                    break;
+                case Osmformat.PrimitiveBlock.LON_OFFSET_FIELD_NUMBER:
+                    builder.setLonOffset(input.readInt64());
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+        if (!found) {
+            return Optional.empty();
+        }
+        if (tableOffset >= 0) {
+            var table = CodedInputStream.newInstance(message, tableOffset, tableLength);
+            builder.setStringtable(Osmformat.StringTable.parseFrom(table));
+        }
+        return Optional.of(builder.build());
+    }
+
+    /**
+     * Checks field tags of the primitive group, skipping their content.
+     * @param message Raw OSMData blob.
+     * @param offset Offset of the group content.
+     * @param length Length of the group content.
+     * @return true if group has any of requested fields.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private boolean isWanted(final byte[] message, final int offset, final int length) throws IOException {
+        CodedInputStream group = CodedInputStream.newInstance(message, offset, length);
+        int tag = group.readTag();
+        while (tag != 0) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            if (field < wanted.length && wanted[field]) {
+                return true;
+            }
+            group.skipField(tag);
+            tag = group.readTag();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.io;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Delivers results of the blobs, processed in parallel, in the order blobs were read.
+ *
+ * Each blob gets a {@link Block} with the next sequence number. Blob reader is configured
+ * with callbacks, wrapped by the block, so instead of being called immediately, they are
+ * recorded. When blob processing is finished, recorded calls are replayed
+ * as soon as all the previous blocks are replayed.
+ *
+ * Replay is serialized: at any moment at most one thread replays recorded calls, so callbacks
+ * are never called concurrently. Block is released to the scheduler only after replay, so
+ * the reorder window is limited by the scheduler's read ahead depth and memory budget.
+ */
+@Slf4j
+public final class ReorderBuffer {
+    /**
+     * Scheduler to release replayed blocks to.
+     */
+    private final BlobScheduler scheduler;
+
+    /**
+     * Processed blocks, waiting for the previous blocks.
+     */
+    private final Map<Long, Block> ready = new HashMap<>();
+
+    /**
+     * Sequence number of the next block to open.
+     */
+    private long opened = 0;
+
+    /**
+     * Sequence number of the next block to replay.
+     */
+    private long next = 0;
+
+    /**
+     * Marks that some thread is replaying blocks right now.
+     */
+    private boolean replaying = false;
+
+    /**
+     * Binds buffer to the scheduler.
+     * @param schedulerValue Scheduler, processed blocks are released to.
+     */
+    public ReorderBuffer(final BlobScheduler schedulerValue) {
+        this.scheduler = schedulerValue;
+    }
+
+    /**
+     * Starts next block. Blocks must be opened in the order they should be delivered.
+     * @return Block, that records calls of the blob.
+     */
+    public synchronized Block open() {
+        return new Block(opened++);
+    }
+
+    /**
+     * Accepts processed block and replays all consecutive blocks, that are ready.
+     * @param block Processed block.
+     */
+    private void complete(final Block block) {
+        synchronized (this) {
+            ready.put(block.sequence, block);
+            if (replaying) {
+                return;
+            }
+            replaying = true;
+        }
+        while (true) {
+            Block current;
+            synchronized (this) {
+                current = ready.remove(next);
+                if (current == null) {
+                    replaying = false;
+                    return;
+                }
+                ++next;
+            }
+            current.replay();
+        }
+    }
+
+    /**
+     * Recorded calls of a single blob.
+     */
+    public final class Block implements BlobTracker {
+        /**
+         * Position of the block in the delivery order.
+         */
+        private final long sequence;
+
+        /**
+         * Recorded calls. Only accessed by the processing thread before completion
+         * and by the replaying thread after completion.
+         */
+        private final List<Runnable> calls = new ArrayList<>();
+
+        /**
+         * Weight of the blob, to release after replay.
+         */
+        private long weight;
+
+        /**
+         * Marks that blob was dropped without processing, so there is nothing
+         * to replay or release.
+         */
+        private boolean cancelled;
+
+        /**
+         * Creates empty block.
+         * @param sequenceValue Position of the block in the delivery order.
+         */
+        private Block(final long sequenceValue) {
+            this.sequence = sequenceValue;
+        }
+
+        /**
+         * Wraps callback so its calls are recorded to the block.
+         * @param callback Callback to wrap. May be null.
+         * @param <T> Type of the callback argument.
+         * @return Recording callback or null, if callback is null.
+         */
+        public <T> Consumer<T> wrap(final Consumer<T> callback) {
+            if (callback == null) {
+                return null;
+            }
+            return value -> calls.add(() -> callback.accept(value));
+        }
+
+        /**
+         * Blob processing is finished. Failed blob is reported to the scheduler
+         * immediately, successful one is queued for the replay.
+         * @param weightValue Weight, blob was admitted with.
+         * @param error Processing error or null in case of success.
+         */
+        @Override
+        public void release(final long weightValue, final Throwable error) {
+            if (error != null) {
+                scheduler.release(weightValue, error);
+                return;
+            }
+            this.weight = weightValue;
+            complete(this);
+        }
+
+        /**
+         * Blob was dropped before processing. Block is closed without recorded calls,
+         * so the following blocks are not stuck waiting for it.
+         */
+        @Override
+        public void cancel() {
+            calls.clear();
+            cancelled = true;
+            complete(this);
+        }
+
+        /**
+         * Calls recorded callbacks and releases the blob.
+         * Nothing is called if processing has already failed or block was cancelled.
+         */
+        private void replay() {
+            if (cancelled) {
+                return;
+            }
+            Throwable error = null;
+            try {
+                if (scheduler.isHealthy()) {
+                    calls.forEach(Runnable::run);
+                }
+            } catch (RuntimeException e) {
+                log.error("Callback failed: {}", e.getMessage(), e);
+                error = e;
+            } finally {
+                calls.clear();
+                scheduler.release(weight, error);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.location;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Node locations store, backed by a memory mapped file with a slot for every node id.
+ *
+ * Slot of the node is found by its id, so writing and lookup are a single memory access
+ * and concurrent writes of different nodes never touch the same slot. File takes 8 bytes per id up to
+ * the maximum node id, but is created sparse, so only pages with the written nodes actually
+ * take disk space. That makes the store suitable for the planet sized data.
+ *
+ * File is kept between runs, so locations, stored once, may be used by the next runs.
+ * Writes are made visible to other threads by the parser completion, lookups don't lock.
+ */
+@Slf4j
+public final class DenseNodeLocationStore implements NodeLocationStore, Closeable {
+    /**
+     * Size of a single location slot.
+     */
+    private static final int SLOT_SIZE = 8;
+
+    /**
+     * Number of slots in the mapped segment, so segment is 1G.
+     */
+    private static final long SEGMENT_SLOTS = 128L * 1024 * 1024;
+
+    /**
+     * Backing file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Mapped file segments.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Number of slots, so the biggest node id is one less.
+     */
+    @Getter
+    private final long capacity;
+
+    /**
+     * Maps the file.
+     * @param fileChannel Backing file, extended to the required size.
+     * @param slots Number of slots.
+     * @throws IOException in case of mapping error.
+     */
+    private DenseNodeLocationStore(final FileChannel fileChannel, final long slots) throws IOException {
+        this.channel = fileChannel;
+        this.capacity = slots;
+        int count = (int) ((slots + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS);
+        segments = new MappedByteBuffer[count];
+        for (int indx = 0; indx < count; ++indx) {
+            long start = indx * SEGMENT_SLOTS;
+            long length = Math.min(SEGMENT_SLOTS, slots - start);
+            segments[indx] = channel.map(FileChannel.MapMode.READ_WRITE, start * SLOT_SIZE, length * SLOT_SIZE);
+        }
+        log.debug("Mapped {} node location slots in {} segments", slots, count);
+    }
+
+    /**
+     * Opens or creates the store file. Existing locations are kept.
+     * @param file Store file.
+     * @param maxId Biggest node id to store. File is extended, if it is smaller, but never truncated.
+     * @return Store.
+     * @throws IOException in case of file or mapping error.
+     * @throws IllegalArgumentException if maximum node id is negative.
+     */
+    public static DenseNodeLocationStore open(final Path file, final long maxId) throws IOException {
+        if (maxId < 0) {
+            throw new IllegalArgumentException("Maximum node id should not be negative: " + maxId);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+        try {
+            long slots = Math.max(channel.size() / SLOT_SIZE, maxId + 1);
+            if (channel.size() < slots * SLOT_SIZE) {
+                channel.write(ByteBuffer.allocate(1), slots * SLOT_SIZE - 1);
+            }
+            return new DenseNodeLocationStore(channel, slots);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(final long id, final int lat, final int lon) {
+        if (id < 0 || id >= capacity) {
+            throw new IllegalArgumentException("Node id " + id + " is out of the store range 0.." + (capacity - 1));
+        }
+        int position = (int) (id % SEGMENT_SLOTS) * SLOT_SIZE;
+        segments[(int) (id / SEGMENT_SLOTS)].putLong(position, NodeLocationStore.pack(lat, lon) ^ MISSING);
+    }
+
+    /**
+     * Finds node location. Empty slots of the sparse file read as zeros, so values are stored
+     * xored with {@link #MISSING} to make zero slot a missing location.
+     * @param id Node id.
+     * @return Packed location or {@link #MISSING}.
+     */
+    @Override
+    public long get(final long id) {
+        if (id < 0 || id >= capacity) {
+            return MISSING;
+        }
+        int position = (int) (id % SEGMENT_SLOTS) * SLOT_SIZE;
+        return segments[(int) (id / SEGMENT_SLOTS)].getLong(position) ^ MISSING;
+    }
+
+    /**
+     * Flushes written locations to the disk.
+     */
+    @Override
+    public void complete() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the file. Store should not be used after closing.
+     * @throws IOException in case of error.
+     */
+    @Override
+    public void close() throws IOException {
+        complete();
+        channel.close();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.location;
+
+/**
+ * Storage of the node locations, keyed by node id.
+ *
+ * Location is kept as a pair of 32 bit fixed point coordinates in units of 1e-7 degree,
+ * packed into a single long: latitude in the high half and longitude in the low half.
+ * Implementations accept concurrent writes of different nodes without locking and
+ * support concurrent lookups, once writing is completed.
+ */
+public interface NodeLocationStore {
+    /**
+     * Value, returned for the nodes without location. It is never a valid location,
+     * as latitude part of it is out of range.
+     */
+    long MISSING = Long.MIN_VALUE;
+
+    /**
+     * Number of the fixed point units in a degree.
+     */
+    double SCALE = 1e7;
+
+    /**
+     * Number of bits, latitude is shifted by in the packed location.
+     */
+    int LAT_SHIFT = 32;
+
+    /**
+     * Mask of the longitude bits in the packed location.
+     */
+    long LON_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Number of nanodegrees in the fixed point unit.
+     */
+    long NANO_PER_UNIT = 100;
+
+    /**
+     * Stores node location. Location of the same node may be overwritten.
+     * @param id Node id.
+     * @param lat Latitude in 1e-7 degree units.
+     * @param lon Longitude in 1e-7 degree units.
+     * @throws IllegalArgumentException if node id can't be stored.
+     */
+    void put(long id, int lat, int lon);
+
+    /**
+     * Finds node location.
+     * @param id Node id.
+     * @return Packed location or {@link #MISSING}.
+     */
+    long get(long id);
+
+    /**
+     * Called, when all the locations are written, before the lookups.
+     * Parser calls it at the end of the successful parse run.
+     */
+    default void complete() {
+    }
+
+    /**
+     * Packs coordinates into a single value.
+     * @param lat Latitude in 1e-7 degree units.
+     * @param lon Longitude in 1e-7 degree units.
+     * @return Packed location.
+     */
+    static long pack(final int lat, final int lon) {
+        return ((long) lat << LAT_SHIFT) | (lon & LON_MASK);
+    }
+
+    /**
+     * Extracts latitude from the packed location.
+     * @param location Packed location.
+     * @return Latitude in 1e-7 degree units.
+     */
+    static int lat(final long location) {
+        return (int) (location >> LAT_SHIFT);
+    }
+
+    /**
+     * Extracts longitude from the packed location.
+     * @param location Packed location.
+     * @return Longitude in 1e-7 degree units.
+     */
+    static int lon(final long location) {
+        return (int) location;
+    }
+
+    /**
+     * Converts fixed point coordinate to degrees.
+     * @param value Coordinate in 1e-7 degree units.
+     * @return Coordinate in degrees.
+     */
+    static double toDegrees(final int value) {
+        return value / SCALE;
+    }
+
+    /**
+     * Converts coordinate in nanodegrees, as stored in PBF blocks, to fixed point, rounding it
+     * the same way as {@link #toFixed(double)} does.
+     * @param nanodegrees Coordinate in nanodegrees.
+     * @return Coordinate in 1e-7 degree units.
+     */
+    static int fromNanodegrees(final long nanodegrees) {
+        return (int) Math.floorDiv(nanodegrees + NANO_PER_UNIT / 2, NANO_PER_UNIT);
+    }
+
+    /**
+     * Converts coordinate in degrees to fixed point.
+     * @param degrees Coordinate in degrees.
+     * @return Coordinate in 1e-7 degree units.
+     */
+    static int toFixed(final double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.location;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node locations store, keeping only the stored nodes in a pair of arrays, sorted by node id.
+ *
+ * Writers take the next free slot with a single atomic increment, so concurrent writes do not lock.
+ * Arrays are sorted by {@link #complete()} call and lookups are binary searches, that can run
+ * concurrently. Memory usage is 16 bytes per stored node, regardless of the ids values, that makes
+ * the store suitable for extracts, where ids are spread over the whole planet range.
+ *
+ * Store is supposed to be filled once. Unlike other stores, location of the same node is not overwritten:
+ * every put takes a slot, so capacity must cover all the puts, including repeated ones. Duplicates are
+ * removed by {@link #complete()}, keeping any one of their locations.
+ *
+ * Store can be saved to the file and loaded back for the next runs.
+ */
+public final class SparseNodeLocationStore implements NodeLocationStore {
+    /**
+     * Store file magic value, 'PBFL'.
+     */
+    private static final int MAGIC = 0x5042464C;
+
+    /**
+     * Current store file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Ranges shorter than that are sorted with insertion sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Node ids, sorted after completion.
+     */
+    private final long[] ids;
+
+    /**
+     * Packed locations, in the same order as ids.
+     */
+    private final long[] locations;
+
+    /**
+     * Number of taken slots, may exceed the capacity on overflow.
+     */
+    private final AtomicInteger taken = new AtomicInteger();
+
+    /**
+     * Creates empty store.
+     * @param capacity Maximum number of nodes to store.
+     */
+    public SparseNodeLocationStore(final int capacity) {
+        this.ids = new long[capacity];
+        this.locations = new long[capacity];
+    }
+
+    /**
+     * Number of stored nodes.
+     * @return number of nodes.
+     */
+    public int size() {
+        return Math.min(taken.get(), ids.length);
+    }
+
+    /**
+     * Stores node location. Each call takes a slot, even if the node is already stored.
+     * @param id Node id.
+     * @param lat Latitude in 1e-7 degree units.
+     * @param lon Longitude in 1e-7 degree units.
+     * @throws IllegalStateException if store capacity is exceeded.
+     */
+    @Override
+    public void put(final long id, final int lat, final int lon) {
+        int slot = taken.getAndIncrement();
+        if (slot >= ids.length) {
+            throw new IllegalStateException("Node locations store capacity " + ids.length + " is exceeded");
+        }
+        ids[slot] = id;
+        locations[slot] = NodeLocationStore.pack(lat, lon);
+    }
+
+    /**
+     * Finds node location. Valid only after {@link #complete()} call.
+     * @param id Node id.
+     * @return Packed location or {@link #MISSING}.
+     */
+    @Override
+    public long get(final long id) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] < id) {
+                low = middle + 1;
+            } else if (ids[middle] > id) {
+                high = middle - 1;
+            } else {
+                return locations[middle];
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Sorts stored locations by node id and removes duplicate ids, keeping any one of their locations.
+     * Freed slots may be used by the next puts.
+     */
+    @Override
+    public synchronized void complete() {
+        int size = size();
+        for (int indx = 1; indx < size; ++indx) {
+            if (ids[indx - 1] > ids[indx]) {
+                sort(ids, locations, 0, size - 1);
+                break;
+            }
+        }
+        int unique = Math.min(size, 1);
+        for (int indx = 1; indx < size; ++indx) {
+            if (ids[indx] != ids[unique - 1]) {
+                ids[unique] = ids[indx];
+                locations[unique] = locations[indx];
+                ++unique;
+            }
+        }
+        if (unique < size) {
+            taken.set(unique);
+        }
+    }
+
+    /**
+     * Sorts keys and values by keys.
+     * @param keys Keys to sort.
+     * @param values Values to reorder same way as keys.
+     * @param from First index of the range.
+     * @param to Last index of the range, inclusive.
+     */
+    private static void sort(final long[] keys, final long[] values, final int from, final int to) {
+        int low = from;
+        int high = to;
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            long pivot = median(keys[low], keys[(low + high) >>> 1], keys[high]);
+            int left = low;
+            int right = high;
+            while (left <= right) {
+                while (keys[left] < pivot) {
+                    ++left;
+                }
+                while (keys[right] > pivot) {
+                    --right;
+                }
+                if (left <= right) {
+                    swap(keys, values, left, right);
+                    ++left;
+                    --right;
+                }
+            }
+            if (right - low < high - left) {
+                sort(keys, values, low, right);
+                low = left;
+            } else {
+                sort(keys, values, left, high);
+                high = right;
+            }
+        }
+        for (int indx = low + 1; indx <= high; ++indx) {
+            for (int pos = indx; pos > low && keys[pos - 1] > keys[pos]; --pos) {
+                swap(keys, values, pos - 1, pos);
+            }
+        }
+    }
+
+    /**
+     * Finds median of three values.
+     * @param first First value.
+     * @param second Second value.
+     * @param third Third value.
+     * @return Median value.
+     */
+    private static long median(final long first, final long second, final long third) {
+        return Math.max(Math.min(first, second), Math.min(Math.max(first, second), third));
+    }
+
+    /**
+     * Swaps two elements.
+     * @param keys Keys.
+     * @param values Values.
+     * @param first First element index.
+     * @param second Second element index.
+     */
+    private static void swap(final long[] keys, final long[] values, final int first, final int second) {
+        long key = keys[first];
+        keys[first] = keys[second];
+        keys[second] = key;
+        long value = values[first];
+        values[first] = values[second];
+        values[second] = value;
+    }
+
+    /**
+     * Saves completed store to the file. Ids and coordinates are delta coded.
+     * @param file File to write.
+     * @throws IOException on write error.
+     */
+    public void save(final Path file) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file))) {
+            CodedOutputStream output = CodedOutputStream.newInstance(stream);
+            output.writeFixed32NoTag(MAGIC);
+            output.writeUInt32NoTag(VERSION);
+            int size = size();
+            output.writeUInt32NoTag(size);
+            long id = 0;
+            int lat = 0;
+            int lon = 0;
+            for (int indx = 0; indx < size; ++indx) {
+                int nextLat = NodeLocationStore.lat(locations[indx]);
+                int nextLon = NodeLocationStore.lon(locations[indx]);
+                output.writeSInt64NoTag(ids[indx] - id);
+                output.writeSInt32NoTag(nextLat - lat);
+                output.writeSInt32NoTag(nextLon - lon);
+                id = ids[indx];
+                lat = nextLat;
+                lon = nextLon;
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Loads store, saved with {@link #save(Path)}. Loaded store is completed and ready for lookups.
+     * @param file File to read.
+     * @return Loaded store.
+     * @throws IOException on read error or if file format is not supported.
+     */
+    public static SparseNodeLocationStore load(final Path file) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+            CodedInputStream input = CodedInputStream.newInstance(stream);
+            input.setSizeLimit(Integer.MAX_VALUE);
+            return read(input, file);
+        }
+    }
+
+    /**
+     * Reads store, saved with {@link #save(Path)}. Size counter of the input is reset for every
+     * node, so input size limit applies to a single node and files bigger than 2GB can be read.
+     * @param input Input, positioned at the start of the store.
+     * @param file File name for error reporting.
+     * @return Loaded store.
+     * @throws IOException on read error or if file format is not supported.
+     */
+    static SparseNodeLocationStore read(final CodedInputStream input, final Path file) throws IOException {
+        if (input.readFixed32() != MAGIC || input.readUInt32() != VERSION) {
+            throw new IOException("Unsupported node locations file " + file);
+        }
+        int size = input.readUInt32();
+        SparseNodeLocationStore result = new SparseNodeLocationStore(size);
+        long id = 0;
+        int lat = 0;
+        int lon = 0;
+        for (int indx = 0; indx < size; ++indx) {
+            input.resetSizeCounter();
+            id += input.readSInt64();
+            lat += input.readSInt32();
+            lon += input.readSInt32();
+            result.put(id, lat, lon);
+        }
+        return result;
+    }
+}
@@ -18,6 +18,7 @@
 package com.wolt.osm.parallelpbf.parser;
 
 import com.wolt.osm.parallelpbf.entity.Info;
+import com.wolt.osm.parallelpbf.filter.BlockTagFilter;
 import crosby.binary.Osmformat;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -46,6 +47,35 @@ public abstract class BaseParser<M, T extends Consumer<?>> {
      */
     private final Osmformat.StringTable stringTable;
 
+    /**
+     * Decoded string table of the block, set when tags should be decoded lazily, null otherwise.
+     */
+    private BlockStringTable lazyStrings;
+
+    /**
+     * Tags filter of the block, null if entities are not filtered.
+     */
+    private BlockTagFilter tagFilter;
+
+    /**
+     * Enables entities filtering by tags. Entities, that do not match the filter, are skipped
+     * before any objects are created.
+     * @param filter Tags filter, compiled for the block. Null disables filtering.
+     */
+    public final void useTagFilter(final BlockTagFilter filter) {
+        this.tagFilter = filter;
+    }
+
+    /**
+     * Enables lazy tags decoding. Instead of a HashMap, entities will get {@link LazyTags} view,
+     * backed by the supplied string table.
+     * @param strings String table of the block, same as the stringTable of the parser.
+     *                Table must not be modified, while entities are in use. Null disables lazy decoding.
+     */
+    public final void useLazyTags(final BlockStringTable strings) {
+        this.lazyStrings = strings;
+    }
+
     /**
      * Helper that knows how to extract tags from the OSM entity.
      * <p>
@@ -57,6 +87,14 @@ public abstract class BaseParser<M, T extends Consumer<?>> {
      * @return Map of tags with their values.
      */
     Map<String, String> parseTags(final List<Integer> keys, final List<Integer> values) {
+        if (lazyStrings != null) {
+            int[] pairs = new int[keys.size() * 2];
+            for (int indx = 0; indx < keys.size(); ++indx) {
+                pairs[indx * 2] = keys.get(indx);
+                pairs[indx * 2 + 1] = values.get(indx);
+            }
+            return new LazyTags(lazyStrings, pairs);
+        }
         HashMap<String, String> result = new HashMap<>();
         for (int indx = 0; indx < keys.size(); ++indx) {
             String key = stringTable.getS(keys.get(indx)).toStringUtf8();
@@ -66,6 +104,82 @@ public abstract class BaseParser<M, T extends Consumer<?>> {
         return result;
     }
 
+    /**
+     * Checks if entity's tags pass the tags filter.
+     *
+     * @param message Node message to check.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    boolean accepts(final Osmformat.Node message) {
+        if (tagFilter == null) {
+            return true;
+        }
+        for (int indx = 0; indx < message.getKeysCount(); ++indx) {
+            if (tagFilter.matches(message.getKeys(indx), message.getVals(indx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if entity's tags pass the tags filter.
+     *
+     * @param message Way message to check.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    boolean accepts(final Osmformat.Way message) {
+        if (tagFilter == null) {
+            return true;
+        }
+        for (int indx = 0; indx < message.getKeysCount(); ++indx) {
+            if (tagFilter.matches(message.getKeys(indx), message.getVals(indx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if entity's tags pass the tags filter.
+     *
+     * @param message Relation message to check.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    boolean accepts(final Osmformat.Relation message) {
+        if (tagFilter == null) {
+            return true;
+        }
+        for (int indx = 0; indx < message.getKeysCount(); ++indx) {
+            if (tagFilter.matches(message.getKeys(indx), message.getVals(indx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if dense node's tags pass the tags filter.
+     *
+     * @param nodes Dense nodes message.
+     * @param start Position of the node's first key in the keys_vals field.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    boolean accepts(final Osmformat.DenseNodes nodes, final int start) {
+        if (tagFilter == null) {
+            return true;
+        }
+        if (nodes.getKeysValsCount() == 0) {
+            return false;
+        }
+        for (int pos = start; nodes.getKeysVals(pos) != 0; pos += 2) {
+            if (tagFilter.matches(nodes.getKeysVals(pos), nodes.getKeysVals(pos + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Checks if OSM entity have Info filled and extracts it from the PBF.
      *
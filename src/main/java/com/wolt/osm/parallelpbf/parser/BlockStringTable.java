@@ -0,0 +1,297 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.parser;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import crosby.binary.Osmformat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * String table of a PrimitiveBlock, stored as a single byte array with offsets.
+ *
+ * Strings are decoded to Java strings only on request and cached, while lookups by
+ * the string value are done by comparing raw bytes. Table can be reset with a next block's
+ * string table, reusing already allocated arrays.
+ *
+ * Table is not thread safe.
+ */
+public final class BlockStringTable {
+    /**
+     * Chars below that value are encoded with the same single byte in UTF-8.
+     */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /**
+     * Concatenated UTF-8 bytes of all the strings.
+     */
+    private byte[] data = new byte[0];
+
+    /**
+     * Start of each string in the data array, followed by the end of the last string.
+     */
+    private int[] offsets = new int[1];
+
+    /**
+     * Cache of the already decoded strings.
+     */
+    private String[] decoded = new String[0];
+
+    /**
+     * Number of strings in the table.
+     */
+    private int size = 0;
+
+    /**
+     * Creates empty table.
+     */
+    public BlockStringTable() {
+    }
+
+    /**
+     * Creates table from the block's string table.
+     * @param table PBF string table.
+     */
+    public BlockStringTable(final Osmformat.StringTable table) {
+        reset(table);
+    }
+
+    /**
+     * Replaces content of the table with the block's string table.
+     * @param table PBF string table.
+     */
+    public void reset(final Osmformat.StringTable table) {
+        size = table.getSCount();
+        int total = 0;
+        for (int indx = 0; indx < size; ++indx) {
+            total += table.getS(indx).size();
+        }
+        if (data.length < total) {
+            data = new byte[total];
+        }
+        if (offsets.length < size + 1) {
+            offsets = new int[size + 1];
+            decoded = new String[size];
+        } else {
+            Arrays.fill(decoded, 0, size, null);
+        }
+        for (int indx = 0; indx < size; ++indx) {
+            ByteString value = table.getS(indx);
+            value.copyTo(data, offsets[indx]);
+            offsets[indx + 1] = offsets[indx] + value.size();
+        }
+    }
+
+    /**
+     * Replaces content of the table with the serialized StringTable message, without
+     * creating intermediate protobuf objects.
+     * @param message Buffer, containing the message.
+     * @param offset Start of the message in the buffer.
+     * @param length Length of the message.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    void reset(final byte[] message, final int offset, final int length) throws IOException {
+        int count = 0;
+        int total = 0;
+        CodedInputStream input = CodedInputStream.newInstance(message, offset, length);
+        int tag = input.readTag();
+        while (tag != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == Osmformat.StringTable.S_FIELD_NUMBER) {
+                int stringLength = input.readRawVarint32();
+                input.skipRawBytes(stringLength);
+                total += stringLength;
+                ++count;
+            } else {
+                input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+
+        size = count;
+        if (data.length < total) {
+            data = new byte[total];
+        }
+        if (offsets.length < size + 1) {
+            offsets = new int[size + 1];
+            decoded = new String[size];
+        } else {
+            Arrays.fill(decoded, 0, size, null);
+        }
+        int indx = 0;
+        input = CodedInputStream.newInstance(message, offset, length);
+        tag = input.readTag();
+        while (tag != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == Osmformat.StringTable.S_FIELD_NUMBER) {
+                int stringLength = input.readRawVarint32();
+                System.arraycopy(message, offset + input.getTotalBytesRead(), data, offsets[indx], stringLength);
+                input.skipRawBytes(stringLength);
+                offsets[indx + 1] = offsets[indx] + stringLength;
+                ++indx;
+            } else {
+                input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+    }
+
+    /**
+     * Number of strings in the table.
+     * @return table size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Length of the string in bytes.
+     * @param index Index of the string.
+     * @return length of the UTF-8 representation.
+     */
+    public int length(final int index) {
+        checkIndex(index);
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Decodes the string. Decoded strings are cached.
+     * @param index Index of the string.
+     * @return string value.
+     */
+    public String getString(final int index) {
+        checkIndex(index);
+        String value = decoded[index];
+        if (value == null) {
+            value = new String(data, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+            decoded[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Compares the string with a raw value without decoding it.
+     * @param index Index of the string.
+     * @param value UTF-8 bytes to compare with.
+     * @return true if string bytes are equal to the value.
+     */
+    public boolean equalsAt(final int index, final byte[] value) {
+        checkIndex(index);
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        if (length != value.length) {
+            return false;
+        }
+        for (int pos = 0; pos < length; ++pos) {
+            if (data[start + pos] != value[pos]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the string with a Java string without decoding it. ASCII values are
+     * compared char by char, other values are encoded to UTF-8 first.
+     * @param index Index of the string.
+     * @param value String to compare with.
+     * @return true if strings are equal.
+     */
+    public boolean equalsAt(final int index, final String value) {
+        checkIndex(index);
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        if (length < value.length()) {
+            return false;
+        }
+        for (int pos = 0; pos < value.length(); ++pos) {
+            char c = value.charAt(pos);
+            if (c >= ASCII_LIMIT) {
+                return equalsAt(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+            if (data[start + pos] != c) {
+                return false;
+            }
+        }
+        return length == value.length();
+    }
+
+    /**
+     * Looks up the string in the table by its bytes.
+     * @param value UTF-8 bytes of the string.
+     * @return index of the first equal string or -1 if table doesn't have it.
+     */
+    public int indexOf(final byte[] value) {
+        for (int indx = 0; indx < size; ++indx) {
+            if (equalsAt(indx, value)) {
+                return indx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies raw bytes of the string.
+     * @param index Index of the string.
+     * @return UTF-8 bytes of the string.
+     */
+    public byte[] getBytes(final int index) {
+        checkIndex(index);
+        return Arrays.copyOfRange(data, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Appends string of other table to the end of this one. Cached decoded value
+     * is copied too.
+     * @param source Table to copy the string from.
+     * @param index Index of the string in the source table.
+     * @return index of the string in this table.
+     */
+    public int append(final BlockStringTable source, final int index) {
+        source.checkIndex(index);
+        int start = source.offsets[index];
+        int length = source.offsets[index + 1] - start;
+        int end = offsets[size] + length;
+        if (data.length < end) {
+            data = Arrays.copyOf(data, Math.max(end, data.length * 2));
+        }
+        if (offsets.length < size + 2) {
+            offsets = Arrays.copyOf(offsets, (size + 1) * 2);
+        }
+        if (decoded.length < size + 1) {
+            decoded = Arrays.copyOf(decoded, (size + 1) * 2);
+        }
+        System.arraycopy(source.data, start, data, offsets[size], length);
+        offsets[size + 1] = end;
+        decoded[size] = source.decoded[index];
+        return size++;
+    }
+
+    /**
+     * Validates the index.
+     * @param index Index of the string.
+     * @throws IndexOutOfBoundsException if index is outside of the table.
+     */
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("String index " + index + " is out of table of " + size);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.parser;
+
+/**
+ * Columnar view of the dense nodes of a single primitive group.
+ *
+ * Nodes are stored in parallel primitive arrays, with ids and coordinates already delta decoded.
+ * Tags of the node i are stored in the keys/values array as key and value string table indices pairs,
+ * starting at {@link #getTagOffset(int)}, see {@link #tagCount(int)}. Strings are available
+ * from the {@link #getStringTable()}.
+ *
+ * Arrays may be longer than the number of nodes and are reused for the next block processed by
+ * the same thread, so neither the columns nor the arrays should be kept after callback returns.
+ */
+public final class DenseNodeColumns {
+    /**
+     * Number of nodes.
+     */
+    private int size = 0;
+
+    /**
+     * Node ids.
+     */
+    private long[] ids = new long[0];
+
+    /**
+     * Node latitudes.
+     */
+    private double[] latitudes = new double[0];
+
+    /**
+     * Node longitudes.
+     */
+    private double[] longitudes = new double[0];
+
+    /**
+     * Start of each node's tags in the keysVals array.
+     */
+    private int[] tagOffsets = new int[0];
+
+    /**
+     * Number of tags of each node.
+     */
+    private int[] tagCounts = new int[0];
+
+    /**
+     * Keys and values string indices of all the nodes.
+     */
+    private int[] keysVals = new int[0];
+
+    /**
+     * String table of the block.
+     */
+    private final BlockStringTable stringTable = new BlockStringTable();
+
+    /**
+     * Prepares columns for the next group.
+     * @param nodes Number of nodes in the group.
+     * @param keysValsCount Size of the keys/values array.
+     */
+    void reset(final int nodes, final int keysValsCount) {
+        size = nodes;
+        if (ids.length < nodes) {
+            ids = new long[nodes];
+            latitudes = new double[nodes];
+            longitudes = new double[nodes];
+            tagOffsets = new int[nodes];
+            tagCounts = new int[nodes];
+        }
+        if (keysVals.length < keysValsCount) {
+            keysVals = new int[keysValsCount];
+        }
+    }
+
+    /**
+     * Stores node values.
+     * @param index Position of the node in the group.
+     * @param id Node id.
+     * @param latitude Node latitude.
+     * @param longitude Node longitude.
+     */
+    void set(final int index, final long id, final double latitude, final double longitude) {
+        ids[index] = id;
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+    }
+
+    /**
+     * Stores node tags location.
+     * @param index Position of the node in the group.
+     * @param offset Start of the node's tags in the keysVals array.
+     * @param count Number of the node's tags.
+     */
+    void setTags(final int index, final int offset, final int count) {
+        tagOffsets[index] = offset;
+        tagCounts[index] = count;
+    }
+
+    /**
+     * Number of nodes.
+     * @return number of nodes in the group.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Node id.
+     * @param index Position of the node in the group.
+     * @return id of the node.
+     */
+    public long getId(final int index) {
+        return ids[index];
+    }
+
+    /**
+     * Node latitude.
+     * @param index Position of the node in the group.
+     * @return latitude in degrees.
+     */
+    public double getLat(final int index) {
+        return latitudes[index];
+    }
+
+    /**
+     * Node longitude.
+     * @param index Position of the node in the group.
+     * @return longitude in degrees.
+     */
+    public double getLon(final int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * Number of the node's tags.
+     * @param index Position of the node in the group.
+     * @return number of tags.
+     */
+    public int tagCount(final int index) {
+        return tagCounts[index];
+    }
+
+    /**
+     * Start of the node's tags.
+     * @param index Position of the node in the group.
+     * @return Offset of the node's first key in the keysVals array.
+     */
+    public int getTagOffset(final int index) {
+        return tagOffsets[index];
+    }
+
+    /**
+     * String table index of the tag key.
+     * @param index Position of the node in the group.
+     * @param tag Number of the tag.
+     * @return index of the key in the string table.
+     */
+    public int tagKey(final int index, final int tag) {
+        return keysVals[tagOffsets[index] + 2 * tag];
+    }
+
+    /**
+     * String table index of the tag value.
+     * @param index Position of the node in the group.
+     * @param tag Number of the tag.
+     * @return index of the value in the string table.
+     */
+    public int tagValue(final int index, final int tag) {
+        return keysVals[tagOffsets[index] + 2 * tag + 1];
+    }
+
+    /**
+     * Raw ids array. Only first {@link #size()} elements are valid.
+     * @return ids column.
+     */
+    public long[] getIds() {
+        return ids;
+    }
+
+    /**
+     * Raw latitudes array. Only first {@link #size()} elements are valid.
+     * @return latitudes column.
+     */
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    /**
+     * Raw longitudes array. Only first {@link #size()} elements are valid.
+     * @return longitudes column.
+     */
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    /**
+     * Raw keys/values array, copy of the DenseNodes keys_vals field.
+     * @return keys and values string indices.
+     */
+    public int[] getKeysVals() {
+        return keysVals;
+    }
+
+    /**
+     * Raw tag offsets array. Only first {@link #size()} elements are valid.
+     * @return offsets of the nodes tags in the keysVals array.
+     */
+    public int[] getTagOffsets() {
+        return tagOffsets;
+    }
+
+    /**
+     * String table of the block.
+     * @return string table.
+     */
+    public BlockStringTable getStringTable() {
+        return stringTable;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.parser;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Tags map, backed by the block's string table and the entity's key/value string indices.
+ *
+ * Strings are decoded only when they are actually read, lookups by key compare key bytes
+ * in the string table, so looking up a few keys of an entity does not decode all of its tags.
+ * The first modification copies tags to a regular HashMap, which is used from then on.
+ */
+public final class LazyTags extends AbstractMap<String, String> {
+    /**
+     * String table of the block.
+     */
+    private final BlockStringTable strings;
+
+    /**
+     * Key and value string indices, interleaved.
+     */
+    private final int[] keysVals;
+
+    /**
+     * Decoded tags after the first modification, null before.
+     */
+    private Map<String, String> materialized;
+
+    /**
+     * Creates tags view.
+     * @param table String table of the block. Must not be changed while map is used.
+     * @param pairs Key and value string indices, interleaved. Array is owned by the map after the call.
+     */
+    public LazyTags(final BlockStringTable table, final int[] pairs) {
+        this.strings = table;
+        this.keysVals = pairs;
+    }
+
+    /**
+     * Looks up position of the key.
+     * @param key Key to look up.
+     * @return index of the key in the keysVals array or -1.
+     */
+    private int find(final Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String value = (String) key;
+        for (int pos = keysVals.length - 2; pos >= 0; pos -= 2) {
+            if (strings.equalsAt(keysVals[pos], value)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes all the tags to a HashMap for modification.
+     * @return modifiable map.
+     */
+    private Map<String, String> materialize() {
+        if (materialized == null) {
+            materialized = new HashMap<>(this);
+        }
+        return materialized;
+    }
+
+    @Override
+    public int size() {
+        if (materialized != null) {
+            return materialized.size();
+        }
+        return keysVals.length / 2;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if (materialized != null) {
+            return materialized.containsKey(key);
+        }
+        return find(key) >= 0;
+    }
+
+    @Override
+    public String get(final Object key) {
+        if (materialized != null) {
+            return materialized.get(key);
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        return strings.getString(keysVals[pos + 1]);
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        return materialize().put(key, value);
+    }
+
+    @Override
+    public String remove(final Object key) {
+        return materialize().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        materialize().clear();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (materialized != null) {
+            return materialized.entrySet();
+        }
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int pos = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return pos < keysVals.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, String> entry = new SimpleImmutableEntry<>(
+                                strings.getString(keysVals[pos]), strings.getString(keysVals[pos + 1]));
+                        pos += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keysVals.length / 2;
+            }
+        };
+    }
+}
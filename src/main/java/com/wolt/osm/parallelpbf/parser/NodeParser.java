@@ -17,8 +17,11 @@
 
 package com.wolt.osm.parallelpbf.parser;
 
+import com.wolt.osm.parallelpbf.entity.BoundBox;
 import com.wolt.osm.parallelpbf.entity.Info;
 import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.filter.BlockBoxFilter;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
 import crosby.binary.Osmformat;
 import lombok.extern.slf4j.Slf4j;
 import lombok.var;
@@ -35,7 +38,7 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
     /**
      * Nano degrees scale.
      */
-    private static final double NANO = .000000001;
+    static final double NANO = .000000001;
 
     /**
      * Granularity, units of nanodegrees, used to store coordinates.
@@ -59,6 +62,11 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
      */
     private final int dateGranularity;
 
+    /**
+     * Bounding box filter, converted to the block grid. Null if nodes are not filtered.
+     */
+    private BlockBoxFilter boxFilter;
+
     /**
      * Sets all the node parsing parameters from the primitive message.
      * @param callback Callback to call on successful parse.
@@ -81,8 +89,27 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
         this.dateGranularity = dateGranularityValue;
     }
 
+    /**
+     * Enables nodes filtering by the bounding box. Box is converted to the grid of the parser's block once,
+     * so nodes are checked against raw coordinates, before any objects are created.
+     * @param box Bounding box. Null disables filtering.
+     */
+    public void useBoundBox(final BoundBox box) {
+        if (box == null) {
+            this.boxFilter = null;
+        } else {
+            this.boxFilter = new BlockBoxFilter(box, granularity, latOffset, lonOffset);
+        }
+    }
+
     @Override
     public void parse(final Osmformat.Node message) {
+        if (boxFilter != null && !boxFilter.matches(message.getLat(), message.getLon())) {
+            return;
+        }
+        if (!accepts(message)) {
+            return;
+        }
         double latitude = NANO * (latOffset + (granularity * message.getLat()));
         double longitude = NANO * (lonOffset + (granularity * message.getLon()));
         Node node = new Node(message.getId(), latitude, longitude);
@@ -101,8 +128,8 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
     public void parse(final Osmformat.DenseNodes nodes) {
         int tagsKeyValuePointer = 0;
         long id = 0;
-        double latitude = 0;
-        double longitude = 0;
+        long lat = 0;
+        long lon = 0;
 
         long timestamp = 0;
         long changeset = 0;
@@ -110,11 +137,35 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
         int usernameStringId = 0;
         for (int indx = 0; indx < nodes.getIdCount(); indx++) {
             id += nodes.getId(indx);
-            latitude += NANO * (latOffset + (granularity * nodes.getLat(indx)));
-            longitude += NANO * (lonOffset + (granularity * nodes.getLon(indx)));
+            lat += nodes.getLat(indx);
+            lon += nodes.getLon(indx);
+            if (nodes.hasDenseinfo()) {
+                var infoMessage = nodes.getDenseinfo();
+                uid += infoMessage.getUid(indx);
+                usernameStringId += infoMessage.getUserSid(indx);
+                changeset += infoMessage.getChangeset(indx);
+                timestamp += infoMessage.getTimestamp(indx);
+            }
+            if (boxFilter != null && !boxFilter.matches(lat, lon) || !accepts(nodes, tagsKeyValuePointer)) {
+                tagsKeyValuePointer = skipTags(nodes, tagsKeyValuePointer);
+                continue;
+            }
 
+            double latitude = NANO * (latOffset + (granularity * lat));
+            double longitude = NANO * (lonOffset + (granularity * lon));
             Node node = new Node(id, latitude, longitude);
-            if (nodes.getKeysValsCount() > 0) {
+            if (nodes.getKeysValsCount() > 0 && getLazyStrings() != null) {
+                int start = tagsKeyValuePointer;
+                while (nodes.getKeysVals(tagsKeyValuePointer) != 0) {
+                    tagsKeyValuePointer += 2;
+                }
+                int[] pairs = new int[tagsKeyValuePointer - start];
+                for (int pos = 0; pos < pairs.length; ++pos) {
+                    pairs[pos] = nodes.getKeysVals(start + pos);
+                }
+                ++tagsKeyValuePointer;
+                node.setTags(new LazyTags(getLazyStrings(), pairs));
+            } else if (nodes.getKeysValsCount() > 0) {
                 while (true) {
                     int keyIndex = nodes.getKeysVals(tagsKeyValuePointer);
                     ++tagsKeyValuePointer;
@@ -130,11 +181,7 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
             }
             if (nodes.hasDenseinfo()) {
                 var infoMessage = nodes.getDenseinfo();
-                uid += infoMessage.getUid(indx);
-                usernameStringId += infoMessage.getUserSid(indx);
                 String username = getStringTable().getS(usernameStringId).toStringUtf8();
-                changeset += infoMessage.getChangeset(indx);
-                timestamp += infoMessage.getTimestamp(indx);
                 int version = infoMessage.getVersion(indx);
                 boolean visible;
                 if (infoMessage.getVisibleCount() > 0) {
@@ -152,4 +199,84 @@ public final class NodeParser extends BaseParser<Osmformat.Node, Consumer<Node>>
 
         }
     }
+
+    /**
+     * Skips dense node's tags.
+     * @param nodes Dense nodes message.
+     * @param start Position of the node's first key in the keys_vals field.
+     * @return Position of the next node's first key.
+     */
+    private static int skipTags(final Osmformat.DenseNodes nodes, final int start) {
+        if (nodes.getKeysValsCount() == 0) {
+            return start;
+        }
+        int pos = start;
+        while (nodes.getKeysVals(pos) != 0) {
+            pos += 2;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Stores locations of all plain and dense nodes of the group, ignoring tags and bounding box filters.
+     * @param group Primitive group message.
+     * @param store Node locations store.
+     */
+    public void storeLocations(final Osmformat.PrimitiveGroup group, final NodeLocationStore store) {
+        for (Osmformat.Node node : group.getNodesList()) {
+            store.put(node.getId(), NodeLocationStore.fromNanodegrees(latOffset + granularity * node.getLat()),
+                    NodeLocationStore.fromNanodegrees(lonOffset + granularity * node.getLon()));
+        }
+        if (group.hasDense()) {
+            var nodes = group.getDense();
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            for (int indx = 0; indx < nodes.getIdCount(); indx++) {
+                id += nodes.getId(indx);
+                lat += nodes.getLat(indx);
+                lon += nodes.getLon(indx);
+                store.put(id, NodeLocationStore.fromNanodegrees(latOffset + granularity * lat),
+                        NodeLocationStore.fromNanodegrees(lonOffset + granularity * lon));
+            }
+        }
+    }
+
+    /**
+     * Parses nodes in DenseFormat into the columnar form, without creating Node objects.
+     * @param nodes DenseNodes message.
+     * @param columns Columns to fill. Previous content is replaced.
+     */
+    public void parse(final Osmformat.DenseNodes nodes, final DenseNodeColumns columns) {
+        int count = nodes.getIdCount();
+        int keysValsCount = nodes.getKeysValsCount();
+        columns.reset(count, keysValsCount);
+        columns.getStringTable().reset(getStringTable());
+        int[] keysVals = columns.getKeysVals();
+        for (int indx = 0; indx < keysValsCount; ++indx) {
+            keysVals[indx] = nodes.getKeysVals(indx);
+        }
+
+        int tagsKeyValuePointer = 0;
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+        for (int indx = 0; indx < count; indx++) {
+            id += nodes.getId(indx);
+            latitude += nodes.getLat(indx);
+            longitude += nodes.getLon(indx);
+            columns.set(indx, id,
+                    NANO * (latOffset + (granularity * latitude)),
+                    NANO * (lonOffset + (granularity * longitude)));
+
+            int start = tagsKeyValuePointer;
+            if (keysValsCount > 0) {
+                while (keysVals[tagsKeyValuePointer] != 0) {
+                    tagsKeyValuePointer += 2;
+                }
+                ++tagsKeyValuePointer;
+            }
+            columns.setTags(indx, start, Math.max(0, tagsKeyValuePointer - start - 1) / 2);
+        }
+    }
 }
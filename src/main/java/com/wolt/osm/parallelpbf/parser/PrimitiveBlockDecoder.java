@@ -0,0 +1,1210 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.parser;
+
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+import com.wolt.osm.parallelpbf.entity.Info;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.RelationMember;
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.filter.BlockBoxFilter;
+import com.wolt.osm.parallelpbf.filter.BlockTagFilter;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import crosby.binary.Osmformat;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streaming PrimitiveBlock decoder, that reads entities directly from the inflated blob
+ * without building generated protobuf messages. Packed fields are decoded into reusable
+ * primitive arrays and string table is copied into the {@link BlockStringTable}.
+ *
+ * Produces exactly the same entities, as {@link NodeParser}, {@link WayParser} and {@link RelationParser} do.
+ *
+ * Decoder is reusable between blocks, but is not thread safe. When lazy tags are enabled, each block
+ * gets a new string table, so entities of the previous blocks stay valid.
+ */
+@Slf4j
+public final class PrimitiveBlockDecoder {
+    /**
+     * Default values of the block parameters.
+     */
+    private static final Osmformat.PrimitiveBlock DEFAULT_BLOCK = Osmformat.PrimitiveBlock.getDefaultInstance();
+
+    /**
+     * Default values of the entity info.
+     */
+    private static final Osmformat.Info DEFAULT_INFO = Osmformat.Info.getDefaultInstance();
+
+    /**
+     * Initial capacity of the packed fields buffers.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Growable buffer of the packed int values.
+     */
+    private static final class IntColumn {
+        /**
+         * Values storage.
+         */
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        /**
+         * Number of values.
+         */
+        private int size = 0;
+
+        /**
+         * Removes all values, keeping the storage.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Appends a value.
+         * @param value Value to append.
+         */
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Number of values.
+         * @return number of values.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Gets a value.
+         * @param index Index of the value.
+         * @return value.
+         */
+        int get(final int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " is out of " + size + " values");
+            }
+            return values[index];
+        }
+
+        /**
+         * Copies range of the values.
+         * @param from Start of the range, inclusive.
+         * @param to End of the range, exclusive.
+         * @return copy of the values.
+         */
+        int[] copy(final int from, final int to) {
+            return Arrays.copyOfRange(values, from, to);
+        }
+    }
+
+    /**
+     * Growable buffer of the packed long values.
+     */
+    private static final class LongColumn {
+        /**
+         * Values storage.
+         */
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        /**
+         * Number of values.
+         */
+        private int size = 0;
+
+        /**
+         * Removes all values, keeping the storage.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Appends a value.
+         * @param value Value to append.
+         */
+        void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Number of values.
+         * @return number of values.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Gets a value.
+         * @param index Index of the value.
+         * @return value.
+         */
+        long get(final int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " is out of " + size + " values");
+            }
+            return values[index];
+        }
+    }
+
+    /**
+     * Reader of a single primitive group field.
+     */
+    @FunctionalInterface
+    private interface FieldReader {
+        /**
+         * Reads field content, limited to the field length.
+         * @param field Field number.
+         * @param input Input stream, positioned at the field content.
+         * @throws IOException in case of protobuf parsing error.
+         */
+        void read(int field, CodedInputStream input) throws IOException;
+    }
+
+    /**
+     * Lazy tags flag.
+     */
+    private final boolean lazyTags;
+
+    /**
+     * String table of the current block.
+     */
+    private BlockStringTable strings = new BlockStringTable();
+
+    /**
+     * Tags filter of the current block.
+     */
+    private BlockTagFilter tagFilter;
+
+    /**
+     * Bounding box filter of the current block, null if nodes are not filtered.
+     */
+    private BlockBoxFilter boxFilter;
+
+    /**
+     * Requested group fields, indexed by PrimitiveGroup field number.
+     */
+    private final boolean[] wanted = new boolean[Osmformat.PrimitiveGroup.CHANGESETS_FIELD_NUMBER + 1];
+
+    /**
+     * Raw current block.
+     */
+    private byte[] message;
+
+    /**
+     * Offsets of requested primitive groups in the block.
+     */
+    private final IntColumn groupOffsets = new IntColumn();
+
+    /**
+     * Lengths of requested primitive groups.
+     */
+    private final IntColumn groupLengths = new IntColumn();
+
+    /**
+     * Grid granularity of the block.
+     */
+    private int granularity;
+
+    /**
+     * Latitude offset of the grid.
+     */
+    private long latOffset;
+
+    /**
+     * Longitude offset of the grid.
+     */
+    private long lonOffset;
+
+    /**
+     * Date granularity of the block.
+     */
+    private int dateGranularity;
+
+    /**
+     * Tag keys of the current entity.
+     */
+    private final IntColumn keys = new IntColumn();
+
+    /**
+     * Tag values of the current entity.
+     */
+    private final IntColumn vals = new IntColumn();
+
+    /**
+     * Delta coded way refs or relation members ids of the current entity.
+     */
+    private final LongColumn refs = new LongColumn();
+
+    /**
+     * Roles of the current relation members.
+     */
+    private final IntColumn roles = new IntColumn();
+
+    /**
+     * Types of the current relation members.
+     */
+    private final IntColumn types = new IntColumn();
+
+    /**
+     * Info presence of the current entity.
+     */
+    private boolean hasInfo;
+
+    /**
+     * Info version of the current entity.
+     */
+    private int infoVersion;
+
+    /**
+     * Info timestamp of the current entity.
+     */
+    private long infoTimestamp;
+
+    /**
+     * Info changeset of the current entity.
+     */
+    private long infoChangeset;
+
+    /**
+     * Info uid of the current entity.
+     */
+    private int infoUid;
+
+    /**
+     * Info username string of the current entity.
+     */
+    private int infoUserSid;
+
+    /**
+     * Info visibility of the current entity.
+     */
+    private boolean infoVisible;
+
+    /**
+     * Delta coded ids of the dense nodes.
+     */
+    private final LongColumn denseIds = new LongColumn();
+
+    /**
+     * Delta coded latitudes of the dense nodes.
+     */
+    private final LongColumn denseLats = new LongColumn();
+
+    /**
+     * Delta coded longitudes of the dense nodes.
+     */
+    private final LongColumn denseLons = new LongColumn();
+
+    /**
+     * Tags of the dense nodes.
+     */
+    private final IntColumn denseKeysVals = new IntColumn();
+
+    /**
+     * Dense info presence.
+     */
+    private boolean hasDenseInfo;
+
+    /**
+     * Versions of the dense nodes.
+     */
+    private final IntColumn denseVersions = new IntColumn();
+
+    /**
+     * Delta coded timestamps of the dense nodes.
+     */
+    private final LongColumn denseTimestamps = new LongColumn();
+
+    /**
+     * Delta coded changesets of the dense nodes.
+     */
+    private final LongColumn denseChangesets = new LongColumn();
+
+    /**
+     * Delta coded uids of the dense nodes.
+     */
+    private final IntColumn denseUids = new IntColumn();
+
+    /**
+     * Delta coded username strings of the dense nodes.
+     */
+    private final IntColumn denseUserSids = new IntColumn();
+
+    /**
+     * Visibility flags of the dense nodes.
+     */
+    private final IntColumn denseVisible = new IntColumn();
+
+    /**
+     * Creates decoder.
+     * @param lazy Produce entities with {@link LazyTags} instead of eagerly decoded tags.
+     */
+    public PrimitiveBlockDecoder(final boolean lazy) {
+        this.lazyTags = lazy;
+    }
+
+    /**
+     * Prepares the block for decoding: reads block parameters, string table and
+     * positions of the primitive groups. Groups without requested entities are skipped.
+     * @param block Raw OSMData blob. Must not be modified, while block is decoded.
+     * @param length Length of the blob.
+     * @param nodes Nodes, both plain and dense, are requested.
+     * @param ways Ways are requested.
+     * @param relations Relations are requested.
+     * @param changesets Changesets are requested.
+     * @return false if block doesn't have any requested groups.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    public boolean reset(final byte[] block,
+                         final int length,
+                         final boolean nodes,
+                         final boolean ways,
+                         final boolean relations,
+                         final boolean changesets) throws IOException {
+        wanted[Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER] = nodes;
+        wanted[Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER] = nodes;
+        wanted[Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER] = ways;
+        wanted[Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER] = relations;
+        wanted[Osmformat.PrimitiveGroup.CHANGESETS_FIELD_NUMBER] = changesets;
+        message = block;
+        groupOffsets.clear();
+        groupLengths.clear();
+        granularity = DEFAULT_BLOCK.getGranularity();
+        latOffset = DEFAULT_BLOCK.getLatOffset();
+        lonOffset = DEFAULT_BLOCK.getLonOffset();
+        dateGranularity = DEFAULT_BLOCK.getDateGranularity();
+        tagFilter = null;
+        boxFilter = null;
+
+        int tableOffset = 0;
+        int tableLength = 0;
+        CodedInputStream input = CodedInputStream.newInstance(block, 0, length);
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.PrimitiveBlock.STRINGTABLE_FIELD_NUMBER:
+                    tableLength = input.readRawVarint32();
+                    tableOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(tableLength);
+                    break;
+                case Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER:
+                    int groupLength = input.readRawVarint32();
+                    int groupOffset = input.getTotalBytesRead();
+                    if (isWanted(groupOffset, groupLength)) {
+                        groupOffsets.add(groupOffset);
+                        groupLengths.add(groupLength);
+                    }
+                    input.skipRawBytes(groupLength);
+                    break;
+                case Osmformat.PrimitiveBlock.GRANULARITY_FIELD_NUMBER:
+                    granularity = input.readInt32();
+                    break;
+                case Osmformat.PrimitiveBlock.DATE_GRANULARITY_FIELD_NUMBER:
+                    dateGranularity = input.readInt32();
+                    break;
+                case Osmformat.PrimitiveBlock.LAT_OFFSET_FIELD_NUMBER:
+                    latOffset = input.readInt64();
+                    break;
+                case Osmformat.PrimitiveBlock.LON_OFFSET_FIELD_NUMBER:
+                    lonOffset = input.readInt64();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+        if (groupOffsets.size() == 0) {
+            return false;
+        }
+        if (lazyTags) {
+            strings = new BlockStringTable();
+        }
+        strings.reset(block, tableOffset, tableLength);
+        return true;
+    }
+
+    /**
+     * String table of the current block.
+     * @return string table.
+     */
+    public BlockStringTable getStrings() {
+        return strings;
+    }
+
+    /**
+     * Sets tags filter for the current block. Filter is reset with the block.
+     * @param filter Tags filter, compiled against {@link #getStrings()}. Null disables filtering.
+     */
+    public void useTagFilter(final BlockTagFilter filter) {
+        this.tagFilter = filter;
+    }
+
+    /**
+     * Sets bounding box filter for the current block. Box is converted to the block's grid once
+     * and nodes are checked against raw coordinates during delta decoding. Filter is reset with the block.
+     * @param box Bounding box. Null disables filtering.
+     */
+    public void useBoundBox(final BoundBox box) {
+        if (box == null) {
+            this.boxFilter = null;
+        } else {
+            this.boxFilter = new BlockBoxFilter(box, granularity, latOffset, lonOffset);
+        }
+    }
+
+    /**
+     * Number of requested primitive groups in the current block.
+     * @return number of groups.
+     */
+    public int groupCount() {
+        return groupOffsets.size();
+    }
+
+    /**
+     * Decodes plain and dense nodes of the group.
+     * @param group Group index.
+     * @param callback Nodes consumer.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    public void decodeNodes(final int group, final Consumer<Node> callback) {
+        decodeGroup(group, Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER, Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER,
+                (field, input) -> {
+                    if (field == Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER) {
+                        readNode(input, callback);
+                    } else {
+                        readDenseNodes(input, callback);
+                    }
+                });
+    }
+
+    /**
+     * Stores locations of all plain and dense nodes of the group. Only ids and coordinates are read,
+     * tags and info are skipped, tags and bounding box filters are ignored.
+     * @param group Group index.
+     * @param store Node locations store.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    public void decodeLocations(final int group, final NodeLocationStore store) {
+        decodeGroup(group, Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER, Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER,
+                (field, input) -> {
+                    if (field == Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER) {
+                        readNodeLocation(input, store);
+                    } else {
+                        readDenseLocations(input, store);
+                    }
+                });
+    }
+
+    /**
+     * Decodes ways of the group.
+     * @param group Group index.
+     * @param callback Ways consumer.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    public void decodeWays(final int group, final Consumer<Way> callback) {
+        decodeGroup(group, Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER, Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER,
+                (field, input) -> readWay(input, callback));
+    }
+
+    /**
+     * Decodes relations of the group.
+     * @param group Group index.
+     * @param callback Relations consumer.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    public void decodeRelations(final int group, final Consumer<Relation> callback) {
+        decodeGroup(group, Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER,
+                Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER,
+                (field, input) -> readRelation(input, callback));
+    }
+
+    /**
+     * Decodes changesets ids of the group.
+     * @param group Group index.
+     * @param callback Changesets consumer.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    public void decodeChangesets(final int group, final Consumer<Long> callback) {
+        decodeGroup(group, Osmformat.PrimitiveGroup.CHANGESETS_FIELD_NUMBER,
+                Osmformat.PrimitiveGroup.CHANGESETS_FIELD_NUMBER,
+                (field, input) -> readChangeset(input, callback));
+    }
+
+    /**
+     * Checks field tags of the primitive group, skipping their content.
+     * @param offset Offset of the group content.
+     * @param length Length of the group content.
+     * @return true if group has any of requested fields.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private boolean isWanted(final int offset, final int length) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(message, offset, length);
+        int tag = input.readTag();
+        while (tag != 0) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            if (field < wanted.length && wanted[field]) {
+                return true;
+            }
+            input.skipField(tag);
+            tag = input.readTag();
+        }
+        return false;
+    }
+
+    /**
+     * Walks the group and passes fields in the range to the reader, skipping others.
+     * @param group Group index.
+     * @param first First field number to read.
+     * @param last Last field number to read.
+     * @param reader Field reader.
+     * @throws RuntimeException in case of protobuf parsing error.
+     */
+    private void decodeGroup(final int group, final int first, final int last, final FieldReader reader) {
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(message,
+                    groupOffsets.get(group),
+                    groupLengths.get(group));
+            int tag = input.readTag();
+            while (tag != 0) {
+                int field = WireFormat.getTagFieldNumber(tag);
+                if (field >= first && field <= last) {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    reader.read(field, input);
+                    input.popLimit(limit);
+                } else {
+                    input.skipField(tag);
+                }
+                tag = input.readTag();
+            }
+        } catch (IOException e) {
+            log.error("Error decoding OSMData block: {}", e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads packed or single int value.
+     * @param input Input stream, positioned at the field content.
+     * @param tag Field tag.
+     * @param column Column to append values to.
+     * @param zigZag Values are zig zag encoded.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private static void readInts(final CodedInputStream input,
+                                 final int tag,
+                                 final IntColumn column,
+                                 final boolean zigZag) throws IOException {
+        if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            int limit = input.pushLimit(input.readRawVarint32());
+            while (input.getBytesUntilLimit() > 0) {
+                column.add(readInt(input, zigZag));
+            }
+            input.popLimit(limit);
+        } else {
+            column.add(readInt(input, zigZag));
+        }
+    }
+
+    /**
+     * Reads single int value.
+     * @param input Input stream.
+     * @param zigZag Value is zig zag encoded.
+     * @return value.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private static int readInt(final CodedInputStream input, final boolean zigZag) throws IOException {
+        if (zigZag) {
+            return input.readSInt32();
+        }
+        return input.readRawVarint32();
+    }
+
+    /**
+     * Reads packed or single zig zag encoded long value.
+     * @param input Input stream, positioned at the field content.
+     * @param tag Field tag.
+     * @param column Column to append values to.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private static void readLongs(final CodedInputStream input,
+                                  final int tag,
+                                  final LongColumn column) throws IOException {
+        if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            int limit = input.pushLimit(input.readRawVarint32());
+            while (input.getBytesUntilLimit() > 0) {
+                column.add(input.readSInt64());
+            }
+            input.popLimit(limit);
+        } else {
+            column.add(input.readSInt64());
+        }
+    }
+
+    /**
+     * Resets state of the current entity.
+     */
+    private void clearEntity() {
+        keys.clear();
+        vals.clear();
+        refs.clear();
+        roles.clear();
+        types.clear();
+        hasInfo = false;
+    }
+
+    /**
+     * Reads common entity field: tags or info.
+     * @param input Input stream, positioned at the field content.
+     * @param tag Field tag.
+     * @return false if field is not a common one.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private boolean readCommonField(final CodedInputStream input, final int tag) throws IOException {
+        switch (WireFormat.getTagFieldNumber(tag)) {
+            case Osmformat.Way.KEYS_FIELD_NUMBER:
+                readInts(input, tag, keys, false);
+                return true;
+            case Osmformat.Way.VALS_FIELD_NUMBER:
+                readInts(input, tag, vals, false);
+                return true;
+            case Osmformat.Way.INFO_FIELD_NUMBER:
+                int limit = input.pushLimit(input.readRawVarint32());
+                readInfo(input);
+                input.popLimit(limit);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads Info message of the entity.
+     * @param input Input stream, limited to the message.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readInfo(final CodedInputStream input) throws IOException {
+        hasInfo = true;
+        infoVersion = DEFAULT_INFO.getVersion();
+        infoTimestamp = DEFAULT_INFO.getTimestamp();
+        infoChangeset = DEFAULT_INFO.getChangeset();
+        infoUid = DEFAULT_INFO.getUid();
+        infoUserSid = DEFAULT_INFO.getUserSid();
+        infoVisible = true;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.Info.VERSION_FIELD_NUMBER:
+                    infoVersion = input.readInt32();
+                    break;
+                case Osmformat.Info.TIMESTAMP_FIELD_NUMBER:
+                    infoTimestamp = input.readInt64();
+                    break;
+                case Osmformat.Info.CHANGESET_FIELD_NUMBER:
+                    infoChangeset = input.readInt64();
+                    break;
+                case Osmformat.Info.UID_FIELD_NUMBER:
+                    infoUid = input.readInt32();
+                    break;
+                case Osmformat.Info.USER_SID_FIELD_NUMBER:
+                    infoUserSid = input.readUInt32();
+                    break;
+                case Osmformat.Info.VISIBLE_FIELD_NUMBER:
+                    infoVisible = input.readBool();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+    }
+
+    /**
+     * Converts Info of the current entity.
+     * @return Info entity or null, if entity doesn't have it.
+     */
+    private Info info() {
+        if (!hasInfo) {
+            return null;
+        }
+        String username = strings.getString(infoUserSid);
+        return new Info(infoUid, username, infoVersion, infoTimestamp, infoChangeset, infoVisible);
+    }
+
+    /**
+     * Checks if tags of the current entity pass the tags filter.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    private boolean accepts() {
+        if (tagFilter == null) {
+            return true;
+        }
+        for (int indx = 0; indx < keys.size(); ++indx) {
+            if (tagFilter.matches(keys.get(indx), vals.get(indx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds tags of the current entity.
+     * @return Map of tags.
+     * @throws InvalidProtocolBufferException in case keys and values do not match.
+     */
+    private Map<String, String> tags() throws InvalidProtocolBufferException {
+        if (keys.size() != vals.size()) {
+            throw new InvalidProtocolBufferException("Tag keys and values count mismatch");
+        }
+        if (lazyTags) {
+            int[] pairs = new int[keys.size() * 2];
+            for (int indx = 0; indx < keys.size(); ++indx) {
+                pairs[indx * 2] = keys.get(indx);
+                pairs[indx * 2 + 1] = vals.get(indx);
+            }
+            return new LazyTags(strings, pairs);
+        }
+        Map<String, String> result = new HashMap<>();
+        for (int indx = 0; indx < keys.size(); ++indx) {
+            result.put(strings.getString(keys.get(indx)), strings.getString(vals.get(indx)));
+        }
+        return result;
+    }
+
+    /**
+     * Reads plain node.
+     * @param input Input stream, limited to the message.
+     * @param callback Nodes consumer.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readNode(final CodedInputStream input, final Consumer<Node> callback) throws IOException {
+        clearEntity();
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.Node.ID_FIELD_NUMBER:
+                    id = input.readSInt64();
+                    break;
+                case Osmformat.Node.LAT_FIELD_NUMBER:
+                    lat = input.readSInt64();
+                    break;
+                case Osmformat.Node.LON_FIELD_NUMBER:
+                    lon = input.readSInt64();
+                    break;
+                default:
+                    if (!readCommonField(input, tag)) {
+                        input.skipField(tag);
+                    }
+            }
+            tag = input.readTag();
+        }
+        if (boxFilter != null && !boxFilter.matches(lat, lon) || !accepts()) {
+            return;
+        }
+        double latitude = NodeParser.NANO * (latOffset + (granularity * lat));
+        double longitude = NodeParser.NANO * (lonOffset + (granularity * lon));
+        Node node = new Node(id, latitude, longitude);
+        node.setTags(tags());
+        node.setInfo(info());
+        if (log.isDebugEnabled()) {
+            log.debug(node.toString());
+        }
+        callback.accept(node);
+    }
+
+    /**
+     * Reads plain node's id and location.
+     * @param input Input stream, limited to the message.
+     * @param store Node locations store.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readNodeLocation(final CodedInputStream input, final NodeLocationStore store) throws IOException {
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.Node.ID_FIELD_NUMBER:
+                    id = input.readSInt64();
+                    break;
+                case Osmformat.Node.LAT_FIELD_NUMBER:
+                    lat = input.readSInt64();
+                    break;
+                case Osmformat.Node.LON_FIELD_NUMBER:
+                    lon = input.readSInt64();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+        store.put(id, NodeLocationStore.fromNanodegrees(latOffset + granularity * lat),
+                NodeLocationStore.fromNanodegrees(lonOffset + granularity * lon));
+    }
+
+    /**
+     * Reads way.
+     * @param input Input stream, limited to the message.
+     * @param callback Ways consumer.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readWay(final CodedInputStream input, final Consumer<Way> callback) throws IOException {
+        clearEntity();
+        long id = 0;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.Way.ID_FIELD_NUMBER:
+                    id = input.readInt64();
+                    break;
+                case Osmformat.Way.REFS_FIELD_NUMBER:
+                    readLongs(input, tag, refs);
+                    break;
+                default:
+                    if (!readCommonField(input, tag)) {
+                        input.skipField(tag);
+                    }
+            }
+            tag = input.readTag();
+        }
+        if (!accepts()) {
+            return;
+        }
+        Way way = new Way(id);
+        way.setTags(tags());
+        way.setInfo(info());
+        long nodeId = 0;
+        for (int indx = 0; indx < refs.size(); ++indx) {
+            nodeId += refs.get(indx);
+            way.getNodes().add(nodeId);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(way.toString());
+        }
+        callback.accept(way);
+    }
+
+    /**
+     * Reads relation.
+     * @param input Input stream, limited to the message.
+     * @param callback Relations consumer.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readRelation(final CodedInputStream input, final Consumer<Relation> callback) throws IOException {
+        clearEntity();
+        long id = 0;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.Relation.ID_FIELD_NUMBER:
+                    id = input.readInt64();
+                    break;
+                case Osmformat.Relation.ROLES_SID_FIELD_NUMBER:
+                    readInts(input, tag, roles, false);
+                    break;
+                case Osmformat.Relation.MEMIDS_FIELD_NUMBER:
+                    readLongs(input, tag, refs);
+                    break;
+                case Osmformat.Relation.TYPES_FIELD_NUMBER:
+                    readInts(input, tag, types, false);
+                    break;
+                default:
+                    if (!readCommonField(input, tag)) {
+                        input.skipField(tag);
+                    }
+            }
+            tag = input.readTag();
+        }
+        if (!accepts()) {
+            return;
+        }
+        Relation relation = new Relation(id);
+        relation.setTags(tags());
+        relation.setInfo(info());
+        long memberId = 0;
+        for (int indx = 0; indx < roles.size(); ++indx) {
+            String role = strings.getString(roles.get(indx));
+            memberId += refs.get(indx);
+            RelationMember.Type type = RelationMember.Type.get(types.get(indx));
+            relation.getMembers().add(new RelationMember(memberId, role, type));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(relation.toString());
+        }
+        callback.accept(relation);
+    }
+
+    /**
+     * Reads changeset.
+     * @param input Input stream, limited to the message.
+     * @param callback Changesets consumer.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private static void readChangeset(final CodedInputStream input, final Consumer<Long> callback) throws IOException {
+        long id = 0;
+        int tag = input.readTag();
+        while (tag != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == Osmformat.ChangeSet.ID_FIELD_NUMBER) {
+                id = input.readInt64();
+            } else {
+                input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+        log.debug("ChangeSet id: {}", id);
+        callback.accept(id);
+    }
+
+    /**
+     * Reads DenseInfo message.
+     * @param input Input stream, limited to the message.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readDenseInfo(final CodedInputStream input) throws IOException {
+        hasDenseInfo = true;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.DenseInfo.VERSION_FIELD_NUMBER:
+                    readInts(input, tag, denseVersions, false);
+                    break;
+                case Osmformat.DenseInfo.TIMESTAMP_FIELD_NUMBER:
+                    readLongs(input, tag, denseTimestamps);
+                    break;
+                case Osmformat.DenseInfo.CHANGESET_FIELD_NUMBER:
+                    readLongs(input, tag, denseChangesets);
+                    break;
+                case Osmformat.DenseInfo.UID_FIELD_NUMBER:
+                    readInts(input, tag, denseUids, true);
+                    break;
+                case Osmformat.DenseInfo.USER_SID_FIELD_NUMBER:
+                    readInts(input, tag, denseUserSids, true);
+                    break;
+                case Osmformat.DenseInfo.VISIBLE_FIELD_NUMBER:
+                    readInts(input, tag, denseVisible, false);
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+    }
+
+    /**
+     * Reads DenseNodes message into the columns.
+     * @param input Input stream, limited to the message.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readDenseColumns(final CodedInputStream input) throws IOException {
+        denseIds.clear();
+        denseLats.clear();
+        denseLons.clear();
+        denseKeysVals.clear();
+        denseVersions.clear();
+        denseTimestamps.clear();
+        denseChangesets.clear();
+        denseUids.clear();
+        denseUserSids.clear();
+        denseVisible.clear();
+        hasDenseInfo = false;
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.DenseNodes.ID_FIELD_NUMBER:
+                    readLongs(input, tag, denseIds);
+                    break;
+                case Osmformat.DenseNodes.DENSEINFO_FIELD_NUMBER:
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    readDenseInfo(input);
+                    input.popLimit(limit);
+                    break;
+                case Osmformat.DenseNodes.LAT_FIELD_NUMBER:
+                    readLongs(input, tag, denseLats);
+                    break;
+                case Osmformat.DenseNodes.LON_FIELD_NUMBER:
+                    readLongs(input, tag, denseLons);
+                    break;
+                case Osmformat.DenseNodes.KEYS_VALS_FIELD_NUMBER:
+                    readInts(input, tag, denseKeysVals, false);
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+    }
+
+    /**
+     * Reads ids and locations of the dense nodes, skipping tags and info.
+     * @param input Input stream, limited to the message.
+     * @param store Node locations store.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readDenseLocations(final CodedInputStream input, final NodeLocationStore store) throws IOException {
+        denseIds.clear();
+        denseLats.clear();
+        denseLons.clear();
+        int tag = input.readTag();
+        while (tag != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Osmformat.DenseNodes.ID_FIELD_NUMBER:
+                    readLongs(input, tag, denseIds);
+                    break;
+                case Osmformat.DenseNodes.LAT_FIELD_NUMBER:
+                    readLongs(input, tag, denseLats);
+                    break;
+                case Osmformat.DenseNodes.LON_FIELD_NUMBER:
+                    readLongs(input, tag, denseLons);
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+            tag = input.readTag();
+        }
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        for (int indx = 0; indx < denseIds.size(); indx++) {
+            id += denseIds.get(indx);
+            lat += denseLats.get(indx);
+            lon += denseLons.get(indx);
+            store.put(id, NodeLocationStore.fromNanodegrees(latOffset + granularity * lat),
+                    NodeLocationStore.fromNanodegrees(lonOffset + granularity * lon));
+        }
+    }
+
+    /**
+     * Checks if dense node's tags pass the tags filter.
+     * @param start Position of the node's first key in the keys_vals field.
+     * @return true if there is no filter or at least one tag matches it.
+     */
+    private boolean acceptsDense(final int start) {
+        if (tagFilter == null) {
+            return true;
+        }
+        if (denseKeysVals.size() == 0) {
+            return false;
+        }
+        for (int pos = start; denseKeysVals.get(pos) != 0; pos += 2) {
+            if (tagFilter.matches(denseKeysVals.get(pos), denseKeysVals.get(pos + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the end of dense node's tags.
+     * @param start Position of the node's first key in the keys_vals field.
+     * @return Position of the tags terminator.
+     */
+    private int tagsEnd(final int start) {
+        int pos = start;
+        while (denseKeysVals.get(pos) != 0) {
+            pos += 2;
+        }
+        return pos;
+    }
+
+    /**
+     * Reads dense nodes.
+     * @param input Input stream, limited to the message.
+     * @param callback Nodes consumer.
+     * @throws IOException in case of protobuf parsing error.
+     */
+    private void readDenseNodes(final CodedInputStream input, final Consumer<Node> callback) throws IOException {
+        readDenseColumns(input);
+        boolean hasTags = denseKeysVals.size() > 0;
+        int tagsKeyValuePointer = 0;
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+
+        long timestamp = 0;
+        long changeset = 0;
+        int uid = 0;
+        int usernameStringId = 0;
+        for (int indx = 0; indx < denseIds.size(); indx++) {
+            id += denseIds.get(indx);
+            lat += denseLats.get(indx);
+            lon += denseLons.get(indx);
+            if (hasDenseInfo) {
+                uid += denseUids.get(indx);
+                usernameStringId += denseUserSids.get(indx);
+                changeset += denseChangesets.get(indx);
+                timestamp += denseTimestamps.get(indx);
+            }
+            if (boxFilter != null && !boxFilter.matches(lat, lon) || !acceptsDense(tagsKeyValuePointer)) {
+                if (hasTags) {
+                    tagsKeyValuePointer = tagsEnd(tagsKeyValuePointer) + 1;
+                }
+                continue;
+            }
+
+            double latitude = NodeParser.NANO * (latOffset + (granularity * lat));
+            double longitude = NodeParser.NANO * (lonOffset + (granularity * lon));
+            Node node = new Node(id, latitude, longitude);
+            if (hasTags) {
+                int start = tagsKeyValuePointer;
+                tagsKeyValuePointer = tagsEnd(start);
+                if (lazyTags) {
+                    node.setTags(new LazyTags(strings, denseKeysVals.copy(start, tagsKeyValuePointer)));
+                } else {
+                    for (int pos = start; pos < tagsKeyValuePointer; pos += 2) {
+                        String key = strings.getString(denseKeysVals.get(pos));
+                        String value = strings.getString(denseKeysVals.get(pos + 1));
+                        node.getTags().put(key, value);
+                    }
+                }
+                ++tagsKeyValuePointer;
+            }
+            if (hasDenseInfo) {
+                String username = strings.getString(usernameStringId);
+                int version = denseVersions.get(indx);
+                boolean visible = denseVisible.size() == 0 || denseVisible.get(indx) != 0;
+                node.setInfo(new Info(uid, username, version, timestamp * dateGranularity, changeset, visible));
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(node.toString());
+            }
+            callback.accept(node);
+        }
+    }
+}
@@ -42,6 +42,9 @@ public final class RelationParser extends BaseParser<Osmformat.Relation, Consume
 
     @Override
     public void parse(final Osmformat.Relation message) {
+        if (!accepts(message)) {
+            return;
+        }
         long memberId = 0;
         var relation = new Relation(message.getId());
         relation.setTags(parseTags(message.getKeysList(), message.getValsList()));
@@ -40,6 +40,9 @@ public final class WayParser extends BaseParser<Osmformat.Way, Consumer<Way>> {
 
     @Override
     public void parse(final Osmformat.Way message) {
+        if (!accepts(message)) {
+            return;
+        }
         long nodeId = 0;
         Way way = new Way(message.getId());
         way.setTags(parseTags(message.getKeysList(), message.getValsList()));
@@ -17,19 +17,57 @@
 
 package com.wolt.osm.parallelpbf;
 
+import com.google.protobuf.ByteString;
+import com.wolt.osm.parallelpbf.blob.BlobCompression;
+import com.wolt.osm.parallelpbf.blob.BlobWriter;
+import com.wolt.osm.parallelpbf.blob.BufferArena;
+import com.wolt.osm.parallelpbf.encoder.OsmHeaderEncoder;
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+import com.wolt.osm.parallelpbf.entity.Header;
+import com.wolt.osm.parallelpbf.entity.MultipolygonGeometry;
 import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
 import com.wolt.osm.parallelpbf.entity.Relation;
 import com.wolt.osm.parallelpbf.entity.RelationMember;
 import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.entity.WayGeometry;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
+import com.wolt.osm.parallelpbf.index.BlobIndex;
+import com.wolt.osm.parallelpbf.index.BlobIndexBuilder;
+import com.wolt.osm.parallelpbf.index.BlockSummary;
+import com.wolt.osm.parallelpbf.index.IdRange;
+import com.wolt.osm.parallelpbf.location.DenseNodeLocationStore;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import com.wolt.osm.parallelpbf.location.SparseNodeLocationStore;
+import crosby.binary.Fileformat;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.zstd.ZstdCompressor;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Inflater;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -172,6 +210,343 @@ class ParallelBinaryParserIT {
         assertTrue(taggedRelation.getInfo().isVisible());
     }
 
+    @Test
+    void testMappedParser() throws IOException, URISyntaxException {
+        Path input = Paths.get(Thread.currentThread().getContextClassLoader().getResource("sample.pbf").toURI());
+        ParallelBinaryParser parser = new ParallelBinaryParser(input, 4)
+                .onNode(nodeChecker)
+                .onWay(wayChecker)
+                .onRelation(relationsChecker);
+        parser.parse();
+
+        testSimpleNode();
+        testTaggedNode();
+        testWay();
+        testRelation();
+
+        simpleNode = null;
+        parser.parse();
+        testSimpleNode();
+    }
+
+    @Test
+    void testSmallMemoryBudget() {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 4)
+                .setMemoryBudget(1)
+                .setReadAhead(1)
+                .onNode(nodeChecker)
+                .onWay(wayChecker)
+                .onRelation(relationsChecker)
+                .parse();
+
+        testSimpleNode();
+        testTaggedNode();
+        testWay();
+        testRelation();
+    }
+
+    private List<Long> collectIds(int threads, boolean ordered) {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+        new ParallelBinaryParser(input, threads)
+                .setOrdered(ordered)
+                .onNode(node -> ids.add(node.getId()))
+                .onWay(way -> ids.add(way.getId()))
+                .onRelation(relation -> ids.add(relation.getId()))
+                .parse();
+        return ids;
+    }
+
+    @Test
+    void testOrderedParser() {
+        List<Long> expected = collectIds(1, false);
+        assertFalse(expected.isEmpty());
+        for (int run = 0; run < 5; ++run) {
+            assertEquals(expected, collectIds(4, true));
+        }
+    }
+
+    private List<Object> collectEntities(boolean streaming, boolean lazy) {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        List<Object> entities = Collections.synchronizedList(new ArrayList<>());
+        new ParallelBinaryParser(input, 4)
+                .setOrdered(true)
+                .setStreamingDecoder(streaming)
+                .setLazyTags(lazy)
+                .onNode(entities::add)
+                .onWay(entities::add)
+                .onRelation(entities::add)
+                .onChangeset(entities::add)
+                .parse();
+        return entities;
+    }
+
+    @Test
+    void testStreamingDecoder() {
+        List<Object> expected = collectEntities(false, false);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, collectEntities(true, false));
+        assertEquals(expected, collectEntities(true, true));
+    }
+
+    @SneakyThrows
+    private static byte[] recompress(final Compressor compressor, final boolean lz4) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream file = new DataOutputStream(output);
+        try (DataInputStream input = new DataInputStream(
+                Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf"))) {
+            while (input.available() > 0) {
+                byte[] header = new byte[input.readInt()];
+                input.readFully(header);
+                Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+                byte[] data = new byte[blobHeader.getDatasize()];
+                input.readFully(data);
+                Fileformat.Blob blob = Fileformat.Blob.parseFrom(data);
+
+                byte[] raw = new byte[blob.getRawSize()];
+                Inflater inflater = new Inflater();
+                inflater.setInput(blob.getZlibData().toByteArray());
+                assertEquals(raw.length, inflater.inflate(raw));
+                inflater.end();
+                byte[] compressed = new byte[compressor.maxCompressedLength(raw.length)];
+                int length = compressor.compress(raw, 0, raw.length, compressed, 0, compressed.length);
+                ByteString payload = ByteString.copyFrom(compressed, 0, length);
+                Fileformat.Blob.Builder recompressed = Fileformat.Blob.newBuilder().setRawSize(raw.length);
+                if (lz4) {
+                    recompressed.setLz4Data(payload);
+                } else {
+                    recompressed.setZstdData(payload);
+                }
+                byte[] newData = recompressed.build().toByteArray();
+                byte[] newHeader = blobHeader.toBuilder().setDatasize(newData.length).build().toByteArray();
+                file.writeInt(newHeader.length);
+                file.write(newHeader);
+                file.write(newData);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static List<Object> collectEntities(final ParallelBinaryParser parser) {
+        List<Object> entities = Collections.synchronizedList(new ArrayList<>());
+        parser.setOrdered(true)
+                .onNode(entities::add)
+                .onWay(entities::add)
+                .onRelation(entities::add)
+                .onChangeset(entities::add)
+                .parse();
+        return entities;
+    }
+
+    @Test
+    void testLz4AndZstdBlobs() throws IOException {
+        List<Object> expected = collectEntities(true, false);
+        for (boolean lz4 : new boolean[]{true, false}) {
+            byte[] content = recompress(lz4 ? new Lz4Compressor() : new ZstdCompressor(), lz4);
+            assertEquals(expected, collectEntities(new ParallelBinaryParser(new ByteArrayInputStream(content), 4)));
+
+            Path file = Files.createTempFile("parallelpbf", ".pbf");
+            try {
+                Files.write(file, content);
+                assertEquals(expected, collectEntities(new ParallelBinaryParser(file, 4)));
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testSharedBufferArena() {
+        List<Object> expected = collectEntities(true, false);
+        BufferArena arena = new BufferArena(64 * 1024, true);
+        for (int run = 0; run < 2; ++run) {
+            List<Object> entities = Collections.synchronizedList(new ArrayList<>());
+            InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+            new ParallelBinaryParser(input, 4)
+                    .setOrdered(true)
+                    .setBufferArena(arena)
+                    .onNode(entities::add)
+                    .onWay(entities::add)
+                    .onRelation(entities::add)
+                    .onChangeset(entities::add)
+                    .parse();
+            assertEquals(expected, entities);
+            assertEquals(arena.getAllocatedBytes(), arena.getPooledBytes());
+        }
+        assertTrue(arena.getAllocatedBytes() <= arena.getCapacity());
+    }
+
+    @Test
+    void testBatchCallbacks() {
+        List<Long> batched = Collections.synchronizedList(new ArrayList<>());
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 4)
+                .setOrdered(true)
+                .onNodeBatch(nodes -> nodes.forEach(node -> batched.add(node.getId())))
+                .onWayBatch(ways -> ways.forEach(way -> batched.add(way.getId())))
+                .onRelationBatch(relations -> relations.forEach(relation -> batched.add(relation.getId())))
+                .parse();
+        assertEquals(collectIds(1, false), batched);
+    }
+
+    @Test
+    void testDenseNodeColumns() {
+        Map<Long, Node> nodes = new ConcurrentHashMap<>();
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 1).onNode(node -> nodes.put(node.getId(), node)).parse();
+
+        AtomicInteger seen = new AtomicInteger();
+        input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 4)
+                .onDenseNodes(columns -> {
+                    for (int indx = 0; indx < columns.size(); ++indx) {
+                        Node node = nodes.get(columns.getId(indx));
+                        assertEquals(node.getLat(), columns.getLat(indx), 0.0000001);
+                        assertEquals(node.getLon(), columns.getLon(indx), 0.0000001);
+                        assertEquals(node.getTags().size(), columns.tagCount(indx));
+                        for (int tag = 0; tag < columns.tagCount(indx); ++tag) {
+                            String key = columns.getStringTable().getString(columns.tagKey(indx, tag));
+                            String value = columns.getStringTable().getString(columns.tagValue(indx, tag));
+                            assertEquals(node.getTags().get(key), value);
+                        }
+                        seen.incrementAndGet();
+                    }
+                })
+                .parse();
+        assertEquals(nodes.size(), seen.get());
+    }
+
+    @Test
+    void testCursors() {
+        Map<Long, OsmEntity> expected = new ConcurrentHashMap<>();
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 1)
+                .onNode(node -> expected.put(node.getId(), node))
+                .onWay(way -> expected.put(way.getId(), way))
+                .onRelation(relation -> expected.put(relation.getId(), relation))
+                .parse();
+
+        for (boolean ordered : new boolean[]{false, true}) {
+            AtomicInteger seen = new AtomicInteger();
+            input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+            new ParallelBinaryParser(input, 4)
+                    .setOrdered(ordered)
+                    .onNodeCursor(cursor -> {
+                        Node node = (Node) expected.get(cursor.id());
+                        Node actual = cursor.materialize();
+                        assertEquals(node.getLat(), actual.getLat(), 0.0000001);
+                        assertEquals(node.getLon(), actual.getLon(), 0.0000001);
+                        assertEquals(node.getTags(), actual.getTags());
+                        assertEquals(node.getInfo(), actual.getInfo());
+                        seen.incrementAndGet();
+                    })
+                    .onWayCursor(cursor -> {
+                        assertEquals(expected.get(cursor.id()), cursor.materialize());
+                        seen.incrementAndGet();
+                    })
+                    .onRelationCursor(cursor -> {
+                        assertEquals(expected.get(cursor.id()), cursor.materialize());
+                        seen.incrementAndGet();
+                    })
+                    .parse();
+            assertEquals(expected.size(), seen.get());
+        }
+    }
+
+    @Test
+    void testLazyTags() {
+        Map<Long, OsmEntity> expected = new ConcurrentHashMap<>();
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 1)
+                .onWay(way -> expected.put(way.getId(), way))
+                .onRelation(relation -> expected.put(relation.getId(), relation))
+                .parse();
+
+        AtomicInteger seen = new AtomicInteger();
+        input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 4)
+                .setLazyTags(true)
+                .onNode(nodeChecker)
+                .onWay(way -> {
+                    assertEquals(expected.get(way.getId()), way);
+                    seen.incrementAndGet();
+                })
+                .onRelation(relation -> {
+                    assertEquals(expected.get(relation.getId()), relation);
+                    seen.incrementAndGet();
+                })
+                .parse();
+        assertEquals(expected.size(), seen.get());
+        testTaggedNode();
+    }
+
+    @Test
+    void testTagFilter() {
+        Map<String, OsmEntity> expected = new ConcurrentHashMap<>();
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 1)
+                .onNode(node -> expected.put(node.toString(), node))
+                .onWay(way -> expected.put(way.toString(), way))
+                .onRelation(relation -> expected.put(relation.toString(), relation))
+                .parse();
+        expected.values().removeIf(entity -> !entity.getTags().containsKey("highway")
+                && !Arrays.asList("restaurant", "cafe").contains(entity.getTags().get("amenity")));
+        assertFalse(expected.isEmpty());
+
+        Map<String, OsmEntity> actual = new ConcurrentHashMap<>();
+        AtomicInteger cursors = new AtomicInteger();
+        input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 4)
+                .setTagFilter(new TagFilter().key("highway").keyValues("amenity", "restaurant", "cafe"))
+                .onNode(node -> actual.put(node.toString(), node))
+                .onWay(way -> actual.put(way.toString(), way))
+                .onWayCursor(cursor -> cursors.incrementAndGet())
+                .onRelation(relation -> actual.put(relation.toString(), relation))
+                .parse();
+        assertEquals(expected, actual);
+        assertEquals(expected.values().stream().filter(entity -> entity instanceof Way).count(), cursors.get());
+    }
+
+    @Test
+    void testMappedParserSharding() throws IOException, URISyntaxException {
+        Path input = Paths.get(Thread.currentThread().getContextClassLoader().getResource("sample.pbf").toURI());
+        AtomicInteger expected = new AtomicInteger();
+        new ParallelBinaryParser(input, 2).onNode(node -> expected.incrementAndGet()).parse();
+
+        AtomicInteger actual = new AtomicInteger();
+        for (int shard = 0; shard < 3; ++shard) {
+            new ParallelBinaryParser(input, 2, 3, shard).onNode(node -> actual.incrementAndGet()).parse();
+        }
+        assertEquals(expected.get(), actual.get());
+    }
+
+    @Test
+    void testByteRangeSharding() throws IOException, URISyntaxException {
+        Path input = Paths.get(Thread.currentThread().getContextClassLoader().getResource("sample.pbf").toURI());
+        AtomicInteger expected = new AtomicInteger();
+        new ParallelBinaryParser(input, 2).onNode(node -> expected.incrementAndGet()).parse();
+
+        AtomicInteger actual = new AtomicInteger();
+        AtomicInteger headers = new AtomicInteger();
+        for (int shard = 0; shard < 4; ++shard) {
+            new ParallelBinaryParser(input, 2, 4, shard)
+                    .setSharding(ParallelBinaryParser.Sharding.BYTE_RANGE)
+                    .onHeader(header -> headers.incrementAndGet())
+                    .onNode(node -> actual.incrementAndGet())
+                    .parse();
+        }
+        assertEquals(expected.get(), actual.get());
+        assertEquals(4, headers.get());
+    }
+
+    @Test
+    void testByteRangeShardingRequiresFile() {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        assertThrows(IllegalArgumentException.class, () -> new ParallelBinaryParser(input, 1, 2, 0)
+                .setSharding(ParallelBinaryParser.Sharding.BYTE_RANGE));
+    }
+
     @Test
     void testWriter() throws IOException {
         String outputFilename = System.getProperty("java.io.tmpdir")+"/parallel.pbf";
@@ -203,6 +578,397 @@ class ParallelBinaryParserIT {
         testParser();
     }
 
+    private byte[] writeSample(BlobCompression compression) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer = new ParallelBinaryWriter(output, 1, null).setCompression(compression);
+        writer.start();
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        new ParallelBinaryParser(input, 1)
+                .onComplete(this::closeOnComplete)
+                .onNode(this::writeNodes)
+                .onWay(this::writeWays)
+                .onRelation(this::writeRelations)
+                .parse();
+        return output.toByteArray();
+    }
+
+    @Test
+    void testWriterCompression() {
+        byte[] best = writeSample(BlobCompression.zlib(9));
+        List<Object> expected = collectEntities(new ParallelBinaryParser(new ByteArrayInputStream(best), 1));
+        assertFalse(expected.isEmpty());
+        BlobCompression[] policies = {BlobCompression.raw(), BlobCompression.zlib(1), BlobCompression.lz4(),
+                BlobCompression.zstd(), BlobCompression.adaptive(1, 9)};
+        for (BlobCompression compression : policies) {
+            byte[] written = writeSample(compression);
+            assertEquals(expected, collectEntities(new ParallelBinaryParser(new ByteArrayInputStream(written), 1)));
+        }
+        assertTrue(writeSample(BlobCompression.raw()).length > best.length);
+    }
+
+    private static List<Object> sortedSample() {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        List<Object> entities = collectEntities(new ParallelBinaryParser(input, 1));
+        List<Class<?>> types = Arrays.asList(Node.class, Way.class, Relation.class);
+        entities.sort(Comparator.comparing((Object entity) -> types.indexOf(entity.getClass()))
+                .thenComparing(entity -> ((OsmEntity) entity).getId()));
+        return entities;
+    }
+
+    @Test
+    void testOrderedWriter() {
+        List<Object> expected = sortedSample();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParallelBinaryWriter orderedWriter = new ParallelBinaryWriter(output, 4, null, true);
+        orderedWriter.start();
+        expected.forEach(entity -> assertTrue(orderedWriter.write((OsmEntity) entity)));
+        assertFalse(orderedWriter.write((OsmEntity) expected.get(0)));
+        orderedWriter.close();
+
+        List<String> features = new ArrayList<>();
+        List<Object> actual = collectEntities(new ParallelBinaryParser(new ByteArrayInputStream(output.toByteArray()), 4)
+                .onHeader(header -> features.addAll(header.getOptionalFeatures())));
+        Function<Object, String> key = entity -> entity.getClass().getSimpleName() + ((OsmEntity) entity).getId();
+        assertEquals(expected.stream().map(key).collect(Collectors.toList()),
+                actual.stream().map(key).collect(Collectors.toList()));
+        assertTrue(features.contains(Header.FEATURE_SORT_TYPE_THEN_ID));
+    }
+
+    @Test
+    void testBatchWriter() {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        List<Object> entities = collectEntities(new ParallelBinaryParser(input, 1));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParallelBinaryWriter batchWriter = new ParallelBinaryWriter(output, 4, null).setQueueDepth(16);
+        batchWriter.start();
+        List<OsmEntity> batch = new ArrayList<>();
+        for (Object entity : entities) {
+            batch.add((OsmEntity) entity);
+            if (batch.size() == 50) {
+                assertTrue(batchWriter.write(batch));
+                batch.clear();
+            }
+        }
+        assertTrue(batchWriter.write(batch));
+        assertTrue(batchWriter.write(Collections.emptyList()));
+        batchWriter.close();
+        assertThrows(IllegalStateException.class, () -> batchWriter.setQueueDepth(1));
+
+        Function<Object, String> key = entity -> entity.getClass().getSimpleName() + ((OsmEntity) entity).getId();
+        Set<String> expected = entities.stream().map(key).collect(Collectors.toSet());
+        List<Object> actual = collectEntities(new ParallelBinaryParser(new ByteArrayInputStream(output.toByteArray()), 4));
+        assertEquals(entities.size(), actual.size());
+        assertEquals(expected, actual.stream().map(key).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testIdFilter() throws IOException {
+        List<Object> entities = sortedSample();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParallelBinaryWriter orderedWriter = new ParallelBinaryWriter(output, 4, null, true);
+        orderedWriter.start();
+        entities.forEach(entity -> orderedWriter.write((OsmEntity) entity));
+        orderedWriter.close();
+
+        List<Long> nodeIds = entities.stream().filter(entity -> entity instanceof Node)
+                .map(entity -> ((OsmEntity) entity).getId()).collect(Collectors.toList());
+        List<Long> wayIds = entities.stream().filter(entity -> entity instanceof Way)
+                .map(entity -> ((OsmEntity) entity).getId()).collect(Collectors.toList());
+        IdRange nodes = new IdRange(nodeIds.get(nodeIds.size() / 3), nodeIds.get(nodeIds.size() / 2));
+        IdRange ways = new IdRange(wayIds.get(0), wayIds.get(0));
+        Set<String> expected = new HashSet<>();
+        nodeIds.stream().filter(nodes::contains).forEach(id -> expected.add("Node" + id));
+        expected.add("Way" + wayIds.get(0));
+
+        Path file = Files.createTempFile("parallelpbf", ".pbf");
+        try {
+            Files.write(file, output.toByteArray());
+            List<ParallelBinaryParser> parsers = Arrays.asList(
+                    new ParallelBinaryParser(new ByteArrayInputStream(output.toByteArray()), 4),
+                    new ParallelBinaryParser(file, 4));
+            for (ParallelBinaryParser parser : parsers) {
+                Set<String> actual = ConcurrentHashMap.newKeySet();
+                AtomicInteger batches = new AtomicInteger();
+                parser.setIdFilter(nodes, ways, new IdRange(-1, -1))
+                        .onNode(node -> actual.add("Node" + node.getId()))
+                        .onWay(way -> actual.add("Way" + way.getId()))
+                        .onRelation(relation -> actual.add("Relation" + relation.getId()))
+                        .onNodeBatch(batch -> batches.addAndGet(batch.size()))
+                        .parse();
+                assertEquals(expected, actual);
+                assertEquals(expected.size() - 1, batches.get());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testBoundBox() {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        List<Node> nodes = Collections.synchronizedList(new ArrayList<>());
+        new ParallelBinaryParser(input, 1).onNode(nodes::add).parse();
+        double minLat = nodes.stream().mapToDouble(Node::getLat).min().getAsDouble();
+        double maxLat = nodes.stream().mapToDouble(Node::getLat).max().getAsDouble();
+        double minLon = nodes.stream().mapToDouble(Node::getLon).min().getAsDouble();
+        double maxLon = nodes.stream().mapToDouble(Node::getLon).max().getAsDouble();
+        BoundBox box = new BoundBox(minLon + (maxLon - minLon) / 3, minLat + (maxLat - minLat) / 3,
+                maxLon - (maxLon - minLon) / 3, maxLat - (maxLat - minLat) / 3);
+        Set<Long> expected = nodes.stream()
+                .filter(node -> node.getLat() >= box.getTop() && node.getLat() <= box.getBottom())
+                .filter(node -> node.getLon() >= box.getLeft() && node.getLon() <= box.getRight())
+                .map(Node::getId).collect(Collectors.toSet());
+        assertFalse(expected.isEmpty());
+        assertTrue(expected.size() < nodes.size());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParallelBinaryWriter orderedWriter = new ParallelBinaryWriter(output, 1, null, true);
+        orderedWriter.start();
+        nodes.sort(Comparator.comparing(Node::getId));
+        nodes.forEach(orderedWriter::write);
+        orderedWriter.close();
+
+        for (boolean streaming : new boolean[]{true, false}) {
+            for (boolean written : new boolean[]{true, false}) {
+                input = written ? new ByteArrayInputStream(output.toByteArray())
+                        : Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+                Set<Long> actual = ConcurrentHashMap.newKeySet();
+                new ParallelBinaryParser(input, 4)
+                        .setStreamingDecoder(streaming)
+                        .setBoundBox(box)
+                        .onNode(node -> actual.add(node.getId()))
+                        .parse();
+                assertEquals(expected, actual);
+            }
+        }
+
+        AtomicInteger outside = new AtomicInteger();
+        new ParallelBinaryParser(new ByteArrayInputStream(output.toByteArray()), 4)
+                .setBoundBox(new BoundBox(maxLon + 1, maxLat + 1, maxLon + 2, maxLat + 2))
+                .onNode(node -> outside.incrementAndGet())
+                .parse();
+        assertEquals(0, outside.get());
+    }
+
+    @Test
+    void testNodeLocationStore() throws IOException {
+        InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+        List<Node> nodes = Collections.synchronizedList(new ArrayList<>());
+        new ParallelBinaryParser(input, 1).onNode(nodes::add).parse();
+        long maxId = nodes.stream().mapToLong(Node::getId).max().getAsLong();
+
+        Path file = Files.createTempFile("locations", ".bin");
+        try (DenseNodeLocationStore dense = DenseNodeLocationStore.open(file, maxId)) {
+            for (boolean streaming : new boolean[]{true, false}) {
+                SparseNodeLocationStore sparse = new SparseNodeLocationStore(nodes.size());
+                for (NodeLocationStore store : new NodeLocationStore[]{sparse, dense}) {
+                    AtomicInteger completed = new AtomicInteger();
+                    AtomicInteger filtered = new AtomicInteger();
+                    input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf");
+                    new ParallelBinaryParser(input, 4)
+                            .setStreamingDecoder(streaming)
+                            .setBoundBox(new BoundBox(-180, 89, -179, 90))
+                            .setTagFilter(new TagFilter().key("no such key"))
+                            .onNode(node -> filtered.incrementAndGet())
+                            .setNodeLocationStore(store)
+                            .onComplete(() -> completed.set(store.get(nodes.get(0).getId()) == NodeLocationStore.MISSING
+                                    ? -1 : 1))
+                            .parse();
+                    assertEquals(0, filtered.get());
+                    assertEquals(1, completed.get());
+                    for (Node node : nodes) {
+                        long location = store.get(node.getId());
+                        assertEquals(NodeLocationStore.toFixed(node.getLat()), NodeLocationStore.lat(location));
+                        assertEquals(NodeLocationStore.toFixed(node.getLon()), NodeLocationStore.lon(location));
+                    }
+                }
+                assertEquals(nodes.size(), sparse.size());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testWayGeometry() throws IOException {
+        Path pbf = Files.createTempFile("geometry", ".pbf");
+        try {
+            try (InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf")) {
+                Files.copy(input, pbf, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Map<Long, Node> nodes = new ConcurrentHashMap<>();
+            Map<Long, Way> ways = new ConcurrentHashMap<>();
+            new ParallelBinaryParser(pbf, 1)
+                    .onNode(node -> nodes.put(node.getId(), node))
+                    .onWay(way -> ways.put(way.getId(), way))
+                    .parse();
+
+            SparseNodeLocationStore store = new SparseNodeLocationStore(nodes.size());
+            for (boolean indexed : new boolean[]{false, true}) {
+                if (indexed) {
+                    BlobIndexBuilder.buildSidecar(pbf, 2);
+                }
+                Map<Long, WayGeometry> actual = new ConcurrentHashMap<>();
+                AtomicInteger completed = new AtomicInteger();
+                new WayGeometryParser(pbf, 4, store)
+                        .setNodeLocationsReady(indexed)
+                        .onWayWithGeometry(geometry -> actual.put(geometry.getWay().getId(), geometry))
+                        .onComplete(completed::incrementAndGet)
+                        .parse();
+                assertEquals(1, completed.get());
+                assertEquals(ways.keySet(), actual.keySet());
+                for (WayGeometry geometry : actual.values()) {
+                    List<Long> refs = ways.get(geometry.getWay().getId()).getNodes();
+                    assertEquals(refs, geometry.getWay().getNodes());
+                    assertEquals(refs.size(), geometry.getLats().length);
+                    boolean complete = true;
+                    for (int indx = 0; indx < refs.size(); ++indx) {
+                        Node node = nodes.get(refs.get(indx));
+                        if (node == null) {
+                            complete = false;
+                            assertTrue(Double.isNaN(geometry.getLats()[indx]));
+                            assertTrue(Double.isNaN(geometry.getLons()[indx]));
+                        } else {
+                            assertEquals(node.getLat(), geometry.getLats()[indx], 1e-7);
+                            assertEquals(node.getLon(), geometry.getLons()[indx], 1e-7);
+                        }
+                    }
+                    assertEquals(complete, geometry.isComplete());
+                }
+            }
+
+            Set<Long> filtered = ConcurrentHashMap.newKeySet();
+            new WayGeometryParser(pbf, 4, store)
+                    .setNodeLocationsReady(true)
+                    .setTagFilter(new TagFilter().key("highway"))
+                    .onWayWithGeometry(geometry -> filtered.add(geometry.getWay().getId()))
+                    .parse();
+            Set<Long> highways = ways.values().stream().filter(way -> way.getTags().containsKey("highway"))
+                    .map(Way::getId).collect(Collectors.toSet());
+            assertFalse(highways.isEmpty());
+            assertEquals(highways, filtered);
+        } finally {
+            Files.deleteIfExists(BlobIndex.sidecarFor(pbf));
+            Files.deleteIfExists(pbf);
+        }
+    }
+
+    @Test
+    void testMultipolygon() throws IOException {
+        Path pbf = Files.createTempFile("multipolygon", ".pbf");
+        try {
+            try (OutputStream output = Files.newOutputStream(pbf)) {
+                ParallelBinaryWriter writer = new ParallelBinaryWriter(output, 1, null, true);
+                writer.start();
+                double[][] coordinates = {{0, 0}, {0, 10}, {10, 10}, {10, 0}, {2, 2}, {8, 2}, {8, 8}, {2, 8}};
+                for (int indx = 0; indx < coordinates.length; ++indx) {
+                    writer.write(new Node(indx + 1, coordinates[indx][0], coordinates[indx][1]));
+                }
+                long[][] refs = {{1, 2, 3}, {3, 4, 1}, {5, 6, 7, 8, 5}, {1, 2, 3, 1}};
+                for (int indx = 0; indx < refs.length; ++indx) {
+                    Way way = new Way(indx + 1);
+                    Arrays.stream(refs[indx]).forEach(way.getNodes()::add);
+                    writer.write(way);
+                }
+                Relation area = new Relation(1);
+                area.getTags().put("type", "multipolygon");
+                area.getMembers().add(new RelationMember(1L, "outer", RelationMember.Type.WAY));
+                area.getMembers().add(new RelationMember(2L, "outer", RelationMember.Type.WAY));
+                area.getMembers().add(new RelationMember(3L, "outer", RelationMember.Type.WAY));
+                area.getMembers().add(new RelationMember(1L, "", RelationMember.Type.NODE));
+                writer.write(area);
+                Relation boundary = new Relation(2);
+                boundary.getTags().put("type", "boundary");
+                boundary.getTags().put("admin_level", "8");
+                boundary.getMembers().add(new RelationMember(4L, "outer", RelationMember.Type.WAY));
+                writer.write(boundary);
+                Relation route = new Relation(3);
+                route.getTags().put("type", "route");
+                route.getMembers().add(new RelationMember(4L, "", RelationMember.Type.WAY));
+                writer.write(route);
+                Relation broken = new Relation(4);
+                broken.getTags().put("type", "multipolygon");
+                broken.getMembers().add(new RelationMember(1L, "outer", RelationMember.Type.WAY));
+                broken.getMembers().add(new RelationMember(100L, "outer", RelationMember.Type.WAY));
+                writer.write(broken);
+                writer.close();
+            }
+
+            Map<Long, MultipolygonGeometry> result = new ConcurrentHashMap<>();
+            AtomicInteger completed = new AtomicInteger();
+            SparseNodeLocationStore store = new SparseNodeLocationStore(100);
+            new MultipolygonParser(pbf, 4, store)
+                    .onMultipolygon(geometry -> result.put(geometry.getRelation().getId(), geometry))
+                    .onComplete(completed::incrementAndGet)
+                    .parse();
+            assertEquals(1, completed.get());
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), result.keySet());
+            assertEquals(8, store.size());
+            MultipolygonGeometry area = result.get(1L);
+            assertEquals(1, area.getPolygons().size());
+            assertArrayEquals(new double[]{0, 0, 10, 10, 0}, area.getPolygons().get(0).getLats(), 1e-7);
+            assertEquals(1, area.getPolygons().get(0).getHoleLats().length);
+            assertArrayEquals(new double[]{2, 8, 8, 2, 2}, area.getPolygons().get(0).getHoleLats()[0], 1e-7);
+            assertEquals(4, result.get(2L).getPolygons().get(0).getLats().length);
+
+            result.clear();
+            new MultipolygonParser(pbf, 2, store)
+                    .setNodeLocationsReady(true)
+                    .setTagFilter(new TagFilter().key("admin_level"))
+                    .onMultipolygon(geometry -> result.put(geometry.getRelation().getId(), geometry))
+                    .parse();
+            assertEquals(Collections.singleton(2L), result.keySet());
+        } finally {
+            Files.deleteIfExists(pbf);
+        }
+    }
+
+    @Test
+    void testNoMultipolygons() throws IOException, URISyntaxException {
+        Path input = Paths.get(Thread.currentThread().getContextClassLoader().getResource("sample.pbf").toURI());
+        AtomicInteger seen = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        SparseNodeLocationStore store = new SparseNodeLocationStore(1);
+        new MultipolygonParser(input, 4, store)
+                .onMultipolygon(geometry -> seen.incrementAndGet())
+                .onComplete(completed::incrementAndGet)
+                .parse();
+        assertEquals(0, seen.get());
+        assertEquals(1, completed.get());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testSummarySkipsBlocks() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BlobWriter blobWriter = new BlobWriter(output);
+        blobWriter.writeHeader(OsmHeaderEncoder.encodeHeader(null));
+        Way way = new Way(10);
+        way.getTags().put("building", "yes");
+        byte[] summary = new BlockSummary.Builder().add(way).build().toByteArray();
+        blobWriter.writeData("not a primitive block".getBytes(), summary);
+        byte[] written = output.toByteArray();
+
+        AtomicInteger seen = new AtomicInteger();
+        new ParallelBinaryParser(new ByteArrayInputStream(written), 1)
+                .onNode(node -> seen.incrementAndGet())
+                .onRelation(relation -> seen.incrementAndGet())
+                .parse();
+        new ParallelBinaryParser(new ByteArrayInputStream(written), 1)
+                .setTagFilter(new TagFilter().key("highway"))
+                .onWay(entity -> seen.incrementAndGet())
+                .parse();
+        new ParallelBinaryParser(new ByteArrayInputStream(written), 1)
+                .setIdFilter(null, new IdRange(11, 20), null)
+                .onWay(entity -> seen.incrementAndGet())
+                .parse();
+        assertEquals(0, seen.get());
+        assertThrows(RuntimeException.class, () -> new ParallelBinaryParser(new ByteArrayInputStream(written), 1)
+                .setIdFilter(null, new IdRange(1, 10), null)
+                .onWay(entity -> seen.incrementAndGet())
+                .parse());
+    }
+
     @Test
     void testExceptionProcessing() {
         final AtomicInteger completedCount = new AtomicInteger();
@@ -0,0 +1,56 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.blob;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobCompressionTest {
+    @Test
+    void testFixedLevel() {
+        BlobCompression testedObject = BlobCompression.zlib(Deflater.BEST_SPEED);
+        assertEquals(BlobCompression.Format.ZLIB, testedObject.getFormat());
+        assertEquals(Deflater.BEST_SPEED, testedObject.getMinLevel());
+        assertEquals(Deflater.BEST_SPEED, testedObject.getMaxLevel());
+        assertFalse(testedObject.isAdaptive());
+    }
+
+    @Test
+    void testAdaptive() {
+        BlobCompression testedObject = BlobCompression.adaptive(1, 6);
+        assertEquals(BlobCompression.Format.ZLIB, testedObject.getFormat());
+        assertTrue(testedObject.isAdaptive());
+    }
+
+    @Test
+    void testFormats() {
+        assertEquals(BlobCompression.Format.RAW, BlobCompression.raw().getFormat());
+        assertEquals(BlobCompression.Format.LZ4, BlobCompression.lz4().getFormat());
+        assertEquals(BlobCompression.Format.ZSTD, BlobCompression.zstd().getFormat());
+        assertFalse(BlobCompression.lz4().isAdaptive());
+    }
+
+    @Test
+    void testInvalidLevels() {
+        assertThrows(IllegalArgumentException.class, () -> BlobCompression.zlib(10));
+        assertThrows(IllegalArgumentException.class, () -> BlobCompression.zlib(-2));
+        assertThrows(IllegalArgumentException.class, () -> BlobCompression.adaptive(6, 1));
+    }
+}
@@ -2,17 +2,179 @@ package com.wolt.osm.parallelpbf.blob;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import crosby.binary.Fileformat;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class BlobWriterTest {
+    private static final byte[] PAYLOAD = payload(10000);
+
+    private static byte[] payload(int size) {
+        byte[] result = new byte[size];
+        Random random = new Random(size);
+        for (int indx = 0; indx < size; ++indx) {
+            result[indx] = (byte) ('a' + random.nextInt(4));
+        }
+        return result;
+    }
+
+    private static Fileformat.Blob readBlob(DataInputStream input) throws IOException {
+        byte[] header = new byte[input.readInt()];
+        input.readFully(header);
+        byte[] blob = new byte[Fileformat.BlobHeader.parseFrom(header).getDatasize()];
+        input.readFully(blob);
+        return Fileformat.Blob.parseFrom(blob);
+    }
+
+    private static Fileformat.Blob writeBlob(BlobCompression compression, byte[] payload) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(new BlobWriter(output).setCompression(compression).writeData(payload));
+        return readBlob(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    private static byte[] inflate(Fileformat.Blob blob) throws DataFormatException {
+        byte[] result = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        inflater.setInput(blob.getZlibData().toByteArray());
+        assertEquals(result.length, inflater.inflate(result));
+        assertTrue(inflater.finished());
+        inflater.end();
+        return result;
+    }
+
+    @Test
+    void testIndexData() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BlobWriter testedObject = new BlobWriter(output);
+        assertTrue(testedObject.writeData(PAYLOAD, new byte[]{1, 2, 3}));
+        assertTrue(testedObject.writeData(PAYLOAD));
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+        for (int indx = 0; indx < 2; ++indx) {
+            byte[] header = new byte[input.readInt()];
+            input.readFully(header);
+            Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+            assertEquals(indx == 0, blobHeader.hasIndexdata());
+            if (indx == 0) {
+                assertArrayEquals(new byte[]{1, 2, 3}, blobHeader.getIndexdata().toByteArray());
+            }
+            input.skipBytes(blobHeader.getDatasize());
+        }
+    }
+
+    @Test
+    void testRaw() throws IOException {
+        Fileformat.Blob blob = writeBlob(BlobCompression.raw(), PAYLOAD);
+        assertFalse(blob.hasZlibData());
+        assertArrayEquals(PAYLOAD, blob.getRaw().toByteArray());
+    }
+
+    @Test
+    void testZlibLevel() throws IOException, DataFormatException {
+        Fileformat.Blob fast = writeBlob(BlobCompression.zlib(Deflater.BEST_SPEED), PAYLOAD);
+        Fileformat.Blob best = writeBlob(BlobCompression.zlib(Deflater.BEST_COMPRESSION), PAYLOAD);
+        assertArrayEquals(PAYLOAD, inflate(fast));
+        assertArrayEquals(PAYLOAD, inflate(best));
+        assertTrue(fast.getZlibData().size() > best.getZlibData().size());
+    }
+
+    @Test
+    void testReleaseCompressor() throws IOException, DataFormatException {
+        BlobWriter.releaseCompressor();
+        for (int indx = 0; indx < 2; ++indx) {
+            Fileformat.Blob blob = writeBlob(BlobCompression.zlib(Deflater.BEST_COMPRESSION), PAYLOAD);
+            assertArrayEquals(PAYLOAD, inflate(blob));
+            BlobWriter.releaseCompressor();
+        }
+    }
+
+    @Test
+    void testIncompressible() throws IOException, DataFormatException {
+        byte[] payload = new byte[10000];
+        new Random(1).nextBytes(payload);
+        Fileformat.Blob blob = writeBlob(BlobCompression.zlib(Deflater.BEST_COMPRESSION), payload);
+        assertTrue(blob.getZlibData().size() > payload.length);
+        assertArrayEquals(payload, inflate(blob));
+    }
+
+    @Test
+    void testLz4() throws IOException {
+        Fileformat.Blob blob = writeBlob(BlobCompression.lz4(), PAYLOAD);
+        byte[] compressed = blob.getLz4Data().toByteArray();
+        byte[] result = new byte[blob.getRawSize()];
+        assertEquals(PAYLOAD.length,
+                new Lz4Decompressor().decompress(compressed, 0, compressed.length, result, 0, result.length));
+        assertArrayEquals(PAYLOAD, result);
+    }
+
+    @Test
+    void testZstd() throws IOException {
+        Fileformat.Blob blob = writeBlob(BlobCompression.zstd(), PAYLOAD);
+        byte[] compressed = blob.getZstdData().toByteArray();
+        byte[] result = new byte[blob.getRawSize()];
+        assertEquals(PAYLOAD.length,
+                new ZstdDecompressor().decompress(compressed, 0, compressed.length, result, 0, result.length));
+        assertArrayEquals(PAYLOAD, result);
+    }
+
+    @Test
+    void testCompressorReuse() throws IOException, DataFormatException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BlobWriter testedObject = new BlobWriter(output).setCompression(BlobCompression.zlib(Deflater.BEST_SPEED));
+        byte[] small = payload(10);
+        assertTrue(testedObject.writeData(PAYLOAD));
+        assertTrue(testedObject.writeData(small));
+        assertTrue(testedObject.writeData(PAYLOAD));
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+        assertArrayEquals(PAYLOAD, inflate(readBlob(input)));
+        assertArrayEquals(small, inflate(readBlob(input)));
+        assertArrayEquals(PAYLOAD, inflate(readBlob(input)));
+    }
+
+    @Test
+    void testAdaptiveLevel() throws IOException, DataFormatException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BlobWriter testedObject = new BlobWriter(output).setCompression(BlobCompression.adaptive(2, 4));
+        assertEquals(4, testedObject.getLevel());
+
+        BlockingQueue<Integer> queue = new ArrayBlockingQueue<>(2);
+        testedObject.useBacklog(queue);
+        queue.add(1);
+        assertTrue(testedObject.writeData(PAYLOAD));
+        assertEquals(4, testedObject.getLevel());
+
+        queue.add(2);
+        for (int indx = 0; indx < 3; ++indx) {
+            assertTrue(testedObject.writeData(PAYLOAD));
+        }
+        assertEquals(2, testedObject.getLevel());
+
+        queue.clear();
+        assertTrue(testedObject.writeData(PAYLOAD));
+        assertEquals(3, testedObject.getLevel());
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+        for (int indx = 0; indx < 5; ++indx) {
+            assertArrayEquals(PAYLOAD, inflate(readBlob(input)));
+        }
+    }
+
     @Test
     void testWriter() throws InvalidProtocolBufferException, DataFormatException {
         String expected = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt";
@@ -0,0 +1,110 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.blob;
+
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferArenaTest {
+    private static ByteBuffer acquire(BufferArena arena, int size) {
+        try {
+            return arena.acquire(size);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferArena(0, false));
+    }
+
+    @Test
+    void testSizeClasses() throws InterruptedException {
+        var testedObject = new BufferArena(1024 * 1024, false);
+        var small = testedObject.acquire(10);
+        assertEquals(4096, small.capacity());
+        assertEquals(10, small.limit());
+        assertEquals(0, small.position());
+        var exact = testedObject.acquire(8192);
+        assertEquals(8192, exact.capacity());
+        var odd = testedObject.acquire(8193);
+        assertEquals(16384, odd.capacity());
+        assertEquals(4096 + 8192 + 16384, testedObject.getAllocatedBytes());
+    }
+
+    @Test
+    void testReuse() throws InterruptedException {
+        var testedObject = new BufferArena(1024 * 1024, false);
+        var buffer = testedObject.acquire(5000);
+        buffer.position(100);
+        testedObject.release(buffer);
+        assertEquals(8192, testedObject.getPooledBytes());
+
+        var reused = testedObject.acquire(6000);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(6000, reused.limit());
+        assertEquals(0, testedObject.getPooledBytes());
+        assertEquals(8192, testedObject.getAllocatedBytes());
+    }
+
+    @Test
+    void testPooledBuffersEvicted() throws InterruptedException {
+        var testedObject = new BufferArena(16384, false);
+        testedObject.release(testedObject.acquire(8192));
+        testedObject.release(testedObject.acquire(4096));
+        assertEquals(8192 + 4096, testedObject.getAllocatedBytes());
+
+        var big = testedObject.acquire(16384);
+        assertEquals(16384, big.capacity());
+        assertEquals(16384, testedObject.getAllocatedBytes());
+        assertEquals(0, testedObject.getPooledBytes());
+    }
+
+    @Test
+    void testOversizeBufferAllocatedAlone() throws Exception {
+        var testedObject = new BufferArena(4096, true);
+        var big = testedObject.acquire(100000);
+        assertTrue(big.isDirect());
+        var second = CompletableFuture.supplyAsync(() -> acquire(testedObject, 10));
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        testedObject.release(big);
+        assertEquals(4096, second.get(1, TimeUnit.SECONDS).capacity());
+        assertEquals(4096, testedObject.getAllocatedBytes());
+    }
+
+    @Test
+    void testCapacityBlocksAcquire() throws Exception {
+        var testedObject = new BufferArena(8192, false);
+        var first = testedObject.acquire(4096);
+        var second = testedObject.acquire(4096);
+        var third = CompletableFuture.supplyAsync(() -> acquire(testedObject, 4096));
+        assertThrows(TimeoutException.class, () -> third.get(100, TimeUnit.MILLISECONDS));
+        testedObject.release(first);
+        assertSame(first, third.get(1, TimeUnit.SECONDS));
+        assertNotSame(second, first);
+        assertEquals(8192, testedObject.getAllocatedBytes());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.blob;
+
+import crosby.binary.Fileformat;
+import lombok.var;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("BlobReader")
+class MappedBlobReaderTest {
+    private static final String testString = "test blob";
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        var header = Fileformat.BlobHeader.newBuilder()
+                .setType("OSMData")
+                .setDatasize(testString.length()).build().toByteArray();
+        var content = new ByteArrayOutputStream();
+        content.write(ByteBuffer.allocate(4).putInt(header.length).array());
+        content.write(header);
+        content.write(testString.getBytes(StandardCharsets.UTF_8));
+        file = Files.createTempFile("mapped", ".pbf");
+        Files.write(file, content.toByteArray());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testReadBlock() throws IOException {
+        var testedObject = MappedBlobReader.open(file);
+
+        var information = testedObject.readBlobHeaderLength().flatMap(testedObject::readBlobHeader);
+        assertTrue(information.isPresent());
+        assertEquals("OSMData", information.get().getType());
+
+        var blob = testedObject.readBlobData(information.get().getSize());
+        assertTrue(blob.isPresent());
+        byte[] actual = new byte[blob.get().remaining()];
+        blob.get().get(actual);
+        assertEquals(testString, new String(actual, StandardCharsets.UTF_8));
+        assertEquals(Files.size(file), testedObject.getPosition());
+
+        assertFalse(testedObject.readBlobHeaderLength().isPresent());
+    }
+
+    @Test
+    void testSkipAndSeek() throws IOException {
+        var testedObject = MappedBlobReader.open(file);
+
+        var information = testedObject.readBlobHeaderLength().flatMap(testedObject::readBlobHeader);
+        assertTrue(information.isPresent());
+        assertTrue(testedObject.skip(information.get().getSize()).isPresent());
+        assertFalse(testedObject.skip(1).isPresent());
+
+        testedObject.seek(0);
+        assertTrue(testedObject.readBlobHeaderLength().isPresent());
+    }
+
+    @Test
+    void testNegativeSize() throws IOException {
+        var headerLength = Fileformat.BlobHeader.newBuilder()
+                .setType("OSMData")
+                .setDatasize(-1).build().getSerializedSize();
+        var header = Fileformat.BlobHeader.newBuilder()
+                .setType("OSMData")
+                .setDatasize(-(4 + headerLength)).build().toByteArray();
+        var content = new ByteArrayOutputStream();
+        content.write(ByteBuffer.allocate(4).putInt(header.length).array());
+        content.write(header);
+        Files.write(file, content.toByteArray());
+        var testedObject = MappedBlobReader.open(file);
+
+        var length = testedObject.readBlobHeaderLength();
+        assertTrue(length.isPresent());
+        assertFalse(testedObject.readBlobHeader(length.get()).isPresent());
+        long position = testedObject.getPosition();
+        assertFalse(testedObject.skip(-(4 + headerLength)).isPresent());
+        assertEquals(position, testedObject.getPosition());
+    }
+
+    @Test
+    void testReadShort() throws IOException {
+        var testedObject = MappedBlobReader.open(file);
+
+        assertFalse(testedObject.slice(Files.size(file) - 1, 2).isPresent());
+        assertFalse(testedObject.slice(-1, 2).isPresent());
+    }
+
+    @Test
+    void testNextBlockOffset() throws IOException {
+        var testedObject = MappedBlobReader.open(file);
+
+        assertEquals(0, testedObject.nextBlockOffset(0));
+        assertEquals(Files.size(file), testedObject.nextBlockOffset(1));
+    }
+}
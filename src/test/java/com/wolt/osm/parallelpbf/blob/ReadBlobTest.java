@@ -22,6 +22,7 @@ import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -62,7 +63,7 @@ class ReadBlobTest {
         final String testString = "test blob";
 
         InputStream blobStream = mock(InputStream.class);
-        expect(blobStream.read(anyObject())).andStubThrow(new IOException());
+        expect(blobStream.read(anyObject(), anyInt(), anyInt())).andStubThrow(new IOException());
         replay(blobStream);
 
         var testedObject = new BlobReader(blobStream);
@@ -70,4 +71,45 @@ class ReadBlobTest {
 
         assertFalse(actual.isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReadBlobDataToArena() throws IOException, InterruptedException {
+        final String testString = "test blob";
+        var arena = new BufferArena(1024 * 1024, false);
+        var testedObject = new BlobReader(IOUtils.toInputStream(testString + testString, "UTF-8"), arena);
+
+        var actual = testedObject.readBlobData(testString.length()).get();
+        assertEquals(testString, StandardCharsets.UTF_8.decode(actual).toString());
+        testedObject.release(actual);
+        assertEquals(arena.getAllocatedBytes(), arena.getPooledBytes());
+
+        var next = testedObject.readBlobData(testString.length()).get();
+        assertSame(actual, next);
+        assertEquals(testString, StandardCharsets.UTF_8.decode(next).toString());
+    }
+
+    @Test
+    void testReadBlobDataDirect() throws IOException {
+        var content = new byte[100000];
+        for (int indx = 0; indx < content.length; ++indx) {
+            content[indx] = (byte) indx;
+        }
+        var arena = new BufferArena(1024 * 1024, true);
+        var testedObject = new BlobReader(new ByteArrayInputStream(content), arena);
+
+        var actual = testedObject.readBlobData(content.length).get();
+        assertTrue(actual.isDirect());
+        var copy = new byte[content.length];
+        actual.get(copy);
+        assertArrayEquals(content, copy);
+    }
+
+    @Test
+    void testReadBlobDataShort() throws IOException {
+        var arena = new BufferArena(1024 * 1024, false);
+        var testedObject = new BlobReader(IOUtils.toInputStream("test blob", "UTF-8"), arena);
+
+        assertFalse(testedObject.readBlobData(100).isPresent());
+        assertEquals(arena.getAllocatedBytes(), arena.getPooledBytes());
+    }
+}
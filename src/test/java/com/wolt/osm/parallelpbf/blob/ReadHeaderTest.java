@@ -17,6 +17,7 @@
 
 package com.wolt.osm.parallelpbf.blob;
 
+import com.google.protobuf.ByteString;
 import crosby.binary.Fileformat;
 import lombok.var;
 import org.apache.commons.io.IOUtils;
@@ -44,6 +45,23 @@ class ReadHeaderTest {
         assertTrue(actual.isPresent());
         assertEquals(testHeader.getType(), actual.get().getType());
         assertEquals(testHeader.getDatasize(), actual.get().getSize().intValue());
+        assertNull(actual.get().getIndexData());
+    }
+
+    @Test
+    void testReadHeaderIndexData() {
+        var testHeader = Fileformat.BlobHeader.newBuilder()
+                .setType("OSMData")
+                .setIndexdata(ByteString.copyFromUtf8("index"))
+                .setDatasize(1024).build();
+
+        var blobStream = new ByteArrayInputStream(testHeader.toByteArray());
+
+        var testedObject = new BlobReader(blobStream);
+        var actual = testedObject.readBlobHeader(testHeader.getSerializedSize());
+
+        assertTrue(actual.isPresent());
+        assertEquals(ByteString.copyFromUtf8("index"), actual.get().getIndexData());
     }
 
     @Test
@@ -0,0 +1,143 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.cursor;
+
+import com.google.protobuf.ByteString;
+import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.RelationMember;
+import com.wolt.osm.parallelpbf.entity.Way;
+import crosby.binary.Osmformat;
+import lombok.var;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockCursorsTest {
+    private final Osmformat.PrimitiveGroup group = Osmformat.PrimitiveGroup.newBuilder()
+            .addNodes(TestObjectsFactory.nodeMessage)
+            .setDense(TestObjectsFactory.denseNodesMessage)
+            .addWays(TestObjectsFactory.wayMessage)
+            .addRelations(TestObjectsFactory.relationMessage)
+            .build();
+
+    private final Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.newBuilder()
+            .addPrimitivegroup(group)
+            .setStringtable(TestObjectsFactory.stringTable)
+            .setGranularity(1)
+            .setDateGranularity(1)
+            .build();
+
+    private BlockCursors testedObject;
+
+    @BeforeEach
+    void setUp() {
+        testedObject = new BlockCursors();
+        testedObject.reset(block);
+    }
+
+    @Test
+    void testNodes() {
+        List<Node> nodes = new ArrayList<>();
+        List<NodeCursor> copies = new ArrayList<>();
+        testedObject.visitNodes(group, cursor -> {
+            assertEquals(1, cursor.id());
+            assertEquals(1, cursor.lat(), 0.0000001);
+            assertEquals(2, cursor.lon(), 0.0000001);
+            assertEquals(1, cursor.tagCount());
+            assertEquals("tag", cursor.tagKey(0));
+            assertEquals("value", cursor.tagValue(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> cursor.tagKey(1));
+            assertTrue(cursor.hasInfo());
+            assertEquals("test", cursor.username());
+            nodes.add(cursor.materialize());
+            copies.add(cursor.copy());
+        });
+        assertEquals(2, nodes.size());
+        for (Node node : nodes) {
+            assertEquals(TestObjectsFactory.info, node.getInfo());
+            assertEquals("value", node.getTags().get("tag"));
+        }
+        assertNotSame(copies.get(0), copies.get(1));
+        assertEquals(nodes.get(0), copies.get(0).materialize());
+    }
+
+    @Test
+    void testWays() {
+        List<Way> ways = new ArrayList<>();
+        testedObject.visitWays(group, cursor -> {
+            assertEquals(1, cursor.refCount());
+            assertEquals(9000, cursor.refAt(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> cursor.refAt(1));
+            ways.add(cursor.materialize());
+        });
+        assertEquals(1, ways.size());
+        var way = ways.get(0);
+        assertEquals(1, way.getId());
+        assertEquals(9000L, way.getNodes().get(0).longValue());
+        assertEquals(TestObjectsFactory.info, way.getInfo());
+        assertEquals("value", way.getTags().get("tag"));
+    }
+
+    @Test
+    void testRelations() {
+        List<Relation> relations = new ArrayList<>();
+        testedObject.visitRelations(group, cursor -> {
+            assertEquals(1, cursor.memberCount());
+            assertEquals(9000, cursor.memberId(0));
+            assertEquals("fail", cursor.memberRole(0));
+            assertEquals(RelationMember.Type.NODE, cursor.memberType(0));
+            relations.add(cursor.copy().materialize());
+        });
+        assertEquals(1, relations.size());
+        var relation = relations.get(0);
+        assertEquals(new RelationMember(9000L, "fail", RelationMember.Type.NODE), relation.getMembers().get(0));
+        assertEquals(TestObjectsFactory.info, relation.getInfo());
+    }
+
+    @Test
+    void testCursorReused() {
+        List<NodeCursor> cursors = new ArrayList<>();
+        testedObject.visitNodes(group, cursors::add);
+        assertSame(cursors.get(0), cursors.get(1));
+    }
+
+    @Test
+    void testCopySurvivesReset() {
+        List<WayCursor> ways = new ArrayList<>();
+        List<RelationCursor> relations = new ArrayList<>();
+        testedObject.visitWays(group, cursor -> ways.add(cursor.copy()));
+        testedObject.visitRelations(group, cursor -> relations.add(cursor.copy()));
+        testedObject.reset(block.toBuilder()
+                .setStringtable(Osmformat.StringTable.newBuilder()
+                        .addS(ByteString.copyFromUtf8("other")))
+                .build());
+
+        var way = ways.get(0);
+        assertEquals("tag", way.tagKey(0));
+        assertEquals("value", way.tagValue(0));
+        assertEquals("test", way.username());
+        assertEquals(way.tagKey(0), way.strings().getString(way.tagKeyIndex(0)));
+        assertEquals("fail", relations.get(0).memberRole(0));
+    }
+}
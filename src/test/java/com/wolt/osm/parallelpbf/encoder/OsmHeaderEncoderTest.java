@@ -39,4 +39,14 @@ class OsmHeaderEncoderTest {
         assertEquals(4000000000L, actual.getBbox().getRight());
         assertEquals(8000000000L, actual.getBbox().getBottom());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testHeaderSorted() throws InvalidProtocolBufferException {
+        Osmformat.HeaderBlock unsorted = Osmformat.HeaderBlock.parseFrom(OsmHeaderEncoder.encodeHeader(null));
+        assertTrue(unsorted.getOptionalFeaturesList().isEmpty());
+
+        Osmformat.HeaderBlock sorted = Osmformat.HeaderBlock.parseFrom(OsmHeaderEncoder.encodeHeader(null, true));
+        assertTrue(sorted.getOptionalFeaturesList().contains(Header.FEATURE_SORT_TYPE_THEN_ID));
+        assertFalse(sorted.getRequiredFeaturesList().contains(Header.FEATURE_SORT_TYPE_THEN_ID));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.filter;
+
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockBoxFilterTest {
+    @Test
+    void testBorders() {
+        var testedObject = new BlockBoxFilter(new BoundBox(0.5, 1.0, 1.5, 2.0), 100, 0, 0);
+        assertTrue(testedObject.matches(10000000, 5000000));
+        assertTrue(testedObject.matches(20000000, 15000000));
+        assertTrue(testedObject.matches(15000000, 10000000));
+        assertFalse(testedObject.matches(9999999, 5000000));
+        assertFalse(testedObject.matches(20000001, 5000000));
+        assertFalse(testedObject.matches(10000000, 4999999));
+        assertFalse(testedObject.matches(10000000, 15000001));
+    }
+
+    @Test
+    void testOffset() {
+        var testedObject = new BlockBoxFilter(new BoundBox(0.5, 1.0, 1.5, 2.0), 100, 50, -50);
+        assertTrue(testedObject.matches(10000000, 5000001));
+        assertTrue(testedObject.matches(19999999, 15000000));
+        assertFalse(testedObject.matches(20000000, 10000000));
+        assertFalse(testedObject.matches(10000000, 5000000));
+    }
+
+    @Test
+    void testNegative() {
+        var testedObject = new BlockBoxFilter(new BoundBox(-1.5, -2.0, -0.5, -1.0), 100, 0, 0);
+        assertTrue(testedObject.matches(-20000000, -15000000));
+        assertTrue(testedObject.matches(-10000000, -5000000));
+        assertFalse(testedObject.matches(-20000001, -15000000));
+        assertFalse(testedObject.matches(-10000000, -4999999));
+    }
+}
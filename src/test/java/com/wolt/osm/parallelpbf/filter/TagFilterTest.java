@@ -0,0 +1,87 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.filter;
+
+import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import com.wolt.osm.parallelpbf.parser.BlockStringTable;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagFilterTest {
+    private final BlockStringTable strings = new BlockStringTable(TestObjectsFactory.stringTable);
+
+    @Test
+    void testKey() {
+        var testedObject = new TagFilter().key("tag").compile(strings);
+        assertTrue(testedObject.canMatch());
+        assertTrue(testedObject.matches(3, 4));
+        assertTrue(testedObject.matches(3, 1));
+        assertFalse(testedObject.matches(2, 4));
+        assertFalse(testedObject.matches(100, 4));
+    }
+
+    @Test
+    void testKeyValues() {
+        var testedObject = new TagFilter().keyValues("tag", "value", "missing").compile(strings);
+        assertTrue(testedObject.canMatch());
+        assertTrue(testedObject.matches(3, 4));
+        assertFalse(testedObject.matches(3, 1));
+    }
+
+    @Test
+    void testCombined() {
+        var testedObject = new TagFilter().key("test").keyValues("tag", "fail").compile(strings);
+        assertTrue(testedObject.matches(2, 0));
+        assertTrue(testedObject.matches(3, 1));
+        assertFalse(testedObject.matches(3, 4));
+    }
+
+    @Test
+    void testCantMatch() {
+        assertFalse(new TagFilter().key("highway").compile(strings).canMatch());
+        assertFalse(new TagFilter().keyValues("tag", "other").compile(strings).canMatch());
+        assertFalse(new TagFilter().compile(strings).canMatch());
+    }
+
+    @Test
+    void testMayMatch() {
+        var keys = Arrays.asList("highway", "name");
+        assertTrue(new TagFilter().key("name").mayMatch(keys::contains));
+        assertTrue(new TagFilter().key("amenity").keyValues("highway", "primary").mayMatch(keys::contains));
+        assertFalse(new TagFilter().keyValues("amenity", "name").mayMatch(keys::contains));
+        assertFalse(new TagFilter().mayMatch(keys::contains));
+    }
+
+    @Test
+    void testMatchesTags() {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("type", "boundary");
+        tags.put("name", "Кипр");
+        assertTrue(new TagFilter().key("name").matches(tags));
+        assertTrue(new TagFilter().keyValues("type", "multipolygon", "boundary").matches(tags));
+        assertTrue(new TagFilter().keyValues("name", "Кипр").matches(tags));
+        assertFalse(new TagFilter().keyValues("type", "route").key("admin_level").matches(tags));
+        assertFalse(new TagFilter().matches(tags));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdBitSetTest {
+    @Test
+    void testAddContains() {
+        IdBitSet testedObject = new IdBitSet();
+        testedObject.add(0);
+        testedObject.add(63);
+        testedObject.add(64);
+        testedObject.add(12000000000L);
+        testedObject.add(-1);
+        testedObject.add(-100000);
+        testedObject.add(64);
+
+        assertEquals(6, testedObject.size());
+        assertTrue(testedObject.contains(0));
+        assertTrue(testedObject.contains(63));
+        assertTrue(testedObject.contains(64));
+        assertTrue(testedObject.contains(12000000000L));
+        assertTrue(testedObject.contains(-1));
+        assertTrue(testedObject.contains(-100000));
+        assertFalse(testedObject.contains(1));
+        assertFalse(testedObject.contains(65));
+        assertFalse(testedObject.contains(11999999999L));
+        assertFalse(testedObject.contains(-2));
+        assertFalse(testedObject.contains(Long.MAX_VALUE));
+        assertFalse(testedObject.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    void testOutOfRange() {
+        IdBitSet testedObject = new IdBitSet();
+        assertThrows(IllegalArgumentException.class, () -> testedObject.add(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> testedObject.add(Long.MIN_VALUE));
+        assertEquals(0, testedObject.size());
+    }
+}
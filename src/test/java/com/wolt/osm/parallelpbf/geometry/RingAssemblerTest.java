@@ -0,0 +1,124 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.geometry;
+
+import com.wolt.osm.parallelpbf.entity.Polygon;
+import com.wolt.osm.parallelpbf.location.NodeLocationStore;
+import com.wolt.osm.parallelpbf.location.SparseNodeLocationStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingAssemblerTest {
+    private final SparseNodeLocationStore locations = new SparseNodeLocationStore(100);
+
+    private void put(final long id, final double lat, final double lon) {
+        locations.put(id, NodeLocationStore.toFixed(lat), NodeLocationStore.toFixed(lon));
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Outer square 0..10
+        put(1, 0, 0);
+        put(2, 0, 10);
+        put(3, 10, 10);
+        put(4, 10, 0);
+        // Hole 2..8, touching nothing
+        put(11, 2, 2);
+        put(12, 8, 2);
+        put(13, 8, 8);
+        put(14, 2, 8);
+        // Island 4..6 inside the hole
+        put(21, 4, 4);
+        put(22, 4, 6);
+        put(23, 6, 6);
+        put(24, 6, 4);
+        // Separate outer 20..30
+        put(31, 20, 20);
+        put(32, 20, 30);
+        put(33, 30, 30);
+        // Hole of the outer square, touching it at node 1
+        put(41, 1, 0.5);
+        put(42, 0.5, 1);
+        locations.complete();
+    }
+
+    @Test
+    void testJoinRings() {
+        List<long[]> rings = RingAssembler.joinRings(Arrays.asList(
+                new long[]{1, 2},
+                new long[]{4, 3},
+                new long[]{3, 2},
+                new long[]{4, 1},
+                new long[]{31, 32},
+                new long[]{32, 33},
+                new long[]{5}));
+        assertEquals(1, rings.size());
+        assertArrayEquals(new long[]{1, 2, 3, 4, 1}, rings.get(0));
+    }
+
+    @Test
+    void testAssemble() {
+        List<Polygon> result = RingAssembler.assemble(Arrays.asList(
+                new long[]{1, 2, 3},
+                new long[]{3, 4, 1},
+                new long[]{11, 12, 13, 14, 11},
+                new long[]{21, 22, 23, 24, 21},
+                new long[]{31, 32, 33, 31}), locations);
+
+        assertEquals(3, result.size());
+        Polygon square = result.get(0);
+        assertArrayEquals(new double[]{0, 0, 10, 10, 0}, square.getLats(), 1e-7);
+        assertArrayEquals(new double[]{0, 10, 10, 0, 0}, square.getLons(), 1e-7);
+        assertEquals(1, square.getHoleLats().length);
+        assertArrayEquals(new double[]{2, 8, 8, 2, 2}, square.getHoleLats()[0], 1e-7);
+        assertArrayEquals(new double[]{2, 2, 8, 8, 2}, square.getHoleLons()[0], 1e-7);
+
+        Polygon island = result.get(1);
+        assertArrayEquals(new double[]{4, 4, 6, 6, 4}, island.getLats(), 1e-7);
+        assertArrayEquals(new double[]{4, 6, 6, 4, 4}, island.getLons(), 1e-7);
+        assertEquals(0, island.getHoleLats().length);
+
+        Polygon separate = result.get(2);
+        assertArrayEquals(new double[]{20, 20, 30, 20}, separate.getLats(), 1e-7);
+        assertEquals(0, separate.getHoleLats().length);
+    }
+
+    @Test
+    void testTouchingHole() {
+        List<Polygon> result = RingAssembler.assemble(Arrays.asList(
+                new long[]{1, 4, 3, 2, 1},
+                new long[]{1, 41, 42, 1}), locations);
+
+        assertEquals(1, result.size());
+        assertArrayEquals(new double[]{0, 0, 10, 10, 0}, result.get(0).getLats(), 1e-7);
+        assertEquals(1, result.get(0).getHoleLats().length);
+        assertArrayEquals(new double[]{0, 1, 0.5, 0}, result.get(0).getHoleLats()[0], 1e-7);
+    }
+
+    @Test
+    void testIncomplete() {
+        assertTrue(RingAssembler.assemble(Collections.singletonList(new long[]{1, 2, 3}), locations).isEmpty());
+        assertTrue(RingAssembler.assemble(Collections.singletonList(new long[]{1, 2, 99, 1}), locations).isEmpty());
+        assertTrue(RingAssembler.assemble(Collections.emptyList(), locations).isEmpty());
+    }
+}
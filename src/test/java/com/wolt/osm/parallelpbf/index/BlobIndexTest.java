@@ -0,0 +1,138 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.index;
+
+import com.wolt.osm.parallelpbf.ParallelBinaryParser;
+import com.wolt.osm.parallelpbf.blob.BlobInformation;
+import com.wolt.osm.parallelpbf.blob.MappedBlobReader;
+import lombok.var;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobIndexTest {
+    private Path pbf;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pbf = Files.createTempFile("indexed", ".pbf");
+        try (InputStream input = Thread.currentThread().getContextClassLoader().getResourceAsStream("sample.pbf")) {
+            Files.copy(input, pbf, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(BlobIndex.sidecarFor(pbf));
+        Files.deleteIfExists(pbf);
+    }
+
+    @Test
+    void testBuild() throws IOException {
+        var index = BlobIndexBuilder.build(pbf, 2);
+
+        assertEquals(Files.size(pbf), index.getFileSize());
+        assertEquals(BlobInformation.TYPE_OSM_HEADER, index.getEntries().get(0).getType());
+        assertEquals(0, index.getEntries().get(0).getOffset());
+        var last = index.getEntries().get(index.getEntries().size() - 1);
+        assertEquals(Files.size(pbf), last.getEndOffset());
+        assertTrue(index.getEntries().stream().anyMatch(e -> e.getNodes() != null && e.getNodes().contains(653970877)));
+        assertTrue(index.getEntries().stream().anyMatch(e -> e.getWays() != null && e.getWays().contains(158788812)));
+        assertTrue(index.getEntries().stream().anyMatch(e -> e.getRelations() != null
+                && e.getRelations().contains(31640)));
+    }
+
+    @Test
+    void testSaveLoad() throws IOException {
+        var index = BlobIndexBuilder.buildSidecar(pbf, 2);
+
+        var loaded = BlobIndex.load(BlobIndex.sidecarFor(pbf), pbf);
+        assertTrue(loaded.isPresent());
+        assertEquals(index.getEntries(), loaded.get().getEntries());
+        assertEquals(index.getFileModified(), loaded.get().getFileModified());
+    }
+
+    @Test
+    void testStaleIndex() throws IOException {
+        BlobIndexBuilder.buildSidecar(pbf, 1);
+        Files.setLastModifiedTime(pbf, FileTime.fromMillis(Files.getLastModifiedTime(pbf).toMillis() - 10000));
+
+        assertFalse(BlobIndex.load(BlobIndex.sidecarFor(pbf), pbf).isPresent());
+    }
+
+    @Test
+    void testIndexedParse() throws IOException {
+        AtomicInteger expected = new AtomicInteger();
+        new ParallelBinaryParser(pbf, 2).onNode(node -> expected.incrementAndGet()).parse();
+
+        BlobIndexBuilder.buildSidecar(pbf, 2);
+        AtomicInteger actual = new AtomicInteger();
+        for (int shard = 0; shard < 3; ++shard) {
+            new ParallelBinaryParser(pbf, 2, 3, shard).onNode(node -> actual.incrementAndGet()).parse();
+        }
+        assertEquals(expected.get(), actual.get());
+    }
+
+    @Test
+    void testIndexedSummaries() throws IOException {
+        var index = BlobIndexBuilder.build(pbf, 2);
+        var testedObject = new IndexedBlobReader(MappedBlobReader.open(pbf), index);
+
+        for (BlobIndexEntry entry : index.getEntries()) {
+            int headerLength = testedObject.readBlobHeaderLength().get();
+            var information = testedObject.readBlobHeader(headerLength).get();
+            assertEquals(entry.getType(), information.getType());
+            if (BlobInformation.TYPE_OSM_DATA.equals(entry.getType())) {
+                var summary = BlockSummary.parse(information.getIndexData()).get();
+                assertEquals(entry.getNodes(), summary.getNodes());
+                assertEquals(entry.getWays(), summary.getWays());
+                assertEquals(entry.getRelations(), summary.getRelations());
+                assertTrue(summary.mayContainKey("highway"));
+            } else {
+                assertNull(information.getIndexData());
+            }
+        }
+        assertFalse(testedObject.readBlobHeaderLength().isPresent());
+    }
+
+    @Test
+    void testIndexedByteRangeParse() throws IOException {
+        AtomicInteger expected = new AtomicInteger();
+        new ParallelBinaryParser(pbf, 2).onWay(way -> expected.incrementAndGet()).parse();
+
+        BlobIndexBuilder.buildSidecar(pbf, 2);
+        AtomicInteger actual = new AtomicInteger();
+        for (int shard = 0; shard < 3; ++shard) {
+            new ParallelBinaryParser(pbf, 2, 3, shard)
+                    .setSharding(ParallelBinaryParser.Sharding.BYTE_RANGE)
+                    .onWay(way -> actual.incrementAndGet())
+                    .parse();
+        }
+        assertEquals(expected.get(), actual.get());
+    }
+}
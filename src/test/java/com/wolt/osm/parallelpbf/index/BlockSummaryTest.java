@@ -0,0 +1,108 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.index;
+
+import com.google.protobuf.ByteString;
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockSummaryTest {
+    private static BlockSummary roundTrip(BlockSummary.Builder builder) {
+        return BlockSummary.parse(ByteString.copyFrom(builder.build().toByteArray())).get();
+    }
+
+    @Test
+    void testRanges() {
+        var builder = new BlockSummary.Builder()
+                .add(new Node(10, 1.0, 2.0))
+                .add(new Node(5, 1.0, 2.0))
+                .add(new Relation(-3));
+        var actual = roundTrip(builder);
+        assertEquals(new IdRange(5, 10), actual.getNodes());
+        assertNull(actual.getWays());
+        assertEquals(new IdRange(-3, -3), actual.getRelations());
+    }
+
+    @Test
+    void testBoundBox() {
+        var builder = new BlockSummary.Builder()
+                .add(new Node(1, 60.1, 24.9))
+                .add(new Node(2, 60.2, 24.8))
+                .add(new Way(3));
+        var actual = roundTrip(builder);
+        var box = actual.getBoundBox().get();
+        assertEquals(24.8, box.getLeft(), 1e-9);
+        assertEquals(60.1, box.getTop(), 1e-9);
+        assertEquals(24.9, box.getRight(), 1e-9);
+        assertEquals(60.2, box.getBottom(), 1e-9);
+
+        assertTrue(actual.intersects(new BoundBox(24.0, 60.0, 25.0, 61.0)));
+        assertTrue(actual.intersects(new BoundBox(24.9, 60.2, 25.0, 61.0)));
+        assertFalse(actual.intersects(new BoundBox(25.0, 60.0, 26.0, 61.0)));
+        assertFalse(actual.intersects(new BoundBox(24.0, 59.0, 25.0, 60.0)));
+    }
+
+    @Test
+    void testNoNodes() {
+        var actual = roundTrip(new BlockSummary.Builder().add(new Way(1)));
+        assertNull(actual.getNodes());
+        assertFalse(actual.getBoundBox().isPresent());
+        assertTrue(actual.intersects(new BoundBox(0, 0, 1, 1)));
+    }
+
+    @Test
+    void testKeys() {
+        var builder = new BlockSummary.Builder();
+        for (int indx = 0; indx < 100; ++indx) {
+            var way = new Way(indx);
+            way.getTags().put("key" + indx, "value");
+            builder.add(way);
+        }
+        var actual = roundTrip(builder);
+        for (int indx = 0; indx < 100; ++indx) {
+            assertTrue(actual.mayContainKey("key" + indx));
+        }
+        int falsePositives = 0;
+        for (int indx = 100; indx < 1100; ++indx) {
+            if (actual.mayContainKey("key" + indx)) {
+                ++falsePositives;
+            }
+        }
+        assertTrue(falsePositives < 100, "Too many false positives: " + falsePositives);
+    }
+
+    @Test
+    void testEmptyKeys() {
+        var actual = roundTrip(new BlockSummary.Builder().add(new Node(1, 0, 0)));
+        assertFalse(actual.mayContainKey("highway"));
+    }
+
+    @Test
+    void testUnsupported() {
+        assertFalse(BlockSummary.parse(null).isPresent());
+        assertFalse(BlockSummary.parse(ByteString.EMPTY).isPresent());
+        assertFalse(BlockSummary.parse(ByteString.copyFromUtf8("some other index")).isPresent());
+        var valid = new BlockSummary.Builder().add(new Node(1, 0, 0)).build().toByteArray();
+        assertFalse(BlockSummary.parse(ByteString.copyFrom(valid, 0, valid.length - 3)).isPresent());
+    }
+}
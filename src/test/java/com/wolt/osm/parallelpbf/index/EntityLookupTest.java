@@ -0,0 +1,118 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.index;
+
+import com.wolt.osm.parallelpbf.ParallelBinaryWriter;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.RelationMember;
+import com.wolt.osm.parallelpbf.entity.Way;
+import lombok.var;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityLookupTest {
+    private Path pbf;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pbf = Files.createTempFile("lookup", ".pbf");
+        try (OutputStream output = Files.newOutputStream(pbf)) {
+            var writer = new ParallelBinaryWriter(output, 2, null, true);
+            writer.start();
+            for (long id = 1; id <= 20000; ++id) {
+                var node = new Node(id * 2, id / 1000.0, -id / 1000.0);
+                node.getTags().put("ref", Long.toString(id));
+                writer.write(node);
+            }
+            var way = new Way(7);
+            way.getNodes().addAll(Arrays.asList(2L, 4L, 6L));
+            writer.write(way);
+            var relation = new Relation(3);
+            relation.getMembers().add(new RelationMember(7L, "outer", RelationMember.Type.WAY));
+            writer.write(relation);
+            writer.close();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(BlobIndex.sidecarFor(pbf));
+        Files.deleteIfExists(pbf);
+    }
+
+    @Test
+    void testLookup() throws IOException {
+        var testedObject = EntityLookup.open(pbf, 1024 * 1024 * 1024);
+
+        var node = testedObject.getNode(20000);
+        assertTrue(node.isPresent());
+        assertEquals(10.0, node.get().getLat(), 1e-7);
+        assertEquals("10000", node.get().getTags().get("ref"));
+        assertEquals(Arrays.asList(2L, 4L, 6L), testedObject.getWay(7).get().getNodes());
+        assertEquals(7L, testedObject.getRelation(3).get().getMembers().get(0).getId().longValue());
+
+        assertFalse(testedObject.getNode(20001).isPresent());
+        assertFalse(testedObject.getNode(0).isPresent());
+        assertFalse(testedObject.getNode(40002).isPresent());
+        assertFalse(testedObject.getWay(2).isPresent());
+        assertFalse(testedObject.getRelation(7).isPresent());
+    }
+
+    @Test
+    void testCache() throws IOException {
+        var testedObject = EntityLookup.open(pbf, 1024 * 1024 * 1024);
+        for (long id = 2; id <= 200; id += 2) {
+            assertEquals(id, testedObject.getNode(id).get().getId());
+        }
+        assertEquals(1, testedObject.getCacheMisses());
+        assertEquals(99, testedObject.getCacheHits());
+
+        testedObject.getNode(40000);
+        testedObject.getNode(2);
+        assertEquals(2, testedObject.getCacheMisses());
+    }
+
+    @Test
+    void testEviction() throws IOException {
+        BlobIndexBuilder.buildSidecar(pbf, 2);
+        var testedObject = EntityLookup.open(pbf, 0);
+        testedObject.getNode(2);
+        testedObject.getNode(40000);
+        testedObject.getNode(40000);
+        testedObject.getNode(2);
+        assertEquals(3, testedObject.getCacheMisses());
+        assertEquals(1, testedObject.getCacheHits());
+    }
+
+    @Test
+    void testUnsorted() {
+        var index = new BlobIndex(0, 0, Arrays.asList(
+                new BlobIndexEntry(0, 10, 10, "OSMData", new IdRange(1, 100), null, null),
+                new BlobIndexEntry(24, 10, 10, "OSMData", new IdRange(50, 150), null, null)));
+        assertThrows(IllegalArgumentException.class, () -> new EntityLookup(null, index, 0));
+    }
+}
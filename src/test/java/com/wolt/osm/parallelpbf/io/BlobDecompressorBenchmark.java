@@ -0,0 +1,147 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.google.protobuf.ByteString;
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * Single core decompression throughput of a typical OSMData blob in each supported format.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=BlobDecompressorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class BlobDecompressorBenchmark {
+    private static final int NODES = 8000;
+
+    @Param({"zlib", "lz4", "zstd"})
+    public String format;
+
+    @Param({"heap", "direct"})
+    public String buffer;
+
+    private final BlobDecompressor decompressor = new BlobDecompressor();
+
+    private ByteBuffer blob;
+
+    private static byte[] primitiveBlock() {
+        Random random = new Random(42);
+        String[] keys = {"highway", "name", "amenity", "building", "addr:street", "addr:housenumber", "source"};
+        Osmformat.StringTable.Builder strings = Osmformat.StringTable.newBuilder().addS(ByteString.EMPTY);
+        for (String key : keys) {
+            strings.addS(ByteString.copyFromUtf8(key));
+        }
+        for (int indx = 0; indx < 500; ++indx) {
+            strings.addS(ByteString.copyFromUtf8("value " + random.nextInt(100000)));
+        }
+        Osmformat.DenseNodes.Builder dense = Osmformat.DenseNodes.newBuilder();
+        Osmformat.DenseInfo.Builder info = Osmformat.DenseInfo.newBuilder();
+        for (int indx = 0; indx < NODES; ++indx) {
+            dense.addId(random.nextInt(4) == 0 ? 1 + random.nextInt(100000) : 1);
+            dense.addLat((int) (random.nextGaussian() * 300));
+            dense.addLon((int) (random.nextGaussian() * 300));
+            info.addVersion(1 + random.nextInt(3));
+            info.addTimestamp(random.nextInt(2) == 0 ? 0 : random.nextInt(10000000) - 5000000);
+            boolean sameUser = random.nextInt(2) == 0;
+            info.addChangeset(sameUser ? 0 : random.nextInt(1000000) - 500000);
+            info.addUid(sameUser ? 0 : random.nextInt(100000) - 50000);
+            info.addUserSid(sameUser ? 0 : random.nextInt(500) - 250);
+            if (random.nextInt(10) == 0) {
+                for (int tag = random.nextInt(3); tag >= 0; --tag) {
+                    dense.addKeysVals(1 + random.nextInt(keys.length));
+                    dense.addKeysVals(1 + keys.length + random.nextInt(500));
+                }
+            }
+            dense.addKeysVals(0);
+        }
+        return Osmformat.PrimitiveBlock.newBuilder()
+                .setStringtable(strings)
+                .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(dense.setDenseinfo(info)))
+                .build().toByteArray();
+    }
+
+    private static ByteString deflate(final byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[raw.length * 2];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        return ByteString.copyFrom(compressed, 0, length);
+    }
+
+    private static ByteString compress(final Compressor compressor, final byte[] raw) {
+        byte[] compressed = new byte[compressor.maxCompressedLength(raw.length)];
+        int length = compressor.compress(raw, 0, raw.length, compressed, 0, compressed.length);
+        return ByteString.copyFrom(compressed, 0, length);
+    }
+
+    @Setup
+    public void setUp() {
+        byte[] raw = primitiveBlock();
+        Fileformat.Blob.Builder builder = Fileformat.Blob.newBuilder().setRawSize(raw.length);
+        switch (format) {
+            case "lz4":
+                builder.setLz4Data(compress(new Lz4Compressor(), raw));
+                break;
+            case "zstd":
+                builder.setZstdData(compress(new ZstdCompressor(), raw));
+                break;
+            default:
+                builder.setZlibData(deflate(raw));
+        }
+        byte[] data = builder.build().toByteArray();
+        if ("direct".equals(buffer)) {
+            blob = ByteBuffer.allocateDirect(data.length);
+            blob.put(data);
+            blob.flip();
+        } else {
+            blob = ByteBuffer.wrap(data);
+        }
+    }
+
+    @Benchmark
+    public int decompress() throws IOException, DataFormatException {
+        return decompressor.decompress(blob);
+    }
+}
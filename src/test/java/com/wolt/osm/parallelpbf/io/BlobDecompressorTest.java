@@ -0,0 +1,203 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.google.protobuf.ByteString;
+import crosby.binary.Fileformat;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobDecompressorTest {
+    private static byte[] content(int size) {
+        var result = new byte[size];
+        for (int indx = 0; indx < size; ++indx) {
+            result[indx] = (byte) (indx % 17);
+        }
+        return result;
+    }
+
+    private static byte[] zlibBlob(byte[] content) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(content);
+        deflater.finish();
+        byte[] compressed = new byte[content.length * 2 + 64];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        return Fileformat.Blob.newBuilder()
+                .setRawSize(content.length)
+                .setZlibData(ByteString.copyFrom(compressed, 0, length))
+                .build().toByteArray();
+    }
+
+    private static byte[] codecBlob(Compressor compressor, byte[] content, boolean lz4) {
+        var compressed = new byte[compressor.maxCompressedLength(content.length)];
+        int length = compressor.compress(content, 0, content.length, compressed, 0, compressed.length);
+        var blob = Fileformat.Blob.newBuilder().setRawSize(content.length);
+        if (lz4) {
+            blob.setLz4Data(ByteString.copyFrom(compressed, 0, length));
+        } else {
+            blob.setZstdData(ByteString.copyFrom(compressed, 0, length));
+        }
+        return blob.build().toByteArray();
+    }
+
+    private static byte[] lz4Blob(byte[] content) {
+        return codecBlob(new Lz4Compressor(), content, true);
+    }
+
+    private static byte[] zstdBlob(byte[] content) {
+        return codecBlob(new ZstdCompressor(), content, false);
+    }
+
+    private static ByteBuffer direct(byte[] blob) {
+        var result = ByteBuffer.allocateDirect(blob.length);
+        result.put(blob);
+        result.flip();
+        return result;
+    }
+
+    private static byte[] payload(BlobDecompressor decompressor, ByteBuffer blob)
+            throws IOException, DataFormatException {
+        int length = decompressor.decompress(blob);
+        return Arrays.copyOf(decompressor.getPayload(), length);
+    }
+
+    @Test
+    void testReuseBetweenBlobs() throws IOException, DataFormatException {
+        var testedObject = new BlobDecompressor();
+        var big = content(100000);
+        var small = content(10);
+        assertArrayEquals(big, payload(testedObject, ByteBuffer.wrap(zlibBlob(big))));
+        var buffer = testedObject.getPayload();
+        assertArrayEquals(small, payload(testedObject, ByteBuffer.wrap(zlibBlob(small))));
+        assertSame(buffer, testedObject.getPayload());
+        assertArrayEquals(big, payload(testedObject, ByteBuffer.wrap(zlibBlob(big))));
+    }
+
+    @Test
+    void testBufferSlice() throws IOException, DataFormatException {
+        var content = content(1000);
+        var blob = zlibBlob(content);
+        var file = new byte[blob.length + 20];
+        System.arraycopy(blob, 0, file, 10, blob.length);
+        var slice = ByteBuffer.wrap(file, 10, blob.length).slice();
+        var position = ByteBuffer.wrap(file, 10, blob.length);
+
+        var testedObject = new BlobDecompressor();
+        assertArrayEquals(content, payload(testedObject, slice));
+        assertArrayEquals(content, payload(testedObject, position));
+        assertEquals(10, position.position());
+    }
+
+    @Test
+    void testDirectBuffer() throws IOException, DataFormatException {
+        var content = content(1000);
+        var blob = zlibBlob(content);
+        var direct = ByteBuffer.allocateDirect(blob.length);
+        direct.put(blob);
+        direct.flip();
+
+        var testedObject = new BlobDecompressor();
+        assertArrayEquals(content, payload(testedObject, direct));
+        assertArrayEquals(content, payload(testedObject, direct.asReadOnlyBuffer()));
+    }
+
+    @Test
+    void testRaw() throws IOException, DataFormatException {
+        var content = "raw".getBytes(StandardCharsets.UTF_8);
+        var blob = Fileformat.Blob.newBuilder().setRaw(ByteString.copyFrom(content)).build().toByteArray();
+        assertArrayEquals(content, payload(new BlobDecompressor(), ByteBuffer.wrap(blob)));
+    }
+
+    @Test
+    void testUnsupportedFormat() {
+        var blob = Fileformat.Blob.newBuilder().setLzmaData(ByteString.copyFromUtf8("test")).build().toByteArray();
+        assertThrows(RuntimeException.class, () -> new BlobDecompressor().decompress(ByteBuffer.wrap(blob)));
+    }
+
+    @Test
+    void testLz4() throws IOException, DataFormatException {
+        var testedObject = new BlobDecompressor();
+        var content = content(100000);
+        var blob = lz4Blob(content);
+        assertArrayEquals(content, payload(testedObject, ByteBuffer.wrap(blob)));
+        assertArrayEquals(content, payload(testedObject, direct(blob)));
+        assertArrayEquals(content, payload(testedObject, ByteBuffer.wrap(blob).asReadOnlyBuffer()));
+        assertArrayEquals(content(10), payload(testedObject, ByteBuffer.wrap(lz4Blob(content(10)))));
+    }
+
+    @Test
+    void testZstd() throws IOException, DataFormatException {
+        var testedObject = new BlobDecompressor();
+        var content = content(100000);
+        var blob = zstdBlob(content);
+        assertArrayEquals(content, payload(testedObject, ByteBuffer.wrap(blob)));
+        assertArrayEquals(content, payload(testedObject, direct(blob)));
+        assertArrayEquals(content, payload(testedObject, ByteBuffer.wrap(blob).asReadOnlyBuffer()));
+        assertArrayEquals(content(10), payload(testedObject, ByteBuffer.wrap(zstdBlob(content(10)))));
+    }
+
+    @Test
+    void testCodecBufferSlice() throws IOException, DataFormatException {
+        var content = content(1000);
+        var blob = zstdBlob(content);
+        var file = new byte[blob.length + 20];
+        System.arraycopy(blob, 0, file, 10, blob.length);
+        var position = ByteBuffer.wrap(file, 10, blob.length);
+
+        assertArrayEquals(content, payload(new BlobDecompressor(), position));
+        assertEquals(10, position.position());
+    }
+
+    @Test
+    void testCodecWrongSize() throws IOException {
+        var blob = Fileformat.Blob.parseFrom(lz4Blob(content(1000)));
+        var wrongSize = blob.toBuilder().setRawSize(1001).build().toByteArray();
+        assertThrows(RuntimeException.class, () -> new BlobDecompressor().decompress(ByteBuffer.wrap(wrongSize)));
+    }
+
+    @Test
+    void testCodecCorruptData() {
+        var blob = Fileformat.Blob.newBuilder()
+                .setRawSize(1000)
+                .setZstdData(ByteString.copyFromUtf8("definitely not zstd"))
+                .build().toByteArray();
+        assertThrows(DataFormatException.class, () -> new BlobDecompressor().decompress(ByteBuffer.wrap(blob)));
+    }
+
+    @Test
+    void testEnd() throws IOException, DataFormatException {
+        var content = content(1000);
+        var testedObject = new BlobDecompressor();
+        assertArrayEquals(content, payload(testedObject, ByteBuffer.wrap(zlibBlob(content))));
+        testedObject.end();
+        assertThrows(NullPointerException.class, () -> testedObject.decompress(ByteBuffer.wrap(zlibBlob(content))));
+        assertArrayEquals(content, payload(testedObject, ByteBuffer.wrap(lz4Blob(content))));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.io;
+
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobSchedulerTest {
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new BlobScheduler(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BlobScheduler(1, 0));
+    }
+
+    @Test
+    void testOversizeBlobAdmittedAlone() throws InterruptedException {
+        var testedObject = new BlobScheduler(10, 4);
+        assertTrue(testedObject.admit(100));
+        assertEquals(1, testedObject.getBlobsInFlight());
+        testedObject.release(100, null);
+        assertFalse(testedObject.awaitIdle().isPresent());
+    }
+
+    @Test
+    void testBudgetBlocksAdmission() throws Exception {
+        var testedObject = new BlobScheduler(10, 4);
+        assertTrue(testedObject.admit(6));
+        var second = CompletableFuture.supplyAsync(() -> admit(testedObject, 6));
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        testedObject.release(6, null);
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testReadAheadBlocksAdmission() throws Exception {
+        var testedObject = new BlobScheduler(Long.MAX_VALUE, 1);
+        assertTrue(testedObject.admit(1));
+        var second = CompletableFuture.supplyAsync(() -> admit(testedObject, 1));
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        testedObject.release(1, null);
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailureStopsAdmission() throws Exception {
+        var testedObject = new BlobScheduler(Long.MAX_VALUE, 1);
+        assertTrue(testedObject.admit(1));
+        var second = CompletableFuture.supplyAsync(() -> admit(testedObject, 1));
+        var error = new RuntimeException("test");
+        testedObject.release(1, error);
+        assertFalse(second.get(1, TimeUnit.SECONDS));
+        assertFalse(testedObject.isHealthy());
+        assertSame(error, testedObject.awaitIdle().orElse(null));
+    }
+
+    private static boolean admit(BlobScheduler scheduler, long weight) {
+        try {
+            return scheduler.admit(weight);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
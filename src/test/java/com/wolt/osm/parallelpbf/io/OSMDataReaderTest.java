@@ -28,13 +28,14 @@ import lombok.var;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.concurrent.Semaphore;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class OSMDataReaderTest {
-    private Semaphore limiter;
+    private BlobScheduler limiter;
 
     private Osmformat.PrimitiveGroup primitiveGroupMessage = Osmformat.PrimitiveGroup.newBuilder()
             .addNodes(TestObjectsFactory.nodeMessage)
@@ -57,7 +58,7 @@ class OSMDataReaderTest {
 
     @BeforeEach
     void setUp() {
-        limiter = new Semaphore(0);
+        limiter = new BlobScheduler(Long.MAX_VALUE, 1);
     }
 
     @Test
@@ -95,4 +96,25 @@ class OSMDataReaderTest {
         var testedObject = new OSMDataReader(blob, limiter, null, null, null, checker);
         testedObject.run();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBatchParse() {
+        List<List<Node>> nodeBatches = new ArrayList<>();
+        List<List<Way>> wayBatches = new ArrayList<>();
+        List<List<Relation>> relationBatches = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        var testedObject = new OSMDataReader(blob, limiter, nodes::add, null, null, null)
+                .onNodeBatch(nodeBatches::add)
+                .onWayBatch(wayBatches::add)
+                .onRelationBatch(relationBatches::add);
+        testedObject.run();
+
+        assertEquals(1, nodeBatches.size());
+        assertEquals(nodes, nodeBatches.get(0));
+        assertEquals(1 + TestObjectsFactory.denseNodesMessage.getIdCount(), nodes.size());
+        assertEquals(1, wayBatches.size());
+        assertEquals(TestObjectsFactory.wayMessage.getId(), wayBatches.get(0).get(0).getId());
+        assertEquals(1, relationBatches.size());
+        assertEquals(TestObjectsFactory.relationMessage.getId(), relationBatches.get(0).get(0).getId());
+    }
+}
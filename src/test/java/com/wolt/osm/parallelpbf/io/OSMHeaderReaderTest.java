@@ -26,18 +26,17 @@ import lombok.var;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class OSMHeaderReaderTest {
 
-    private Semaphore limiter;
+    private BlobScheduler limiter;
 
     @BeforeEach
     void setUp() {
-        limiter = new Semaphore(0);
+        limiter = new BlobScheduler(Long.MAX_VALUE, 1);
     }
 
     @Test
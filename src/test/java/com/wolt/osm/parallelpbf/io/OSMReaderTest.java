@@ -24,7 +24,6 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Semaphore;
 import java.util.zip.Deflater;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,38 +31,41 @@ import static org.junit.jupiter.api.Assertions.*;
 class OSMReaderTest {
     private static final String testString = "TestString";
 
-    private Semaphore limiter;
+    private BlobScheduler limiter;
 
     @BeforeEach
     void setUp() {
-        limiter = new Semaphore(0);
+        limiter = new BlobScheduler(Long.MAX_VALUE, 1);
     }
 
     private static class TestReader extends OSMReader {
-        TestReader(byte[] blobValue, Semaphore tasksLimiterValue) {
+        TestReader(byte[] blobValue, BlobScheduler tasksLimiterValue) {
             super(blobValue, tasksLimiterValue);
         }
 
         @Override
-        protected void read(byte[] message) {
-            assertEquals(testString, new String(message, StandardCharsets.UTF_8));
+        protected void read(byte[] message, int length) {
+            assertEquals(testString, new String(message, 0, length, StandardCharsets.UTF_8));
         }
     }
 
     @Test
-    void testRaw() {
+    void testRaw() throws InterruptedException {
         byte[] content = testString.getBytes(StandardCharsets.UTF_8);
         var blob = Fileformat.Blob.newBuilder()
                 .setRaw(ByteString.copyFrom(content))
                 .build().toByteArray();
 
         var testedObject = new TestReader(blob, limiter);
+        assertEquals(blob.length, testedObject.getWeight());
+        assertTrue(limiter.admit(testedObject.getWeight()));
         testedObject.run();
-        assertEquals(1, limiter.availablePermits());
+        assertEquals(0, limiter.getBlobsInFlight());
+        assertTrue(limiter.isHealthy());
     }
 
     @Test
-    void testZlib() {
+    void testZlib() throws InterruptedException {
         byte[] content = testString.getBytes(StandardCharsets.UTF_8);
         Deflater deflater = new Deflater();
         deflater.setInput(content);
@@ -76,8 +78,11 @@ class OSMReaderTest {
                 .build().toByteArray();
 
         var testedObject = new TestReader(blob, limiter);
+        assertEquals(blob.length + content.length, testedObject.getWeight());
+        assertTrue(limiter.admit(testedObject.getWeight()));
         testedObject.run();
-        assertEquals(1, limiter.availablePermits());
+        assertEquals(0, limiter.getBlobsInFlight());
+        assertTrue(limiter.isHealthy());
     }
 
     @Test
@@ -95,6 +100,7 @@ class OSMReaderTest {
 
         var testedObject = new TestReader(blob, limiter);
         assertThrows(RuntimeException.class, testedObject::run);
+        assertFalse(limiter.isHealthy());
     }
 
     @Test
@@ -106,6 +112,7 @@ class OSMReaderTest {
 
         var testedObject = new TestReader(blob, limiter);
         assertThrows(RuntimeException.class, testedObject::run);
+        assertFalse(limiter.isHealthy());
     }
 
     @Test
@@ -117,11 +124,39 @@ class OSMReaderTest {
 
         var testedObject = new TestReader(blob, limiter);
         assertThrows(RuntimeException.class, testedObject::run);
+        assertFalse(limiter.isHealthy());
     }
 
     @Test
     void testInvalidBlobFormat() {
         var testedObject = new TestReader("fail".getBytes(StandardCharsets.UTF_8), limiter);
         assertThrows(RuntimeException.class, testedObject::run);
+        assertFalse(limiter.isHealthy());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReleaseDecompressor() throws InterruptedException {
+        byte[] content = testString.getBytes(StandardCharsets.UTF_8);
+        var blob = Fileformat.Blob.newBuilder()
+                .setRaw(ByteString.copyFrom(content))
+                .build().toByteArray();
+
+        OSMReader.releaseDecompressor();
+        for (int indx = 0; indx < 2; ++indx) {
+            var testedObject = new TestReader(blob, limiter);
+            assertTrue(limiter.admit(testedObject.getWeight()));
+            testedObject.run();
+            OSMReader.releaseDecompressor();
+        }
+        assertTrue(limiter.isHealthy());
+    }
+
+    @Test
+    void testThreadFactoryNames() {
+        var testedObject = OSMReader.threadFactory();
+        String first = testedObject.newThread(() -> { }).getName();
+        String second = testedObject.newThread(() -> { }).getName();
+        assertEquals(first.substring(0, first.lastIndexOf('-')), second.substring(0, second.lastIndexOf('-')));
+        assertNotEquals(first, second);
+    }
+}
@@ -14,6 +14,9 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,7 +25,7 @@ class OSMWriterTest {
 
     private ByteArrayOutputStream output;
     private BlobWriter writer;
-    private LinkedBlockingQueue<OsmEntity> queue;
+    private LinkedBlockingQueue<Collection<? extends OsmEntity>> queue;
 
     private class BlobWriterMock extends BlobWriter {
 
@@ -36,6 +39,11 @@ class OSMWriterTest {
             output.write(blob);
             return true;
         }
+
+        @Override
+        public boolean writeData(byte[] blob, byte[] indexData) {
+            return writeData(blob);
+        }
     }
 
     private static class FakeEntity extends OsmEntity {
@@ -55,7 +63,7 @@ class OSMWriterTest {
         Thread testedObject = new Thread(new OSMWriter(writer, queue));
         testedObject.start();
 
-        queue.put(entity);
+        queue.put(Collections.singletonList(entity));
         while(!queue.isEmpty()) {
             Thread.sleep(1);
         }
@@ -132,7 +140,7 @@ class OSMWriterTest {
         // We flush on 15*1024*1024, each node is 36 bytes + string table is 4 bytes
         //That means we have to write more then (15*1024*1024-4)/36 = 436907 nodes.
         for (int i=0; i<436908; ++i) {
-            queue.put(TestObjectsFactory.node());
+            queue.put(Collections.singletonList(TestObjectsFactory.node()));
         }
         while(!queue.isEmpty()) {
             Thread.sleep(1);
@@ -143,4 +151,33 @@ class OSMWriterTest {
         testedObject.interrupt();
         testedObject.join();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBatch() throws InterruptedException, InvalidProtocolBufferException {
+        queue.put(Arrays.asList(TestObjectsFactory.node(), TestObjectsFactory.way(), TestObjectsFactory.relation()));
+        Thread testedObject = new Thread(new OSMWriter(writer, queue));
+        testedObject.start();
+        while(!queue.isEmpty()) {
+            Thread.sleep(1);
+        }
+        testedObject.interrupt();
+        testedObject.join();
+
+        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(output.toByteArray());
+        assertEquals(3, block.getPrimitivegroupCount());
+    }
+
+    @Test
+    void testDrainOnStop() throws InterruptedException, InvalidProtocolBufferException {
+        queue.put(Collections.singletonList(TestObjectsFactory.node()));
+        queue.put(Collections.singletonList(TestObjectsFactory.way()));
+        Thread testedObject = new Thread(new OSMWriter(writer, queue));
+        testedObject.start();
+        testedObject.interrupt();
+        testedObject.join();
+
+        assertTrue(queue.isEmpty());
+        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(output.toByteArray());
+        assertEquals(2, block.getPrimitivegroupCount());
+    }
+}
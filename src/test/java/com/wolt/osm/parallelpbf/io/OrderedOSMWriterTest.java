@@ -0,0 +1,211 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.wolt.osm.parallelpbf.blob.BlobCompression;
+import com.wolt.osm.parallelpbf.blob.BlobWriter;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.OsmEntity;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.index.BlockSummary;
+import com.wolt.osm.parallelpbf.index.IdRange;
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderedOSMWriterTest {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private final BlobWriter writer = new BlobWriter(output).setCompression(BlobCompression.raw());
+
+    private final List<BlockSummary> summaries = new ArrayList<>();
+
+    private List<Osmformat.PrimitiveBlock> readBlocks() throws IOException {
+        List<Osmformat.PrimitiveBlock> result = new ArrayList<>();
+        var input = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+        while (input.available() > 0) {
+            var header = new byte[input.readInt()];
+            input.readFully(header);
+            var blobHeader = Fileformat.BlobHeader.parseFrom(header);
+            summaries.add(BlockSummary.parse(blobHeader.getIndexdata()).get());
+            var blob = new byte[blobHeader.getDatasize()];
+            input.readFully(blob);
+            result.add(Osmformat.PrimitiveBlock.parseFrom(Fileformat.Blob.parseFrom(blob).getRaw()));
+        }
+        return result;
+    }
+
+    private static List<Long> nodeIds(Osmformat.PrimitiveBlock block) {
+        List<Long> result = new ArrayList<>();
+        long id = 0;
+        for (long delta : block.getPrimitivegroup(0).getDense().getIdList()) {
+            id += delta;
+            result.add(id);
+        }
+        return result;
+    }
+
+    @Test
+    void testKeepsOrder() throws IOException {
+        var testedObject = new OrderedOSMWriter(writer, 4);
+        testedObject.start();
+        int nodes = 20000;
+        for (long id = 1; id <= nodes; ++id) {
+            assertTrue(testedObject.write(new Node(id, 1.0, 2.0)));
+        }
+        assertTrue(testedObject.write(new Way(1)));
+        assertTrue(testedObject.write(new Way(2)));
+        assertTrue(testedObject.write(new Relation(1)));
+        testedObject.close();
+
+        var blocks = readBlocks();
+        assertEquals(5, blocks.size());
+        List<Long> ids = new ArrayList<>();
+        for (int indx = 0; indx < 3; ++indx) {
+            assertEquals(1, blocks.get(indx).getPrimitivegroupCount());
+            ids.addAll(nodeIds(blocks.get(indx)));
+        }
+        assertEquals(nodes, ids.size());
+        for (int indx = 0; indx < nodes; ++indx) {
+            assertEquals(indx + 1, ids.get(indx).longValue());
+        }
+        assertEquals(2, blocks.get(3).getPrimitivegroup(0).getWaysCount());
+        assertEquals(1, blocks.get(3).getPrimitivegroupCount());
+        assertEquals(1, blocks.get(4).getPrimitivegroup(0).getRelationsCount());
+
+        assertEquals(new IdRange(1, 8000), summaries.get(0).getNodes());
+        assertEquals(new IdRange(16001, 20000), summaries.get(2).getNodes());
+        assertNull(summaries.get(2).getWays());
+        assertEquals(new IdRange(1, 2), summaries.get(3).getWays());
+        assertNull(summaries.get(3).getNodes());
+        assertEquals(new IdRange(1, 1), summaries.get(4).getRelations());
+    }
+
+    @Test
+    void testRejectsUnsorted() throws IOException {
+        var testedObject = new OrderedOSMWriter(writer, 2);
+        testedObject.start();
+        assertTrue(testedObject.write(new Way(5)));
+        assertFalse(testedObject.write(new Way(5)));
+        assertFalse(testedObject.write(new Way(4)));
+        assertFalse(testedObject.write(new Node(6, 1.0, 2.0)));
+        assertTrue(testedObject.write(new Way(6)));
+        assertFalse(testedObject.write(new OsmEntity(7) {
+        }));
+        testedObject.close();
+
+        var blocks = readBlocks();
+        assertEquals(1, blocks.size());
+        assertEquals(2, blocks.get(0).getPrimitivegroup(0).getWaysCount());
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        var testedObject = new OrderedOSMWriter(writer, 2);
+        testedObject.start();
+        testedObject.close();
+        assertTrue(readBlocks().isEmpty());
+    }
+
+    @Test
+    void testBatchWrite() throws IOException {
+        var testedObject = new OrderedOSMWriter(writer, 2);
+        testedObject.setQueueDepth(1);
+        testedObject.start();
+        List<OsmEntity> batch = new ArrayList<>();
+        for (long id = 1; id <= 10000; ++id) {
+            batch.add(new Node(id, 1.0, 2.0));
+        }
+        assertTrue(testedObject.write(batch));
+        assertFalse(testedObject.write(Arrays.asList(new Way(1), new Node(1, 1.0, 2.0), new Way(2))));
+        testedObject.close();
+
+        var blocks = readBlocks();
+        assertEquals(3, blocks.size());
+        assertEquals(8000, nodeIds(blocks.get(0)).size());
+        assertEquals(2000, nodeIds(blocks.get(1)).size());
+        assertEquals(2, blocks.get(2).getPrimitivegroup(0).getWaysCount());
+    }
+
+    @Test
+    void testEncodingFailure() throws IOException {
+        var testedObject = new OrderedOSMWriter(writer, 2);
+        testedObject.start();
+        for (long id = 1; id <= 8000; ++id) {
+            assertTrue(testedObject.write(new Node(id, 1.0, 2.0)));
+        }
+        Node broken = new Node(8001, 1.0, 2.0);
+        broken.getTags().put("name", null);
+        assertTrue(testedObject.write(broken));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(RuntimeException.class, testedObject::close);
+            assertThrows(RuntimeException.class, () -> testedObject.write(new Way(1)));
+        });
+
+        assertTrue(readBlocks().size() <= 1);
+    }
+
+    @Test
+    void testWritingFailure() {
+        var failing = new BlobWriter(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Disk is full");
+            }
+        });
+        var testedObject = new OrderedOSMWriter(failing, 2);
+        testedObject.setQueueDepth(1);
+        testedObject.start();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(RuntimeException.class, () -> {
+                for (long id = 1; id <= 1000000; ++id) {
+                    testedObject.write(new Node(id, 1.0, 2.0));
+                }
+            });
+            assertThrows(RuntimeException.class, testedObject::close);
+        });
+    }
+
+    @Test
+    void testInterruptedClose() {
+        var testedObject = new OrderedOSMWriter(writer, 2);
+        testedObject.start();
+        for (long id = 1; id <= 20000; ++id) {
+            assertTrue(testedObject.write(new Node(id, 1.0, 2.0)));
+        }
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(RuntimeException.class, testedObject::close);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.io;
+
+import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import com.google.protobuf.CodedOutputStream;
+import crosby.binary.Osmformat;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveBlockScannerTest {
+    private final Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.newBuilder()
+            .setStringtable(TestObjectsFactory.stringTable)
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addNodes(TestObjectsFactory.nodeMessage))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(TestObjectsFactory.denseNodesMessage))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addWays(TestObjectsFactory.wayMessage))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addRelations(TestObjectsFactory.relationMessage))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addChangesets(TestObjectsFactory.changesetMessage))
+            .setGranularity(1)
+            .setDateGranularity(2)
+            .setLatOffset(3)
+            .setLonOffset(4)
+            .build();
+
+    @Test
+    void testAllGroupsKept() throws IOException {
+        var testedObject = new PrimitiveBlockScanner(true, true, true, true, true);
+        assertEquals(block, testedObject.parse(block.toByteArray(), block.getSerializedSize()).get());
+    }
+
+    @Test
+    void testWaysOnly() throws IOException {
+        var testedObject = new PrimitiveBlockScanner(false, false, true, false, false);
+        var actual = testedObject.parse(block.toByteArray(), block.getSerializedSize()).get();
+
+        assertEquals(1, actual.getPrimitivegroupCount());
+        assertEquals(TestObjectsFactory.wayMessage, actual.getPrimitivegroup(0).getWays(0));
+        assertEquals(block.getStringtable(), actual.getStringtable());
+        assertEquals(block.getGranularity(), actual.getGranularity());
+        assertEquals(block.getDateGranularity(), actual.getDateGranularity());
+        assertEquals(block.getLatOffset(), actual.getLatOffset());
+        assertEquals(block.getLonOffset(), actual.getLonOffset());
+    }
+
+    @Test
+    void testDenseOnly() throws IOException {
+        var testedObject = new PrimitiveBlockScanner(false, true, false, false, false);
+        var actual = testedObject.parse(block.toByteArray(), block.getSerializedSize()).get();
+
+        assertEquals(1, actual.getPrimitivegroupCount());
+        assertEquals(TestObjectsFactory.denseNodesMessage, actual.getPrimitivegroup(0).getDense());
+    }
+
+    @Test
+    void testNoRequestedGroups() throws IOException {
+        var nodesBlock = Osmformat.PrimitiveBlock.newBuilder()
+                .setStringtable(TestObjectsFactory.stringTable)
+                .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(TestObjectsFactory.denseNodesMessage))
+                .build();
+        var testedObject = new PrimitiveBlockScanner(false, false, true, true, false);
+        assertFalse(testedObject.parse(nodesBlock.toByteArray(), nodesBlock.getSerializedSize()).isPresent());
+    }
+
+    @Test
+    void testStringTableOfDroppedBlockNotParsed() throws IOException {
+        var output = new ByteArrayOutputStream();
+        var coded = CodedOutputStream.newInstance(output);
+        coded.writeByteArray(Osmformat.PrimitiveBlock.STRINGTABLE_FIELD_NUMBER, new byte[]{0x0F});
+        coded.writeMessage(Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER,
+                Osmformat.PrimitiveGroup.newBuilder().setDense(TestObjectsFactory.denseNodesMessage).build());
+        coded.flush();
+
+        var testedObject = new PrimitiveBlockScanner(false, false, true, false, false);
+        assertFalse(testedObject.parse(output.toByteArray(), output.size()).isPresent());
+        var denseScanner = new PrimitiveBlockScanner(false, true, false, false, false);
+        assertThrows(IOException.class, () -> denseScanner.parse(output.toByteArray(), output.size()));
+    }
+
+    @Test
+    void testUnknownFieldsSkipped() throws IOException {
+        var output = new ByteArrayOutputStream();
+        var coded = CodedOutputStream.newInstance(output);
+        coded.writeString(100, "unknown");
+        coded.writeMessage(Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER,
+                Osmformat.PrimitiveGroup.newBuilder().addWays(TestObjectsFactory.wayMessage).build());
+        coded.flush();
+        block.writeTo(output);
+
+        var testedObject = new PrimitiveBlockScanner(false, false, true, false, false);
+        assertEquals(2, testedObject.parse(output.toByteArray(), output.size()).get().getPrimitivegroupCount());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.io;
+
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReorderBufferTest {
+    @Test
+    void testOrderedReplay() throws InterruptedException {
+        var scheduler = new BlobScheduler(Long.MAX_VALUE, 3);
+        var testedObject = new ReorderBuffer(scheduler);
+        List<Integer> delivered = new ArrayList<>();
+        Consumer<Integer> callback = delivered::add;
+
+        var first = testedObject.open();
+        var second = testedObject.open();
+        var third = testedObject.open();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(scheduler.admit(1));
+        }
+
+        third.wrap(callback).accept(3);
+        third.release(1, null);
+        second.wrap(callback).accept(2);
+        second.release(1, null);
+        assertTrue(delivered.isEmpty());
+        assertEquals(3, scheduler.getBlobsInFlight());
+
+        first.wrap(callback).accept(1);
+        first.wrap(callback).accept(11);
+        first.release(1, null);
+        assertEquals(Arrays.asList(1, 11, 2, 3), delivered);
+        assertEquals(0, scheduler.getBlobsInFlight());
+    }
+
+    @Test
+    void testNullCallback() {
+        var testedObject = new ReorderBuffer(new BlobScheduler(1, 1));
+        assertNull(testedObject.open().wrap(null));
+    }
+
+    @Test
+    void testFailedBlock() throws InterruptedException {
+        var scheduler = new BlobScheduler(Long.MAX_VALUE, 2);
+        var testedObject = new ReorderBuffer(scheduler);
+        var first = testedObject.open();
+        assertTrue(scheduler.admit(1));
+
+        first.release(1, new RuntimeException("test"));
+        assertFalse(scheduler.isHealthy());
+        assertEquals(0, scheduler.getBlobsInFlight());
+    }
+
+    @Test
+    void testFailedCallback() throws InterruptedException {
+        var scheduler = new BlobScheduler(Long.MAX_VALUE, 2);
+        var testedObject = new ReorderBuffer(scheduler);
+        List<Integer> delivered = new ArrayList<>();
+        var first = testedObject.open();
+        var second = testedObject.open();
+        assertTrue(scheduler.admit(1));
+        assertTrue(scheduler.admit(1));
+
+        Consumer<Integer> failing = value -> {
+            throw new IllegalStateException("test");
+        };
+        Consumer<Integer> callback = delivered::add;
+        first.wrap(failing).accept(1);
+        second.wrap(callback).accept(2);
+        second.release(1, null);
+        first.release(1, null);
+
+        assertFalse(scheduler.isHealthy());
+        assertTrue(delivered.isEmpty());
+        assertEquals(0, scheduler.getBlobsInFlight());
+    }
+
+    @Test
+    void testCancelledBlock() throws InterruptedException {
+        var scheduler = new BlobScheduler(Long.MAX_VALUE, 2);
+        var testedObject = new ReorderBuffer(scheduler);
+        List<Integer> delivered = new ArrayList<>();
+        Consumer<Integer> callback = delivered::add;
+        var first = testedObject.open();
+        var second = testedObject.open();
+        assertTrue(scheduler.admit(1));
+
+        first.wrap(callback).accept(1);
+        second.wrap(callback).accept(2);
+        second.release(1, null);
+        first.cancel();
+
+        assertTrue(scheduler.isHealthy());
+        assertEquals(Arrays.asList(2), delivered);
+        assertEquals(0, scheduler.getBlobsInFlight());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.location;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DenseNodeLocationStoreTest {
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("locations", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testPutGet() throws IOException {
+        try (DenseNodeLocationStore testedObject = DenseNodeLocationStore.open(file, 1000)) {
+            testedObject.put(0, 0, 0);
+            testedObject.put(1000, -900000000, 1800000000);
+            testedObject.put(7, 515000000, -1000);
+
+            assertEquals(NodeLocationStore.pack(0, 0), testedObject.get(0));
+            assertEquals(-900000000, NodeLocationStore.lat(testedObject.get(1000)));
+            assertEquals(1800000000, NodeLocationStore.lon(testedObject.get(1000)));
+            assertEquals(515000000, NodeLocationStore.lat(testedObject.get(7)));
+            assertEquals(-1000, NodeLocationStore.lon(testedObject.get(7)));
+            assertEquals(NodeLocationStore.MISSING, testedObject.get(8));
+            assertEquals(NodeLocationStore.MISSING, testedObject.get(1001));
+            assertEquals(NodeLocationStore.MISSING, testedObject.get(-1));
+        }
+    }
+
+    @Test
+    void testOutOfRange() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> DenseNodeLocationStore.open(file, -1));
+        try (DenseNodeLocationStore testedObject = DenseNodeLocationStore.open(file, 10)) {
+            assertThrows(IllegalArgumentException.class, () -> testedObject.put(11, 1, 1));
+            assertThrows(IllegalArgumentException.class, () -> testedObject.put(-1, 1, 1));
+        }
+    }
+
+    @Test
+    void testReopen() throws IOException {
+        try (DenseNodeLocationStore testedObject = DenseNodeLocationStore.open(file, 100)) {
+            testedObject.put(42, 10, 20);
+        }
+        try (DenseNodeLocationStore testedObject = DenseNodeLocationStore.open(file, 100)) {
+            assertEquals(NodeLocationStore.pack(10, 20), testedObject.get(42));
+            assertEquals(NodeLocationStore.MISSING, testedObject.get(43));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.location;
+
+import com.google.protobuf.CodedInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseNodeLocationStoreTest {
+    @Test
+    void testPutGet() {
+        SparseNodeLocationStore testedObject = new SparseNodeLocationStore(3);
+        testedObject.put(5000000000L, 1, 2);
+        testedObject.put(3, -3, -4);
+        testedObject.put(-10, 5, 6);
+        testedObject.complete();
+
+        assertEquals(3, testedObject.size());
+        assertEquals(NodeLocationStore.pack(1, 2), testedObject.get(5000000000L));
+        assertEquals(NodeLocationStore.pack(-3, -4), testedObject.get(3));
+        assertEquals(NodeLocationStore.pack(5, 6), testedObject.get(-10));
+        assertEquals(NodeLocationStore.MISSING, testedObject.get(4));
+        assertThrows(IllegalStateException.class, () -> testedObject.put(4, 0, 0));
+    }
+
+    @Test
+    void testDuplicates() {
+        SparseNodeLocationStore testedObject = new SparseNodeLocationStore(4);
+        testedObject.put(2, 1, 1);
+        testedObject.put(1, 0, 0);
+        testedObject.put(2, 1, 1);
+        testedObject.put(2, 1, 1);
+        assertThrows(IllegalStateException.class, () -> testedObject.put(3, 0, 0));
+        testedObject.complete();
+
+        assertEquals(2, testedObject.size());
+        assertEquals(NodeLocationStore.pack(1, 1), testedObject.get(2));
+        testedObject.put(3, 3, 3);
+        testedObject.complete();
+        assertEquals(3, testedObject.size());
+        assertEquals(NodeLocationStore.pack(3, 3), testedObject.get(3));
+        assertEquals(NodeLocationStore.pack(0, 0), testedObject.get(1));
+    }
+
+    @Test
+    void testConcurrentPut() {
+        int count = 100000;
+        Random random = new Random(1);
+        long[] ids = random.longs(count, 0, Long.MAX_VALUE).toArray();
+        SparseNodeLocationStore testedObject = new SparseNodeLocationStore(count);
+        IntStream.range(0, count).parallel().forEach(indx -> testedObject.put(ids[indx], indx, -indx));
+        testedObject.complete();
+
+        assertEquals(count, testedObject.size());
+        for (int indx = 0; indx < count; ++indx) {
+            assertEquals(NodeLocationStore.pack(indx, -indx), testedObject.get(ids[indx]));
+        }
+    }
+
+    @Test
+    void testSaveLoad() throws IOException {
+        SparseNodeLocationStore testedObject = new SparseNodeLocationStore(4);
+        testedObject.put(100, 900000000, -1800000000);
+        testedObject.put(1, 0, 0);
+        testedObject.put(50, -900000000, 1800000000);
+        testedObject.complete();
+
+        Path file = Files.createTempFile("locations", ".bin");
+        try {
+            testedObject.save(file);
+            SparseNodeLocationStore loaded = SparseNodeLocationStore.load(file);
+            assertEquals(3, loaded.size());
+            assertEquals(NodeLocationStore.pack(900000000, -1800000000), loaded.get(100));
+            assertEquals(NodeLocationStore.pack(0, 0), loaded.get(1));
+            assertEquals(NodeLocationStore.pack(-900000000, 1800000000), loaded.get(50));
+            assertEquals(NodeLocationStore.MISSING, loaded.get(2));
+
+            Files.write(file, new byte[]{1, 2, 3, 4, 5});
+            assertThrows(IOException.class, () -> SparseNodeLocationStore.load(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testLoadResetsSizeLimit() throws IOException {
+        int count = 1000;
+        SparseNodeLocationStore testedObject = new SparseNodeLocationStore(count);
+        for (int indx = 0; indx < count; ++indx) {
+            testedObject.put(indx * 1000000000L, indx * 100000, -indx * 100000);
+        }
+        testedObject.complete();
+
+        Path file = Files.createTempFile("locations", ".bin");
+        try {
+            testedObject.save(file);
+            byte[] content = Files.readAllBytes(file);
+            assertTrue(content.length > 64);
+            CodedInputStream input = CodedInputStream.newInstance(new ByteArrayInputStream(content));
+            input.setSizeLimit(64);
+            SparseNodeLocationStore loaded = SparseNodeLocationStore.read(input, file);
+            assertEquals(count, loaded.size());
+            assertEquals(NodeLocationStore.pack(99900000, -99900000), loaded.get(999000000000L));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testFromNanodegrees() {
+        assertEquals(NodeLocationStore.toFixed(51.1234567), NodeLocationStore.fromNanodegrees(51123456700L));
+        assertEquals(NodeLocationStore.toFixed(-0.00000015), NodeLocationStore.fromNanodegrees(-150));
+        assertEquals(2, NodeLocationStore.fromNanodegrees(150));
+    }
+}
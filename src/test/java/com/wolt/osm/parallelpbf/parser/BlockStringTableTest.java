@@ -0,0 +1,93 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.parser;
+
+import com.google.protobuf.ByteString;
+import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import crosby.binary.Osmformat;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockStringTableTest {
+    @Test
+    void testLookup() {
+        var testedObject = new BlockStringTable(TestObjectsFactory.stringTable);
+        assertEquals(5, testedObject.size());
+        assertEquals("", testedObject.getString(0));
+        assertEquals("tag", testedObject.getString(3));
+        assertSame(testedObject.getString(3), testedObject.getString(3));
+        assertEquals(5, testedObject.length(4));
+        assertTrue(testedObject.equalsAt(4, "value".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(testedObject.equalsAt(3, "tab".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, testedObject.indexOf("test".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(-1, testedObject.indexOf("none".getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals("fail".getBytes(StandardCharsets.UTF_8), testedObject.getBytes(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> testedObject.getString(5));
+    }
+
+    @Test
+    void testAppend() {
+        var source = new BlockStringTable(TestObjectsFactory.stringTable);
+        assertEquals("tag", source.getString(3));
+        var testedObject = new BlockStringTable();
+        assertEquals(0, testedObject.append(source, 3));
+        assertEquals(1, testedObject.append(source, 4));
+        assertEquals(2, testedObject.append(source, 3));
+        source.reset(Osmformat.StringTable.newBuilder().addS(ByteString.copyFromUtf8("other")).build());
+
+        assertEquals(3, testedObject.size());
+        assertSame(testedObject.getString(0), testedObject.getString(2));
+        assertEquals("value", testedObject.getString(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> testedObject.append(source, 1));
+    }
+
+    @Test
+    void testReset() {
+        var testedObject = new BlockStringTable(TestObjectsFactory.stringTable);
+        assertEquals("tag", testedObject.getString(3));
+        testedObject.reset(Osmformat.StringTable.newBuilder()
+                .addS(ByteString.copyFromUtf8(""))
+                .addS(ByteString.copyFromUtf8("Zürich"))
+                .build());
+        assertEquals(2, testedObject.size());
+        assertEquals("Zürich", testedObject.getString(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> testedObject.getString(3));
+    }
+
+    @Test
+    void testResetFromBytes() throws IOException {
+        var testedObject = new BlockStringTable(TestObjectsFactory.stringTable);
+        assertEquals("tag", testedObject.getString(3));
+        var table = Osmformat.StringTable.newBuilder()
+                .addS(ByteString.copyFromUtf8(""))
+                .addS(ByteString.copyFromUtf8("Zürich"))
+                .build().toByteArray();
+        var message = new byte[table.length + 2];
+        System.arraycopy(table, 0, message, 1, table.length);
+
+        testedObject.reset(message, 1, table.length);
+        assertEquals(2, testedObject.size());
+        assertEquals("", testedObject.getString(0));
+        assertEquals("Zürich", testedObject.getString(1));
+    }
+}
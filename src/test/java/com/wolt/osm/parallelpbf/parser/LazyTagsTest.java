@@ -0,0 +1,84 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wolt.osm.parallelpbf.parser;
+
+import com.google.protobuf.ByteString;
+import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import crosby.binary.Osmformat;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyTagsTest {
+    private final BlockStringTable strings = new BlockStringTable(TestObjectsFactory.stringTable);
+
+    @Test
+    void testLookup() {
+        var testedObject = new LazyTags(strings, new int[]{3, 4, 2, 1});
+        assertEquals(2, testedObject.size());
+        assertEquals("value", testedObject.get("tag"));
+        assertEquals("fail", testedObject.get("test"));
+        assertNull(testedObject.get("ta"));
+        assertNull(testedObject.get("tags"));
+        assertNull(testedObject.get(1));
+        assertTrue(testedObject.containsKey("test"));
+        assertFalse(testedObject.containsKey("value"));
+    }
+
+    @Test
+    void testEquality() {
+        Map<String, String> expected = new HashMap<>();
+        expected.put("tag", "value");
+        expected.put("test", "fail");
+        var testedObject = new LazyTags(strings, new int[]{3, 4, 2, 1});
+        assertEquals(expected, testedObject);
+        assertEquals(testedObject, expected);
+        assertEquals(expected.hashCode(), testedObject.hashCode());
+        assertTrue(new LazyTags(strings, new int[0]).isEmpty());
+    }
+
+    @Test
+    void testModification() {
+        var testedObject = new LazyTags(strings, new int[]{3, 4});
+        assertNull(testedObject.put("new", "value"));
+        assertEquals(2, testedObject.size());
+        assertEquals("value", testedObject.remove("tag"));
+        assertEquals(1, testedObject.size());
+        assertEquals("value", testedObject.get("new"));
+        testedObject.clear();
+        assertTrue(testedObject.isEmpty());
+    }
+
+    @Test
+    void testNonAsciiKey() {
+        var table = new BlockStringTable(Osmformat.StringTable.newBuilder()
+                .addS(ByteString.copyFromUtf8(""))
+                .addS(ByteString.copyFromUtf8("name:zürich"))
+                .addS(ByteString.copyFromUtf8("name:z"))
+                .addS(ByteString.copyFromUtf8("Zürich"))
+                .build());
+        var testedObject = new LazyTags(table, new int[]{1, 3, 2, 3});
+        assertEquals("Zürich", testedObject.get("name:zürich"));
+        assertEquals("Zürich", testedObject.get("name:z"));
+        assertNull(testedObject.get("name:zü"));
+    }
+}
@@ -17,12 +17,16 @@
 
 package com.wolt.osm.parallelpbf.parser;
 
+import com.wolt.osm.parallelpbf.entity.BoundBox;
 import com.wolt.osm.parallelpbf.entity.Node;
 import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
 import crosby.binary.Osmformat;
 import lombok.var;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -73,4 +77,86 @@ class NodeParserTest {
         var testedObject = new NodeParser(checker, TestObjectsFactory.stringTable, 1, 0, 0, 1);
         testedObject.parse(denseNodes);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDenseNodeColumns() {
+        var denseNodes = Osmformat.DenseNodes.newBuilder()
+                .addId(1).addId(2)
+                .addLat(1000000000).addLat(500000000)
+                .addLon(2000000000).addLon(-1000000000)
+                .addKeysVals(3).addKeysVals(4).addKeysVals(0)
+                .addKeysVals(0)
+                .build();
+        var columns = new DenseNodeColumns();
+
+        var testedObject = new NodeParser(null, TestObjectsFactory.stringTable, 1, 0, 0, 1);
+        testedObject.parse(denseNodes, columns);
+
+        assertEquals(2, columns.size());
+        assertEquals(1, columns.getId(0));
+        assertEquals(3, columns.getId(1));
+        assertEquals(1, columns.getLat(0), 0.0000001);
+        assertEquals(1.5, columns.getLat(1), 0.0000001);
+        assertEquals(1, columns.getLon(1), 0.0000001);
+        assertEquals(1, columns.tagCount(0));
+        assertEquals("tag", columns.getStringTable().getString(columns.tagKey(0, 0)));
+        assertEquals("value", columns.getStringTable().getString(columns.tagValue(0, 0)));
+        assertEquals(0, columns.tagCount(1));
+
+        testedObject.parse(TestObjectsFactory.denseNodesMessage, columns);
+        assertEquals(1, columns.size());
+        assertEquals(1, columns.getId(0));
+    }
+
+    @Test
+    void testDenseNodeFilter() {
+        var denseInfo = Osmformat.DenseInfo.newBuilder()
+                .addUid(7).addUid(-6)
+                .addUserSid(1).addUserSid(1)
+                .addVersion(1).addVersion(3)
+                .addTimestamp(1).addTimestamp(3)
+                .addChangeset(1).addChangeset(4)
+                .build();
+        var denseNodes = Osmformat.DenseNodes.newBuilder()
+                .addId(5).addId(-4)
+                .addLat(1000000000).addLat(0)
+                .addLon(2000000000).addLon(0)
+                .addKeysVals(2).addKeysVals(4).addKeysVals(0)
+                .addKeysVals(3).addKeysVals(4).addKeysVals(0)
+                .setDenseinfo(denseInfo)
+                .build();
+        List<Node> nodes = new ArrayList<>();
+
+        var testedObject = new NodeParser(nodes::add, TestObjectsFactory.stringTable, 1, 0, 0, 1);
+        testedObject.useTagFilter(new TagFilter().key("tag")
+                .compile(new BlockStringTable(TestObjectsFactory.stringTable)));
+        testedObject.parse(denseNodes);
+        testedObject.parse(TestObjectsFactory.nodeMessage);
+
+        assertEquals(2, nodes.size());
+        checker.accept(nodes.get(0));
+        checker.accept(nodes.get(1));
+    }
+
+    @Test
+    void testBoundBox() {
+        var denseNodes = Osmformat.DenseNodes.newBuilder()
+                .addId(1).addId(1).addId(1)
+                .addLat(1000000000).addLat(-500000000).addLat(500000000)
+                .addLon(2000000000).addLon(0).addLon(1000000000)
+                .build();
+        List<Node> nodes = new ArrayList<>();
+
+        var testedObject = new NodeParser(nodes::add, TestObjectsFactory.stringTable, 1, 0, 0, 1);
+        testedObject.useBoundBox(new BoundBox(1.5, 0.9, 2.5, 1.1));
+        testedObject.parse(denseNodes);
+        testedObject.parse(TestObjectsFactory.nodeMessage);
+        testedObject.parse(TestObjectsFactory.nodeMessage.toBuilder().setLat(0).build());
+
+        assertEquals(2, nodes.size());
+        assertEquals(1, nodes.get(0).getId());
+        assertEquals(1.0, nodes.get(0).getLat(), 1e-9);
+        assertEquals(2.0, nodes.get(0).getLon(), 1e-9);
+        checker.accept(nodes.get(1));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of parallelpbf.
+ *
+ *     parallelpbf is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Foobar is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Foobar.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.wolt.osm.parallelpbf.parser;
+
+import com.wolt.osm.parallelpbf.TestObjectsFactory;
+import com.wolt.osm.parallelpbf.entity.BoundBox;
+import com.wolt.osm.parallelpbf.entity.Node;
+import com.wolt.osm.parallelpbf.entity.Relation;
+import com.wolt.osm.parallelpbf.entity.Way;
+import com.wolt.osm.parallelpbf.filter.TagFilter;
+import crosby.binary.Osmformat;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveBlockDecoderTest {
+    private final Osmformat.DenseNodes denseNodes = Osmformat.DenseNodes.newBuilder()
+            .addId(1).addId(2).addId(-1)
+            .addLat(1000000000).addLat(-500).addLat(7)
+            .addLon(2000000000).addLon(300).addLon(-9)
+            .addKeysVals(3).addKeysVals(4).addKeysVals(0)
+            .addKeysVals(0)
+            .addKeysVals(2).addKeysVals(4).addKeysVals(3).addKeysVals(2).addKeysVals(0)
+            .setDenseinfo(Osmformat.DenseInfo.newBuilder()
+                    .addUid(1).addUid(1).addUid(-1)
+                    .addUserSid(2).addUserSid(0).addUserSid(-1)
+                    .addVersion(3).addVersion(4).addVersion(5)
+                    .addTimestamp(4).addTimestamp(10).addTimestamp(-3)
+                    .addChangeset(5).addChangeset(1).addChangeset(1)
+                    .addVisible(true).addVisible(false).addVisible(true))
+            .build();
+
+    private final Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.newBuilder()
+            .setStringtable(TestObjectsFactory.stringTable)
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder()
+                    .addNodes(TestObjectsFactory.nodeMessage)
+                    .addNodes(Osmformat.Node.newBuilder().setId(-5).setLat(-7).setLon(8)))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(denseNodes))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder()
+                    .addWays(TestObjectsFactory.wayMessage)
+                    .addWays(TestObjectsFactory.wayMessageWithNullVisibleFlag.toBuilder().setId(2).addRefs(-3)))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder()
+                    .addRelations(TestObjectsFactory.relationMessage)
+                    .addRelations(TestObjectsFactory.relationMessage.toBuilder()
+                            .setId(2).clearKeys().clearVals().clearInfo()
+                            .addMemids(-5).addTypes(Osmformat.Relation.MemberType.RELATION).addRolesSid(3)))
+            .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addChangesets(TestObjectsFactory.changesetMessage))
+            .setGranularity(10)
+            .setDateGranularity(100)
+            .setLatOffset(5)
+            .setLonOffset(-5)
+            .build();
+
+    private List<Object> generated(final TagFilter filter, final BoundBox box, final boolean lazy) {
+        var strings = new BlockStringTable(block.getStringtable());
+        var tagFilter = filter == null ? null : filter.compile(strings);
+        List<Object> result = new ArrayList<>();
+        for (Osmformat.PrimitiveGroup group : block.getPrimitivegroupList()) {
+            var nodeParser = new NodeParser(result::add, block.getStringtable(), block.getGranularity(),
+                    block.getLatOffset(), block.getLonOffset(), block.getDateGranularity());
+            var wayParser = new WayParser(result::add, block.getStringtable());
+            var relationParser = new RelationParser(result::add, block.getStringtable());
+            for (BaseParser<?, ?> parser : new BaseParser<?, ?>[]{nodeParser, wayParser, relationParser}) {
+                parser.useTagFilter(tagFilter);
+                parser.useLazyTags(lazy ? strings : null);
+            }
+            nodeParser.useBoundBox(box);
+            group.getNodesList().forEach(nodeParser::parse);
+            if (group.hasDense()) {
+                nodeParser.parse(group.getDense());
+            }
+            group.getWaysList().forEach(wayParser::parse);
+            group.getRelationsList().forEach(relationParser::parse);
+            group.getChangesetsList().forEach(changeset -> result.add(changeset.getId()));
+        }
+        return result;
+    }
+
+    private List<Object> decoded(final TagFilter filter, final BoundBox box, final boolean lazy) throws IOException {
+        var testedObject = new PrimitiveBlockDecoder(lazy);
+        assertTrue(testedObject.reset(block.toByteArray(), block.getSerializedSize(), true, true, true, true));
+        if (filter != null) {
+            testedObject.useTagFilter(filter.compile(testedObject.getStrings()));
+        }
+        testedObject.useBoundBox(box);
+        List<Object> result = new ArrayList<>();
+        for (int group = 0; group < testedObject.groupCount(); ++group) {
+            testedObject.decodeNodes(group, result::add);
+            testedObject.decodeWays(group, result::add);
+            testedObject.decodeRelations(group, result::add);
+            testedObject.decodeChangesets(group, result::add);
+        }
+        return result;
+    }
+
+    @Test
+    void testSameAsGenerated() throws IOException {
+        var expected = generated(null, null, false);
+        assertEquals(10, expected.size());
+        assertEquals(expected, decoded(null, null, false));
+    }
+
+    @Test
+    void testLazyTagsSameAsGenerated() throws IOException {
+        var actual = decoded(null, null, true);
+        assertEquals(generated(null, null, false), actual);
+        assertTrue(((Way) actual.get(5)).getTags() instanceof LazyTags);
+    }
+
+    @Test
+    void testFilterSameAsGenerated() throws IOException {
+        var filter = new TagFilter().keyValues("tag", "value");
+        var expected = generated(filter, null, false);
+        assertEquals(expected, decoded(filter, null, false));
+        assertEquals(6, expected.size());
+    }
+
+    @Test
+    void testBoundBoxSameAsGenerated() throws IOException {
+        var box = new BoundBox(19.9999, 9.999996, 20.1, 10.1);
+        var expected = generated(null, box, false);
+        assertEquals(expected, decoded(null, box, false));
+        assertEquals(2, expected.stream().filter(entity -> entity instanceof Node).count());
+        assertEquals(7, expected.size());
+    }
+
+    @Test
+    void testRequestedGroupsOnly() throws IOException {
+        var testedObject = new PrimitiveBlockDecoder(false);
+        assertTrue(testedObject.reset(block.toByteArray(), block.getSerializedSize(), false, true, false, false));
+        assertEquals(1, testedObject.groupCount());
+        List<Way> ways = new ArrayList<>();
+        testedObject.decodeWays(0, ways::add);
+        assertEquals(2, ways.size());
+        assertEquals(9000L, ways.get(0).getNodes().get(0).longValue());
+
+        var nodesBlock = Osmformat.PrimitiveBlock.newBuilder()
+                .setStringtable(TestObjectsFactory.stringTable)
+                .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(denseNodes))
+                .build();
+        assertFalse(testedObject.reset(nodesBlock.toByteArray(), nodesBlock.getSerializedSize(), false, true, true, true));
+        assertTrue(testedObject.reset(nodesBlock.toByteArray(), nodesBlock.getSerializedSize(), true, false, false, false));
+        List<Node> nodes = new ArrayList<>();
+        testedObject.decodeNodes(0, nodes::add);
+        assertEquals(3, nodes.size());
+        List<Relation> relations = new ArrayList<>();
+        testedObject.decodeRelations(0, relations::add);
+        assertTrue(relations.isEmpty());
+    }
+
+    @Test
+    void testBrokenGroup() throws IOException {
+        var brokenBlock = Osmformat.PrimitiveBlock.newBuilder()
+                .setStringtable(TestObjectsFactory.stringTable)
+                .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder()
+                        .addWays(TestObjectsFactory.wayMessage.toBuilder().addKeys(2)))
+                .build();
+        var testedObject = new PrimitiveBlockDecoder(false);
+        assertTrue(testedObject.reset(brokenBlock.toByteArray(), brokenBlock.getSerializedSize(), true, true, true, true));
+        assertThrows(RuntimeException.class, () -> testedObject.decodeWays(0, way -> { }));
+    }
+}
@@ -51,4 +51,14 @@ class TagParserTest {
         assertTrue(actual.containsKey("tag"));
         assertEquals(actual.get("tag"), "value");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseLazyTags() {
+        var testedObject = new TagParser(null, TestObjectsFactory.stringTable);
+        testedObject.useLazyTags(new BlockStringTable(TestObjectsFactory.stringTable));
+        var actual = testedObject.parseTags(Collections.singletonList(3), Collections.singletonList(4));
+
+        assertTrue(actual instanceof LazyTags);
+        assertEquals(Collections.singletonMap("tag", "value"), actual);
+    }
+}